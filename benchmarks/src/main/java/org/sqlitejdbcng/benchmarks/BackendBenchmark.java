@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.sqlitejdbcng.benchmarks;
+
+import org.bridj.Pointer;
+import org.openjdk.jmh.annotations.*;
+import org.sqlitejdbcng.SqliteConnection;
+import org.sqlitejdbcng.bridj.BridjBackend;
+import org.sqlitejdbcng.bridj.Sqlite3;
+import org.sqlitejdbcng.internal.Sqlite3Backend;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The step, column and bind calls made through each native backend, without
+ * the JDBC layer on top.  The Panama backend needs JDK 22 and the
+ * sqlitejdbcng-panama jar, which the "panama" profile adds to the build.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackendBenchmark {
+    private static final int SQLITE_ROW = (int) Sqlite3.ReturnCodes.SQLITE_ROW.value();
+
+    @Param({ "bridj", "panama" })
+    public String backend;
+
+    @Param({ "1000" })
+    public int rows;
+
+    private File dbFile;
+    private Connection conn;
+    private Sqlite3Backend nat;
+    private Pointer<Sqlite3.Statement> scan;
+    private Pointer<Sqlite3.Statement> row;
+    private Pointer<Sqlite3.Statement> bind;
+    private Pointer<Byte> text;
+    private int textLength;
+
+    static Sqlite3Backend newBackend(String name) throws ReflectiveOperationException {
+        switch (name) {
+            case "bridj":
+                return new BridjBackend();
+            case "panama":
+                return Class.forName("org.sqlitejdbcng.panama.PanamaBackend")
+                        .asSubclass(Sqlite3Backend.class)
+                        .getDeclaredConstructor()
+                        .newInstance();
+            default:
+                throw new IllegalArgumentException("Unknown backend " + name);
+        }
+    }
+
+    private Pointer<Sqlite3.Statement> prepare(String sql) throws SQLException {
+        Pointer<Sqlite3.Sqlite3Db> db = this.conn.unwrap(SqliteConnection.class).getHandle();
+        Pointer<Pointer<Sqlite3.Statement>> stmtOut = Pointer.allocatePointer(Sqlite3.Statement.class);
+
+        Sqlite3.checkOk(Sqlite3.sqlite3_prepare_v2(db, Pointer.pointerToCString(sql), -1, stmtOut, null), db);
+
+        return stmtOut.get();
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        this.nat = newBackend(this.backend);
+        this.dbFile = Fixtures.newDatabaseFile();
+        this.conn = Fixtures.connect(this.dbFile);
+        Fixtures.createTable(this.conn, this.rows, 0);
+        this.scan = this.prepare("SELECT id FROM bench_table");
+        this.row = this.prepare("SELECT num, real, name FROM bench_table WHERE id = 1");
+        this.bind = this.prepare("SELECT ?, ?, ?");
+        this.text = Pointer.pointerToCString(Fixtures.NAME_VALUE);
+        this.textLength = Fixtures.NAME_VALUE.length();
+        if (this.nat.step(this.row.getPeer()) != SQLITE_ROW)
+            throw new IllegalStateException("The fixture row is missing");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Sqlite3.sqlite3_finalize(this.scan);
+        Sqlite3.sqlite3_finalize(this.row);
+        Sqlite3.sqlite3_finalize(this.bind);
+        this.text.release();
+        Fixtures.close(this.conn, this.dbFile);
+    }
+
+    /**
+     * Step through every row of the table.
+     */
+    @Benchmark
+    public int step() {
+        long stmt = this.scan.getPeer();
+        int count = 0;
+
+        this.nat.reset(stmt);
+        while (this.nat.step(stmt) == SQLITE_ROW) {
+            count += 1;
+        }
+
+        return count;
+    }
+
+    /**
+     * Read the integer, real and text columns of the current row.
+     */
+    @Benchmark
+    public long column() {
+        long stmt = this.row.getPeer();
+
+        return this.nat.columnType(stmt, 0) +
+                this.nat.columnInt64(stmt, 0) +
+                (long) this.nat.columnDouble(stmt, 1) +
+                this.nat.columnText(stmt, 2) +
+                this.nat.columnBytes(stmt, 2);
+    }
+
+    /**
+     * Bind an integer, a real and a text parameter and then clear them.
+     */
+    @Benchmark
+    public int bind() {
+        long stmt = this.bind.getPeer();
+
+        return this.nat.bindInt64(stmt, 1, 42L) +
+                this.nat.bindDouble(stmt, 2, 1.5) +
+                this.nat.bindTextStatic(stmt, 3, this.text.getPeer(), this.textLength) +
+                this.nat.clearBindings(stmt);
+    }
+}
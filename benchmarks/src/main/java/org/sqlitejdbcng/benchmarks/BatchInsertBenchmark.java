@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.sqlitejdbcng.SqlitePreparedStatement;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserting rows with executeBatch(), one row at a time and a whole column
+ * at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchInsertBenchmark {
+    @Param({ "100", "10000" })
+    public int batchSize;
+
+    private File dbFile;
+    private Connection conn;
+    private PreparedStatement ps;
+    private long[] ids;
+    private double[] reals;
+    private String[] names;
+
+    @Setup
+    public void setup() throws Exception {
+        this.dbFile = Fixtures.newDatabaseFile();
+        this.conn = Fixtures.connect(this.dbFile);
+        Fixtures.createTable(this.conn, 0, 0);
+        this.ps = this.conn.prepareStatement("INSERT INTO bench_table (num, real, name) VALUES (?, ?, ?)");
+        this.ids = new long[this.batchSize];
+        this.reals = new double[this.batchSize];
+        this.names = new String[this.batchSize];
+        for (int lpc = 0; lpc < this.batchSize; lpc++) {
+            this.ids[lpc] = lpc;
+            this.reals[lpc] = lpc * 1.5;
+            this.names[lpc] = Fixtures.NAME_VALUE;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() throws Exception {
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM bench_table");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.ps.close();
+        Fixtures.close(this.conn, this.dbFile);
+    }
+
+    @Benchmark
+    public int[] addBatch() throws Exception {
+        for (int lpc = 0; lpc < this.batchSize; lpc++) {
+            this.ps.setLong(1, this.ids[lpc]);
+            this.ps.setDouble(2, this.reals[lpc]);
+            this.ps.setString(3, this.names[lpc]);
+            this.ps.addBatch();
+        }
+
+        return this.ps.executeBatch();
+    }
+
+    @Benchmark
+    public int[] addBatchColumns() throws Exception {
+        this.ps.unwrap(SqlitePreparedStatement.class).addBatchColumns(this.ids, this.reals, this.names);
+
+        return this.ps.executeBatch();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.sqlitejdbcng.SqliteResultSet;
+
+import java.io.File;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing single blobs of different sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlobBenchmark {
+    @Param({ "1024", "65536", "1048576" })
+    public int blobSize;
+
+    private File dbFile;
+    private Connection conn;
+    private PreparedStatement select;
+    private PreparedStatement update;
+    private byte[] data;
+
+    @Setup
+    public void setup() throws Exception {
+        this.dbFile = Fixtures.newDatabaseFile();
+        this.conn = Fixtures.connect(this.dbFile);
+        Fixtures.createTable(this.conn, 1, this.blobSize);
+        this.select = this.conn.prepareStatement("SELECT data FROM bench_table WHERE id = 1");
+        this.update = this.conn.prepareStatement("UPDATE bench_table SET data = ? WHERE id = 1");
+        this.data = new byte[this.blobSize];
+        new Random(this.blobSize).nextBytes(this.data);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.select.close();
+        this.update.close();
+        Fixtures.close(this.conn, this.dbFile);
+    }
+
+    @Benchmark
+    public int readBytes() throws Exception {
+        try (ResultSet rs = this.select.executeQuery()) {
+            rs.next();
+            return rs.getBytes(1).length;
+        }
+    }
+
+    @Benchmark
+    public int readBlob() throws Exception {
+        try (ResultSet rs = this.select.executeQuery()) {
+            rs.next();
+
+            Blob blob = rs.getBlob(1);
+
+            return blob.getBytes(1, 16).length + (int) blob.length();
+        }
+    }
+
+    @Benchmark
+    public int readBuffer() throws Exception {
+        try (ResultSet rs = this.select.executeQuery()) {
+            rs.next();
+            return rs.unwrap(SqliteResultSet.class).getByteBuffer(1).remaining();
+        }
+    }
+
+    @Benchmark
+    public int write() throws Exception {
+        this.update.setBytes(1, this.data);
+        return this.update.executeUpdate();
+    }
+}
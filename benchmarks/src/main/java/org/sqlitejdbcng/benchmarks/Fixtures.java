@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+/**
+ * Helpers for creating the databases used by the benchmarks.
+ */
+final class Fixtures {
+    static final String NAME_VALUE = "small string value";
+
+    private Fixtures() {
+    }
+
+    static File newDatabaseFile() throws IOException {
+        File retval = File.createTempFile("sqlitejdbcng-bench", ".db");
+
+        retval.deleteOnExit();
+
+        return retval;
+    }
+
+    static Connection connect(File dbFile) throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+    }
+
+    /**
+     * Create the bench_table and fill it with the given number of rows.
+     */
+    static void createTable(Connection conn, int rows, int blobSize) throws SQLException {
+        Random random = new Random(rows);
+        byte[] blob = new byte[blobSize];
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TABLE IF EXISTS bench_table");
+            stmt.executeUpdate("CREATE TABLE bench_table (" +
+                    "id INTEGER PRIMARY KEY, num INTEGER, real REAL, name VARCHAR, data BLOB)");
+        }
+
+        boolean autoCommit = conn.getAutoCommit();
+
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO bench_table VALUES (?, ?, ?, ?, ?)")) {
+            for (int lpc = 1; lpc <= rows; lpc++) {
+                random.nextBytes(blob);
+                ps.setInt(1, lpc);
+                ps.setLong(2, random.nextLong());
+                ps.setDouble(3, random.nextDouble());
+                ps.setString(4, NAME_VALUE + " " + lpc);
+                ps.setBytes(5, blob);
+                ps.executeUpdate();
+            }
+        }
+        conn.commit();
+        conn.setAutoCommit(autoCommit);
+    }
+
+    static void close(Connection conn, File dbFile) throws SQLException {
+        if (conn != null)
+            conn.close();
+        if (dbFile != null)
+            dbFile.delete();
+    }
+}
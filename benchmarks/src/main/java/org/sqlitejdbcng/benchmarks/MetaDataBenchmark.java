@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DatabaseMetaData calls that ORMs and tools make when they start up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetaDataBenchmark {
+    @Param({ "1", "50" })
+    public int tables;
+
+    private File dbFile;
+    private Connection conn;
+    private DatabaseMetaData metaData;
+
+    @Setup
+    public void setup() throws Exception {
+        this.dbFile = Fixtures.newDatabaseFile();
+        this.conn = Fixtures.connect(this.dbFile);
+        try (Statement stmt = this.conn.createStatement()) {
+            for (int lpc = 0; lpc < this.tables; lpc++) {
+                stmt.executeUpdate("CREATE TABLE t" + lpc + " (id INTEGER PRIMARY KEY, a TEXT, b REAL)");
+                stmt.executeUpdate("CREATE INDEX t" + lpc + "_a ON t" + lpc + " (a)");
+            }
+        }
+        this.metaData = this.conn.getMetaData();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Fixtures.close(this.conn, this.dbFile);
+    }
+
+    private static int count(ResultSet rs) throws Exception {
+        int retval = 0;
+
+        try {
+            while (rs.next()) {
+                retval += 1;
+            }
+        } finally {
+            rs.close();
+        }
+
+        return retval;
+    }
+
+    @Benchmark
+    public int getTables() throws Exception {
+        return count(this.metaData.getTables(null, null, "%", null));
+    }
+
+    @Benchmark
+    public int getColumns() throws Exception {
+        return count(this.metaData.getColumns(null, null, "t0", "%"));
+    }
+
+    @Benchmark
+    public int getPrimaryKeys() throws Exception {
+        return count(this.metaData.getPrimaryKeys(null, null, "t0"));
+    }
+
+    @Benchmark
+    public int getIndexInfo() throws Exception {
+        return count(this.metaData.getIndexInfo(null, null, "t0", false, false));
+    }
+}
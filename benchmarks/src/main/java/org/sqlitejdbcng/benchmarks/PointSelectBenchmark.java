@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up a single row by its rowid with a prepared statement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PointSelectBenchmark {
+    @Param({ "1000", "100000" })
+    public int rows;
+
+    private File dbFile;
+    private Connection conn;
+    private PreparedStatement ps;
+    private int nextId;
+
+    @Setup
+    public void setup() throws Exception {
+        this.dbFile = Fixtures.newDatabaseFile();
+        this.conn = Fixtures.connect(this.dbFile);
+        Fixtures.createTable(this.conn, this.rows, 0);
+        this.ps = this.conn.prepareStatement("SELECT num, name FROM bench_table WHERE id = ?");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.ps.close();
+        Fixtures.close(this.conn, this.dbFile);
+    }
+
+    @Benchmark
+    public long selectById() throws Exception {
+        this.nextId = this.nextId % this.rows + 1;
+        this.ps.setInt(1, this.nextId);
+        try (ResultSet rs = this.ps.executeQuery()) {
+            rs.next();
+            return rs.getLong(1) + rs.getString(2).length();
+        }
+    }
+}
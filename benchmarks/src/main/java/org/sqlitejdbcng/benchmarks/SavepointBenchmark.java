@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Savepoint;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Setting, releasing and rolling back savepoints inside a transaction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SavepointBenchmark {
+    @Param({ "0", "10" })
+    public int updatesPerSavepoint;
+
+    private File dbFile;
+    private Connection conn;
+    private PreparedStatement update;
+
+    @Setup
+    public void setup() throws Exception {
+        this.dbFile = Fixtures.newDatabaseFile();
+        this.conn = Fixtures.connect(this.dbFile);
+        Fixtures.createTable(this.conn, 100, 0);
+        this.update = this.conn.prepareStatement("UPDATE bench_table SET num = num + 1 WHERE id = ?");
+        this.conn.setAutoCommit(false);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.conn.rollback();
+        this.update.close();
+        Fixtures.close(this.conn, this.dbFile);
+    }
+
+    private void updateRows() throws Exception {
+        for (int lpc = 0; lpc < this.updatesPerSavepoint; lpc++) {
+            this.update.setInt(1, lpc + 1);
+            this.update.executeUpdate();
+        }
+    }
+
+    @Benchmark
+    public void setRelease() throws Exception {
+        Savepoint sp = this.conn.setSavepoint();
+
+        this.updateRows();
+        this.conn.releaseSavepoint(sp);
+    }
+
+    @Benchmark
+    public void setRollback() throws Exception {
+        Savepoint sp = this.conn.setSavepoint();
+
+        this.updateRows();
+        this.conn.rollback(sp);
+        this.conn.releaseSavepoint(sp);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.sqlitejdbcng.ColumnBatch;
+import org.sqlitejdbcng.SqliteResultSet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full table scans through the JDBC getters, the buffer accessors and the
+ * columnar fetch API.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanBenchmark {
+    @Param({ "1000", "100000" })
+    public int rows;
+
+    @Param({ "16", "256" })
+    public int blobSize;
+
+    private File dbFile;
+    private Connection conn;
+    private Statement stmt;
+    private final byte[] blobBuffer = new byte[4096];
+    private final StringBuilder textBuffer = new StringBuilder();
+    private final ColumnBatch batch = new ColumnBatch();
+
+    @Setup
+    public void setup() throws Exception {
+        this.dbFile = Fixtures.newDatabaseFile();
+        this.conn = Fixtures.connect(this.dbFile);
+        Fixtures.createTable(this.conn, this.rows, this.blobSize);
+        this.stmt = this.conn.createStatement();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.stmt.close();
+        Fixtures.close(this.conn, this.dbFile);
+    }
+
+    @Benchmark
+    public long jdbcGetters() throws Exception {
+        long retval = 0;
+
+        try (ResultSet rs = this.stmt.executeQuery("SELECT id, name, data FROM bench_table")) {
+            while (rs.next()) {
+                retval += rs.getInt(1);
+                retval += rs.getString(2).length();
+                retval += rs.getBytes(3).length;
+            }
+        }
+
+        return retval;
+    }
+
+    @Benchmark
+    public long bufferAccessors() throws Exception {
+        long retval = 0;
+
+        try (ResultSet rs = this.stmt.executeQuery("SELECT id, name, data FROM bench_table")) {
+            SqliteResultSet srs = rs.unwrap(SqliteResultSet.class);
+
+            while (srs.next()) {
+                ByteBuffer data = srs.getByteBuffer(3);
+
+                this.textBuffer.setLength(0);
+                retval += srs.getInt(1);
+                retval += srs.getChars(2, this.textBuffer);
+                retval += srs.getBytes(3, this.blobBuffer, 0);
+                retval += data.remaining();
+            }
+        }
+
+        return retval;
+    }
+
+    @Benchmark
+    public long fetchColumns() throws Exception {
+        long retval = 0;
+
+        try (ResultSet rs = this.stmt.executeQuery("SELECT id, name, data FROM bench_table")) {
+            SqliteResultSet srs = rs.unwrap(SqliteResultSet.class);
+            int count;
+
+            while ((count = srs.fetchColumns(1024, this.batch)) > 0) {
+                long[] ids = this.batch.getLongs(1);
+                int[] nameOffsets = this.batch.getOffsets(2);
+
+                for (int row = 0; row < count; row++) {
+                    retval += ids[row] + nameOffsets[row + 1] - nameOffsets[row];
+                }
+            }
+        }
+
+        return retval;
+    }
+}
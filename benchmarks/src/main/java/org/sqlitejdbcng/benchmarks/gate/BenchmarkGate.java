@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.benchmarks.gate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Compares a JMH JSON result file against a committed baseline, records the
+ * run in a result store and writes a markdown report with the comparison and
+ * the trend over the stored runs.
+ *
+ * The process exits with status 1 when any benchmark regressed in time or
+ * allocation per operation, so it can fail a build.  See the "gate" profile
+ * in the benchmarks pom.
+ */
+public final class BenchmarkGate {
+    static final int EXIT_OK = 0;
+    static final int EXIT_REGRESSION = 1;
+    static final int EXIT_USAGE = 2;
+
+    private File results = new File("target/jmh-result.json");
+    private File baseline = new File("baseline.json");
+    private File store = new File("results");
+    private File report = new File("target/benchmark-report.md");
+    private String label = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+    private double threshold = 5.0;
+    private double allocThreshold = 10.0;
+    private int history = 10;
+    private boolean updateBaseline;
+
+    public static void main(String[] args) throws IOException {
+        System.exit(new BenchmarkGate().run(args, System.out));
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("usage: BenchmarkGate [options]");
+        out.println("  --results <file>         JMH JSON results (target/jmh-result.json)");
+        out.println("  --baseline <file>        Baseline JMH JSON results (baseline.json)");
+        out.println("  --store <dir>            Directory to record runs in (results)");
+        out.println("  --report <file>          Markdown report to write (target/benchmark-report.md)");
+        out.println("  --label <name>           Name of this run in the store (timestamp)");
+        out.println("  --threshold <pct>        Minimum time change to report (5)");
+        out.println("  --alloc-threshold <pct>  Minimum allocation change to report (10)");
+        out.println("  --history <n>            Number of stored runs in the trend (10)");
+        out.println("  --update-baseline <bool> Replace the baseline with these results (false)");
+    }
+
+    int run(String[] args, PrintStream out) throws IOException {
+        try {
+            for (int lpc = 0; lpc < args.length; lpc++) {
+                String arg = args[lpc];
+
+                if (lpc + 1 >= args.length)
+                    throw new IllegalArgumentException("Missing value for " + arg);
+
+                String value = args[++lpc];
+
+                switch (arg) {
+                    case "--results":
+                        this.results = new File(value);
+                        break;
+                    case "--baseline":
+                        this.baseline = new File(value);
+                        break;
+                    case "--store":
+                        this.store = new File(value);
+                        break;
+                    case "--report":
+                        this.report = new File(value);
+                        break;
+                    case "--label":
+                        this.label = value;
+                        break;
+                    case "--threshold":
+                        this.threshold = Double.parseDouble(value);
+                        break;
+                    case "--alloc-threshold":
+                        this.allocThreshold = Double.parseDouble(value);
+                        break;
+                    case "--history":
+                        this.history = Integer.parseInt(value);
+                        break;
+                    case "--update-baseline":
+                        this.updateBaseline = Boolean.parseBoolean(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+        }
+        catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+            usage(out);
+            return EXIT_USAGE;
+        }
+
+        if (!this.results.isFile()) {
+            out.println("Results file not found -- " + this.results);
+            return EXIT_USAGE;
+        }
+
+        List<BenchmarkResult> current = BenchmarkResult.load(this.results);
+        Map<String, BenchmarkResult> base = new LinkedHashMap<>();
+
+        if (this.baseline.isFile()) {
+            for (BenchmarkResult result : BenchmarkResult.load(this.baseline)) {
+                base.put(result.key, result);
+            }
+        }
+        else {
+            out.println("No baseline at " + this.baseline + ", nothing to compare against");
+        }
+
+        List<Comparison> comparisons = new ArrayList<>();
+        int regressions = 0;
+
+        for (BenchmarkResult result : current) {
+            Comparison comparison = new Comparison(base.get(result.key), result,
+                    this.threshold, this.allocThreshold);
+
+            comparisons.add(comparison);
+            if (comparison.isRegression()) {
+                regressions += 1;
+                out.printf(Locale.US, "REGRESSED %s: %s -> %s, %s -> %s B/op%n",
+                        result.key,
+                        format(comparison.baseline.score, comparison.baseline.error),
+                        format(result.score, result.error),
+                        format(comparison.baseline.alloc, comparison.baseline.allocError),
+                        format(result.alloc, result.allocError));
+            }
+        }
+
+        if (this.store != null) {
+            Files.createDirectories(this.store.toPath());
+            Files.copy(this.results.toPath(), new File(this.store, this.label + ".json").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        this.writeReport(comparisons);
+        out.println("Wrote " + this.report);
+
+        if (this.updateBaseline) {
+            Files.copy(this.results.toPath(), this.baseline.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            out.println("Updated baseline " + this.baseline);
+            return EXIT_OK;
+        }
+
+        out.printf("%d benchmarks, %d regressions%n", comparisons.size(), regressions);
+
+        return regressions > 0 ? EXIT_REGRESSION : EXIT_OK;
+    }
+
+    static String format(double score, double error) {
+        if (Double.isNaN(score))
+            return "-";
+        if (error == 0.0)
+            return String.format(Locale.US, "%.3f", score);
+        return String.format(Locale.US, "%.3f \u00b1 %.3f", score, error);
+    }
+
+    private void writeReport(List<Comparison> comparisons) throws IOException {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("# Benchmark report\n\n");
+        sb.append("Run `").append(this.label).append("` compared against `").append(this.baseline)
+                .append("`.  Changes smaller than ").append(this.threshold).append("% in time, ")
+                .append(this.allocThreshold).append("% in allocation, or within the 99.9% ")
+                .append("confidence intervals are reported as unchanged.\n\n");
+        sb.append("| Benchmark | Mode | Baseline | Current | Change | Baseline B/op | Current B/op | Verdict |\n");
+        sb.append("|---|---|---|---|---|---|---|---|\n");
+        for (Comparison comparison : comparisons) {
+            BenchmarkResult cur = comparison.current;
+            BenchmarkResult base = comparison.baseline;
+            double change = comparison.percentChange();
+
+            sb.append("| ").append(cur.key)
+                    .append(" | ").append(cur.mode).append(' ').append(cur.unit)
+                    .append(" | ").append(base == null ? "-" : format(base.score, base.error))
+                    .append(" | ").append(format(cur.score, cur.error))
+                    .append(" | ").append(Double.isNaN(change) ? "-" : String.format(Locale.US, "%+.1f%%", change))
+                    .append(" | ").append(base == null ? "-" : format(base.alloc, base.allocError))
+                    .append(" | ").append(format(cur.alloc, cur.allocError))
+                    .append(" | ").append(verdict(comparison))
+                    .append(" |\n");
+        }
+
+        this.appendTrend(sb);
+
+        File parent = this.report.getAbsoluteFile().getParentFile();
+
+        if (parent != null)
+            Files.createDirectories(parent.toPath());
+        Files.write(this.report.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String verdict(Comparison comparison) {
+        if (comparison.time == Comparison.Verdict.NEW)
+            return "new";
+        if (comparison.isRegression())
+            return "**regressed**" + (comparison.time == Comparison.Verdict.REGRESSED ? " time" : "") +
+                    (comparison.alloc == Comparison.Verdict.REGRESSED ? " alloc" : "");
+        if (comparison.time == Comparison.Verdict.IMPROVED || comparison.alloc == Comparison.Verdict.IMPROVED)
+            return "improved";
+        return "unchanged";
+    }
+
+    private void appendTrend(StringBuilder sb) throws IOException {
+        File[] files = this.store == null ? null : this.store.listFiles();
+
+        if (files == null || files.length == 0)
+            return;
+
+        Arrays.sort(files);
+        if (files.length > this.history)
+            files = Arrays.copyOfRange(files, files.length - this.history, files.length);
+
+        List<String> runs = new ArrayList<>();
+        Map<String, Map<String, BenchmarkResult>> table = new LinkedHashMap<>();
+        TreeSet<String> keys = new TreeSet<>();
+
+        for (File file : files) {
+            if (!file.getName().endsWith(".json"))
+                continue;
+
+            String run = file.getName().substring(0, file.getName().length() - 5);
+            Map<String, BenchmarkResult> byKey = new LinkedHashMap<>();
+
+            for (BenchmarkResult result : BenchmarkResult.load(file)) {
+                byKey.put(result.key, result);
+                keys.add(result.key);
+            }
+            runs.add(run);
+            table.put(run, byKey);
+        }
+
+        sb.append("\n## Trend\n\nPrimary score of the last ").append(runs.size()).append(" stored runs.\n\n");
+        sb.append("| Benchmark |");
+        for (String run : runs) {
+            sb.append(' ').append(run).append(" |");
+        }
+        sb.append("\n|---|");
+        for (int lpc = 0; lpc < runs.size(); lpc++) {
+            sb.append("---|");
+        }
+        sb.append('\n');
+        for (String key : keys) {
+            sb.append("| ").append(key).append(" |");
+            for (String run : runs) {
+                BenchmarkResult result = table.get(run).get(key);
+
+                sb.append(' ').append(result == null ? "-" : format(result.score, 0.0)).append(" |");
+            }
+            sb.append('\n');
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.benchmarks.gate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One benchmark/parameter combination from a JMH JSON result file.
+ */
+final class BenchmarkResult {
+    static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+
+    final String key;
+    final String mode;
+    final String unit;
+    final double score;
+    final double error;
+    final double alloc;
+    final double allocError;
+
+    BenchmarkResult(String key, String mode, String unit, double score, double error,
+                    double alloc, double allocError) {
+        this.key = key;
+        this.mode = mode;
+        this.unit = unit;
+        this.score = score;
+        this.error = sanitize(error);
+        this.alloc = alloc;
+        this.allocError = sanitize(allocError);
+    }
+
+    private static double sanitize(double error) {
+        // JMH reports NaN when there were too few iterations for an interval.
+        return Double.isNaN(error) ? 0.0 : error;
+    }
+
+    /**
+     * @return True if a lower score is better for this benchmark mode.
+     */
+    boolean lowerIsBetter() {
+        return !"thrpt".equals(this.mode);
+    }
+
+    boolean hasAlloc() {
+        return !Double.isNaN(this.alloc);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<BenchmarkResult> parse(String json) {
+        List<BenchmarkResult> retval = new ArrayList<>();
+
+        for (Object entry : (List<Object>) Json.parse(json)) {
+            Map<String, Object> run = (Map<String, Object>) entry;
+            Map<String, Object> primary = (Map<String, Object>) run.get("primaryMetric");
+            Map<String, Object> secondary = (Map<String, Object>) run.get("secondaryMetrics");
+            Map<String, Object> params = (Map<String, Object>) run.get("params");
+            StringBuilder key = new StringBuilder((String) run.get("benchmark"));
+            double alloc = Double.NaN, allocError = Double.NaN;
+
+            if (params != null) {
+                String sep = "(";
+
+                for (Map.Entry<String, Object> param : new TreeMap<>(params).entrySet()) {
+                    key.append(sep).append(param.getKey()).append('=').append(param.getValue());
+                    sep = ", ";
+                }
+                key.append(')');
+            }
+            if (secondary != null && secondary.get(ALLOC_METRIC) != null) {
+                Map<String, Object> metric = (Map<String, Object>) secondary.get(ALLOC_METRIC);
+
+                alloc = Json.toDouble(metric.get("score"));
+                allocError = Json.toDouble(metric.get("scoreError"));
+            }
+
+            retval.add(new BenchmarkResult(key.toString(),
+                    (String) run.get("mode"),
+                    (String) primary.get("scoreUnit"),
+                    Json.toDouble(primary.get("score")),
+                    Json.toDouble(primary.get("scoreError")),
+                    alloc,
+                    allocError));
+        }
+
+        return retval;
+    }
+
+    static List<BenchmarkResult> load(File file) throws IOException {
+        return parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+}
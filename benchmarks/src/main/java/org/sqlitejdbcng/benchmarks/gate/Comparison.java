@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.benchmarks.gate;
+
+/**
+ * The result of comparing a benchmark run against the baseline.
+ *
+ * A change only counts when the confidence intervals reported by JMH do not
+ * overlap and the difference is larger than the threshold, so noise within
+ * the measured error never fails the gate.
+ */
+final class Comparison {
+    enum Verdict {
+        NEW,
+        UNCHANGED,
+        IMPROVED,
+        REGRESSED,
+    }
+
+    /**
+     * Allocation differences smaller than this, in bytes per operation, are
+     * ignored since the GC profiler is not that precise.
+     */
+    static final double MIN_ALLOC_DELTA = 16.0;
+
+    final BenchmarkResult baseline;
+    final BenchmarkResult current;
+    final Verdict time;
+    final Verdict alloc;
+
+    Comparison(BenchmarkResult baseline, BenchmarkResult current, double threshold, double allocThreshold) {
+        this.baseline = baseline;
+        this.current = current;
+        if (baseline == null) {
+            this.time = Verdict.NEW;
+            this.alloc = Verdict.NEW;
+        }
+        else {
+            this.time = compare(baseline.score, baseline.error, current.score, current.error,
+                    threshold, 0.0, current.lowerIsBetter());
+            if (baseline.hasAlloc() && current.hasAlloc()) {
+                this.alloc = compare(baseline.alloc, baseline.allocError, current.alloc, current.allocError,
+                        allocThreshold, MIN_ALLOC_DELTA, true);
+            }
+            else {
+                this.alloc = Verdict.NEW;
+            }
+        }
+    }
+
+    static Verdict compare(double base, double baseError, double cur, double curError,
+                           double threshold, double minDelta, boolean lowerIsBetter) {
+        double delta = cur - base;
+        double scale = Math.max(Math.abs(base), Double.MIN_NORMAL);
+
+        if (Math.abs(delta) <= minDelta || Math.abs(delta) / scale * 100.0 <= threshold)
+            return Verdict.UNCHANGED;
+        if (base - baseError <= cur + curError && cur - curError <= base + baseError)
+            return Verdict.UNCHANGED;
+
+        boolean worse = lowerIsBetter ? delta > 0 : delta < 0;
+
+        return worse ? Verdict.REGRESSED : Verdict.IMPROVED;
+    }
+
+    boolean isRegression() {
+        return this.time == Verdict.REGRESSED || this.alloc == Verdict.REGRESSED;
+    }
+
+    /**
+     * @return The change in the primary score as a percentage of the
+     *  baseline.
+     */
+    double percentChange() {
+        if (this.baseline == null || this.baseline.score == 0.0)
+            return Double.NaN;
+        return (this.current.score - this.baseline.score) / this.baseline.score * 100.0;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.benchmarks.gate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small JSON reader for JMH result files.  Objects are returned as Maps,
+ * arrays as Lists and numbers as Doubles.
+ */
+final class Json {
+    private final String text;
+    private int pos;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    static Object parse(String text) {
+        Json json = new Json(text);
+        Object retval = json.value();
+
+        json.skipSpace();
+        if (json.pos != text.length())
+            throw json.error("Unexpected trailing data");
+
+        return retval;
+    }
+
+    /**
+     * @return The value as a double, JMH writes "NaN" and "Infinity" as
+     *  strings.
+     */
+    static double toDouble(Object value) {
+        if (value instanceof Number)
+            return ((Number) value).doubleValue();
+        if (value instanceof String)
+            return Double.parseDouble((String) value);
+        return Double.NaN;
+    }
+
+    private IllegalArgumentException error(String msg) {
+        return new IllegalArgumentException(msg + " at offset " + this.pos);
+    }
+
+    private void skipSpace() {
+        while (this.pos < this.text.length() && Character.isWhitespace(this.text.charAt(this.pos)))
+            this.pos += 1;
+    }
+
+    private char peek() {
+        this.skipSpace();
+        if (this.pos >= this.text.length())
+            throw this.error("Unexpected end of input");
+        return this.text.charAt(this.pos);
+    }
+
+    private void expect(char ch) {
+        if (this.peek() != ch)
+            throw this.error("Expecting '" + ch + "'");
+        this.pos += 1;
+    }
+
+    private boolean consume(String word) {
+        if (this.text.startsWith(word, this.pos)) {
+            this.pos += word.length();
+            return true;
+        }
+        return false;
+    }
+
+    private Object value() {
+        char ch = this.peek();
+
+        switch (ch) {
+            case '{':
+                return this.object();
+            case '[':
+                return this.array();
+            case '"':
+                return this.string();
+            default:
+                if (this.consume("true"))
+                    return Boolean.TRUE;
+                if (this.consume("false"))
+                    return Boolean.FALSE;
+                if (this.consume("null"))
+                    return null;
+                return this.number();
+        }
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> retval = new LinkedHashMap<>();
+
+        this.expect('{');
+        if (this.peek() == '}') {
+            this.pos += 1;
+            return retval;
+        }
+        while (true) {
+            if (this.peek() != '"')
+                throw this.error("Expecting a member name");
+
+            String key = this.string();
+
+            this.expect(':');
+            retval.put(key, this.value());
+            if (this.peek() == ',') {
+                this.pos += 1;
+                continue;
+            }
+            this.expect('}');
+            return retval;
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> retval = new ArrayList<>();
+
+        this.expect('[');
+        if (this.peek() == ']') {
+            this.pos += 1;
+            return retval;
+        }
+        while (true) {
+            retval.add(this.value());
+            if (this.peek() == ',') {
+                this.pos += 1;
+                continue;
+            }
+            this.expect(']');
+            return retval;
+        }
+    }
+
+    private String string() {
+        StringBuilder sb = new StringBuilder();
+
+        this.expect('"');
+        while (true) {
+            if (this.pos >= this.text.length())
+                throw this.error("Unterminated string");
+
+            char ch = this.text.charAt(this.pos++);
+
+            if (ch == '"')
+                return sb.toString();
+            if (ch != '\\') {
+                sb.append(ch);
+                continue;
+            }
+            if (this.pos >= this.text.length())
+                throw this.error("Unterminated escape");
+            ch = this.text.charAt(this.pos++);
+            switch (ch) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (this.pos + 4 > this.text.length())
+                        throw this.error("Bad unicode escape");
+                    sb.append((char) Integer.parseInt(this.text.substring(this.pos, this.pos + 4), 16));
+                    this.pos += 4;
+                    break;
+                default:
+                    sb.append(ch);
+                    break;
+            }
+        }
+    }
+
+    private Double number() {
+        int start = this.pos;
+
+        while (this.pos < this.text.length() && "+-0123456789.eE".indexOf(this.text.charAt(this.pos)) != -1)
+            this.pos += 1;
+        if (start == this.pos)
+            throw this.error("Unexpected character '" + this.text.charAt(this.pos) + "'");
+
+        return Double.valueOf(this.text.substring(start, this.pos));
+    }
+}
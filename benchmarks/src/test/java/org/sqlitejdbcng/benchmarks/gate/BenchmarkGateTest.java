@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.benchmarks.gate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BenchmarkGateTest {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    private static String result(String mode, double score, double error, double alloc) {
+        return "[{\"benchmark\": \"org.sqlitejdbcng.benchmarks.ScanBenchmark.jdbcGetters\", " +
+                "\"mode\": \"" + mode + "\", \"params\": {\"rows\": \"1000\", \"blobSize\": \"16\"}, " +
+                "\"primaryMetric\": {\"score\": " + score + ", \"scoreError\": " + error + ", " +
+                "\"scoreUnit\": \"ms/op\", \"rawData\": [[1.0, 2.0]]}, " +
+                "\"secondaryMetrics\": {\"gc.alloc.rate.norm\": {\"score\": " + alloc + ", " +
+                "\"scoreError\": \"NaN\", \"scoreUnit\": \"B/op\"}}}]";
+    }
+
+    private File write(String name, String text) throws Exception {
+        File retval = new File(this.testFolder.getRoot(), name);
+
+        Files.write(retval.toPath(), text.getBytes(StandardCharsets.UTF_8));
+
+        return retval;
+    }
+
+    private int gate(File results, File baseline, String label) throws Exception {
+        return this.gate(results, baseline, label, false);
+    }
+
+    private int gate(File results, File baseline, String label, boolean update) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        return new BenchmarkGate().run(new String[] {
+                "--results", results.getPath(),
+                "--baseline", baseline.getPath(),
+                "--store", new File(this.testFolder.getRoot(), "store").getPath(),
+                "--report", new File(this.testFolder.getRoot(), "report.md").getPath(),
+                "--label", label,
+                "--update-baseline", String.valueOf(update),
+        }, new PrintStream(bytes, true, "UTF-8"));
+    }
+
+    @Test
+    public void testParse() {
+        List<BenchmarkResult> results = BenchmarkResult.parse(result("avgt", 1.5, 0.1, 128.0));
+
+        assertEquals(1, results.size());
+        assertEquals("org.sqlitejdbcng.benchmarks.ScanBenchmark.jdbcGetters(blobSize=16, rows=1000)",
+                results.get(0).key);
+        assertEquals(1.5, results.get(0).score, 0.0);
+        assertEquals(0.1, results.get(0).error, 0.0);
+        assertEquals(128.0, results.get(0).alloc, 0.0);
+        assertEquals(0.0, results.get(0).allocError, 0.0);
+        assertTrue(results.get(0).lowerIsBetter());
+    }
+
+    @Test
+    public void testCompare() {
+        // Overlapping confidence intervals are noise.
+        assertEquals(Comparison.Verdict.UNCHANGED, Comparison.compare(100, 10, 115, 10, 5, 0, true));
+        // Below the threshold.
+        assertEquals(Comparison.Verdict.UNCHANGED, Comparison.compare(100, 0, 104, 0, 5, 0, true));
+        assertEquals(Comparison.Verdict.REGRESSED, Comparison.compare(100, 1, 120, 1, 5, 0, true));
+        assertEquals(Comparison.Verdict.IMPROVED, Comparison.compare(100, 1, 80, 1, 5, 0, true));
+        // Throughput, higher is better.
+        assertEquals(Comparison.Verdict.REGRESSED, Comparison.compare(100, 1, 80, 1, 5, 0, false));
+        // Small absolute allocation changes are ignored.
+        assertEquals(Comparison.Verdict.UNCHANGED, Comparison.compare(0, 0, 8, 0, 10, 16, true));
+        assertEquals(Comparison.Verdict.REGRESSED, Comparison.compare(0, 0, 64, 0, 10, 16, true));
+    }
+
+    @Test
+    public void testGate() throws Exception {
+        File baseline = this.write("baseline.json", result("avgt", 1.0, 0.01, 100.0));
+
+        assertEquals(BenchmarkGate.EXIT_OK,
+                this.gate(this.write("same.json", result("avgt", 1.01, 0.01, 100.0)), baseline, "run1"));
+        assertEquals(BenchmarkGate.EXIT_REGRESSION,
+                this.gate(this.write("slow.json", result("avgt", 1.5, 0.01, 100.0)), baseline, "run2"));
+        assertEquals(BenchmarkGate.EXIT_REGRESSION,
+                this.gate(this.write("alloc.json", result("avgt", 1.0, 0.01, 4096.0)), baseline, "run3"));
+        // Accepting the slower results makes them the new baseline.
+        assertEquals(BenchmarkGate.EXIT_OK,
+                this.gate(this.write("accept.json", result("avgt", 1.5, 0.01, 100.0)), baseline, "run4", true));
+        assertEquals(BenchmarkGate.EXIT_OK,
+                this.gate(this.write("slow2.json", result("avgt", 1.5, 0.01, 100.0)), baseline, "run5"));
+        assertEquals(BenchmarkGate.EXIT_OK,
+                this.gate(this.write("first.json", result("avgt", 9.0, 0.01, 100.0)),
+                        new File(this.testFolder.getRoot(), "missing.json"), "run6"));
+
+        String report = new String(Files.readAllBytes(new File(this.testFolder.getRoot(), "report.md").toPath()),
+                StandardCharsets.UTF_8);
+
+        assertTrue(report.contains("## Trend"));
+        assertTrue(report.contains("| run1 | run2 | run3 | run4 | run5 | run6 |"));
+        assertEquals(6, new File(this.testFolder.getRoot(), "store").list().length);
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.sqlitejdbcng.panama;
+
+import org.bridj.BridJ;
+import org.bridj.NativeLibrary;
+import org.sqlitejdbcng.bridj.Sqlite3;
+import org.sqlitejdbcng.internal.Sqlite3Backend;
+
+import java.io.IOException;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * The Sqlite3Backend built on java.lang.foreign downcall handles.
+ *
+ * The functions are looked up in the library BridJ loaded for Sqlite3, so
+ * both backends work on the same SQLite instance.  Pointers are passed as
+ * 64-bit integers, which the C calling conventions of 64-bit platforms
+ * treat the same as addresses, so no MemorySegment is made per call.
+ */
+public final class PanamaBackend implements Sqlite3Backend {
+    private static final ValueLayout PTR = ValueLayout.JAVA_LONG;
+    private static final ValueLayout INT = ValueLayout.JAVA_INT;
+
+    private static final MethodHandle STEP;
+    private static final MethodHandle RESET;
+    private static final MethodHandle CLEAR_BINDINGS;
+    private static final MethodHandle CHANGES;
+    private static final MethodHandle BIND_NULL;
+    private static final MethodHandle BIND_INT;
+    private static final MethodHandle BIND_INT64;
+    private static final MethodHandle BIND_DOUBLE;
+    private static final MethodHandle BIND_TEXT;
+    private static final MethodHandle BIND_TEXT16;
+    private static final MethodHandle BIND_BLOB;
+    private static final MethodHandle COLUMN_TYPE;
+    private static final MethodHandle COLUMN_INT;
+    private static final MethodHandle COLUMN_INT64;
+    private static final MethodHandle COLUMN_DOUBLE;
+    private static final MethodHandle COLUMN_TEXT;
+    private static final MethodHandle COLUMN_BLOB;
+    private static final MethodHandle COLUMN_BYTES;
+
+    static {
+        if (ValueLayout.ADDRESS.byteSize() != Long.BYTES)
+            throw new UnsupportedOperationException("The Panama backend requires a 64-bit JVM");
+
+        NativeLibrary lib;
+
+        try {
+            lib = BridJ.getNativeLibrary(Sqlite3.class);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to load the SQLite library", e);
+        }
+
+        FunctionDescriptor intStmt = FunctionDescriptor.of(INT, PTR);
+        FunctionDescriptor intStmtCol = FunctionDescriptor.of(INT, PTR, INT);
+        FunctionDescriptor bindPtr = FunctionDescriptor.of(INT, PTR, INT, PTR, INT, PTR);
+
+        STEP = downcall(lib, "sqlite3_step", intStmt);
+        RESET = downcall(lib, "sqlite3_reset", intStmt);
+        CLEAR_BINDINGS = downcall(lib, "sqlite3_clear_bindings", intStmt);
+        CHANGES = downcall(lib, "sqlite3_changes", intStmt);
+        BIND_NULL = downcall(lib, "sqlite3_bind_null", intStmtCol);
+        BIND_INT = downcall(lib, "sqlite3_bind_int", FunctionDescriptor.of(INT, PTR, INT, INT));
+        BIND_INT64 = downcall(lib, "sqlite3_bind_int64", FunctionDescriptor.of(INT, PTR, INT, ValueLayout.JAVA_LONG));
+        BIND_DOUBLE = downcall(lib, "sqlite3_bind_double", FunctionDescriptor.of(INT, PTR, INT, ValueLayout.JAVA_DOUBLE));
+        BIND_TEXT = downcall(lib, "sqlite3_bind_text", bindPtr);
+        BIND_TEXT16 = downcall(lib, "sqlite3_bind_text16", bindPtr);
+        BIND_BLOB = downcall(lib, "sqlite3_bind_blob", bindPtr);
+        COLUMN_TYPE = downcall(lib, "sqlite3_column_type", intStmtCol);
+        COLUMN_INT = downcall(lib, "sqlite3_column_int", intStmtCol);
+        COLUMN_INT64 = downcall(lib, "sqlite3_column_int64", FunctionDescriptor.of(ValueLayout.JAVA_LONG, PTR, INT));
+        COLUMN_DOUBLE = downcall(lib, "sqlite3_column_double", FunctionDescriptor.of(ValueLayout.JAVA_DOUBLE, PTR, INT));
+        COLUMN_TEXT = downcall(lib, "sqlite3_column_text", FunctionDescriptor.of(PTR, PTR, INT));
+        COLUMN_BLOB = downcall(lib, "sqlite3_column_blob", FunctionDescriptor.of(PTR, PTR, INT));
+        COLUMN_BYTES = downcall(lib, "sqlite3_column_bytes", intStmtCol);
+    }
+
+    private static MethodHandle downcall(NativeLibrary lib, String name, FunctionDescriptor descriptor) {
+        long address = lib.getSymbolAddress(name);
+
+        if (address == 0)
+            throw new UnsatisfiedLinkError("Unable to find " + name + " in the SQLite library");
+
+        return Linker.nativeLinker().downcallHandle(MemorySegment.ofAddress(address), descriptor);
+    }
+
+    /**
+     * The downcalls do not throw checked exceptions, so anything caught
+     * from invokeExact() is passed through.
+     */
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+        throw new IllegalStateException(e);
+    }
+
+    @Override
+    public String getName() {
+        return "panama";
+    }
+
+    @Override
+    public int step(long stmt) {
+        try {
+            return (int) STEP.invokeExact(stmt);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int reset(long stmt) {
+        try {
+            return (int) RESET.invokeExact(stmt);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int clearBindings(long stmt) {
+        try {
+            return (int) CLEAR_BINDINGS.invokeExact(stmt);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int changes(long db) {
+        try {
+            return (int) CHANGES.invokeExact(db);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int bindNull(long stmt, int index) {
+        try {
+            return (int) BIND_NULL.invokeExact(stmt, index);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int bindInt(long stmt, int index, int value) {
+        try {
+            return (int) BIND_INT.invokeExact(stmt, index, value);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int bindInt64(long stmt, int index, long value) {
+        try {
+            return (int) BIND_INT64.invokeExact(stmt, index, value);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int bindDouble(long stmt, int index, double value) {
+        try {
+            return (int) BIND_DOUBLE.invokeExact(stmt, index, value);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int bindTextStatic(long stmt, int index, long text, int len) {
+        try {
+            return (int) BIND_TEXT.invokeExact(stmt, index, text, len, 0L);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int bindText16Static(long stmt, int index, long text, int len) {
+        try {
+            return (int) BIND_TEXT16.invokeExact(stmt, index, text, len, 0L);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int bindBlobStatic(long stmt, int index, long mem, int len) {
+        try {
+            return (int) BIND_BLOB.invokeExact(stmt, index, mem, len, 0L);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int columnType(long stmt, int col) {
+        try {
+            return (int) COLUMN_TYPE.invokeExact(stmt, col);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int columnInt(long stmt, int col) {
+        try {
+            return (int) COLUMN_INT.invokeExact(stmt, col);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public long columnInt64(long stmt, int col) {
+        try {
+            return (long) COLUMN_INT64.invokeExact(stmt, col);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public double columnDouble(long stmt, int col) {
+        try {
+            return (double) COLUMN_DOUBLE.invokeExact(stmt, col);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public long columnText(long stmt, int col) {
+        try {
+            return (long) COLUMN_TEXT.invokeExact(stmt, col);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public long columnBlob(long stmt, int col) {
+        try {
+            return (long) COLUMN_BLOB.invokeExact(stmt, col);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @Override
+    public int columnBytes(long stmt, int col) {
+        try {
+            return (int) COLUMN_BYTES.invokeExact(stmt, col);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.sqlitejdbcng.panama;
+
+import org.bridj.Pointer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlitejdbcng.SqliteConnection;
+import org.sqlitejdbcng.bridj.BridjBackend;
+import org.sqlitejdbcng.bridj.Sqlite3;
+import org.sqlitejdbcng.internal.Sqlite3Backend;
+import org.sqlitejdbcng.internal.Sqlite3Backends;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.junit.Assert.*;
+
+public class PanamaBackendTest {
+    private static final int SQLITE_ROW = (int) Sqlite3.ReturnCodes.SQLITE_ROW.value();
+    private static final int SQLITE_DONE = (int) Sqlite3.ReturnCodes.SQLITE_DONE.value();
+
+    private final Sqlite3Backend panama = new PanamaBackend();
+    private final Sqlite3Backend bridj = new BridjBackend();
+    private Connection conn;
+    private Pointer<Sqlite3.Statement> stmt;
+
+    @Before
+    public void openStatement() throws Exception {
+        this.conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        Pointer<Pointer<Sqlite3.Statement>> stmtOut = Pointer.allocatePointer(Sqlite3.Statement.class);
+
+        Sqlite3.checkOk(Sqlite3.sqlite3_prepare_v2(this.conn.unwrap(SqliteConnection.class).getHandle(),
+                Pointer.pointerToCString("SELECT ?, ?, ?, ?, ?"), -1, stmtOut, null));
+        this.stmt = stmtOut.get();
+    }
+
+    @After
+    public void closeStatement() throws Exception {
+        Sqlite3.sqlite3_finalize(this.stmt);
+        this.conn.close();
+    }
+
+    @Test
+    public void testDefault() {
+        // Only the default on JDK 22 and later, BridJ is used before that.
+        if (Sqlite3Backends.CURRENT instanceof PanamaBackend)
+            assertEquals("panama", Sqlite3Backends.CURRENT.getName());
+        assertEquals("panama", this.panama.getName());
+    }
+
+    @Test
+    public void testBindAndColumns() {
+        long peer = this.stmt.getPeer();
+        Pointer<Byte> text = Pointer.pointerToCString("héllo");
+        Pointer<Byte> blob = Pointer.pointerToBytes(new byte[] { 1, 2, 3 });
+        int textLen = "héllo".getBytes(StandardCharsets.UTF_8).length;
+
+        assertEquals(0, this.panama.bindInt(peer, 1, 42));
+        assertEquals(0, this.panama.bindInt64(peer, 2, Long.MAX_VALUE));
+        assertEquals(0, this.panama.bindDouble(peer, 3, 1.5));
+        assertEquals(0, this.panama.bindTextStatic(peer, 4, text.getPeer(), textLen));
+        assertEquals(0, this.panama.bindBlobStatic(peer, 5, blob.getPeer(), 3));
+
+        assertEquals(SQLITE_ROW, this.panama.step(peer));
+        for (int col = 0; col < 5; col++) {
+            assertEquals(this.bridj.columnType(peer, col), this.panama.columnType(peer, col));
+        }
+        assertEquals(42, this.panama.columnInt(peer, 0));
+        assertEquals(Long.MAX_VALUE, this.panama.columnInt64(peer, 1));
+        assertEquals(1.5, this.panama.columnDouble(peer, 2), 0.0);
+        assertEquals(textLen, this.panama.columnBytes(peer, 3));
+        assertEquals(this.bridj.columnText(peer, 3), this.panama.columnText(peer, 3));
+        assertEquals(3, this.panama.columnBytes(peer, 4));
+        assertArrayEquals(new byte[] { 1, 2, 3 },
+                Pointer.pointerToAddress(this.panama.columnBlob(peer, 4), Byte.class).getBytes(3));
+        assertEquals(SQLITE_DONE, this.panama.step(peer));
+
+        assertEquals(0, this.panama.reset(peer));
+        assertEquals(0, this.panama.clearBindings(peer));
+        assertEquals(0, this.panama.bindNull(peer, 1));
+        assertEquals(SQLITE_ROW, this.panama.step(peer));
+        assertEquals(this.bridj.columnType(peer, 0), this.panama.columnType(peer, 0));
+        assertEquals(0L, this.panama.columnBlob(peer, 0));
+        assertEquals(0, this.panama.reset(peer));
+    }
+
+    @Test
+    public void testChanges() throws Exception {
+        long db = this.conn.unwrap(SqliteConnection.class).getHandle().getPeer();
+
+        try (PreparedStatement ps = this.conn.prepareStatement("CREATE TABLE t (a)")) {
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = this.conn.prepareStatement("INSERT INTO t VALUES (1), (2)")) {
+            ps.executeUpdate();
+        }
+        assertEquals(2, this.panama.changes(db));
+        assertEquals(this.bridj.changes(db), this.panama.changes(db));
+
+        try (PreparedStatement ps = this.conn.prepareStatement("SELECT sum(a) FROM t");
+             ResultSet rs = ps.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt(1));
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.sqlitejdbcng.bridj.Sqlite3;
+import org.sqlitejdbcng.internal.NativeMemory;
+import org.sqlitejdbcng.internal.Sqlite3Backend;
+import org.sqlitejdbcng.internal.Sqlite3Backends;
+import org.sqlitejdbcng.internal.Utf8;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A block of rows read from a result set by SqliteResultSet.fetchColumns(),
+ * stored column by column in primitive arrays.
+ *
+ * For each column there is a storage class and null bit per row, a long[]
+ * holding INTEGER values, a double[] holding REAL values and a byte arena
+ * holding the UTF-8 TEXT and BLOB values.  The arena slice for row N runs
+ * from offsets[N] to offsets[N + 1].  The arrays are reused by the next
+ * fetch, so a batch can be used for a whole scan without allocating once it
+ * has grown to size.
+ *
+ * Columns are numbered from one, like the rest of JDBC, and rows from zero.
+ */
+public class ColumnBatch {
+    private static final Sqlite3Backend NATIVE = Sqlite3Backends.CURRENT;
+    private static final int INTEGER = Sqlite3.DataType.SQLITE_INTEGER.value();
+    private static final int FLOAT = Sqlite3.DataType.SQLITE_FLOAT.value();
+    private static final int TEXT = Sqlite3.DataType.SQLITE_TEXT.value();
+    private static final int BLOB = Sqlite3.DataType.SQLITE_BLOB.value();
+    private static final int NULL = Sqlite3.DataType.SQLITE_NULL.value();
+
+    private int columnCount;
+    private int rowCount;
+    private int capacity;
+    private byte[][] types = new byte[0][];
+    private long[][] nulls = new long[0][];
+    private long[][] longs = new long[0][];
+    private double[][] doubles = new double[0][];
+    private int[][] offsets = new int[0][];
+    private byte[][] arenas = new byte[0][];
+
+    public ColumnBatch() {
+    }
+
+    /**
+     * Create a batch with room for the given number of rows.
+     */
+    public ColumnBatch(int initialRows) {
+        this.capacity = Math.max(0, initialRows);
+    }
+
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    public int getColumnCount() {
+        return this.columnCount;
+    }
+
+    /**
+     * Clear the batch and make sure it has storage for the given number of
+     * columns.
+     */
+    void reset(int columnCount) {
+        if (this.columnCount != columnCount) {
+            this.types = Arrays.copyOf(this.types, columnCount);
+            this.nulls = Arrays.copyOf(this.nulls, columnCount);
+            this.longs = Arrays.copyOf(this.longs, columnCount);
+            this.doubles = Arrays.copyOf(this.doubles, columnCount);
+            this.offsets = Arrays.copyOf(this.offsets, columnCount);
+            this.arenas = Arrays.copyOf(this.arenas, columnCount);
+            for (int lpc = this.columnCount; lpc < columnCount; lpc++) {
+                this.types[lpc] = new byte[this.capacity];
+                this.nulls[lpc] = new long[(this.capacity + 63) >>> 6];
+                this.longs[lpc] = new long[this.capacity];
+                this.doubles[lpc] = new double[this.capacity];
+                this.offsets[lpc] = new int[this.capacity + 1];
+                this.arenas[lpc] = new byte[0];
+            }
+            this.columnCount = columnCount;
+        }
+        for (long[] bits : this.nulls) {
+            Arrays.fill(bits, 0);
+        }
+        this.rowCount = 0;
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= this.capacity)
+            return;
+
+        int newCapacity = Math.max(Math.max(64, this.capacity * 2), rows);
+
+        for (int lpc = 0; lpc < this.columnCount; lpc++) {
+            this.types[lpc] = Arrays.copyOf(this.types[lpc], newCapacity);
+            this.nulls[lpc] = Arrays.copyOf(this.nulls[lpc], (newCapacity + 63) >>> 6);
+            this.longs[lpc] = Arrays.copyOf(this.longs[lpc], newCapacity);
+            this.doubles[lpc] = Arrays.copyOf(this.doubles[lpc], newCapacity);
+            this.offsets[lpc] = Arrays.copyOf(this.offsets[lpc], newCapacity + 1);
+        }
+        this.capacity = newCapacity;
+    }
+
+    private void append(int col, int row, long peer, int len) {
+        int start = this.offsets[col][row];
+        byte[] arena = this.arenas[col];
+
+        if (arena.length - start < len) {
+            long newLength = Math.max(Math.max(256, (long) arena.length * 2), (long) start + len);
+
+            if (newLength > Integer.MAX_VALUE)
+                throw new OutOfMemoryError("Column batch exceeds the maximum array size");
+            arena = this.arenas[col] = Arrays.copyOf(arena, (int) newLength);
+        }
+        if (len > 0)
+            NativeMemory.copy(peer, arena, start, len);
+        this.offsets[col][row + 1] = start + len;
+    }
+
+    /**
+     * Append the current row of the given statement to the batch.
+     */
+    void readRow(long stmt) {
+        int row = this.rowCount;
+
+        this.ensureCapacity(row + 1);
+        for (int col = 0; col < this.columnCount; col++) {
+            int type = NATIVE.columnType(stmt, col);
+
+            this.types[col][row] = (byte) type;
+            this.offsets[col][row + 1] = this.offsets[col][row];
+            if (type == INTEGER) {
+                this.longs[col][row] = NATIVE.columnInt64(stmt, col);
+            }
+            else if (type == FLOAT) {
+                this.doubles[col][row] = NATIVE.columnDouble(stmt, col);
+            }
+            else if (type == TEXT) {
+                long peer = NATIVE.columnText(stmt, col);
+
+                this.append(col, row, peer, NATIVE.columnBytes(stmt, col));
+            }
+            else if (type == BLOB) {
+                long peer = NATIVE.columnBlob(stmt, col);
+
+                this.append(col, row, peer, NATIVE.columnBytes(stmt, col));
+            }
+            else {
+                this.nulls[col][row >>> 6] |= 1L << row;
+            }
+        }
+        this.rowCount = row + 1;
+    }
+
+    private int checkColumn(int column) {
+        if (column < 1 || column > this.columnCount)
+            throw new IndexOutOfBoundsException("Column index out of range -- " + column);
+
+        return column - 1;
+    }
+
+    private int checkIndex(int column, int row) {
+        this.checkColumn(column);
+        if (row < 0 || row >= this.rowCount)
+            throw new IndexOutOfBoundsException("Row index out of range -- " + row);
+
+        return column - 1;
+    }
+
+    /**
+     * @return The storage class of the value in the given cell.
+     */
+    public Sqlite3.DataType getType(int column, int row) {
+        int col = this.checkIndex(column, row);
+
+        return Sqlite3.DataType.valueOf(this.types[col][row]);
+    }
+
+    public boolean isNull(int column, int row) {
+        int col = this.checkIndex(column, row);
+
+        return (this.nulls[col][row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * @return The value of an INTEGER or REAL cell as a long, zero for
+     *  other storage classes.
+     */
+    public long getLong(int column, int row) {
+        int col = this.checkIndex(column, row);
+        int type = this.types[col][row];
+
+        if (type == INTEGER)
+            return this.longs[col][row];
+        if (type == FLOAT)
+            return (long) this.doubles[col][row];
+        return 0;
+    }
+
+    /**
+     * @return The value of an INTEGER or REAL cell as a double, zero for
+     *  other storage classes.
+     */
+    public double getDouble(int column, int row) {
+        int col = this.checkIndex(column, row);
+        int type = this.types[col][row];
+
+        if (type == FLOAT)
+            return this.doubles[col][row];
+        if (type == INTEGER)
+            return this.longs[col][row];
+        return 0.0;
+    }
+
+    /**
+     * Append the text of a cell to the builder, numbers are converted to
+     * their string form.
+     *
+     * @return The number of chars appended or -1 if the cell is NULL.
+     */
+    public int getChars(int column, int row, StringBuilder dest) {
+        int col = this.checkIndex(column, row);
+        int type = this.types[col][row];
+        int start = dest.length();
+
+        if (type == NULL)
+            return -1;
+        if (type == INTEGER)
+            dest.append(this.longs[col][row]);
+        else if (type == FLOAT)
+            dest.append(this.doubles[col][row]);
+        else
+            Utf8.decode(this.arenas[col], this.offsets[col][row],
+                    this.offsets[col][row + 1] - this.offsets[col][row], dest);
+
+        return dest.length() - start;
+    }
+
+    /**
+     * @return The text of a cell or null if the cell is NULL.
+     */
+    public String getString(int column, int row) {
+        StringBuilder sb = new StringBuilder();
+
+        if (this.getChars(column, row, sb) == -1)
+            return null;
+
+        return sb.toString();
+    }
+
+    /**
+     * @return A read-only view of the arena bytes of a TEXT or BLOB cell,
+     *  an empty buffer for other storage classes.
+     */
+    public ByteBuffer getByteBuffer(int column, int row) {
+        int col = this.checkIndex(column, row);
+        int start = this.offsets[col][row];
+
+        return ByteBuffer.wrap(this.arenas[col], start, this.offsets[col][row + 1] - start)
+                .slice()
+                .asReadOnlyBuffer();
+    }
+
+    /**
+     * @return The INTEGER values of a column, only the entries for rows with
+     *  that storage class are meaningful.
+     */
+    public long[] getLongs(int column) {
+        return this.longs[this.checkColumn(column)];
+    }
+
+    /**
+     * @return The REAL values of a column, only the entries for rows with
+     *  that storage class are meaningful.
+     */
+    public double[] getDoubles(int column) {
+        return this.doubles[this.checkColumn(column)];
+    }
+
+    /**
+     * @return The null bitmap of a column, bit (row % 64) of word (row / 64)
+     *  is set if the row is NULL.
+     */
+    public long[] getNullBitmap(int column) {
+        return this.nulls[this.checkColumn(column)];
+    }
+
+    /**
+     * @return The TEXT and BLOB bytes of a column.
+     */
+    public byte[] getArena(int column) {
+        return this.arenas[this.checkColumn(column)];
+    }
+
+    /**
+     * @return The arena offsets for a column, there are getRowCount() + 1
+     *  valid entries.
+     */
+    public int[] getOffsets(int column) {
+        return this.offsets[this.checkColumn(column)];
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.sqlitejdbcng.bridj.Sqlite3;
+
+import java.sql.SQLNonTransientException;
+import java.sql.SQLTransientException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the asynchronous statements of a connection one at a time on a
+ * thread of its own, so callers like event loops never block in
+ * sqlite3_step().
+ *
+ * The number of statements that can wait to run is bounded.  Once the
+ * queue is full the future fails straight away with a SQLTransientException
+ * so an event loop is never blocked, unless the connection has a queue
+ * timeout, in which case the caller waits that long for room.  Work that
+ * has to run eventually, like the next batch of a published query, is held
+ * back until a task finishes instead.  The thread goes away when the
+ * connection has been idle for a while.
+ */
+final class SqliteAsyncExecutor {
+    private static final Logger LOGGER = Logger.getLogger(SqliteAsyncExecutor.class.getName());
+
+    static final int DEFAULT_QUEUE_SIZE = 128;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final long SHUTDOWN_WAIT_MILLIS = 1000;
+    private static final long INTERRUPT_INTERVAL_MILLIS = 10;
+
+    private final SqliteConnection conn;
+    private final ThreadPoolExecutor executor;
+    private final long queueTimeoutMillis;
+    private final ConcurrentLinkedDeque<Task<?>> deferred = new ConcurrentLinkedDeque<>();
+    private volatile Thread worker;
+
+    /**
+     * A future that is also the task that completes it.  Cancelling the
+     * future while the task is running interrupts the statement, a task
+     * that was cancelled while it was queued is taken out of the queue.
+     */
+    private final class Task<T> extends CompletableFuture<T> implements Runnable {
+        private final Callable<T> work;
+        private boolean running;
+
+        Task(Callable<T> work) {
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (this.isDone())
+                    return;
+                if (executor.isShutdown()) {
+                    // Picked up just before shutdown(), which cannot interrupt a statement that has not started.
+                    this.completeExceptionally(new SQLNonTransientException(
+                            "Database is closed for business", "08000"));
+                    return;
+                }
+                this.running = true;
+            }
+
+            try {
+                this.complete(this.work.call());
+            }
+            catch (Throwable e) {
+                this.completeExceptionally(e);
+            }
+            finally {
+                // Under the lock, so a late cancel() cannot interrupt the next task.
+                synchronized (this) {
+                    this.running = false;
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean retval = super.cancel(mayInterruptIfRunning);
+
+            synchronized (this) {
+                if (!retval)
+                    return false;
+                if (this.running)
+                    Sqlite3.sqlite3_interrupt(conn.getHandle());
+            }
+            // Give up the slot in the queue if it has not started.
+            if (!deferred.remove(this) && executor.remove(this))
+                runDeferred();
+
+            return true;
+        }
+    }
+
+    SqliteAsyncExecutor(SqliteConnection conn, int queueSize, long queueTimeoutMillis) {
+        final String name = "SqliteAsyncExecutor-" + conn.getURL();
+
+        this.conn = conn;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread retval = new Thread(r, name);
+
+                        retval.setDaemon(true);
+                        worker = retval;
+                        return retval;
+                    }
+                }) {
+            @Override
+            protected void afterExecute(Runnable r, Throwable t) {
+                // The task that just finished left room in the queue.
+                runDeferred();
+            }
+        };
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    <T> CompletableFuture<T> submit(Callable<T> work) {
+        Task<T> retval = new Task<T>(work);
+
+        try {
+            this.executor.execute(retval);
+        }
+        catch (RejectedExecutionException e) {
+            if (!this.executor.isShutdown() && this.await(retval))
+                return retval;
+
+            if (this.executor.isShutdown()) {
+                retval.completeExceptionally(new SQLNonTransientException(
+                        "Database is closed for business", "08000", e));
+            }
+            else {
+                retval.completeExceptionally(new SQLTransientException(
+                        "Too many asynchronous statements are waiting to run on the connection", "XX000", e));
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * Wait for room in the queue, if the connection was configured to.  A
+     * task submitted from the executor thread itself never waits since the
+     * queue cannot drain until it returns.
+     *
+     * @return True if the task was queued.
+     */
+    private boolean await(Task<?> task) {
+        if (this.queueTimeoutMillis <= 0 || Thread.currentThread() == this.worker)
+            return false;
+
+        try {
+            if (!this.executor.getQueue().offer(task, this.queueTimeoutMillis, TimeUnit.MILLISECONDS))
+                return false;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (this.executor.isShutdown()) {
+            // The queue might have been drained before we got in, fail the task ourselves.
+            if (this.executor.remove(task))
+                return false;
+        }
+        else {
+            // Going around execute() means nobody started a thread for the queue.
+            this.executor.prestartCoreThread();
+        }
+
+        return true;
+    }
+
+    /**
+     * Queue work that must not fail just because the queue is full, like
+     * the next batch of a published query.  If there is no room, the work
+     * is queued when the running task finishes instead.  The caller never
+     * waits.
+     */
+    <T> CompletableFuture<T> submitWhenRoom(Callable<T> work) {
+        Task<T> retval = new Task<T>(work);
+
+        this.deferred.add(retval);
+        // The queue might have drained before the task was added.
+        this.runDeferred();
+
+        return retval;
+    }
+
+    /**
+     * Move deferred tasks into the queue while there is room.
+     */
+    private void runDeferred() {
+        Task<?> task;
+
+        while ((task = this.deferred.poll()) != null) {
+            try {
+                this.executor.execute(task);
+            }
+            catch (RejectedExecutionException e) {
+                if (this.executor.isShutdown()) {
+                    task.completeExceptionally(new SQLNonTransientException(
+                            "Database is closed for business", "08000", e));
+                    continue;
+                }
+                // Still full, so a queued task will call us again when it is done.
+                this.deferred.addFirst(task);
+                if (this.executor.getQueue().remainingCapacity() == 0)
+                    return;
+            }
+        }
+    }
+
+    /**
+     * @return The number of statements waiting to run.
+     */
+    int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * Fail the statements that have not started and interrupt the one that
+     * is running, giving it a moment to finish.
+     */
+    void shutdown() {
+        List<Runnable> pending = this.executor.shutdownNow();
+
+        for (Runnable task : pending) {
+            ((Task<?>) task).completeExceptionally(new SQLNonTransientException(
+                    "Database is closed for business", "08000"));
+        }
+        this.runDeferred();
+        if (this.executor.getActiveCount() > 0)
+            Sqlite3.sqlite3_interrupt(this.conn.getHandle());
+
+        try {
+            for (long waited = 0; !this.executor.awaitTermination(INTERRUPT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                 waited += INTERRUPT_INTERVAL_MILLIS) {
+                if (waited >= SHUTDOWN_WAIT_MILLIS) {
+                    LOGGER.log(Level.WARNING, "Asynchronous statement is still running on closed connection -- {0}",
+                            this.conn.getURL());
+                    break;
+                }
+                // The statement might not have been stepping yet when it was last interrupted.
+                Sqlite3.sqlite3_interrupt(this.conn.getHandle());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
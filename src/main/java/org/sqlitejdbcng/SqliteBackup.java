@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.bridj.Pointer;
+import org.sqlitejdbcng.bridj.Sqlite3;
+
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Copies a database on a connection to a file while the database stays in
+ * use, with the sqlite3_backup_* functions.
+ *
+ * The copy is done a few pages at a time, with a pause between the steps,
+ * and the source is only locked during a step, so writers keep going
+ * while a large database is copied.  Changes made through the source
+ * connection are applied to the copy as it goes, but a change made by any
+ * other connection makes SQLite start the copy over.  If that happens
+ * more than the maximum number of times, the backup falls back to
+ * "VACUUM INTO", which reads the database in a single transaction instead.
+ *
+ * A backup is configured with the setters and run in the calling thread
+ * with run().
+ */
+public class SqliteBackup {
+    private static final Logger LOGGER = Logger.getLogger(SqliteBackup.class.getName());
+
+    public static final int DEFAULT_PAGES_PER_STEP = 256;
+    public static final long DEFAULT_STEP_DELAY_MILLIS = 10;
+    public static final int DEFAULT_MAX_RESTARTS = 3;
+
+    private static final int VACUUM_INTO_VERSION = 3027000;
+
+    /**
+     * Receives the progress of a backup after every step.
+     */
+    public interface ProgressListener {
+        /**
+         * @param remaining The number of pages that still have to be
+         *   copied.
+         * @param pageCount The number of pages in the source database.
+         */
+        void progress(SqliteBackup backup, int remaining, int pageCount);
+    }
+
+    private final SqliteConnection source;
+    private final String sourceDatabase;
+    private final String destPath;
+    private int pagesPerStep = DEFAULT_PAGES_PER_STEP;
+    private long stepDelayMillis = DEFAULT_STEP_DELAY_MILLIS;
+    private int maxRestarts = DEFAULT_MAX_RESTARTS;
+    private ProgressListener listener;
+
+    private int steps;
+    private int restarts;
+    private int remaining = -1;
+    private int pageCount = -1;
+    private boolean vacuumed;
+
+    SqliteBackup(SqliteConnection source, String sourceDatabase, String destPath) {
+        this.source = source;
+        this.sourceDatabase = sourceDatabase;
+        this.destPath = destPath;
+    }
+
+    /**
+     * @param pages The number of pages to copy in each step, a negative
+     *   number copies the whole database in one step.
+     */
+    public SqliteBackup setPagesPerStep(int pages) {
+        if (pages == 0)
+            throw new IllegalArgumentException("The number of pages per step cannot be zero");
+
+        this.pagesPerStep = pages;
+        return this;
+    }
+
+    public SqliteBackup setStepDelayMillis(long millis) {
+        if (millis < 0)
+            throw new IllegalArgumentException("The step delay must be greater than or equal to zero");
+
+        this.stepDelayMillis = millis;
+        return this;
+    }
+
+    /**
+     * @param restarts The number of times the copy can start over because
+     *   the source changed before falling back to VACUUM INTO.
+     */
+    public SqliteBackup setMaxRestarts(int restarts) {
+        if (restarts < 0)
+            throw new IllegalArgumentException("The number of restarts must be greater than or equal to zero");
+
+        this.maxRestarts = restarts;
+        return this;
+    }
+
+    public SqliteBackup setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Copy the database, replacing the contents of the destination file.
+     */
+    public void run() throws SQLException {
+        this.source.requireOpened();
+
+        Pointer<Pointer<Sqlite3.Sqlite3Db>> destOut = Pointer.allocatePointer(Sqlite3.Sqlite3Db.class);
+        int rc = Sqlite3.sqlite3_open_v2(Pointer.pointerToCString(this.destPath),
+                destOut,
+                Sqlite3.OpenFlag.SQLITE_OPEN_READWRITE.intValue() |
+                        Sqlite3.OpenFlag.SQLITE_OPEN_CREATE.intValue() |
+                        Sqlite3.OpenFlag.SQLITE_OPEN_URI.intValue(),
+                null);
+        Pointer<Sqlite3.Sqlite3Db> dest = Sqlite3.withDbReleaser(destOut.get());
+        boolean restartLimitHit;
+
+        try {
+            Sqlite3.checkOk(rc, dest);
+            restartLimitHit = this.copy(dest);
+        }
+        finally {
+            if (dest != null)
+                dest.release();
+        }
+
+        if (restartLimitHit)
+            this.vacuumInto();
+    }
+
+    /**
+     * @return True if the copy was abandoned because it restarted too
+     *   many times.
+     */
+    private boolean copy(Pointer<Sqlite3.Sqlite3Db> dest) throws SQLException {
+        Pointer<Sqlite3.Backup> backup = Sqlite3.sqlite3_backup_init(dest,
+                Pointer.pointerToCString("main"),
+                this.source.getHandle(),
+                Pointer.pointerToCString(this.sourceDatabase));
+
+        if (backup == null)
+            Sqlite3.checkOk(Sqlite3.sqlite3_errcode(dest), dest);
+
+        long peer = backup.getPeer();
+        int copied = 0;
+        int rc;
+
+        try {
+            while (true) {
+                rc = Sqlite3.sqlite3_backup_step(peer, this.pagesPerStep);
+                this.steps += 1;
+                this.remaining = Sqlite3.sqlite3_backup_remaining(peer);
+                this.pageCount = Sqlite3.sqlite3_backup_pagecount(peer);
+                if (this.listener != null)
+                    this.listener.progress(this, this.remaining, this.pageCount);
+
+                if (rc == Sqlite3.ReturnCodes.SQLITE_DONE.value())
+                    break;
+                if (rc != Sqlite3.ReturnCodes.SQLITE_OK.value() &&
+                        rc != Sqlite3.ReturnCodes.SQLITE_BUSY.value() &&
+                        rc != Sqlite3.ReturnCodes.SQLITE_LOCKED.value())
+                    break;
+
+                /*
+                 * A step that succeeds always copies more pages, even if
+                 * the source grew through this connection, so no progress
+                 * means the copy started over.
+                 */
+                if (rc == Sqlite3.ReturnCodes.SQLITE_OK.value() && this.pageCount - this.remaining <= copied) {
+                    this.restarts += 1;
+                    if (this.restarts > this.maxRestarts)
+                        return true;
+                }
+                copied = this.pageCount - this.remaining;
+
+                if (this.stepDelayMillis > 0)
+                    Thread.sleep(this.stepDelayMillis);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientException("The backup was interrupted",
+                    Sqlite3.ReturnCodes.SQLITE_INTERRUPT.sqlState());
+        }
+        finally {
+            rc = Sqlite3.sqlite3_backup_finish(peer);
+        }
+
+        Sqlite3.checkOk(rc, dest);
+
+        return false;
+    }
+
+    @edu.umd.cs.findbugs.annotations.SuppressWarnings("SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING")
+    private void vacuumInto() throws SQLException {
+        if (Sqlite3.sqlite3_libversion_number() < VACUUM_INTO_VERSION) {
+            throw new SQLTransientException(String.format(
+                    "The backup restarted %d times and this version of SQLite does not support VACUUM INTO",
+                    this.restarts), Sqlite3.ReturnCodes.SQLITE_BUSY.sqlState());
+        }
+
+        LOGGER.log(Level.INFO, "Backup restarted {0} times, falling back to VACUUM INTO -- {1}",
+                new Object[] { this.restarts, this.destPath });
+
+        // VACUUM INTO will not overwrite a file with anything in it.
+        File destFile = new File(this.destPath);
+
+        if (destFile.exists() && !destFile.delete())
+            LOGGER.log(Level.WARNING, "Unable to delete partial backup -- {0}", this.destPath);
+
+        PreparedStatement ps = this.source.prepareStatement(
+                "VACUUM \"" + this.sourceDatabase.replace("\"", "\"\"") + "\" INTO ?");
+
+        try {
+            ps.setString(1, this.destPath);
+            ps.executeUpdate();
+        }
+        finally {
+            SqliteCommon.closeQuietly(ps);
+        }
+        this.vacuumed = true;
+        this.remaining = 0;
+        if (this.listener != null)
+            this.listener.progress(this, this.remaining, this.pageCount);
+    }
+
+    public String getDestPath() {
+        return this.destPath;
+    }
+
+    /**
+     * @return The number of steps taken.
+     */
+    public int getSteps() {
+        return this.steps;
+    }
+
+    /**
+     * @return The number of times the copy started over because the
+     *   source was changed by another connection.
+     */
+    public int getRestarts() {
+        return this.restarts;
+    }
+
+    /**
+     * @return The number of pages left to copy, -1 if the backup has not
+     *   been run.
+     */
+    public int getRemaining() {
+        return this.remaining;
+    }
+
+    public int getPageCount() {
+        return this.pageCount;
+    }
+
+    /**
+     * @return True if the backup was done with VACUUM INTO.
+     */
+    public boolean isVacuumed() {
+        return this.vacuumed;
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.bridj.Pointer;
+import org.sqlitejdbcng.bridj.Sqlite3;
+import org.sqlitejdbcng.internal.Sqlite3Backend;
+import org.sqlitejdbcng.internal.Sqlite3Backends;
+import org.sqlitejdbcng.internal.Utf8;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.util.Arrays;
+
+/**
+ * Column-oriented storage for the rows of a prepared statement batch.
+ *
+ * Each parameter has a tag per row and lazily allocated primitive arrays
+ * for the values.  Text and blob values are packed into a single byte
+ * arena and the long slot for the row holds the offset and length, so the
+ * whole arena can be copied to native memory once and bound with
+ * SQLITE_STATIC.  Values that need special handling, like SqliteBlobs, are
+ * kept as objects and bound through the statement.
+ */
+final class SqliteBatch {
+    private static final Sqlite3Backend NATIVE = Sqlite3Backends.CURRENT;
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_LONG = 1;
+    private static final byte TAG_DOUBLE = 2;
+    private static final byte TAG_TEXT = 3;
+    private static final byte TAG_BLOB = 4;
+    private static final byte TAG_OBJECT = 5;
+
+    private static final int SQLITE_OK = (int) Sqlite3.ReturnCodes.SQLITE_OK.value();
+
+    private static final int INITIAL_ROWS = 16;
+    private static final int INITIAL_ARENA = 256;
+
+    private final int paramCount;
+    private final byte[][] tags;
+    private final long[][] longs;
+    private final double[][] doubles;
+    private final Object[][] objects;
+    private final int[][] objectTypes;
+    private int capacity;
+    private int rowCount;
+    private byte[] arena = new byte[0];
+    private int arenaSize;
+
+    SqliteBatch(int paramCount) {
+        this.paramCount = paramCount;
+        this.tags = new byte[paramCount][];
+        this.longs = new long[paramCount][];
+        this.doubles = new double[paramCount][];
+        this.objects = new Object[paramCount][];
+        this.objectTypes = new int[paramCount][];
+        for (int lpc = 0; lpc < paramCount; lpc++) {
+            this.tags[lpc] = new byte[0];
+        }
+    }
+
+    int size() {
+        return this.rowCount;
+    }
+
+    void clear() {
+        this.rowCount = 0;
+        this.arenaSize = 0;
+        Arrays.fill(this.objects, null);
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= this.capacity)
+            return;
+
+        int newCapacity = Math.max(Math.max(INITIAL_ROWS, this.capacity * 2), rows);
+
+        for (int lpc = 0; lpc < this.paramCount; lpc++) {
+            this.tags[lpc] = Arrays.copyOf(this.tags[lpc], newCapacity);
+            if (this.longs[lpc] != null)
+                this.longs[lpc] = Arrays.copyOf(this.longs[lpc], newCapacity);
+            if (this.doubles[lpc] != null)
+                this.doubles[lpc] = Arrays.copyOf(this.doubles[lpc], newCapacity);
+            if (this.objects[lpc] != null) {
+                this.objects[lpc] = Arrays.copyOf(this.objects[lpc], newCapacity);
+                this.objectTypes[lpc] = Arrays.copyOf(this.objectTypes[lpc], newCapacity);
+            }
+        }
+        this.capacity = newCapacity;
+    }
+
+    private long[] longsFor(int param) {
+        if (this.longs[param] == null)
+            this.longs[param] = new long[this.capacity];
+        return this.longs[param];
+    }
+
+    private double[] doublesFor(int param) {
+        if (this.doubles[param] == null)
+            this.doubles[param] = new double[this.capacity];
+        return this.doubles[param];
+    }
+
+    private int reserveArena(int len) {
+        int offset = this.arenaSize;
+
+        if (this.arena.length - offset < len) {
+            long newLength = Math.max(Math.max(INITIAL_ARENA, (long) this.arena.length * 2), (long) offset + len);
+
+            if (newLength > Integer.MAX_VALUE)
+                throw new OutOfMemoryError("Batch data exceeds the maximum array size");
+            this.arena = Arrays.copyOf(this.arena, (int) newLength);
+        }
+        this.arenaSize += len;
+
+        return offset;
+    }
+
+    private static long ref(int offset, int len) {
+        return ((long) offset << 32) | (len & 0xffffffffL);
+    }
+
+    private void putNull(int param, int row) {
+        this.tags[param][row] = TAG_NULL;
+    }
+
+    private void putLong(int param, int row, long value) {
+        this.tags[param][row] = TAG_LONG;
+        this.longsFor(param)[row] = value;
+    }
+
+    private void putDouble(int param, int row, double value) {
+        this.tags[param][row] = TAG_DOUBLE;
+        this.doublesFor(param)[row] = value;
+    }
+
+    private void putText(int param, int row, String value) {
+        int len = Utf8.encodedLength(value);
+        int offset = this.reserveArena(len);
+
+        Utf8.encode(value, this.arena, offset);
+        this.tags[param][row] = TAG_TEXT;
+        this.longsFor(param)[row] = ref(offset, len);
+    }
+
+    private void putBlob(int param, int row, byte[] value) {
+        int offset = this.reserveArena(value.length);
+
+        System.arraycopy(value, 0, this.arena, offset, value.length);
+        this.tags[param][row] = TAG_BLOB;
+        this.longsFor(param)[row] = ref(offset, value.length);
+    }
+
+    private void putObject(int param, int row, Object value, int type) {
+        if (this.objects[param] == null) {
+            this.objects[param] = new Object[this.capacity];
+            this.objectTypes[param] = new int[this.capacity];
+        }
+        this.tags[param][row] = TAG_OBJECT;
+        this.objects[param][row] = value;
+        this.objectTypes[param][row] = type;
+    }
+
+    /**
+     * Append a row using the current parameters of the statement.  The
+     * values are copied, so the caller is free to change the parameters
+     * afterward.
+     */
+    void addRow(SqliteParameters params) {
+        int row = this.rowCount;
+
+        this.ensureCapacity(row + 1);
+        for (int lpc = 0; lpc < this.paramCount; lpc++) {
+            switch (params.getTag(lpc)) {
+                case SqliteParameters.TAG_UNSET:
+                case SqliteParameters.TAG_NULL:
+                    this.putNull(lpc, row);
+                    break;
+                case SqliteParameters.TAG_LONG:
+                    this.putLong(lpc, row, params.getLong(lpc));
+                    break;
+                case SqliteParameters.TAG_DOUBLE:
+                    this.putDouble(lpc, row, params.getDouble(lpc));
+                    break;
+                case SqliteParameters.TAG_TEXT:
+                    this.putText(lpc, row, (String) params.getObject(lpc));
+                    break;
+                case SqliteParameters.TAG_BYTES:
+                    this.putBlob(lpc, row, (byte[]) params.getObject(lpc));
+                    break;
+                default:
+                    this.putObject(lpc, row, params.getObject(lpc), params.getObjectType(lpc));
+                    break;
+            }
+        }
+        this.rowCount = row + 1;
+    }
+
+    /**
+     * Append rows from whole columns of values, one array per parameter.
+     * The supported array types are long[], int[], double[], String[] and
+     * byte[][], null elements of the object arrays are bound as NULL.
+     */
+    void addColumns(Object[] columns) throws SQLException {
+        if (columns.length != this.paramCount) {
+            throw new SQLNonTransientException("Expecting " + this.paramCount + " columns, got " +
+                    columns.length, "22000");
+        }
+
+        int rows = -1;
+
+        for (int lpc = 0; lpc < columns.length; lpc++) {
+            int len = columnLength(columns[lpc]);
+
+            if (len == -1) {
+                throw new SQLNonTransientException("Unsupported batch column type for parameter " + (lpc + 1) +
+                        " -- " + (columns[lpc] == null ? "null" : columns[lpc].getClass().getSimpleName()),
+                        "22000");
+            }
+            if (rows != -1 && len != rows) {
+                throw new SQLNonTransientException("Batch columns must all have the same length", "22000");
+            }
+            rows = len;
+        }
+        if (rows <= 0)
+            return;
+
+        int start = this.rowCount;
+
+        this.ensureCapacity(start + rows);
+        for (int lpc = 0; lpc < columns.length; lpc++) {
+            Object column = columns[lpc];
+
+            if (column instanceof long[]) {
+                Arrays.fill(this.tags[lpc], start, start + rows, TAG_LONG);
+                System.arraycopy(column, 0, this.longsFor(lpc), start, rows);
+            }
+            else if (column instanceof int[]) {
+                int[] ints = (int[]) column;
+                long[] dest = this.longsFor(lpc);
+
+                Arrays.fill(this.tags[lpc], start, start + rows, TAG_LONG);
+                for (int row = 0; row < rows; row++) {
+                    dest[start + row] = ints[row];
+                }
+            }
+            else if (column instanceof double[]) {
+                Arrays.fill(this.tags[lpc], start, start + rows, TAG_DOUBLE);
+                System.arraycopy(column, 0, this.doublesFor(lpc), start, rows);
+            }
+            else if (column instanceof String[]) {
+                String[] strs = (String[]) column;
+
+                for (int row = 0; row < rows; row++) {
+                    if (strs[row] == null)
+                        this.putNull(lpc, start + row);
+                    else
+                        this.putText(lpc, start + row, strs[row]);
+                }
+            }
+            else {
+                byte[][] blobs = (byte[][]) column;
+
+                for (int row = 0; row < rows; row++) {
+                    if (blobs[row] == null)
+                        this.putNull(lpc, start + row);
+                    else
+                        this.putBlob(lpc, start + row, blobs[row]);
+                }
+            }
+        }
+        this.rowCount = start + rows;
+    }
+
+    private static int columnLength(Object column) {
+        if (column instanceof long[])
+            return ((long[]) column).length;
+        if (column instanceof int[])
+            return ((int[]) column).length;
+        if (column instanceof double[])
+            return ((double[]) column).length;
+        if (column instanceof String[])
+            return ((String[]) column).length;
+        if (column instanceof byte[][])
+            return ((byte[][]) column).length;
+        return -1;
+    }
+
+    /**
+     * Copy the text and blob arena into native memory.  The returned
+     * pointer must stay alive until the bindings that refer to it have been
+     * cleared.  The heap and native copies exist side by side during
+     * executeBatch(), which doubles the peak memory of the arena in return
+     * for one copy and no per-row allocation.
+     */
+    Pointer<Byte> copyArena() {
+        // Always allocate something so empty strings and blobs do not get a
+        // NULL pointer, which SQLite would bind as NULL.
+        Pointer<Byte> retval = Pointer.allocateBytes(Math.max(1, this.arenaSize));
+
+        if (this.arenaSize > 0)
+            retval.setBytesAtOffset(0, this.arena, 0, this.arenaSize);
+
+        return retval;
+    }
+
+    /**
+     * Bind the values for the given row to the statement.
+     *
+     * @return The first non-OK result code from SQLite or SQLITE_OK.
+     */
+    int bindRow(SqlitePreparedStatement ps, long stmtPeer, int row, long arenaPeer) throws SQLException {
+        for (int lpc = 0; lpc < this.paramCount; lpc++) {
+            int rc;
+
+            switch (this.tags[lpc][row]) {
+                case TAG_NULL:
+                    rc = NATIVE.bindNull(stmtPeer, lpc + 1);
+                    break;
+                case TAG_LONG:
+                    rc = NATIVE.bindInt64(stmtPeer, lpc + 1, this.longs[lpc][row]);
+                    break;
+                case TAG_DOUBLE:
+                    rc = NATIVE.bindDouble(stmtPeer, lpc + 1, this.doubles[lpc][row]);
+                    break;
+                case TAG_TEXT: {
+                    long ref = this.longs[lpc][row];
+
+                    rc = NATIVE.bindTextStatic(stmtPeer, lpc + 1, arenaPeer + (ref >>> 32), (int) ref);
+                    break;
+                }
+                case TAG_BLOB: {
+                    long ref = this.longs[lpc][row];
+
+                    rc = NATIVE.bindBlobStatic(stmtPeer, lpc + 1, arenaPeer + (ref >>> 32), (int) ref);
+                    break;
+                }
+                default:
+                    rc = ps.bindValue(lpc + 1, this.objects[lpc][row], this.objectTypes[lpc][row]);
+                    break;
+            }
+            if (rc != SQLITE_OK)
+                return rc;
+        }
+
+        return SQLITE_OK;
+    }
+}
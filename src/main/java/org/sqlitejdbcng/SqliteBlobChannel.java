@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.sqlitejdbcng.bridj.Sqlite3;
+import org.sqlitejdbcng.internal.NativeMemory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.sql.SQLException;
+
+/**
+ * A channel over a single BLOB or TEXT value in a table, opened with
+ * SqliteConnection.openBlob().  The value is read and written in place
+ * using SQLite's incremental blob I/O, so it never has to be held in memory
+ * as a whole.  The size of a value cannot be changed through the channel,
+ * to store a large value insert a zero-filled blob of the right size, see
+ * SqlitePreparedStatement.setZeroBlob(), and then write into it.
+ *
+ * The channel should be closed before the connection it came from.
+ */
+public class SqliteBlobChannel implements SeekableByteChannel {
+    private static final int SQLITE_OK = (int) Sqlite3.ReturnCodes.SQLITE_OK.value();
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final SqliteConnection conn;
+    private final boolean writable;
+    private long handle;
+    private long scratch;
+    private int size;
+    private long position;
+
+    SqliteBlobChannel(SqliteConnection conn, long handle, boolean writable) {
+        this.conn = conn;
+        this.handle = handle;
+        this.writable = writable;
+        this.size = Sqlite3.sqlite3_blob_bytes(handle);
+    }
+
+    public SqliteConnection getConnection() {
+        return this.conn;
+    }
+
+    public boolean isWritable() {
+        return this.writable;
+    }
+
+    private void requireOpen() throws IOException {
+        if (this.handle == 0)
+            throw new ClosedChannelException();
+    }
+
+    private void check(int rc) throws IOException {
+        if (rc == SQLITE_OK)
+            return;
+
+        try {
+            Sqlite3.checkOk(rc, this.conn.getHandle());
+        }
+        catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The native buffer that heap buffers are copied through.
+     */
+    private long scratch() throws IOException {
+        if (this.scratch == 0) {
+            this.scratch = Sqlite3.sqlite3_realloc(0, CHUNK_SIZE);
+            if (this.scratch == 0)
+                this.check((int) Sqlite3.ReturnCodes.SQLITE_NOMEM.value());
+        }
+
+        return this.scratch;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        this.requireOpen();
+
+        if (this.position >= this.size)
+            return -1;
+
+        int total = (int) Math.min(dst.remaining(), this.size - this.position);
+        int offset = (int) this.position;
+
+        if (dst.isDirect() && !dst.isReadOnly()) {
+            this.check(Sqlite3.sqlite3_blob_read(this.handle, NativeMemory.address(dst) + dst.position(),
+                    total, offset));
+            dst.position(dst.position() + total);
+        }
+        else {
+            long buf = this.scratch();
+
+            for (int done = 0; done < total; ) {
+                int len = Math.min(CHUNK_SIZE, total - done);
+
+                this.check(Sqlite3.sqlite3_blob_read(this.handle, buf, len, offset + done));
+                NativeMemory.copy(buf, dst, len);
+                done += len;
+            }
+        }
+        this.position += total;
+
+        return total;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        this.requireOpen();
+
+        if (!this.writable)
+            throw new NonWritableChannelException();
+
+        int total = src.remaining();
+
+        if (this.position + total > this.size) {
+            throw new IOException(String.format(
+                    "Blobs cannot grow, writing %d bytes at %d would pass the end of the %d byte value",
+                    total, this.position, this.size));
+        }
+
+        int offset = (int) this.position;
+
+        if (src.isDirect()) {
+            this.check(Sqlite3.sqlite3_blob_write(this.handle, NativeMemory.address(src) + src.position(),
+                    total, offset));
+            src.position(src.position() + total);
+        }
+        else {
+            long buf = this.scratch();
+            byte[] copy = src.hasArray() ? null : new byte[Math.min(CHUNK_SIZE, total)];
+
+            for (int done = 0; done < total; ) {
+                int len = Math.min(CHUNK_SIZE, total - done);
+
+                if (copy == null) {
+                    NativeMemory.copy(src.array(), src.arrayOffset() + src.position(), buf, len);
+                    src.position(src.position() + len);
+                }
+                else {
+                    src.get(copy, 0, len);
+                    NativeMemory.copy(copy, 0, buf, len);
+                }
+                this.check(Sqlite3.sqlite3_blob_write(this.handle, buf, len, offset + done));
+                done += len;
+            }
+        }
+        this.position += total;
+
+        return total;
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        this.requireOpen();
+
+        return this.position;
+    }
+
+    @Override
+    public synchronized SqliteBlobChannel position(long newPosition) throws IOException {
+        this.requireOpen();
+
+        if (newPosition < 0)
+            throw new IllegalArgumentException("Position must not be negative -- " + newPosition);
+        this.position = newPosition;
+
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        this.requireOpen();
+
+        return this.size;
+    }
+
+    /**
+     * The size of a blob cannot be changed, so this only succeeds if the
+     * given size is not smaller than the current one.
+     */
+    @Override
+    public synchronized SqliteBlobChannel truncate(long size) throws IOException {
+        this.requireOpen();
+
+        if (!this.writable)
+            throw new NonWritableChannelException();
+        if (size < this.size)
+            throw new IOException("The size of a blob cannot be changed");
+
+        return this;
+    }
+
+    /**
+     * Move the channel to the same column in another row, which is cheaper
+     * than opening a new channel.  The position is reset to zero.
+     */
+    public synchronized void reopen(long rowid) throws IOException {
+        this.requireOpen();
+
+        this.check(Sqlite3.sqlite3_blob_reopen(this.handle, rowid));
+        this.size = Sqlite3.sqlite3_blob_bytes(this.handle);
+        this.position = 0;
+    }
+
+    /**
+     * @return A stream that reads from the current position, closing the
+     *  stream closes the channel.
+     */
+    public InputStream newInputStream() {
+        return Channels.newInputStream(this);
+    }
+
+    /**
+     * @return A stream that writes at the current position, closing the
+     *  stream closes the channel.
+     */
+    public OutputStream newOutputStream() {
+        return Channels.newOutputStream(this);
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return this.handle != 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.handle == 0)
+            return;
+
+        int rc = Sqlite3.sqlite3_blob_close(this.handle);
+
+        this.handle = 0;
+        if (this.scratch != 0) {
+            Sqlite3.sqlite3_free(this.scratch);
+            this.scratch = 0;
+        }
+        this.check(rc);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.bridj.Pointer;
+import org.sqlitejdbcng.bridj.Sqlite3;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A busy handler that sleeps with exponential backoff and jitter while the
+ * database is locked by another connection.  SQLite gives up and returns
+ * SQLITE_BUSY once the total wait for a lock exceeds the maximum.
+ *
+ * Install with SqliteConnection.setBusyHandler() or through the
+ * "busyMaxWait" connection property.  A handler should only be installed
+ * on one connection at a time since it tracks the wait for the current
+ * lock.
+ */
+public class SqliteBusyHandler extends Sqlite3.BusyCallbackBase {
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 1;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 100;
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final long maxWaitMillis;
+    private long lockStartNanos;
+
+    private final AtomicLong busyEvents = new AtomicLong();
+    private final AtomicLong sleeps = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    public SqliteBusyHandler(long maxWaitMillis) {
+        this(DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, maxWaitMillis);
+    }
+
+    public SqliteBusyHandler(long initialDelayMillis, long maxDelayMillis, long maxWaitMillis) {
+        if (initialDelayMillis < 1 || maxDelayMillis < initialDelayMillis || maxWaitMillis < 0)
+            throw new IllegalArgumentException("Invalid busy handler delays");
+
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * @return The time to sleep before the given attempt, which doubles
+     *   each attempt up to the maximum and is then jittered down by as much
+     *   as half so that waiters do not wake up in lock-step.
+     */
+    static long backoffMillis(long initialDelayMillis, long maxDelayMillis, int attempt) {
+        long delay = initialDelayMillis << Math.min(attempt, 30);
+
+        if (delay <= 0 || delay > maxDelayMillis)
+            delay = maxDelayMillis;
+
+        return delay - ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    @Override
+    public int apply(Pointer<Void> context, int count) {
+        long now = System.nanoTime();
+
+        if (count == 0) {
+            this.lockStartNanos = now;
+            this.busyEvents.incrementAndGet();
+        }
+
+        long remaining = this.maxWaitMillis - TimeUnit.NANOSECONDS.toMillis(now - this.lockStartNanos);
+
+        if (remaining <= 0) {
+            this.timeouts.incrementAndGet();
+            return 0;
+        }
+
+        long delay = Math.min(backoffMillis(this.initialDelayMillis, this.maxDelayMillis, count), remaining);
+
+        try {
+            Thread.sleep(delay);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        finally {
+            this.sleeps.incrementAndGet();
+            this.totalWaitNanos.addAndGet(System.nanoTime() - now);
+        }
+
+        return 1;
+    }
+
+    public long getMaxWaitMillis() {
+        return this.maxWaitMillis;
+    }
+
+    /**
+     * @return The number of times a lock was found to be busy.
+     */
+    public long getBusyEvents() {
+        return this.busyEvents.get();
+    }
+
+    /**
+     * @return The number of times the handler slept waiting for a lock.
+     */
+    public long getSleepCount() {
+        return this.sleeps.get();
+    }
+
+    /**
+     * @return The number of times the maximum wait was reached and
+     *   SQLITE_BUSY was returned to the caller.
+     */
+    public long getTimeouts() {
+        return this.timeouts.get();
+    }
+
+    public long getTotalWaitNanos() {
+        return this.totalWaitNanos.get();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.bridj.Pointer;
+import org.sqlitejdbcng.bridj.Sqlite3;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a WAL checkpoint.  Frames that were left in the WAL could
+ * not be copied back into the database because a reader still has a
+ * snapshot that needs them.  A backlog that stays above zero over several
+ * checkpoints points at a long-lived read transaction, possibly in another
+ * process.
+ */
+public final class SqliteCheckpoint {
+    /**
+     * The checkpoint modes, in the order of the SQLITE_CHECKPOINT_*
+     * constants.  Only PASSIVE never waits on the busy handler; the others
+     * block new writers until they are done.
+     */
+    public enum Mode {
+        PASSIVE,
+        FULL,
+        RESTART,
+        TRUNCATE,
+    }
+
+    private final Mode mode;
+    private final boolean busy;
+    private final int logFrames;
+    private final int checkpointedFrames;
+    private final long durationNanos;
+
+    SqliteCheckpoint(Mode mode, boolean busy, int logFrames, int checkpointedFrames, long durationNanos) {
+        this.mode = mode;
+        this.busy = busy;
+        this.logFrames = logFrames;
+        this.checkpointedFrames = checkpointedFrames;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Run a checkpoint, SQLITE_BUSY is reported in the result instead of
+     * being thrown since the checkpoint still did as much as it could.
+     *
+     * @param dbName The database to checkpoint or null for all of them.
+     */
+    static SqliteCheckpoint run(Pointer<Sqlite3.Sqlite3Db> db, Pointer<Byte> dbName, Mode mode)
+            throws SQLException {
+        Pointer<Integer> logOut = Pointer.allocateInt();
+        Pointer<Integer> checkpointedOut = Pointer.allocateInt();
+        long start = System.nanoTime();
+        int rc = Sqlite3.sqlite3_wal_checkpoint_v2(db, dbName, mode.ordinal(), logOut, checkpointedOut);
+        long duration = System.nanoTime() - start;
+        boolean busy = rc == Sqlite3.ReturnCodes.SQLITE_BUSY.value();
+
+        if (!busy)
+            Sqlite3.checkOk(rc, db);
+
+        return new SqliteCheckpoint(mode, busy, logOut.getInt(), checkpointedOut.getInt(), duration);
+    }
+
+    public Mode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * @return True if the checkpoint could not finish because of another
+     *   connection, PASSIVE checkpoints are never busy.
+     */
+    public boolean isBusy() {
+        return this.busy;
+    }
+
+    /**
+     * @return False if the database is not in WAL mode.
+     */
+    public boolean isWal() {
+        return this.logFrames >= 0;
+    }
+
+    /**
+     * @return The number of frames in the WAL.
+     */
+    public int getLogFrames() {
+        return this.logFrames;
+    }
+
+    /**
+     * @return The number of frames that are now in the database.
+     */
+    public int getCheckpointedFrames() {
+        return this.checkpointedFrames;
+    }
+
+    /**
+     * @return The number of frames that could not be checkpointed.
+     */
+    public int getBacklogFrames() {
+        return Math.max(0, this.logFrames - this.checkpointedFrames);
+    }
+
+    public long getDurationNanos() {
+        return this.durationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SqliteCheckpoint{mode=%s, busy=%s, logFrames=%d, checkpointedFrames=%d, durationMillis=%d}",
+                this.mode, this.busy, this.logFrames, this.checkpointedFrames,
+                TimeUnit.NANOSECONDS.toMillis(this.durationNanos));
+    }
+}
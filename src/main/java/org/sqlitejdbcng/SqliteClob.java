@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.bridj.Pointer;
+import org.sqlitejdbcng.bridj.Sqlite3;
+import org.sqlitejdbcng.internal.NativeMemory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.sql.Clob;
+import java.sql.NClob;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+
+/**
+ * A Clob that keeps its characters as UTF-16 in native memory, so a large
+ * document is never held on the heap as a String.  The contents are copied
+ * in and out in fixed-size chunks and bound with sqlite3_bind_text16().
+ */
+public class SqliteClob implements NClob {
+    private static final int CHUNK_SIZE = 8192;
+    private static final int SQLITE_TOOBIG = (int) Sqlite3.ReturnCodes.SQLITE_TOOBIG.value();
+
+    private Pointer<Byte> ptr;
+    private long capacity;
+    private long length;
+    private boolean freed;
+
+    public SqliteClob() {
+    }
+
+    /**
+     * Decode UTF-8 text from native memory into a new Clob, one chunk of
+     * characters at a time.
+     */
+    static SqliteClob fromUtf8(long address, int len) {
+        SqliteClob retval = new SqliteClob();
+
+        if (len == 0)
+            return retval;
+
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer in = NativeMemory.view(address, len);
+        char[] chunk = new char[CHUNK_SIZE];
+        CharBuffer out = CharBuffer.wrap(chunk);
+        CoderResult result;
+
+        // There cannot be more chars than bytes.
+        retval.reserve(len);
+        do {
+            out.clear();
+            result = decoder.decode(in, out, true);
+            if (result.isUnderflow())
+                decoder.flush(out);
+            retval.writeChars(retval.length, chunk, 0, out.position());
+        } while (result.isOverflow());
+
+        return retval;
+    }
+
+    private void requireBacking() throws SQLException {
+        if (this.freed) {
+            throw new SQLNonTransientException("Clobs cannot be used after having been freed");
+        }
+    }
+
+    private long requireValidPos(long pos) throws SQLException {
+        if (pos < 1) {
+            throw new SQLNonTransientException("Position must be greater than zero");
+        }
+        if (pos - 1 > this.length) {
+            throw new SQLNonTransientException("Position must not be greater than " + (this.length + 1));
+        }
+
+        return pos - 1;
+    }
+
+    private void reserve(long chars) {
+        if (chars <= this.capacity)
+            return;
+
+        long newCapacity = Math.max(Math.max(chars, this.capacity * 2), 16);
+        Pointer<Byte> newPtr = Pointer.allocateBytes(newCapacity * 2);
+
+        if (this.ptr != null) {
+            this.ptr.copyTo(newPtr, this.length * 2);
+            Pointer.release(this.ptr);
+        }
+        this.ptr = newPtr;
+        this.capacity = newCapacity;
+    }
+
+    private void writeChars(long start, char[] src, int offset, int len) {
+        this.reserve(start + len);
+        NativeMemory.copy(src, offset, this.ptr.getPeer() + start * 2, len);
+        this.length = Math.max(this.length, start + len);
+    }
+
+    private void readChars(long start, char[] dest, int offset, int len) {
+        if (len == 0)
+            return;
+        NativeMemory.copy(this.ptr.getPeer() + start * 2, dest, offset, len);
+    }
+
+    /**
+     * Bind the contents to a statement parameter, SQLite makes its own copy.
+     */
+    int bind(long stmtPeer, int index) throws SQLException {
+        this.requireBacking();
+
+        if (this.length > Integer.MAX_VALUE / 2)
+            return SQLITE_TOOBIG;
+        // Empty text still needs a pointer, NULL would bind a NULL.
+        this.reserve(1);
+
+        return Sqlite3.sqlite3_bind_text16(stmtPeer, index, this.ptr.getPeer(), (int) this.length * 2,
+                Sqlite3.SQLITE_TRANSIENT.getPeer());
+    }
+
+    @Override
+    public long length() throws SQLException {
+        this.requireBacking();
+
+        return this.length;
+    }
+
+    @Override
+    public String getSubString(long pos, int length) throws SQLException {
+        this.requireBacking();
+
+        long start = this.requireValidPos(pos);
+        char[] retval = new char[(int) Math.min(length, this.length - start)];
+
+        this.readChars(start, retval, 0, retval.length);
+
+        return new String(retval);
+    }
+
+    @Override
+    public Reader getCharacterStream() throws SQLException {
+        return this.getCharacterStream(1, this.length());
+    }
+
+    @Override
+    public Reader getCharacterStream(long pos, long length) throws SQLException {
+        this.requireBacking();
+
+        final long start = this.requireValidPos(pos);
+        final long end = start + Math.min(length, this.length - start);
+
+        return new Reader() {
+            private long streamPos = start;
+            private long markPos = start;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (off < 0 || len < 0 || off > cbuf.length - len)
+                    throw new IndexOutOfBoundsException();
+                if (freed)
+                    throw new IOException("The Clob has been freed");
+                if (len == 0)
+                    return 0;
+                if (this.streamPos >= end)
+                    return -1;
+
+                int count = (int) Math.min(len, end - this.streamPos);
+
+                readChars(this.streamPos, cbuf, off, count);
+                this.streamPos += count;
+
+                return count;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long count = Math.max(0, Math.min(n, end - this.streamPos));
+
+                this.streamPos += count;
+
+                return count;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return true;
+            }
+
+            @Override
+            public void mark(int readAheadLimit) throws IOException {
+                this.markPos = this.streamPos;
+            }
+
+            @Override
+            public void reset() throws IOException {
+                this.streamPos = this.markPos;
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        };
+    }
+
+    /**
+     * @return A stream of the characters as ASCII, anything outside of ASCII
+     *  is replaced with a question mark.
+     */
+    @Override
+    public InputStream getAsciiStream() throws SQLException {
+        final Reader reader = this.getCharacterStream();
+
+        return new InputStream() {
+            private final char[] chunk = new char[CHUNK_SIZE];
+
+            @Override
+            public int read() throws IOException {
+                int ch = reader.read();
+
+                if (ch < 0)
+                    return -1;
+
+                return ch < 0x80 ? ch : '?';
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (off < 0 || len < 0 || off > b.length - len)
+                    throw new IndexOutOfBoundsException();
+
+                int count = reader.read(this.chunk, 0, Math.min(len, this.chunk.length));
+
+                for (int lpc = 0; lpc < count; lpc++) {
+                    char ch = this.chunk[lpc];
+
+                    b[off + lpc] = (byte) (ch < 0x80 ? ch : '?');
+                }
+
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public long position(String searchstr, long start) throws SQLException {
+        this.requireBacking();
+
+        long from = this.requireValidPos(start);
+        int len = searchstr.length();
+        char[] window = new char[Math.max(CHUNK_SIZE, len * 2)];
+
+        while (from + len <= this.length) {
+            int count = (int) Math.min(window.length, this.length - from);
+            int index;
+
+            this.readChars(from, window, 0, count);
+            index = new String(window, 0, count).indexOf(searchstr);
+            if (index >= 0)
+                return from + index + 1;
+            from += count - len + 1;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public long position(Clob searchstr, long start) throws SQLException {
+        return this.position(searchstr.getSubString(1, (int) searchstr.length()), start);
+    }
+
+    @Override
+    public int setString(long pos, String str) throws SQLException {
+        return this.setString(pos, str, 0, str.length());
+    }
+
+    @Override
+    public int setString(long pos, String str, int offset, int len) throws SQLException {
+        this.requireBacking();
+
+        long start = this.requireValidPos(pos);
+        char[] chunk = new char[Math.min(len, CHUNK_SIZE)];
+
+        if (offset < 0 || len < 0 || offset > str.length() - len)
+            throw new SQLNonTransientException("Offset and length must be within the string");
+
+        for (int done = 0; done < len; ) {
+            int count = Math.min(chunk.length, len - done);
+
+            str.getChars(offset + done, offset + done + count, chunk, 0);
+            this.writeChars(start + done, chunk, 0, count);
+            done += count;
+        }
+
+        return len;
+    }
+
+    @Override
+    public OutputStream setAsciiStream(long pos) throws SQLException {
+        final Writer writer = this.setCharacterStream(pos);
+
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                writer.write(b & 0xff);
+            }
+        };
+    }
+
+    @Override
+    public Writer setCharacterStream(long pos) throws SQLException {
+        this.requireBacking();
+
+        final long start = this.requireValidPos(pos);
+
+        return new Writer() {
+            private long streamPos = start;
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                if (off < 0 || len < 0 || off > cbuf.length - len)
+                    throw new IndexOutOfBoundsException();
+                if (freed)
+                    throw new IOException("The Clob has been freed");
+
+                writeChars(this.streamPos, cbuf, off, len);
+                this.streamPos += len;
+            }
+
+            @Override
+            public void flush() throws IOException {
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        };
+    }
+
+    @Override
+    public void truncate(long len) throws SQLException {
+        this.requireBacking();
+
+        if (len < 0 || len > this.length)
+            throw new SQLNonTransientException("Length must be between zero and " + this.length);
+
+        this.length = len;
+    }
+
+    @Override
+    public void free() throws SQLException {
+        if (this.ptr != null) {
+            Pointer.release(this.ptr);
+        }
+        this.ptr = null;
+        this.capacity = 0;
+        this.length = 0;
+        this.freed = true;
+    }
+}
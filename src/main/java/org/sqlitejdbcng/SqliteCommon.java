@@ -26,15 +26,12 @@
 
 package org.sqlitejdbcng;
 
-import org.sqlitejdbcng.internal.TimeoutProgressCallback;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.sql.*;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.GregorianCalendar;
 import java.util.TimeZone;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -42,40 +39,28 @@ import java.util.logging.Logger;
 public class SqliteCommon {
     private static final Logger LOGGER = Logger.getLogger(SqliteCommon.class.getName());
 
-    protected static final ThreadLocal<Calendar> DEFAULT_CALENDAR = new ThreadLocal<Calendar>() {
-        @Override
-        protected Calendar initialValue()
-        {
-            return new GregorianCalendar(TimeZone.getTimeZone("UTC"));
-        }
-    };
-
-    // SimpleDateFormat is not thread-safe, so give one to each thread
-    protected static final ThreadLocal<SimpleDateFormat> DATE_FORMATTER = new ThreadLocal<SimpleDateFormat>() {
-        @Override
-        protected SimpleDateFormat initialValue()
-        {
-            return new SimpleDateFormat("yyyy-MM-dd");
-        }
-    };
-
-    // SimpleDateFormat is not thread-safe, so give one to each thread
-    protected static final ThreadLocal<SimpleDateFormat> TIME_FORMATTER = new ThreadLocal<SimpleDateFormat>() {
-        @Override
-        protected SimpleDateFormat initialValue()
-        {
-            return new SimpleDateFormat("HH:mm:ss");
-        }
-    };
-
-    // SimpleDateFormat is not thread-safe, so give one to each thread
-    protected static final ThreadLocal<SimpleDateFormat> TS_FORMATTER = new ThreadLocal<SimpleDateFormat>() {
-        @Override
-        protected SimpleDateFormat initialValue()
-        {
-            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-        }
-    };
+    /**
+     * @return The time shifted into the time zone of the calendar, so it
+     *  can be formatted as if it were UTC.  A null calendar means UTC.
+     */
+    protected static long toLocalMillis(long millis, Calendar calendar) {
+        if (calendar == null)
+            return millis;
+
+        return millis + calendar.getTimeZone().getOffset(millis);
+    }
+
+    /**
+     * @return The inverse of toLocalMillis().
+     */
+    protected static long fromLocalMillis(long localMillis, Calendar calendar) {
+        if (calendar == null)
+            return localMillis;
+
+        TimeZone tz = calendar.getTimeZone();
+
+        return localMillis - tz.getOffset(localMillis - tz.getOffset(localMillis));
+    }
 
     public static void closeQuietly(InputStream is) {
         try {
@@ -117,16 +102,6 @@ public class SqliteCommon {
         }
     }
 
-    public static void closeQuietly(TimeoutProgressCallback cb) {
-        try {
-            if (cb != null) {
-                cb.close();
-            }
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Unable to close statement", e);
-        }
-    }
-
     public static boolean stringEquals(String s1, String s2) {
         if (s1 != null) {
             return s1.equals(s2);
@@ -155,10 +130,13 @@ public class SqliteCommon {
     }
 
     public <T> T unwrap(Class<T> tClass) throws SQLException {
+        if (tClass.isInstance(this))
+            return tClass.cast(this);
+
         throw new SQLNonTransientException("No object implements the given class", "42000");
     }
 
     public boolean isWrapperFor(Class<?> aClass) throws SQLException {
-        return false;
+        return aClass.isInstance(this);
     }
 }
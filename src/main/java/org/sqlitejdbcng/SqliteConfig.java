@@ -0,0 +1,514 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The tuning settings that are applied to a connection right after it is
+ * opened.  The settings can come from the query string of the JDBC URL,
+ * from the Properties passed to the driver, or from a SqliteConfig that was
+ * built with the Builder and converted using toProperties().  Values in
+ * the Properties override the ones in the URL.
+ *
+ * <pre>
+ *     jdbc:sqlite:/path/to/db?journal_mode=WAL&amp;synchronous=NORMAL
+ * </pre>
+ */
+public class SqliteConfig {
+    /**
+     * The PRAGMAs that can be set at open time.  The declaration order is
+     * the order they are applied in, page_size has to come before the
+     * journal is switched to WAL.
+     */
+    public enum Pragma {
+        PAGE_SIZE("page_size", Kind.INTEGER,
+                "The page size for a new database, in bytes"),
+        JOURNAL_MODE("journal_mode", Kind.CHOICE,
+                "The journal mode for the database",
+                "DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF"),
+        SYNCHRONOUS("synchronous", Kind.CHOICE,
+                "How often SQLite waits for data to reach the disk",
+                "OFF", "NORMAL", "FULL", "EXTRA"),
+        CACHE_SIZE("cache_size", Kind.INTEGER,
+                "The page cache size, in pages or negative for KiB"),
+        MMAP_SIZE("mmap_size", Kind.INTEGER,
+                "The maximum number of bytes of the database to memory-map"),
+        TEMP_STORE("temp_store", Kind.CHOICE,
+                "Where temporary tables and indexes are kept",
+                "DEFAULT", "FILE", "MEMORY"),
+        BUSY_TIMEOUT("busy_timeout", Kind.INTEGER,
+                "How long to wait for a lock before failing with SQLITE_BUSY, in milliseconds"),
+        FOREIGN_KEYS("foreign_keys", Kind.BOOLEAN,
+                "Enforce foreign key constraints",
+                "ON", "OFF");
+
+        private enum Kind {
+            INTEGER,
+            CHOICE,
+            BOOLEAN,
+        }
+
+        private final String key;
+        private final Kind kind;
+        private final String description;
+        private final String[] choices;
+
+        Pragma(String key, Kind kind, String description, String... choices) {
+            this.key = key;
+            this.kind = kind;
+            this.description = description;
+            this.choices = choices;
+        }
+
+        public String key() {
+            return this.key;
+        }
+
+        public String description() {
+            return this.description;
+        }
+
+        public String[] choices() {
+            return this.choices.clone();
+        }
+
+        public static Pragma fromKey(String key) {
+            for (Pragma pragma : values()) {
+                if (pragma.key.equalsIgnoreCase(key))
+                    return pragma;
+            }
+
+            return null;
+        }
+
+        /**
+         * Check the value and convert it to the form used in the PRAGMA.
+         *
+         * @throws IllegalArgumentException If the value is not valid.
+         */
+        String normalize(String value) {
+            String trimmed = value.trim();
+
+            switch (this.kind) {
+                case INTEGER:
+                    try {
+                        return Long.toString(Long.parseLong(trimmed));
+                    }
+                    catch (NumberFormatException e) {
+                        break;
+                    }
+                case CHOICE:
+                    for (String choice : this.choices) {
+                        if (choice.equalsIgnoreCase(trimmed))
+                            return choice;
+                    }
+                    break;
+                case BOOLEAN:
+                    switch (trimmed.toLowerCase(Locale.ROOT)) {
+                        case "on":
+                        case "true":
+                        case "yes":
+                        case "1":
+                            return "ON";
+                        case "off":
+                        case "false":
+                        case "no":
+                        case "0":
+                            return "OFF";
+                    }
+                    break;
+            }
+
+            throw new IllegalArgumentException(String.format(
+                    "Invalid value for connection property %s -- %s", this.key, value));
+        }
+    }
+
+    /**
+     * How PreparedStatement stores java.sql and java.time dates and times.
+     * TEXT is ISO-8601, INTEGER is milliseconds since the epoch and REAL is
+     * a Julian day number, the same forms SQLite's date functions accept.
+     */
+    public enum TemporalStorage {
+        TEXT,
+        INTEGER,
+        REAL,
+    }
+
+    /**
+     * Settings that are handled by the driver instead of SQLite.  They take
+     * a non-negative integer or, if there are choices, the index of one of
+     * the choices.
+     */
+    public enum Setting {
+        STATEMENT_CACHE_SIZE(SqliteConnection.STATEMENT_CACHE_SIZE,
+                "The number of prepared statements to cache per connection, zero to disable"),
+        BUSY_MAX_WAIT("busyMaxWait",
+                "Install a backoff busy handler that waits up to this long for a lock, in milliseconds"),
+        BUSY_RETRIES("busyRetries",
+                "How many times to retry an auto-commit statement that failed with SQLITE_BUSY or SQLITE_LOCKED"),
+        TEMPORAL_STORAGE("temporalStorage",
+                "The storage class used when binding dates and times",
+                "TEXT", "INTEGER", "REAL"),
+        WAL_CHECKPOINT_FRAMES("walCheckpointFrames",
+                "Checkpoint the WAL from a background thread once it reaches this many frames, zero to leave it to SQLite"),
+        WAL_CHECKPOINT_IDLE("walCheckpointIdle",
+                "How long writers have to be idle before the background checkpoint runs, in milliseconds"),
+        ASYNC_QUEUE_SIZE("asyncQueueSize",
+                "The number of asynchronous statements that can wait to run on a connection, zero for the default"),
+        ASYNC_QUEUE_TIMEOUT("asyncQueueTimeout",
+                "How long an asynchronous statement waits for room in a full queue, in milliseconds, zero to fail immediately");
+
+        private final String key;
+        private final String description;
+        private final String[] choices;
+
+        Setting(String key, String description, String... choices) {
+            this.key = key;
+            this.description = description;
+            this.choices = choices;
+        }
+
+        public String key() {
+            return this.key;
+        }
+
+        public String description() {
+            return this.description;
+        }
+
+        public String[] choices() {
+            return this.choices.clone();
+        }
+
+        public static Setting fromKey(String key) {
+            for (Setting setting : values()) {
+                if (setting.key.equals(key))
+                    return setting;
+            }
+
+            return null;
+        }
+
+        int normalize(String value) {
+            for (int lpc = 0; lpc < this.choices.length; lpc++) {
+                if (this.choices[lpc].equalsIgnoreCase(value.trim()))
+                    return lpc;
+            }
+
+            if (this.choices.length > 0) {
+                throw new IllegalArgumentException(String.format(
+                        "Invalid value for connection property %s -- %s", this.key, value));
+            }
+
+            try {
+                int retval = Integer.parseInt(value.trim());
+
+                if (retval >= 0)
+                    return retval;
+            }
+            catch (NumberFormatException e) {
+                // fall through
+            }
+
+            throw new IllegalArgumentException(String.format(
+                    "Invalid value for connection property %s -- %s", this.key, value));
+        }
+
+        String format(int value) {
+            return this.choices.length > 0 ? this.choices[value] : Integer.toString(value);
+        }
+    }
+
+    private final EnumMap<Pragma, String> pragmas;
+    private final EnumMap<Setting, Integer> settings;
+
+    private SqliteConfig(EnumMap<Pragma, String> pragmas, EnumMap<Setting, Integer> settings) {
+        this.pragmas = pragmas;
+        this.settings = settings;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return True if the given URL query or Properties key is handled by the
+     *   driver instead of being passed on to SQLite.
+     */
+    public static boolean isKnownKey(String key) {
+        return Pragma.fromKey(key) != null || Setting.fromKey(key) != null;
+    }
+
+    /**
+     * Build a configuration from connection Properties, unknown keys are
+     * ignored.
+     */
+    public static SqliteConfig fromProperties(Properties properties) throws SQLException {
+        Builder builder = new Builder();
+
+        if (properties != null) {
+            for (String key : properties.stringPropertyNames()) {
+                if (!isKnownKey(key))
+                    continue;
+
+                try {
+                    builder.set(key, properties.getProperty(key));
+                }
+                catch (IllegalArgumentException e) {
+                    throw new SQLNonTransientConnectionException(e.getMessage(), "08000", e);
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * @return The settings from the URL query string overlaid with the given
+     *   Properties.
+     */
+    static Properties merge(SqliteUrl url, Properties properties) {
+        Properties retval = new Properties();
+
+        retval.putAll(url.getProperties());
+        if (properties != null) {
+            for (String key : properties.stringPropertyNames()) {
+                retval.setProperty(key, properties.getProperty(key));
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * @return The normalized value for the PRAGMA or null if it was not set.
+     */
+    public String get(Pragma pragma) {
+        return this.pragmas.get(pragma);
+    }
+
+    /**
+     * @return The value of the driver setting or zero if it was not set.
+     */
+    public int get(Setting setting) {
+        Integer retval = this.settings.get(setting);
+
+        return retval != null ? retval : 0;
+    }
+
+    public int getStatementCacheSize() {
+        return this.get(Setting.STATEMENT_CACHE_SIZE);
+    }
+
+    public TemporalStorage getTemporalStorage() {
+        return TemporalStorage.values()[this.get(Setting.TEMPORAL_STORAGE)];
+    }
+
+    public Properties toProperties() {
+        Properties retval = new Properties();
+
+        for (Map.Entry<Pragma, String> entry : this.pragmas.entrySet()) {
+            retval.setProperty(entry.getKey().key(), entry.getValue());
+        }
+        for (Map.Entry<Setting, Integer> entry : this.settings.entrySet()) {
+            retval.setProperty(entry.getKey().key(), entry.getKey().format(entry.getValue()));
+        }
+
+        return retval;
+    }
+
+    /**
+     * @return The PRAGMA statements to execute as a single batch, or null if
+     *   there is nothing to do.
+     */
+    String toSql() {
+        if (this.pragmas.isEmpty())
+            return null;
+
+        StringBuilder sb = new StringBuilder();
+
+        for (Map.Entry<Pragma, String> entry : this.pragmas.entrySet()) {
+            sb.append("PRAGMA ")
+                    .append(entry.getKey().key())
+                    .append('=')
+                    .append(entry.getValue())
+                    .append(';');
+        }
+
+        return sb.toString();
+    }
+
+    static DriverPropertyInfo[] getPropertyInfo(Properties properties) {
+        Pragma[] pragmas = Pragma.values();
+        Setting[] settings = Setting.values();
+        DriverPropertyInfo[] retval = new DriverPropertyInfo[pragmas.length + settings.length];
+
+        for (int lpc = 0; lpc < pragmas.length; lpc++) {
+            Pragma pragma = pragmas[lpc];
+            DriverPropertyInfo info = new DriverPropertyInfo(pragma.key(), properties.getProperty(pragma.key()));
+
+            info.description = pragma.description();
+            if (pragma.choices.length > 0)
+                info.choices = pragma.choices();
+            retval[lpc] = info;
+        }
+
+        for (int lpc = 0; lpc < settings.length; lpc++) {
+            Setting setting = settings[lpc];
+            DriverPropertyInfo info = new DriverPropertyInfo(setting.key(), properties.getProperty(setting.key()));
+
+            info.description = setting.description();
+            if (setting.choices.length > 0)
+                info.choices = setting.choices();
+            retval[pragmas.length + lpc] = info;
+        }
+
+        return retval;
+    }
+
+    @Override
+    public String toString() {
+        return "SqliteConfig" + this.toProperties();
+    }
+
+    public static class Builder {
+        private final EnumMap<Pragma, String> pragmas = new EnumMap<Pragma, String>(Pragma.class);
+        private final EnumMap<Setting, Integer> settings = new EnumMap<Setting, Integer>(Setting.class);
+
+        private Builder() {
+        }
+
+        /**
+         * Set a value by its URL or Properties key.
+         *
+         * @throws IllegalArgumentException If the key is unknown or the value
+         *   is not valid.
+         */
+        public Builder set(String key, String value) {
+            Setting setting = Setting.fromKey(key);
+
+            if (setting != null) {
+                this.settings.put(setting, setting.normalize(value));
+                return this;
+            }
+
+            Pragma pragma = Pragma.fromKey(key);
+
+            if (pragma == null)
+                throw new IllegalArgumentException("Unknown connection property -- " + key);
+
+            return this.set(pragma, value);
+        }
+
+        public Builder set(Pragma pragma, String value) {
+            this.pragmas.put(pragma, pragma.normalize(value));
+            return this;
+        }
+
+        public Builder pageSize(int bytes) {
+            return this.set(Pragma.PAGE_SIZE, Integer.toString(bytes));
+        }
+
+        public Builder journalMode(String mode) {
+            return this.set(Pragma.JOURNAL_MODE, mode);
+        }
+
+        public Builder synchronous(String level) {
+            return this.set(Pragma.SYNCHRONOUS, level);
+        }
+
+        public Builder cacheSize(int pages) {
+            return this.set(Pragma.CACHE_SIZE, Integer.toString(pages));
+        }
+
+        public Builder mmapSize(long bytes) {
+            return this.set(Pragma.MMAP_SIZE, Long.toString(bytes));
+        }
+
+        public Builder tempStore(String store) {
+            return this.set(Pragma.TEMP_STORE, store);
+        }
+
+        public Builder busyTimeout(int millis) {
+            return this.set(Pragma.BUSY_TIMEOUT, Integer.toString(millis));
+        }
+
+        public Builder foreignKeys(boolean enabled) {
+            return this.set(Pragma.FOREIGN_KEYS, enabled ? "ON" : "OFF");
+        }
+
+        public Builder set(Setting setting, int value) {
+            this.settings.put(setting, setting.normalize(Integer.toString(value)));
+            return this;
+        }
+
+        public Builder statementCacheSize(int size) {
+            return this.set(Setting.STATEMENT_CACHE_SIZE, size);
+        }
+
+        public Builder busyMaxWait(int millis) {
+            return this.set(Setting.BUSY_MAX_WAIT, millis);
+        }
+
+        public Builder busyRetries(int retries) {
+            return this.set(Setting.BUSY_RETRIES, retries);
+        }
+
+        public Builder temporalStorage(TemporalStorage storage) {
+            this.settings.put(Setting.TEMPORAL_STORAGE, storage.ordinal());
+            return this;
+        }
+
+        public Builder walCheckpointFrames(int frames) {
+            return this.set(Setting.WAL_CHECKPOINT_FRAMES, frames);
+        }
+
+        public Builder walCheckpointIdle(int millis) {
+            return this.set(Setting.WAL_CHECKPOINT_IDLE, millis);
+        }
+
+        public Builder asyncQueueSize(int size) {
+            return this.set(Setting.ASYNC_QUEUE_SIZE, size);
+        }
+
+        public Builder asyncQueueTimeout(int millis) {
+            return this.set(Setting.ASYNC_QUEUE_TIMEOUT, millis);
+        }
+
+        public SqliteConfig build() {
+            return new SqliteConfig(this.pragmas.clone(), this.settings.clone());
+        }
+    }
+}
@@ -30,9 +30,12 @@ import org.bridj.Pointer;
 import org.sqlitejdbcng.bridj.Sqlite3;
 import org.sqlitejdbcng.internal.*;
 
+import java.nio.ByteBuffer;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,9 +43,19 @@ import static org.sqlitejdbcng.internal.EscapeParser.transform;
 
 public class SqliteConnection extends SqliteCommon implements Connection {
     private static final Logger LOGGER = Logger.getLogger(SqliteConnection.class.getName());
+    private static final Sqlite3Backend NATIVE = Sqlite3Backends.CURRENT;
+
+    private static final int DEFAULT_PROGRESS_STEP = 100;
 
     private static final SQLPermission CALL_ABORT_PERM = new SQLPermission("callAbort");
 
+    /**
+     * Connection property that enables the prepared statement cache.  The
+     * value is the maximum number of idle statements to keep, zero disables
+     * the cache.
+     */
+    public static final String STATEMENT_CACHE_SIZE = "statementCacheSize";
+
     private static final Sqlite3.AuthCallbackBase RO_AUTHORIZER = new Sqlite3.AuthCallbackBase() {
         @Override
         public int apply(Pointer<Void> context, int actionCode, Pointer<Byte> arg1, Pointer<Byte> arg2, Pointer<Byte> arg3, Pointer<Byte> arg4) {
@@ -95,12 +108,59 @@ public class SqliteConnection extends SqliteCommon implements Connection {
     private final CloseNotifier closer = new CloseNotifier();
     private boolean halfClosed;
     private int savepointId;
-    private int progressStep = 100;
+    private int progressStep = DEFAULT_PROGRESS_STEP;
     private SqliteConnectionProgressCallback callback;
+    private final AtomicBoolean deadlineExpired = new AtomicBoolean();
+    /**
+     * Set while a sqlite3_interrupt() from a deadline may still be pending.
+     * SQLite only forgets an interrupt when no statement is active, so it
+     * can fail other statements on the connection.
+     */
+    private final AtomicBoolean deadlineInterrupted = new AtomicBoolean();
+    /**
+     * The progress handler that is installed while the application has
+     * pushed a callback.  It also aborts the current step when a statement
+     * deadline has expired, which is quicker than waiting for SQLite to
+     * notice the sqlite3_interrupt().
+     */
+    private final Sqlite3.ProgressCallbackBase progressDispatcher = new Sqlite3.ProgressCallbackBase() {
+        @Override
+        public int apply(Pointer<Void> context) {
+            SqliteConnectionProgressCallback cb = callback;
+
+            if (deadlineExpired.get())
+                return 1;
+
+            return cb != null ? cb.apply(context) : 0;
+        }
+    };
+    private final SqliteStatementCache statementCache;
+    private final SqliteConfig config;
+    private SqliteBusyHandler busyHandler;
+    private int busyRetries;
+    private final AtomicLong busyRetryCount = new AtomicLong();
+    private boolean encodingChecked;
+    private boolean utf16;
+    private final SqliteConfig.TemporalStorage temporalStorage;
+    private SqliteWalMonitor walMonitor;
+    private SqliteWalCheckpointer walCheckpointer;
+    /**
+     * The read-only image SQLite is reading the main database from, it has
+     * to stay reachable for as long as the connection is open.
+     */
+    private ByteBuffer sharedImage;
+    private SqliteAsyncExecutor asyncExecutor;
+    /**
+     * The handle given out by a SqlitePooledConnection, statements report it
+     * from getConnection() so the application never sees this object.
+     */
+    private volatile Connection logicalConnection;
 
     public SqliteConnection(String url, Properties properties) throws SQLException {
-        Pointer<Pointer<Sqlite3.Sqlite3Db>> db_out = Pointer.allocatePointer(Sqlite3.Sqlite3Db.class);
         SqliteUrl sqliteUrl = new SqliteUrl(url);
+        SqliteConfig config = SqliteConfig.fromProperties(SqliteConfig.merge(sqliteUrl, properties));
+        int cacheSize = config.getStatementCacheSize();
+        Pointer<Pointer<Sqlite3.Sqlite3Db>> db_out = Pointer.allocatePointer(Sqlite3.Sqlite3Db.class);
         int rc = Sqlite3.sqlite3_open_v2(
                 Pointer.pointerToCString(sqliteUrl.getPath()),
                 db_out,
@@ -118,6 +178,9 @@ public class SqliteConnection extends SqliteCommon implements Connection {
         this.url = url;
         this.db = Sqlite3.withDbReleaser(db_out.get());
         this.properties = properties;
+        this.config = config;
+        this.temporalStorage = config.getTemporalStorage();
+        this.statementCache = cacheSize > 0 ? new SqliteStatementCache(cacheSize) : null;
 
         Sqlite3.checkOk(rc);
 
@@ -136,6 +199,169 @@ public class SqliteConnection extends SqliteCommon implements Connection {
             closeQuietly(rs);
             closeQuietly(stmt);
         }
+
+        this.applyPragmas();
+        this.applyBusyStrategy();
+
+        int walFrames = config.get(SqliteConfig.Setting.WAL_CHECKPOINT_FRAMES);
+
+        if (walFrames > 0 && !sqliteUrl.isPrivate()) {
+            this.walCheckpointer = SqliteWalCheckpointer.acquire(sqliteUrl.getPath(), url,
+                    SqliteConfig.merge(sqliteUrl, properties),
+                    walFrames, config.get(SqliteConfig.Setting.WAL_CHECKPOINT_IDLE));
+            this.setWalMonitor(this.walCheckpointer.getMonitor());
+        }
+    }
+
+    /**
+     * Apply the tuning PRAGMAs in one go.  The values were checked by
+     * SqliteConfig, so they are safe to paste into the SQL.
+     */
+    private void applyPragmas() throws SQLException {
+        String pragmas = this.config.toSql();
+
+        if (pragmas != null) {
+            Sqlite3.checkOk(Sqlite3.sqlite3_exec(this.db, Pointer.pointerToCString(pragmas), null, null, null),
+                    this.db, true);
+        }
+    }
+
+    /**
+     * Install the busy handler and retries from the configuration.
+     */
+    private void applyBusyStrategy() throws SQLException {
+        int maxWait = this.config.get(SqliteConfig.Setting.BUSY_MAX_WAIT);
+
+        if (maxWait > 0)
+            this.setBusyHandler(new SqliteBusyHandler(maxWait));
+        this.busyRetries = this.config.get(SqliteConfig.Setting.BUSY_RETRIES);
+    }
+
+    /**
+     * Open a private in-memory database with a copy of an image from
+     * serialize().
+     */
+    public static SqliteConnection openFrom(byte[] image) throws SQLException {
+        return openFrom(ByteBuffer.wrap(image), null);
+    }
+
+    public static SqliteConnection openFrom(ByteBuffer image) throws SQLException {
+        return openFrom(image, null);
+    }
+
+    /**
+     * Open a private in-memory database with the contents of an image from
+     * serialize(), which is a lot quicker than building the database up
+     * with SQL.
+     *
+     * If the buffer is direct and read-only, SQLite reads the pages straight
+     * out of it, so any number of connections can share one image without
+     * copying it.  Those connections are read-only.  Any other buffer is
+     * copied into memory owned by the connection, which is then free to
+     * change and grow the database.
+     *
+     * @param image The image, from its position to its limit.
+     */
+    public static SqliteConnection openFrom(ByteBuffer image, Properties properties) throws SQLException {
+        SqliteConnection retval = new SqliteConnection("jdbc:sqlite::memory:", properties);
+
+        try {
+            retval.deserialize(image);
+        }
+        catch (SQLException e) {
+            retval.close();
+            throw e;
+        }
+
+        return retval;
+    }
+
+    private void deserialize(ByteBuffer image) throws SQLException {
+        int size = image.remaining();
+        boolean shared = image.isDirect() && image.isReadOnly();
+        long data;
+        int flags;
+
+        if (size == 0)
+            return;
+
+        if (shared) {
+            data = NativeMemory.address(image) + image.position();
+            flags = Sqlite3.SQLITE_DESERIALIZE_READONLY;
+        }
+        else {
+            data = Sqlite3.sqlite3_malloc64(size);
+            if (data == 0)
+                Sqlite3.checkOk((int) Sqlite3.ReturnCodes.SQLITE_NOMEM.value());
+            NativeMemory.view(data, size).put(image.duplicate());
+            flags = Sqlite3.SQLITE_DESERIALIZE_FREEONCLOSE | Sqlite3.SQLITE_DESERIALIZE_RESIZEABLE;
+        }
+
+        try {
+            // The memory is freed by SQLite if this fails.
+            Sqlite3.checkOk(Sqlite3.sqlite3_deserialize(this.db, Pointer.pointerToCString("main"),
+                    data, size, size, flags), this.db);
+        }
+        catch (UnsatisfiedLinkError e) {
+            if (!shared)
+                Sqlite3.sqlite3_free(data);
+            throw new SQLFeatureNotSupportedException("Database images need SQLite 3.23 or later", "0A000", e);
+        }
+
+        if (shared) {
+            this.sharedImage = image;
+            this.setReadOnly(true);
+        }
+    }
+
+    /**
+     * @return An image of the main database, see serialize(String).
+     */
+    public byte[] serialize() throws SQLException {
+        return this.serialize("main");
+    }
+
+    /**
+     * Copy a database into an image that can be opened with openFrom().
+     * For an in-memory database, this is a single copy of its pages.
+     *
+     * @param database The database to copy: "main", "temp" or the name of
+     *   an attached database.
+     */
+    public byte[] serialize(String database) throws SQLException {
+        requireOpened();
+
+        Pointer<Long> sizeOut = Pointer.allocateLong();
+        long data;
+
+        try {
+            data = Sqlite3.sqlite3_serialize(this.db, Pointer.pointerToCString(database), sizeOut, 0);
+        }
+        catch (UnsatisfiedLinkError e) {
+            throw new SQLFeatureNotSupportedException("Database images need SQLite 3.23 or later", "0A000", e);
+        }
+
+        if (data == 0)
+            throw new SQLNonTransientException("Unable to serialize database -- " + database, "42000");
+
+        try {
+            long size = sizeOut.getLong();
+
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new SQLNonTransientException(String.format(
+                        "Database is too large to serialize into an array -- %s (%d bytes)", database, size),
+                        "22001");
+            }
+
+            byte[] retval = new byte[(int) size];
+
+            NativeMemory.copy(data, retval, 0, retval.length);
+
+            return retval;
+        }
+        finally {
+            Sqlite3.sqlite3_free(data);
+        }
     }
 
     synchronized int nextSavepointId() {
@@ -199,11 +425,7 @@ public class SqliteConnection extends SqliteCommon implements Connection {
 
         callback.setOther(this.callback);
         this.callback = callback;
-        Sqlite3.sqlite3_progress_handler(
-                this.db,
-                this.progressStep,
-                Pointer.pointerTo((Sqlite3.ProgressCallbackBase) this.callback),
-                null);
+        this.updateProgressHandler();
     }
 
     public void popCallback() throws SQLException {
@@ -213,13 +435,244 @@ public class SqliteConnection extends SqliteCommon implements Connection {
             throw new SQLNonTransientException("Callback stack is empty", "XX000");
 
         this.callback = this.callback.getOther();
+        this.updateProgressHandler();
+    }
+
+    private void updateProgressHandler() {
         Sqlite3.sqlite3_progress_handler(
                 this.db,
                 this.progressStep,
-                Pointer.pointerTo((Sqlite3.ProgressCallbackBase) this.callback),
+                this.callback != null ? Pointer.pointerTo(this.progressDispatcher) : null,
                 null);
     }
 
+    /**
+     * @return The executor for the async statement methods, which is only
+     *   created on first use so other connections do not pay for its queue.
+     */
+    synchronized SqliteAsyncExecutor getAsyncExecutor() throws SQLException {
+        requireOpened();
+
+        if (this.asyncExecutor == null) {
+            int queueSize = this.config.get(SqliteConfig.Setting.ASYNC_QUEUE_SIZE);
+
+            this.asyncExecutor = new SqliteAsyncExecutor(this,
+                    queueSize > 0 ? queueSize : SqliteAsyncExecutor.DEFAULT_QUEUE_SIZE,
+                    this.config.get(SqliteConfig.Setting.ASYNC_QUEUE_TIMEOUT));
+        }
+
+        return this.asyncExecutor;
+    }
+
+    /**
+     * @return The flag that statement deadlines set when they expire.
+     */
+    AtomicBoolean getDeadlineFlag() {
+        return this.deadlineExpired;
+    }
+
+    /**
+     * @return The flag that statement deadlines set when they interrupt the
+     *   connection.
+     */
+    AtomicBoolean getDeadlineInterruptFlag() {
+        return this.deadlineInterrupted;
+    }
+
+    /**
+     * Check the result of a step that was made under a deadline.  A step
+     * whose deadline fired is a timeout even if it finished, so the timeout
+     * is never lost.  An interrupt left pending by the deadline of another
+     * statement is reported as a timeout too.
+     *
+     * @param timedOut The result of disarming the deadline.
+     */
+    void checkDeadline(int rc, boolean timedOut) throws SQLTimeoutException {
+        if (timedOut ||
+                (rc == Sqlite3.ReturnCodes.SQLITE_INTERRUPT.value() && this.deadlineInterrupted.get())) {
+            throw new SQLTimeoutException("Query timeout reached", "57000");
+        }
+    }
+
+    /**
+     * @return True if a statement on the connection has been stepped and
+     *   not run to completion or reset.
+     */
+    private boolean hasActiveStatements() {
+        for (Pointer<Sqlite3.Statement> stmt = Sqlite3.sqlite3_next_stmt(this.db, null);
+             stmt != null;
+             stmt = Sqlite3.sqlite3_next_stmt(this.db, stmt)) {
+            if (Sqlite3.sqlite3_stmt_busy(stmt) != 0)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Use SQLite's built-in busy handler, which sleeps until the lock is
+     * available or the timeout expires.  Any SqliteBusyHandler that was
+     * installed is removed.
+     *
+     * @param millis The timeout in milliseconds, zero to fail immediately.
+     */
+    public synchronized void setBusyTimeout(int millis) throws SQLException {
+        requireOpened();
+
+        Sqlite3.checkOk(Sqlite3.sqlite3_busy_timeout(this.db, millis), this.db);
+        this.busyHandler = null;
+    }
+
+    /**
+     * Install a busy handler, replacing any busy timeout.
+     *
+     * @param handler The handler to install or null to fail immediately when
+     *   the database is locked.
+     */
+    public synchronized void setBusyHandler(SqliteBusyHandler handler) throws SQLException {
+        requireOpened();
+
+        Sqlite3.checkOk(Sqlite3.sqlite3_busy_handler(this.db,
+                handler != null ? Pointer.pointerTo((Sqlite3.BusyCallbackBase) handler) : null,
+                null), this.db);
+        // Keep a reference so the callback is not collected while installed.
+        this.busyHandler = handler;
+    }
+
+    public synchronized SqliteBusyHandler getBusyHandler() {
+        return this.busyHandler;
+    }
+
+    /**
+     * Install a WAL hook, which replaces SQLite's auto-checkpoint.
+     *
+     * @param monitor The monitor to install or null to go back to SQLite's
+     *   auto-checkpoint.
+     */
+    public synchronized void setWalMonitor(SqliteWalMonitor monitor) throws SQLException {
+        requireOpened();
+
+        if (monitor != null) {
+            Sqlite3.sqlite3_wal_hook(this.db, Pointer.pointerTo((Sqlite3.WalHookBase) monitor), null);
+        }
+        else {
+            Sqlite3.checkOk(Sqlite3.sqlite3_wal_autocheckpoint(this.db, Sqlite3.DEFAULT_WAL_AUTOCHECKPOINT),
+                    this.db);
+        }
+        // Keep a reference so the callback is not collected while installed.
+        this.walMonitor = monitor;
+    }
+
+    public synchronized SqliteWalMonitor getWalMonitor() {
+        return this.walMonitor;
+    }
+
+    /**
+     * @return The background checkpointer started for the
+     *   "walCheckpointFrames" property or null.
+     */
+    public SqliteWalCheckpointer getWalCheckpointer() {
+        return this.walCheckpointer;
+    }
+
+    /**
+     * Checkpoint all of the databases on this connection.
+     *
+     * @see #checkpoint(String, SqliteCheckpoint.Mode)
+     */
+    public SqliteCheckpoint checkpoint(SqliteCheckpoint.Mode mode) throws SQLException {
+        return this.checkpoint(null, mode);
+    }
+
+    /**
+     * Copy the frames in the WAL back into the database.  The result is
+     * also recorded by the WAL monitor, if one is installed.
+     *
+     * @param database The database to checkpoint: "main", "temp", the name
+     *   of an attached database or null for all of them.
+     * @return The result, which is busy instead of throwing if a FULL,
+     *   RESTART or TRUNCATE checkpoint could not finish.
+     */
+    public SqliteCheckpoint checkpoint(String database, SqliteCheckpoint.Mode mode) throws SQLException {
+        requireOpened();
+
+        SqliteCheckpoint retval = SqliteCheckpoint.run(this.db,
+                database != null ? Pointer.pointerToCString(database) : null, mode);
+        SqliteWalMonitor monitor = this.getWalMonitor();
+
+        if (monitor != null)
+            monitor.record(retval);
+
+        return retval;
+    }
+
+    /**
+     * Set how many times an auto-commit statement that fails with
+     * SQLITE_BUSY or SQLITE_LOCKED before returning any rows is retried.
+     * Nothing has been changed at that point, so the whole statement can
+     * safely be run again.
+     *
+     * @param retries The number of retries, zero to disable.
+     */
+    public void setBusyRetries(int retries) {
+        if (retries < 0)
+            throw new IllegalArgumentException("The number of retries must be greater than or equal to zero");
+
+        this.busyRetries = retries;
+    }
+
+    public int getBusyRetries() {
+        return this.busyRetries;
+    }
+
+    /**
+     * @return The number of times a statement was transparently retried.
+     */
+    public long getBusyRetryCount() {
+        return this.busyRetryCount.get();
+    }
+
+    private static boolean isBusy(int rc) {
+        int primary = rc & 0xff;
+
+        return primary == Sqlite3.ReturnCodes.SQLITE_BUSY.value() ||
+                primary == Sqlite3.ReturnCodes.SQLITE_LOCKED.value();
+    }
+
+    /**
+     * Do the first sqlite3_step() for a statement, retrying it if it was
+     * blocked by a lock and retries are enabled.
+     */
+    int stepFirst(Pointer<Sqlite3.Statement> stmt) {
+        long peer = stmt.getPeer();
+
+        // SQLite drops a pending interrupt when a statement starts with no others active.
+        if (this.deadlineInterrupted.get() && !this.hasActiveStatements())
+            this.deadlineInterrupted.set(false);
+
+        int rc = NATIVE.step(peer);
+
+        for (int attempt = 1;
+             attempt <= this.busyRetries && isBusy(rc) && Sqlite3.sqlite3_get_autocommit(this.db) != 0;
+             attempt++) {
+            this.busyRetryCount.incrementAndGet();
+            NATIVE.reset(peer);
+            try {
+                Thread.sleep(SqliteBusyHandler.backoffMillis(
+                        SqliteBusyHandler.DEFAULT_INITIAL_DELAY_MILLIS,
+                        SqliteBusyHandler.DEFAULT_MAX_DELAY_MILLIS,
+                        attempt));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            rc = NATIVE.step(peer);
+        }
+
+        return rc;
+    }
+
     public String getURL() {
         return this.url;
     }
@@ -228,6 +681,130 @@ public class SqliteConnection extends SqliteCommon implements Connection {
         return this.db;
     }
 
+    /**
+     * @return The settings that were applied when the connection was opened.
+     */
+    public SqliteConfig getConfig() {
+        return this.config;
+    }
+
+    /**
+     * Open a channel for incremental reads and writes of a BLOB or TEXT
+     * value in a table.
+     *
+     * @param database The database holding the table: "main", "temp" or
+     *   the name of an attached database.
+     * @param rowid The rowid of the row to open.
+     * @param writable True to open the value for writing.
+     */
+    public SqliteBlobChannel openBlob(String database, String table, String column, long rowid, boolean writable)
+            throws SQLException {
+        requireOpened();
+
+        if (writable && this.readOnly)
+            throw new SQLNonTransientException("Cannot write to a blob on a read-only connection", "42000");
+
+        Pointer<Pointer<Sqlite3.IncrementalBlob>> blobOut = Pointer.allocatePointer(Sqlite3.IncrementalBlob.class);
+        int rc = Sqlite3.sqlite3_blob_open(this.db,
+                Pointer.pointerToCString(database),
+                Pointer.pointerToCString(table),
+                Pointer.pointerToCString(column),
+                rowid,
+                writable ? Sqlite3.SQLITE_BLOB_READWRITE : Sqlite3.SQLITE_BLOB_READONLY,
+                blobOut);
+        Pointer<Sqlite3.IncrementalBlob> blob = blobOut.get();
+
+        try {
+            Sqlite3.checkOk(rc, this.db);
+        }
+        finally {
+            if (rc != Sqlite3.ReturnCodes.SQLITE_OK.value() && blob != null)
+                Sqlite3.sqlite3_blob_close(blob.getPeer());
+        }
+
+        return new SqliteBlobChannel(this, blob.getPeer(), writable);
+    }
+
+    /**
+     * Prepare an online backup of the main database, see SqliteBackup.
+     *
+     * @param destPath The file to copy the database to.
+     */
+    public SqliteBackup backup(String destPath) throws SQLException {
+        return this.backup("main", destPath);
+    }
+
+    /**
+     * @param database The database to copy: "main", "temp" or the name of
+     *   an attached database.
+     */
+    public SqliteBackup backup(String database, String destPath) throws SQLException {
+        requireOpened();
+
+        return new SqliteBackup(this, database, destPath);
+    }
+
+    /**
+     * @return The prepared statement cache for this connection or null if
+     *   the cache was not enabled with the STATEMENT_CACHE_SIZE property.
+     */
+    public SqliteStatementCache getStatementCache() {
+        return this.statementCache;
+    }
+
+    /**
+     * @return The storage class for dates and times bound to parameters.
+     *   INTEGER columns are read back as milliseconds when this is INTEGER
+     *   and as seconds, like SQLite's unixepoch(), otherwise.
+     */
+    SqliteConfig.TemporalStorage getTemporalStorage() {
+        return this.temporalStorage;
+    }
+
+    /**
+     * @return True if the main database stores text as UTF-16.  SQLite will
+     *   convert text bound in the other encoding, so this is only used to
+     *   pick the cheaper way to bind parameters.
+     */
+    boolean isUtf16() {
+        if (!this.encodingChecked) {
+            Statement stmt = null;
+            ResultSet rs = null;
+
+            this.encodingChecked = true;
+            try {
+                stmt = this.createStatement();
+                rs = stmt.executeQuery("PRAGMA encoding");
+                this.utf16 = rs.next() && rs.getString(1).startsWith("UTF-16");
+            }
+            catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Unable to get the database encoding", e);
+            }
+            finally {
+                closeQuietly(rs);
+                closeQuietly(stmt);
+            }
+        }
+
+        return this.utf16;
+    }
+
+    /**
+     * Called by SqlitePreparedStatement.close() to give back its handle.
+     * If the statement came from the cache, it is reset and returned there
+     * for reuse, otherwise it is finalized.
+     */
+    void releaseStatement(SqliteStatementCache.Key key, Pointer<Sqlite3.Statement> stmt) {
+        if (key != null && !this.closer.isClosed()) {
+            Sqlite3.sqlite3_reset(stmt);
+            Sqlite3.sqlite3_clear_bindings(stmt);
+            this.statementCache.checkin(key, stmt);
+        }
+        else {
+            Sqlite3.sqlite3_finalize(stmt);
+        }
+    }
+
     private <T extends Statement> T trackStatement(T stmt) {
         synchronized (this.statements) {
             this.statements.add(new WeakRefWithEquals<Statement>(stmt));
@@ -301,33 +878,94 @@ public class SqliteConnection extends SqliteCommon implements Connection {
         this.setAutoCommit(false);
     }
 
+    private void closeStatements() throws SQLException {
+        synchronized (this.statements) {
+            /*
+             * JDBC Spec 9.4.4.1: All Statement objects created from a given
+             * Connection object will be closed when the close method for
+             * the Connection object is called.
+             */
+
+            while (!this.statements.isEmpty()) {
+                WeakRefWithEquals<Statement> stmtRef = this.statements.remove(this.statements.size() - 1);
+                Statement stmt = stmtRef.get();
+
+                if (stmt == null)
+                    continue;
+
+                if (!stmt.isClosed()) {
+                    LOGGER.log(Level.WARNING,
+                            "Statement was not explicitly closed -- {0}",
+                            new Object[] { stmt.toString() });
+                    stmt.close();
+                }
+            }
+        }
+    }
+
+    void setLogicalConnection(Connection logical) {
+        this.logicalConnection = logical;
+    }
+
+    /**
+     * @return The connection that statements and metadata created from this
+     *   one should report as their owner.
+     */
+    Connection getLogicalConnection() {
+        Connection retval = this.logicalConnection;
+
+        return retval != null ? retval : this;
+    }
+
+    /**
+     * Return the connection to the state it was in when it was opened so
+     * that it can be handed out again by a connection pool.  Asynchronous
+     * statements that are still queued are failed, any open statements are
+     * closed, an open transaction is rolled back, and the warnings, progress
+     * callbacks, progress step and read-only mode are cleared.  The
+     * configured PRAGMAs, busy strategy and WAL monitor are applied again in
+     * case they were changed, other PRAGMAs are left as they are.
+     */
+    synchronized void resetForReuse() throws SQLException {
+        requireOpened();
+
+        // The next borrower must not see statements the last one left queued.
+        if (this.asyncExecutor != null) {
+            this.asyncExecutor.shutdown();
+            this.asyncExecutor = null;
+        }
+        this.closeStatements();
+        if (!this.getAutoCommit()) {
+            this.executeCanned("ROLLBACK");
+        }
+        while (this.callback != null) {
+            this.popCallback();
+        }
+        this.progressStep = DEFAULT_PROGRESS_STEP;
+        this.setReadOnly(false);
+        this.setWalMonitor(this.walCheckpointer != null ? this.walCheckpointer.getMonitor() : null);
+        // Clearing the handler also clears a busy_timeout, which the PRAGMAs put back.
+        this.setBusyHandler(null);
+        this.applyPragmas();
+        this.applyBusyStrategy();
+        this.clearWarnings();
+    }
+
     @Override
     public synchronized void close() throws SQLException {
         if (!this.closer.isClosed()) {
-            synchronized (this.statements) {
-                /*
-                 * JDBC Spec 9.4.4.1: All Statement objects created from a given
-                 * Connection object will be closed when the close method for
-                 * the Connection object is called.
-                 */
-
-                while (!this.statements.isEmpty()) {
-                    WeakRefWithEquals<Statement> stmtRef = this.statements.remove(this.statements.size() - 1);
-                    Statement stmt = stmtRef.get();
-
-                    if (stmt == null)
-                        continue;
-
-                    if (!stmt.isClosed()) {
-                        LOGGER.log(Level.WARNING,
-                                "Statement was not explicitly closed -- {0}",
-                                new Object[] { stmt.toString() });
-                        stmt.close();
-                    }
-                }
+            if (this.asyncExecutor != null) {
+                this.asyncExecutor.shutdown();
             }
+            this.closeStatements();
 
+            if (this.statementCache != null) {
+                this.statementCache.clear();
+            }
             this.db.release();
+            if (this.walCheckpointer != null) {
+                this.walCheckpointer.release();
+            }
             this.closer.close();
         }
     }
@@ -536,13 +1174,27 @@ public class SqliteConnection extends SqliteCommon implements Connection {
         this.clearWarnings();
         requireResultSetType(resultSetType, resultSetConcurrency, resultSetHoldability);
 
+        SqliteStatementCache.Key key = null;
+
+        if (this.statementCache != null) {
+            key = new SqliteStatementCache.Key(s, resultSetType, resultSetConcurrency, resultSetHoldability);
+
+            Pointer<Sqlite3.Statement> cached = this.statementCache.checkout(key);
+
+            if (cached != null) {
+                return new SqlitePreparedStatement(this, cached, s, key);
+            }
+        }
+
         Pointer<Pointer<Sqlite3.Statement>> stmt_out = Pointer.allocatePointer(Sqlite3.Statement.class);
 
-        Sqlite3.checkOk(Sqlite3.sqlite3_prepare_v2(this.db,
-                Pointer.pointerToCString(this.nativeSQL(s)), -1, stmt_out, (Pointer<Pointer<Byte>>) Pointer.NULL),
+        Sqlite3.checkOk(Sqlite3.prepare(this.db,
+                Pointer.pointerToCString(this.nativeSQL(s)),
+                key != null ? Sqlite3.SQLITE_PREPARE_PERSISTENT : 0,
+                stmt_out),
                 this.db);
 
-        return new SqlitePreparedStatement(this, stmt_out.get(), s);
+        return new SqlitePreparedStatement(this, stmt_out.get(), s, key);
     }
 
     @Override
@@ -573,7 +1225,9 @@ public class SqliteConnection extends SqliteCommon implements Connection {
 
     @Override
     public Clob createClob() throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        requireOpened();
+
+        return new SqliteClob();
     }
 
     @Override
@@ -585,7 +1239,9 @@ public class SqliteConnection extends SqliteCommon implements Connection {
 
     @Override
     public NClob createNClob() throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        requireOpened();
+
+        return new SqliteClob();
     }
 
     @Override
@@ -595,7 +1251,33 @@ public class SqliteConnection extends SqliteCommon implements Connection {
 
     @Override
     public boolean isValid(int i) throws SQLException {
-        return !this.isClosed();
+        if (i < 0)
+            throw new SQLNonTransientException("Timeout must be greater than or equal to zero", "XX000");
+
+        if (this.isClosed())
+            return false;
+
+        /*
+         * Reading the schema version forces SQLite to look at the database
+         * file, so a file that was deleted or clobbered will be noticed.
+         */
+        Statement stmt = null;
+        ResultSet rs = null;
+
+        try {
+            stmt = this.createStatement();
+            stmt.setQueryTimeout(i);
+            rs = stmt.executeQuery("PRAGMA schema_version");
+            return rs.next();
+        }
+        catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Connection validation failed", e);
+            return false;
+        }
+        finally {
+            closeQuietly(rs);
+            closeQuietly(stmt);
+        }
     }
 
     @Override
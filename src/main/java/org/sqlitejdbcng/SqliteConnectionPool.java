@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A DataSource that keeps a bounded pool of connections to a single
+ * database.  Connections are validated when borrowed and reset when they
+ * are returned, so any transaction left open by the borrower is rolled
+ * back.
+ *
+ * The pool settings can only be changed before the first connection is
+ * borrowed.
+ */
+public class SqliteConnectionPool extends SqliteConnectionPoolDataSource implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(SqliteConnectionPool.class.getPackage().getName());
+
+    public static final int DEFAULT_MAX_SIZE = 8;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+    private static ScheduledExecutorService EVICTOR;
+
+    private static synchronized ScheduledExecutorService getEvictor() {
+        if (EVICTOR == null) {
+            EVICTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread retval = new Thread(runnable, "SqliteConnectionPool-evictor");
+
+                    retval.setDaemon(true);
+                    return retval;
+                }
+            });
+        }
+
+        return EVICTOR;
+    }
+
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+    private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private int validationTimeout = 1;
+    private boolean validateOnBorrow = true;
+
+    private Semaphore permits;
+    private ScheduledFuture<?> evictionTask;
+    private boolean closed;
+
+    /** The idle connections, the most recently returned is at the head. */
+    private final ArrayDeque<Entry> idle = new ArrayDeque<Entry>();
+    private final Map<SqlitePooledConnection, Entry> borrowed =
+            new IdentityHashMap<SqlitePooledConnection, Entry>();
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+
+    private final ConnectionEventListener listener = new ConnectionEventListener() {
+        @Override
+        public void connectionClosed(ConnectionEvent event) {
+            giveBack((SqlitePooledConnection) event.getSource());
+        }
+
+        @Override
+        public void connectionErrorOccurred(ConnectionEvent event) {
+            markBroken((SqlitePooledConnection) event.getSource());
+        }
+    };
+
+    private static class Entry {
+        final SqlitePooledConnection pooled;
+        long lastUsedNanos;
+        boolean broken;
+
+        Entry(SqlitePooledConnection pooled) {
+            this.pooled = pooled;
+        }
+    }
+
+    public SqliteConnectionPool() {
+    }
+
+    public SqliteConnectionPool(String url) {
+        super(url);
+    }
+
+    private synchronized void requireNotStarted() {
+        if (this.permits != null)
+            throw new IllegalStateException("The pool settings cannot be changed after it has been started");
+    }
+
+    public synchronized int getMaxSize() {
+        return this.maxSize;
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("The pool size must be at least one");
+        this.requireNotStarted();
+        this.maxSize = maxSize;
+    }
+
+    public synchronized long getMaxWaitMillis() {
+        return this.maxWaitMillis;
+    }
+
+    /**
+     * @param maxWaitMillis The longest time getConnection() will wait for a
+     *   connection to be returned when the pool is exhausted.
+     */
+    public synchronized void setMaxWaitMillis(long maxWaitMillis) {
+        this.requireNotStarted();
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public synchronized long getIdleTimeoutMillis() {
+        return this.idleTimeoutMillis;
+    }
+
+    /**
+     * @param idleTimeoutMillis How long a connection can sit in the pool
+     *   before it is closed, zero to keep idle connections forever.
+     */
+    public synchronized void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.requireNotStarted();
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public synchronized boolean isValidateOnBorrow() {
+        return this.validateOnBorrow;
+    }
+
+    public synchronized void setValidateOnBorrow(boolean validateOnBorrow) {
+        this.validateOnBorrow = validateOnBorrow;
+    }
+
+    public synchronized void setValidationTimeout(int seconds) {
+        this.validationTimeout = seconds;
+    }
+
+    private synchronized Semaphore start() throws SQLException {
+        if (this.closed)
+            throw new SQLNonTransientConnectionException("The connection pool is closed", "08000");
+
+        if (this.permits == null) {
+            this.permits = new Semaphore(this.maxSize, true);
+            if (this.idleTimeoutMillis > 0) {
+                long period = Math.max(this.idleTimeoutMillis / 2, 1);
+
+                this.evictionTask = getEvictor().scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        evictIdle();
+                    }
+                }, period, period, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return this.permits;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Semaphore sem = this.start();
+        long startNanos = System.nanoTime();
+        boolean acquired;
+
+        try {
+            acquired = sem.tryAcquire(this.getMaxWaitMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", "08001", e);
+        }
+
+        long waited = System.nanoTime() - startNanos;
+
+        this.totalWaitNanos.addAndGet(waited);
+        while (true) {
+            long max = this.maxWaitNanos.get();
+
+            if (waited <= max || this.maxWaitNanos.compareAndSet(max, waited))
+                break;
+        }
+
+        if (!acquired) {
+            this.timeoutCount.incrementAndGet();
+            throw new SQLTransientConnectionException(
+                    "Timed out waiting for a connection after " + this.getMaxWaitMillis() + "ms", "08001");
+        }
+
+        try {
+            Entry entry = this.borrow();
+
+            this.borrowCount.incrementAndGet();
+            return entry.pooled.getConnection();
+        }
+        catch (SQLException | RuntimeException e) {
+            sem.release();
+            throw e;
+        }
+    }
+
+    private Entry borrow() throws SQLException {
+        while (true) {
+            Entry entry;
+            boolean validate;
+
+            synchronized (this) {
+                if (this.closed)
+                    throw new SQLNonTransientConnectionException("The connection pool is closed", "08000");
+                entry = this.idle.pollFirst();
+                validate = this.validateOnBorrow;
+            }
+
+            if (entry == null) {
+                entry = new Entry(new SqlitePooledConnection(this.openConnection()));
+                entry.pooled.addConnectionEventListener(this.listener);
+                this.createdCount.incrementAndGet();
+            }
+            else if (validate && !entry.pooled.getPhysicalConnection().isValid(this.validationTimeout)) {
+                LOGGER.log(Level.FINE, "Discarding invalid pooled connection -- {0}", entry.pooled.getPhysicalConnection());
+                this.destroy(entry);
+                continue;
+            }
+
+            synchronized (this) {
+                this.borrowed.put(entry.pooled, entry);
+            }
+
+            return entry;
+        }
+    }
+
+    private void giveBack(SqlitePooledConnection pooled) {
+        Entry entry;
+        boolean keep;
+
+        synchronized (this) {
+            entry = this.borrowed.remove(pooled);
+            if (entry == null)
+                return;
+            keep = !this.closed && !entry.broken;
+        }
+
+        try {
+            if (keep) {
+                try {
+                    pooled.getPhysicalConnection().resetForReuse();
+                }
+                catch (SQLException e) {
+                    LOGGER.log(Level.WARNING, "Unable to reset pooled connection, discarding it", e);
+                    keep = false;
+                }
+            }
+
+            if (keep) {
+                synchronized (this) {
+                    if (!this.closed) {
+                        entry.lastUsedNanos = System.nanoTime();
+                        this.idle.addFirst(entry);
+                        return;
+                    }
+                }
+            }
+
+            this.destroy(entry);
+        }
+        finally {
+            this.permits.release();
+        }
+    }
+
+    private synchronized void markBroken(SqlitePooledConnection pooled) {
+        Entry entry = this.borrowed.get(pooled);
+
+        if (entry != null)
+            entry.broken = true;
+    }
+
+    private void destroy(Entry entry) {
+        this.destroyedCount.incrementAndGet();
+        try {
+            entry.pooled.close();
+        }
+        catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Unable to close pooled connection", e);
+        }
+    }
+
+    /**
+     * Close any connections that have been idle for longer than the idle
+     * timeout.
+     */
+    void evictIdle() {
+        List<Entry> expired = new ArrayList<Entry>();
+
+        synchronized (this) {
+            long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(this.idleTimeoutMillis);
+            Iterator<Entry> iter = this.idle.descendingIterator();
+
+            while (iter.hasNext()) {
+                Entry entry = iter.next();
+
+                // The deque is ordered by last use, so stop at the first fresh one.
+                if (entry.lastUsedNanos - cutoff > 0)
+                    break;
+                iter.remove();
+                expired.add(entry);
+            }
+        }
+
+        for (Entry entry : expired) {
+            this.destroy(entry);
+        }
+    }
+
+    /**
+     * Close the pool and all of the idle connections.  Connections that are
+     * currently borrowed are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        List<Entry> toClose;
+
+        synchronized (this) {
+            if (this.closed)
+                return;
+            this.closed = true;
+            if (this.evictionTask != null)
+                this.evictionTask.cancel(false);
+            toClose = new ArrayList<Entry>(this.idle);
+            this.idle.clear();
+        }
+
+        for (Entry entry : toClose) {
+            this.destroy(entry);
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return this.closed;
+    }
+
+    public synchronized int getActiveCount() {
+        return this.borrowed.size();
+    }
+
+    public synchronized int getIdleCount() {
+        return this.idle.size();
+    }
+
+    /**
+     * @return The fraction of the pool that is currently borrowed.
+     */
+    public synchronized double getUtilization() {
+        return (double) this.borrowed.size() / this.maxSize;
+    }
+
+    public long getBorrowCount() {
+        return this.borrowCount.get();
+    }
+
+    /**
+     * @return The number of times getConnection() gave up waiting.
+     */
+    public long getTimeoutCount() {
+        return this.timeoutCount.get();
+    }
+
+    public long getTotalWaitNanos() {
+        return this.totalWaitNanos.get();
+    }
+
+    public long getMaxWaitNanos() {
+        return this.maxWaitNanos.get();
+    }
+
+    public long getCreatedCount() {
+        return this.createdCount.get();
+    }
+
+    public long getDestroyedCount() {
+        return this.destroyedCount.get();
+    }
+}
@@ -12,7 +12,7 @@
  * this list of conditions and the following disclaimer in the documentation
  * and/or other materials provided with the distribution.
  *
- * THIS SOFTWARE IS PROVIDED BY THE AUTHORS AND CONTRIBUTORS ''AS IS'' AND ANY
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
  * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
  * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
  * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
@@ -24,51 +24,31 @@
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
-package org.sqlitejdbcng.internal;
-
-import org.bridj.Pointer;
-import org.sqlitejdbcng.SqliteConnection;
-import org.sqlitejdbcng.SqliteConnectionProgressCallback;
+package org.sqlitejdbcng;
 
+import javax.sql.ConnectionPoolDataSource;
+import javax.sql.PooledConnection;
 import java.sql.SQLException;
 
-public class TimeoutProgressCallback extends SqliteConnectionProgressCallback {
-    private long expirationTime;
-
-    public TimeoutProgressCallback(SqliteConnection conn) {
-        super(conn);
+/**
+ * A ConnectionPoolDataSource for use by external connection pools.  The
+ * built-in pool is SqliteConnectionPool.
+ */
+public class SqliteConnectionPoolDataSource extends SqliteDataSource implements ConnectionPoolDataSource {
+    public SqliteConnectionPoolDataSource() {
     }
 
-    public TimeoutProgressCallback setExpiration(long expirationTime) throws SQLException {
-        TimeoutProgressCallback retval = null;
-
-        if (expirationTime == 0) {
-            this.expirationTime = expirationTime;
-        }
-        else {
-            this.expirationTime = System.currentTimeMillis() + expirationTime;
-            this.conn.pushCallback(this);
-            retval = this;
-        }
-
-        return retval;
+    public SqliteConnectionPoolDataSource(String url) {
+        super(url);
     }
 
     @Override
-    public int apply(Pointer<Void> context) {
-        if (other != null && other.apply(context) != 0)
-            return 1;
-        if (System.currentTimeMillis() > this.expirationTime)
-            return 1;
-
-        return 0;
+    public PooledConnection getPooledConnection() throws SQLException {
+        return new SqlitePooledConnection(this.openConnection());
     }
 
     @Override
-    public void close() throws SQLException {
-        if (this.expirationTime != 0) {
-            this.conn.popCallback();
-            this.expirationTime = 0;
-        }
+    public PooledConnection getPooledConnection(String username, String password) throws SQLException {
+        return this.getPooledConnection();
     }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLNonTransientException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A DataSource that opens a new SqliteConnection for every call to
+ * getConnection().  Use SqliteConnectionPool when connections are
+ * short-lived.
+ */
+public class SqliteDataSource implements DataSource {
+    private static final Logger LOGGER = Logger.getLogger(SqliteDataSource.class.getPackage().getName());
+
+    private String url;
+    private final Properties properties = new Properties();
+    private PrintWriter logWriter;
+    private int loginTimeout;
+
+    public SqliteDataSource() {
+    }
+
+    public SqliteDataSource(String url) {
+        this.setUrl(url);
+    }
+
+    public String getUrl() {
+        return this.url;
+    }
+
+    public void setUrl(String url) {
+        if (!SqliteUrl.isSqliteUrl(url))
+            throw new IllegalArgumentException("Not a JDBC sqlite URL: " + url);
+
+        this.url = url;
+    }
+
+    /**
+     * @return The connection properties passed to every new connection.
+     *   Changes to the returned object affect connections opened later.
+     */
+    public Properties getProperties() {
+        return this.properties;
+    }
+
+    public void setProperty(String key, String value) {
+        this.properties.setProperty(key, value);
+    }
+
+    /**
+     * Add the settings from the given configuration to the connection
+     * properties.
+     */
+    public void setConfig(SqliteConfig config) {
+        this.properties.putAll(config.toProperties());
+    }
+
+    SqliteConnection openConnection() throws SQLException {
+        if (this.url == null)
+            throw new SQLNonTransientException("The DataSource URL has not been set", "08001");
+
+        Properties copy = new Properties();
+
+        copy.putAll(this.properties);
+
+        return new SqliteConnection(this.url, copy);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return this.openConnection();
+    }
+
+    /**
+     * SQLite does not have users, so the credentials are ignored.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return this.getConnection();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return this.logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter printWriter) throws SQLException {
+        this.logWriter = printWriter;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return this.loginTimeout;
+    }
+
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return LOGGER;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> tClass) throws SQLException {
+        if (tClass.isInstance(this))
+            return tClass.cast(this);
+
+        throw new SQLNonTransientException("No object implements the given class", "42000");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> aClass) throws SQLException {
+        return aClass.isInstance(this);
+    }
+}
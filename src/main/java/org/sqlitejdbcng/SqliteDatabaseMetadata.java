@@ -31,10 +31,15 @@ import org.sqlitejdbcng.internal.ColumnData;
 import org.sqlitejdbcng.internal.SQLKeywords;
 import org.sqlitejdbcng.internal.SQLTemplate;
 
+import java.nio.ByteBuffer;
 import java.sql.*;
 import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class SqliteDatabaseMetadata implements DatabaseMetaData {
+    private static final Logger LOGGER = Logger.getLogger(SqliteDatabaseMetadata.class.getName());
+
     private static final String KEYWORD_LIST;
     private static final String GET_PROCEDURES_TEMPLATE =
             SQLTemplate.readTemplate("/metadata-get-procedures.sql");
@@ -72,6 +77,7 @@ public class SqliteDatabaseMetadata implements DatabaseMetaData {
             SQLTemplate.readTemplate("/metadata-get-best-row-id.sql");
     private static final String GET_VERSION_COLUMNS_TEMPLATE =
             SQLTemplate.readTemplate("/metadata-get-version-columns.sql");
+    private static final Map<Integer, ByteBuffer> METADATA_IMAGES = new HashMap<Integer, ByteBuffer>();
     private SqliteConnection metadataDatabaseConnection;
 
     static {
@@ -84,34 +90,71 @@ public class SqliteDatabaseMetadata implements DatabaseMetaData {
         KEYWORD_LIST = Sqlite3.join(sqliteList.toArray(), ",");
     }
 
+    /**
+     * Build the metadata database by running the scripts.
+     */
     @edu.umd.cs.findbugs.annotations.SuppressWarnings("SQL_NONCONSTANT_STRING_PASSED_TO_EXECUTE")
+    private static SqliteConnection buildMetadataDatabase(int maxLength) throws SQLException {
+        SqliteConnection retval = new SqliteConnection("jdbc:sqlite::memory:",
+                new Properties());
+        Statement stmt = null;
+        try {
+            String[][] FUNCTION_STATEMENTS = {
+                    SQLTemplate.readTemplateArray("/metadata-types.sql", maxLength),
+                    SQLTemplate.readTemplateArray("/metadata-functions.sql"),
+            };
+            stmt = retval.createStatement();
+            for (String[] stmtStrings : FUNCTION_STATEMENTS) {
+                for (String stmtString : stmtStrings) {
+                    try {
+                        stmt.execute(stmtString);
+                    }
+                    catch (SQLException e) {
+                        retval.close();
+                        throw new RuntimeException(String.format(
+                                "Static statement failed: %s", stmtString), e);
+                    }
+                }
+            }
+        }
+        finally {
+            SqliteCommon.closeQuietly(stmt);
+        }
+        return retval;
+    }
+
+    /**
+     * The metadata database is only read, so after it has been built once
+     * the connections share a read-only image of it instead of running the
+     * scripts again.  The types table depends on the length limit of the
+     * connection, so there is an image for each limit.
+     */
     private synchronized SqliteConnection getMetadataDatabaseConnection() {
         if (metadataDatabaseConnection == null) {
             try {
-                metadataDatabaseConnection = new SqliteConnection("jdbc:sqlite::memory:",
-                        new Properties());
-                Statement stmt = null;
-                try {
-                    int maxLength = Sqlite3.sqlite3_limit(conn.getHandle(), Sqlite3.Limit.SQLITE_LIMIT_LENGTH.value(), -1);
-                    String[][] FUNCTION_STATEMENTS = {
-                            SQLTemplate.readTemplateArray("/metadata-types.sql", maxLength),
-                            SQLTemplate.readTemplateArray("/metadata-functions.sql"),
-                    };
-                    stmt = metadataDatabaseConnection.createStatement();
-                    for (String[] stmtStrings : FUNCTION_STATEMENTS) {
-                        for (String stmtString : stmtStrings) {
-                            try {
-                                stmt.execute(stmtString);
-                            }
-                            catch (SQLException e) {
-                                throw new RuntimeException(String.format(
-                                        "Static statement failed: %s", stmtString), e);
-                            }
+                int maxLength = Sqlite3.sqlite3_limit(conn.getHandle(), Sqlite3.Limit.SQLITE_LIMIT_LENGTH.value(), -1);
+                ByteBuffer image;
+
+                synchronized (METADATA_IMAGES) {
+                    image = METADATA_IMAGES.get(maxLength);
+                }
+                if (image != null) {
+                    metadataDatabaseConnection = SqliteConnection.openFrom(image);
+                }
+                else {
+                    metadataDatabaseConnection = buildMetadataDatabase(maxLength);
+                    try {
+                        byte[] bytes = metadataDatabaseConnection.serialize();
+
+                        image = ByteBuffer.allocateDirect(bytes.length);
+                        image.put(bytes).flip();
+                        synchronized (METADATA_IMAGES) {
+                            METADATA_IMAGES.put(maxLength, image.asReadOnlyBuffer());
                         }
                     }
-                }
-                finally {
-                    SqliteCommon.closeQuietly(stmt);
+                    catch (SQLFeatureNotSupportedException e) {
+                        LOGGER.log(Level.FINE, "Unable to share the metadata database", e);
+                    }
                 }
             }
             catch (SQLException e) {
@@ -1444,7 +1487,7 @@ public class SqliteDatabaseMetadata implements DatabaseMetaData {
 
     @Override
     public Connection getConnection() throws SQLException {
-        return this.conn;
+        return this.conn.getLogicalConnection();
     }
 
     @Override
@@ -79,7 +79,7 @@ public class SqliteDriver implements Driver {
 
     @Override
     public DriverPropertyInfo[] getPropertyInfo(String s, Properties properties) throws SQLException {
-        return new DriverPropertyInfo[0];
+        return SqliteConfig.getPropertyInfo(SqliteConfig.merge(new SqliteUrl(s), properties));
     }
 
     @Override
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.bridj.Pointer;
+import org.sqlitejdbcng.bridj.Sqlite3;
+import org.sqlitejdbcng.internal.NativeMemory;
+import org.sqlitejdbcng.internal.Sqlite3Backend;
+import org.sqlitejdbcng.internal.Sqlite3Backends;
+import org.sqlitejdbcng.internal.Utf8;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * The current parameter values of a prepared statement.
+ *
+ * Values are kept in typed slots, so the primitive setters do not need to
+ * box anything, and each slot has a dirty flag.  SQLite keeps bindings
+ * across a sqlite3_reset(), so only the slots that changed since the last
+ * execution need to be bound again.
+ *
+ * Text and blob values are written into a native buffer owned by the slot
+ * and bound with SQLITE_STATIC.  The buffers only grow, so after a few
+ * executions binding a string does not need a native allocation.  The
+ * buffers must not be released while the statement still has them bound.
+ */
+final class SqliteParameters {
+    private static final Sqlite3Backend NATIVE = Sqlite3Backends.CURRENT;
+    static final byte TAG_UNSET = 0;
+    static final byte TAG_NULL = 1;
+    static final byte TAG_LONG = 2;
+    static final byte TAG_DOUBLE = 3;
+    static final byte TAG_TEXT = 4;
+    static final byte TAG_BYTES = 5;
+    static final byte TAG_OBJECT = 6;
+
+    private static final int SQLITE_OK = (int) Sqlite3.ReturnCodes.SQLITE_OK.value();
+    private static final int SQLITE_NOMEM = (int) Sqlite3.ReturnCodes.SQLITE_NOMEM.value();
+    private static final int MIN_BUFFER = 32;
+
+    private final int paramCount;
+    private final byte[] tags;
+    private final long[] longs;
+    private final double[] doubles;
+    private final Object[] objects;
+    private final int[] objectTypes;
+    private final boolean[] dirty;
+    private boolean anyDirty;
+    private final Pointer<?>[] buffers;
+    private final int[] bufferSizes;
+    private Pointer<?> retired;
+    private byte[] byteScratch = new byte[0];
+    private char[] charScratch = new char[0];
+
+    SqliteParameters(int paramCount) {
+        this.paramCount = paramCount;
+        this.tags = new byte[paramCount];
+        this.longs = new long[paramCount];
+        this.doubles = new double[paramCount];
+        this.objects = new Object[paramCount];
+        this.objectTypes = new int[paramCount];
+        this.dirty = new boolean[paramCount];
+        this.buffers = new Pointer<?>[paramCount];
+        this.bufferSizes = new int[paramCount];
+        this.markAllDirty();
+    }
+
+    int size() {
+        return this.paramCount;
+    }
+
+    byte getTag(int param) {
+        return this.tags[param];
+    }
+
+    long getLong(int param) {
+        return this.longs[param];
+    }
+
+    double getDouble(int param) {
+        return this.doubles[param];
+    }
+
+    Object getObject(int param) {
+        return this.objects[param];
+    }
+
+    int getObjectType(int param) {
+        return this.objectTypes[param];
+    }
+
+    /**
+     * Force every slot to be bound on the next execution, for example after
+     * the bindings were cleared by someone else.
+     */
+    void markAllDirty() {
+        Arrays.fill(this.dirty, true);
+        this.anyDirty = this.paramCount > 0;
+    }
+
+    void clear() {
+        Arrays.fill(this.tags, TAG_UNSET);
+        Arrays.fill(this.objects, null);
+        this.markAllDirty();
+    }
+
+    private void set(int param, byte tag, Object obj) {
+        this.tags[param] = tag;
+        this.objects[param] = obj;
+        this.dirty[param] = true;
+        this.anyDirty = true;
+    }
+
+    void setNull(int param) {
+        if (this.tags[param] != TAG_NULL)
+            this.set(param, TAG_NULL, null);
+    }
+
+    void setLong(int param, long value) {
+        if (this.tags[param] != TAG_LONG || this.longs[param] != value) {
+            this.longs[param] = value;
+            this.set(param, TAG_LONG, null);
+        }
+    }
+
+    void setDouble(int param, double value) {
+        if (this.tags[param] != TAG_DOUBLE ||
+                Double.doubleToRawLongBits(this.doubles[param]) != Double.doubleToRawLongBits(value)) {
+            this.doubles[param] = value;
+            this.set(param, TAG_DOUBLE, null);
+        }
+    }
+
+    void setText(int param, String value) {
+        if (this.tags[param] != TAG_TEXT || this.objects[param] != value)
+            this.set(param, TAG_TEXT, value);
+    }
+
+    void setBytes(int param, byte[] value) {
+        // The array can change behind our back, so it is always rebound.
+        this.set(param, TAG_BYTES, value);
+    }
+
+    void setObject(int param, Object value, int type) {
+        this.objectTypes[param] = type;
+        this.set(param, TAG_OBJECT, value);
+    }
+
+    /**
+     * Free the native buffers, the statement must not have any of them bound
+     * anymore, i.e. it has been finalized or its bindings cleared.
+     */
+    void release() {
+        for (int lpc = 0; lpc < this.paramCount; lpc++) {
+            if (this.buffers[lpc] != null) {
+                Sqlite3.sqlite3_free(this.buffers[lpc].as(Byte.class));
+                this.buffers[lpc] = null;
+                this.bufferSizes[lpc] = 0;
+            }
+        }
+    }
+
+    /**
+     * Make sure the slot's buffer can hold the given number of bytes.  A
+     * replaced buffer is kept in the retired field until the new one has
+     * been bound, see freeRetired().
+     *
+     * @return False if the memory could not be allocated.
+     */
+    private boolean reserve(int param, int len) {
+        if (this.buffers[param] != null && len <= this.bufferSizes[param])
+            return true;
+
+        int size = Math.max(MIN_BUFFER, Math.max(len, this.bufferSizes[param] * 2));
+
+        if (size < 0)
+            size = len;
+
+        Pointer<Byte> ptr = Sqlite3.sqlite3_malloc(size);
+
+        if (ptr == null)
+            return false;
+
+        this.retired = this.buffers[param];
+        this.buffers[param] = ptr;
+        this.bufferSizes[param] = size;
+
+        return true;
+    }
+
+    private void freeRetired() {
+        if (this.retired != null) {
+            Sqlite3.sqlite3_free(this.retired.as(Byte.class));
+            this.retired = null;
+        }
+    }
+
+    private int bindText(long stmtPeer, int param, String str, boolean utf16) {
+        int len = str.length();
+        int encodedLen = Utf8.encodedLength(str);
+        int rc;
+
+        if (utf16 && encodedLen != len) {
+            // Non-ASCII text can be copied as-is into a UTF-16 database.
+            if (this.charScratch.length < len)
+                this.charScratch = new char[len];
+            str.getChars(0, len, this.charScratch, 0);
+            if (!this.reserve(param, len * 2))
+                return SQLITE_NOMEM;
+            NativeMemory.copy(this.charScratch, 0, this.buffers[param].getPeer(), len);
+            rc = NATIVE.bindText16Static(stmtPeer, param + 1, this.buffers[param].getPeer(), len * 2);
+        }
+        else {
+            if (!this.reserve(param, encodedLen))
+                return SQLITE_NOMEM;
+            if (encodedLen == len) {
+                NativeMemory.putAscii(str, this.buffers[param].getPeer());
+            }
+            else {
+                if (this.byteScratch.length < encodedLen)
+                    this.byteScratch = new byte[encodedLen];
+                Utf8.encode(str, this.byteScratch, 0);
+                NativeMemory.copy(this.byteScratch, 0, this.buffers[param].getPeer(), encodedLen);
+            }
+            rc = NATIVE.bindTextStatic(stmtPeer, param + 1, this.buffers[param].getPeer(), encodedLen);
+        }
+        this.freeRetired();
+
+        return rc;
+    }
+
+    private int bindBytes(long stmtPeer, int param, byte[] bytes) {
+        int rc;
+
+        if (!this.reserve(param, bytes.length))
+            return SQLITE_NOMEM;
+        NativeMemory.copy(bytes, 0, this.buffers[param].getPeer(), bytes.length);
+        rc = NATIVE.bindBlobStatic(stmtPeer, param + 1, this.buffers[param].getPeer(), bytes.length);
+        this.freeRetired();
+
+        return rc;
+    }
+
+    /**
+     * Bind the slots that changed since the last call.  The statement should
+     * have been reset before calling this method.
+     *
+     * @param utf16 True if text should be bound as UTF-16 when that saves
+     *   SQLite a conversion.
+     * @return The first non-OK result code from SQLite or SQLITE_OK.
+     */
+    int bind(SqlitePreparedStatement ps, Pointer<Sqlite3.Statement> stmt, boolean utf16) throws SQLException {
+        if (!this.anyDirty)
+            return SQLITE_OK;
+
+        long stmtPeer = stmt.getPeer();
+
+        for (int lpc = 0; lpc < this.paramCount; lpc++) {
+            if (!this.dirty[lpc])
+                continue;
+
+            int rc;
+
+            switch (this.tags[lpc]) {
+                case TAG_UNSET:
+                case TAG_NULL:
+                    rc = NATIVE.bindNull(stmtPeer, lpc + 1);
+                    break;
+                case TAG_LONG:
+                    rc = NATIVE.bindInt64(stmtPeer, lpc + 1, this.longs[lpc]);
+                    break;
+                case TAG_DOUBLE:
+                    rc = NATIVE.bindDouble(stmtPeer, lpc + 1, this.doubles[lpc]);
+                    break;
+                case TAG_TEXT:
+                    rc = this.bindText(stmtPeer, lpc, (String) this.objects[lpc], utf16);
+                    break;
+                case TAG_BYTES:
+                    rc = this.bindBytes(stmtPeer, lpc, (byte[]) this.objects[lpc]);
+                    break;
+                default:
+                    rc = ps.bindValue(lpc + 1, this.objects[lpc], this.objectTypes[lpc]);
+                    break;
+            }
+            if (rc != SQLITE_OK)
+                return rc;
+            this.dirty[lpc] = false;
+        }
+        this.anyDirty = false;
+
+        return SQLITE_OK;
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.PooledConnection;
+import javax.sql.StatementEvent;
+import javax.sql.StatementEventListener;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A physical SqliteConnection that hands out logical Connection handles.
+ * Closing a handle does not close the physical connection, it notifies the
+ * registered ConnectionEventListeners so the owner can recycle it.
+ *
+ * The Statements and DatabaseMetaData created through a handle are wrapped
+ * as well, so their getConnection() returns the handle and they stop
+ * working once the handle is closed.
+ */
+public class SqlitePooledConnection implements PooledConnection {
+    private final SqliteConnection conn;
+    private final List<ConnectionEventListener> connectionListeners =
+            new CopyOnWriteArrayList<ConnectionEventListener>();
+    private final List<StatementEventListener> statementListeners =
+            new CopyOnWriteArrayList<StatementEventListener>();
+    private Handle currentHandle;
+
+    SqlitePooledConnection(SqliteConnection conn) {
+        this.conn = conn;
+    }
+
+    SqliteConnection getPhysicalConnection() {
+        return this.conn;
+    }
+
+    @Override
+    public synchronized Connection getConnection() throws SQLException {
+        this.conn.requireOpened();
+
+        /*
+         * JDBC Spec 11.4: Only one logical connection may be open at a time,
+         * asking for a new one closes the previous handle.
+         */
+        if (this.currentHandle != null) {
+            this.currentHandle.closed = true;
+            this.conn.resetForReuse();
+        }
+
+        this.currentHandle = new Handle();
+        this.currentHandle.proxy = (Connection) Proxy.newProxyInstance(
+                SqlitePooledConnection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                this.currentHandle);
+        this.conn.setLogicalConnection(this.currentHandle.proxy);
+
+        return this.currentHandle.proxy;
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        if (this.currentHandle != null) {
+            this.currentHandle.closed = true;
+            this.currentHandle = null;
+        }
+        this.conn.close();
+    }
+
+    @Override
+    public void addConnectionEventListener(ConnectionEventListener listener) {
+        this.connectionListeners.add(listener);
+    }
+
+    @Override
+    public void removeConnectionEventListener(ConnectionEventListener listener) {
+        this.connectionListeners.remove(listener);
+    }
+
+    @Override
+    public void addStatementEventListener(StatementEventListener listener) {
+        this.statementListeners.add(listener);
+    }
+
+    @Override
+    public void removeStatementEventListener(StatementEventListener listener) {
+        this.statementListeners.remove(listener);
+    }
+
+    private synchronized void handleClosed(Handle handle) {
+        if (this.currentHandle != handle)
+            return;
+
+        this.currentHandle = null;
+
+        ConnectionEvent event = new ConnectionEvent(this);
+
+        for (ConnectionEventListener listener : this.connectionListeners) {
+            listener.connectionClosed(event);
+        }
+    }
+
+    private void fireConnectionError(SQLException e) {
+        ConnectionEvent event = new ConnectionEvent(this, e);
+
+        for (ConnectionEventListener listener : this.connectionListeners) {
+            listener.connectionErrorOccurred(event);
+        }
+    }
+
+    private void fireStatementEvent(PreparedStatement ps, SQLException e) {
+        StatementEvent event = e == null ? new StatementEvent(this, ps) : new StatementEvent(this, ps, e);
+
+        for (StatementEventListener listener : this.statementListeners) {
+            if (e == null)
+                listener.statementClosed(event);
+            else
+                listener.statementErrorOccurred(event);
+        }
+    }
+
+    private Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+
+            /*
+             * A non-transient connection error means the physical connection
+             * cannot be trusted anymore, so the owner needs to throw it away.
+             */
+            if (cause instanceof SQLNonTransientConnectionException ||
+                    (cause instanceof SQLException && "08000".equals(((SQLException) cause).getSQLState()))) {
+                this.fireConnectionError((SQLException) cause);
+            }
+            throw cause;
+        }
+    }
+
+    private class Handle implements InvocationHandler {
+        private Connection proxy;
+        private volatile boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SqlitePooledConnection.Handle[" + conn + "]";
+                case "isClosed":
+                    return this.closed || conn.isClosed();
+                case "close":
+                    if (!this.closed) {
+                        this.closed = true;
+                        handleClosed(this);
+                    }
+                    return null;
+                case "isValid":
+                    if (this.closed)
+                        return false;
+                    break;
+                case "unwrap":
+                case "isWrapperFor":
+                    break;
+                default:
+                    if (this.closed)
+                        throw new SQLNonTransientConnectionException("Connection is closed", "08000");
+                    break;
+            }
+
+            return wrap(this, SqlitePooledConnection.this.invoke(conn, method, args));
+        }
+    }
+
+    /**
+     * Wrap an object returned by the physical connection if it has a
+     * getConnection() method that would otherwise expose it.
+     */
+    private Object wrap(Handle handle, Object value) {
+        Class<?> iface;
+
+        if (value instanceof CallableStatement)
+            iface = CallableStatement.class;
+        else if (value instanceof PreparedStatement)
+            iface = PreparedStatement.class;
+        else if (value instanceof Statement)
+            iface = Statement.class;
+        else if (value instanceof DatabaseMetaData)
+            iface = DatabaseMetaData.class;
+        else
+            return value;
+
+        return Proxy.newProxyInstance(
+                SqlitePooledConnection.class.getClassLoader(),
+                new Class<?>[] { iface },
+                new Child(handle, value));
+    }
+
+    /**
+     * The handler for a Statement or DatabaseMetaData created through a
+     * logical connection handle.
+     */
+    private class Child implements InvocationHandler {
+        private final Handle handle;
+        private final Object target;
+
+        Child(Handle handle, Object target) {
+            this.handle = handle;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return this.target.toString();
+                case "close":
+                case "isClosed":
+                case "unwrap":
+                case "isWrapperFor":
+                    break;
+                default:
+                    if (this.handle.closed)
+                        throw new SQLNonTransientConnectionException("Connection is closed", "08000");
+                    break;
+            }
+
+            boolean listened = proxy instanceof PreparedStatement && !statementListeners.isEmpty();
+
+            try {
+                Object retval = SqlitePooledConnection.this.invoke(this.target, method, args);
+
+                switch (method.getName()) {
+                    case "getConnection":
+                        return this.handle.proxy;
+                    case "close":
+                        if (listened)
+                            fireStatementEvent((PreparedStatement) proxy, null);
+                        break;
+                }
+                return retval;
+            }
+            catch (SQLException e) {
+                if (listened)
+                    fireStatementEvent((PreparedStatement) proxy, e);
+                throw e;
+            }
+        }
+    }
+}
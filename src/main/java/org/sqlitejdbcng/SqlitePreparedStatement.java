@@ -28,46 +28,80 @@ package org.sqlitejdbcng;
 
 import org.bridj.BridJ;
 import org.bridj.Pointer;
-import org.bridj.util.Pair;
 import org.sqlitejdbcng.bridj.Sqlite3;
-import org.sqlitejdbcng.internal.TimeoutProgressCallback;
+import org.sqlitejdbcng.internal.DateTimeText;
+import org.sqlitejdbcng.internal.JavaTimeTypes;
+import org.sqlitejdbcng.internal.Sqlite3Backend;
+import org.sqlitejdbcng.internal.Sqlite3Backends;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.sql.*;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 public class SqlitePreparedStatement extends SqliteStatement implements PreparedStatement {
-    private static final Integer INTEGER_ZERO = 0;
-    private static final Integer INTEGER_ONE = 1;
+    private static final Sqlite3Backend NATIVE = Sqlite3Backends.CURRENT;
+    private static final int SQLITE_OK = (int) Sqlite3.ReturnCodes.SQLITE_OK.value();
+    private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+    private static final int CHAR_CHUNK_SIZE = STREAM_CHUNK_SIZE / 4;
+
+    /**
+     * A stream parameter, the InputStream or Reader is read when the
+     * statement is executed.  A null source binds a zero-filled blob of the
+     * given length.
+     */
+    static final class StreamValue {
+        final Object source;
+        final long length;
+
+        StreamValue(Object source, long length) {
+            this.source = source;
+            this.length = length;
+        }
+    }
 
     private final Pointer<Sqlite3.Statement> stmt;
+    private final SqliteStatementCache.Key cacheKey;
+    private boolean poolable = true;
     private final SqliteResultSetMetadata resultSetMetadata;
     private ParameterMetaData metadata;
     private final int paramCount;
-    private final Object[] paramValues;
-    private final int[] paramTypes;
-    private final List<Pair<Object[], int[]>> batchParamList =
-            new ArrayList<Pair<Object[], int[]>>();
+    private final SqliteParameters params;
+    private final SqliteBatch batch;
+    private byte[] streamChunk;
+    private char[] charChunk;
 
     public SqlitePreparedStatement(SqliteConnection conn, Pointer<Sqlite3.Statement> stmt, String query)
             throws SQLException {
+        this(conn, stmt, query, null);
+    }
+
+    SqlitePreparedStatement(SqliteConnection conn,
+                            Pointer<Sqlite3.Statement> stmt,
+                            String query,
+                            SqliteStatementCache.Key cacheKey)
+            throws SQLException {
         super(conn);
 
         this.stmt = stmt;
+        this.cacheKey = cacheKey;
         this.resultSetMetadata = new SqliteResultSetMetadata(this.stmt);
         this.lastQuery = query;
         this.paramCount = Sqlite3.sqlite3_bind_parameter_count(stmt);
-        this.paramValues = new Object[this.paramCount];
-        this.paramTypes = new int[this.paramCount];
-        Arrays.fill(this.paramTypes, -1);
+        this.params = new SqliteParameters(this.paramCount);
+        this.batch = new SqliteBatch(this.paramCount);
     }
 
     int checkParam(int index) {
@@ -79,82 +113,253 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
         return index;
     }
 
+    /**
+     * @return True if executing this statement will not modify the database.
+     */
+    boolean isReadOnlyStatement() {
+        return Sqlite3.stmt_readonly(this.stmt, this.lastQuery) != 0;
+    }
+
     @Override
     public synchronized void close() throws SQLException {
         if (!this.closed) {
             super.close();
 
-            Sqlite3.sqlite3_finalize(this.stmt);
+            this.conn.releaseStatement(this.poolable ? this.cacheKey : null, this.stmt);
+            // The statement is finalized or its bindings cleared by now.
+            this.params.release();
         }
     }
 
-    void bindParameters(Object[] values, int[] types) throws SQLException {
+    void bindParameters() throws SQLException {
         Sqlite3.checkOk(Sqlite3.sqlite3_reset(this.stmt));
-        for (int lpc = 0; lpc < this.paramCount; lpc++) {
-            int rc;
+        Sqlite3.checkOk(this.params.bind(this, this.stmt, this.conn.isUtf16()), this.conn.getHandle());
+    }
 
-            switch (types[lpc]) {
-                case -1:
-                case Types.NULL:
-                    rc = Sqlite3.sqlite3_bind_null(this.stmt, lpc + 1);
-                    break;
-                case Types.TINYINT:
-                case Types.INTEGER:
-                    rc = Sqlite3.sqlite3_bind_int(this.stmt, lpc + 1, ((Number) values[lpc]).intValue());
-                    break;
-                case Types.BIGINT:
-                    rc = Sqlite3.sqlite3_bind_int64(this.stmt, lpc + 1, ((Number) values[lpc]).longValue());
-                    break;
-                case Types.FLOAT:
-                case Types.DOUBLE:
-                    rc = Sqlite3.sqlite3_bind_double(this.stmt, lpc + 1, ((Number) values[lpc]).doubleValue());
-                    break;
-                case Types.VARCHAR: {
-                    String str = (String) values[lpc];
-                    byte[] bits = str.getBytes(StandardCharsets.UTF_8);
-                    Pointer<Byte> ptr = Sqlite3.sqlite3_malloc(bits.length);
-
-                    ptr.setBytes(bits);
-                    rc = Sqlite3.sqlite3_bind_text(
-                            this.stmt,
-                            lpc + 1,
-                            ptr,
-                            bits.length,
-                            Sqlite3.SQLITE_FREE);
+    /**
+     * Bind a value that does not fit in one of the primitive parameter
+     * slots.
+     */
+    int bindValue(int index, Object value, int type) throws SQLException {
+        int rc;
+
+        switch (type) {
+            case Types.BLOB: {
+                if (!(value instanceof SqliteBlob)) {
+                    Blob blob = (Blob) value;
+
+                    rc = this.bindStream(index, blob.getBinaryStream(), blob.length(), false);
                     break;
                 }
-                case Types.VARBINARY: {
-                    byte[] bytes = (byte[]) values[lpc];
-                    Pointer<Byte> ptr = Sqlite3.sqlite3_malloc(bytes.length);
-
-                    rc = Sqlite3.sqlite3_bind_blob(
-                            this.stmt,
-                            lpc + 1,
-                            ptr,
-                            bytes.length,
-                            Sqlite3.SQLITE_FREE);
-                    break;
+
+                SqliteBlob sb = (SqliteBlob) value;
+                // TODO: remove this use of the buffer destructor
+                Sqlite3.BufferDestructorBase destructor = new Sqlite3.BufferDestructor(sb.getHandle());
+
+                BridJ.protectFromGC(destructor);
+                rc = Sqlite3.sqlite3_bind_blob(
+                        this.stmt,
+                        index,
+                        sb.getHandle(),
+                        (int) sb.length(),
+                        Pointer.pointerTo(destructor));
+                break;
+            }
+            case Types.LONGVARBINARY: {
+                StreamValue sv = (StreamValue) value;
+
+                if (sv.source == null)
+                    rc = Sqlite3.sqlite3_bind_zeroblob(this.stmt.getPeer(), index, (int) sv.length);
+                else
+                    rc = this.bindStream(index, (InputStream) sv.source, sv.length, false);
+                break;
+            }
+            case Types.LONGVARCHAR: {
+                StreamValue sv = (StreamValue) value;
+
+                if (sv.source instanceof Reader)
+                    rc = this.bindReader(index, (Reader) sv.source, sv.length);
+                else
+                    rc = this.bindStream(index, (InputStream) sv.source, sv.length, true);
+                break;
+            }
+            case Types.CLOB: {
+                if (value instanceof SqliteClob) {
+                    SqliteClob clob = (SqliteClob) value;
+
+                    rc = clob.bind(this.stmt.getPeer(), index);
                 }
-                case Types.BLOB: {
-                    SqliteBlob sb = (SqliteBlob)values[lpc];
-                    // TODO: remove this use of the buffer destructor
-                    Sqlite3.BufferDestructorBase destructor = new Sqlite3.BufferDestructor(sb.getHandle());
-
-                    BridJ.protectFromGC(destructor);
-                    rc = Sqlite3.sqlite3_bind_blob(
-                            this.stmt,
-                            lpc + 1,
-                            sb.getHandle(),
-                            (int) sb.length(),
-                            Pointer.pointerTo(destructor));
+                else {
+                    Clob clob = (Clob) value;
+
+                    rc = this.bindReader(index, clob.getCharacterStream(), clob.length());
+                }
+                break;
+            }
+            default:
+                throw new SQLException("Internal error: unhandled SQL value -- (" +
+                        type + ") " + value, "XX000");
+        }
+
+        return rc;
+    }
+
+    /**
+     * Copy a stream into memory allocated from SQLite, which takes ownership
+     * of it when it is bound.  Only one chunk of the stream is on the Java
+     * heap at a time.
+     *
+     * @param length The number of bytes to read or -1 to read to the end of
+     *   the stream.
+     * @param text True to bind the bytes as UTF-8 text instead of a blob.
+     */
+    private int bindStream(int index, InputStream in, long length, boolean text) throws SQLException {
+        SqliteValueBuffer buffer = new SqliteValueBuffer(length >= 0 ? (int) length : STREAM_CHUNK_SIZE);
+        long total = 0;
+
+        if (this.streamChunk == null)
+            this.streamChunk = new byte[STREAM_CHUNK_SIZE];
+
+        try {
+            while (length < 0 || total < length) {
+                int want = length < 0 ? STREAM_CHUNK_SIZE : (int) Math.min(STREAM_CHUNK_SIZE, length - total);
+                int count = in.read(this.streamChunk, 0, want);
+
+                if (count < 0)
                     break;
+
+                int rc = buffer.append(this.streamChunk, 0, count);
+
+                if (rc != SQLITE_OK) {
+                    buffer.free();
+                    return rc;
                 }
-                default:
-                    throw new SQLException("Internal error: unhandled SQL value -- (" +
-                            types[lpc] + ") " + values[lpc], "XX000");
+                total += count;
+            }
+        }
+        catch (IOException e) {
+            buffer.free();
+            throw new SQLNonTransientException("Unable to read stream parameter " + index, "22000", e);
+        }
+
+        if (length >= 0 && total < length) {
+            buffer.free();
+            throw new SQLDataException(String.format("Stream parameter %d ended after %d of %d bytes",
+                    index, total, length), "22000");
+        }
+
+        return buffer.bind(this.stmt.getPeer(), index, text);
+    }
+
+    /**
+     * Encode the characters from a reader to UTF-8 in fixed-size chunks, see
+     * bindStream().  A surrogate pair split between two reads is carried
+     * over to the next chunk.
+     *
+     * @param length The number of characters to read or -1 to read to the
+     *   end.
+     */
+    private int bindReader(int index, Reader reader, long length) throws SQLException {
+        SqliteValueBuffer buffer = new SqliteValueBuffer(length >= 0 ? (int) length : STREAM_CHUNK_SIZE);
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer out;
+        long total = 0;
+        int carry = 0;
+
+        if (this.streamChunk == null)
+            this.streamChunk = new byte[STREAM_CHUNK_SIZE];
+        if (this.charChunk == null)
+            this.charChunk = new char[CHAR_CHUNK_SIZE];
+        out = ByteBuffer.wrap(this.streamChunk);
+
+        try {
+            while (true) {
+                int want = this.charChunk.length - carry;
+
+                if (length >= 0)
+                    want = (int) Math.min(want, length - total);
+
+                int count = want == 0 ? -1 : reader.read(this.charChunk, carry, want);
+                boolean done = count < 0;
+                CharBuffer in = CharBuffer.wrap(this.charChunk, 0, carry + Math.max(count, 0));
+
+                if (!done)
+                    total += count;
+
+                // A chunk of chars always fits, three bytes per char at most.
+                out.clear();
+                encoder.encode(in, out, done);
+                if (done)
+                    encoder.flush(out);
+
+                int rc = buffer.append(this.streamChunk, 0, out.position());
+
+                if (rc != SQLITE_OK) {
+                    buffer.free();
+                    return rc;
+                }
+                if (done)
+                    break;
+
+                carry = in.remaining();
+                System.arraycopy(this.charChunk, in.position(), this.charChunk, 0, carry);
             }
-            Sqlite3.checkOk(rc, this.conn.getHandle());
         }
+        catch (IOException e) {
+            buffer.free();
+            throw new SQLNonTransientException("Unable to read character stream parameter " + index, "22000", e);
+        }
+
+        if (length >= 0 && total < length) {
+            buffer.free();
+            throw new SQLDataException(String.format("Character stream parameter %d ended after %d of %d chars",
+                    index, total, length), "22000");
+        }
+
+        return buffer.bind(this.stmt.getPeer(), index, true);
+    }
+
+    /**
+     * @param type LONGVARBINARY to bind the stream as a blob or LONGVARCHAR
+     *   to bind it as text.
+     */
+    private void setStream(int i, Object source, long length, int type) throws SQLException {
+        requireOpened();
+        checkParam(i);
+
+        if (source == null) {
+            this.params.setNull(i - 1);
+            return;
+        }
+        if (length > Integer.MAX_VALUE)
+            throw new SQLDataException("Stream parameters are limited to " + Integer.MAX_VALUE + " bytes", "22001");
+
+        this.params.setObject(i - 1, new StreamValue(source, length), type);
+    }
+
+    private static long requireLength(long length) throws SQLException {
+        if (length < 0)
+            throw new SQLNonTransientException("Length must not be negative -- " + length, "22000");
+
+        return length;
+    }
+
+    /**
+     * Bind a blob of the given length that is filled with zeroes.  SQLite
+     * does not need to allocate the blob, so this is the way to store a
+     * large value: insert the zero-filled blob and then write the contents
+     * with a SqliteBlobChannel from SqliteConnection.openBlob().
+     */
+    public void setZeroBlob(int i, long length) throws SQLException {
+        requireOpened();
+        checkParam(i);
+
+        if (requireLength(length) > Integer.MAX_VALUE)
+            throw new SQLDataException("Blobs are limited to " + Integer.MAX_VALUE + " bytes", "22001");
+
+        this.params.setObject(i - 1, new StreamValue(null, length), Types.LONGVARBINARY);
     }
 
     @Override
@@ -166,31 +371,133 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
     public void clearBatch() throws SQLException {
         requireOpened();
 
-        this.batchParamList.clear();
+        this.batch.clear();
     }
 
+    /**
+     * Add rows to the batch from whole columns of values.  One array is
+     * expected for each parameter and all of the arrays must have the same
+     * length.  The supported array types are long[], int[], double[],
+     * String[] and byte[][], null elements are bound as NULL.
+     *
+     * @param columns The column arrays in parameter order.
+     */
+    public void addBatchColumns(Object... columns) throws SQLException {
+        requireOpened();
+
+        this.batch.addColumns(columns);
+    }
+
+    /**
+     * Execute the statement for every row in the batch.  The rows are run
+     * inside a transaction, or a savepoint if one is already active, that
+     * is committed even if some rows fail.  Failing rows are reported with
+     * EXECUTE_FAILED in the BatchUpdateException and the remaining rows are
+     * still executed.
+     */
     @Override
     public int[] executeBatch() throws SQLException {
-        Pair[] batchCopy = this.batchParamList.toArray(new Pair[this.batchList.size()]);
-        int[] retval = new int[batchCopy.length];
+        requireOpened();
+
+        SqliteBatch rows = this.batch;
+        int rowCount = rows.size();
+        int[] retval = new int[rowCount];
+
+        if (rowCount == 0)
+            return retval;
+
+        this.clearWarnings();
+        this.replaceResultSet(null);
+
+        long db = this.conn.getHandle().getPeer();
+        String savepoint = null;
+
+        if (this.conn.getAutoCommit()) {
+            this.conn.executeCanned("BEGIN");
+        }
+        else {
+            savepoint = new SqliteSavepoint(this.conn.nextSavepointId()).getSqliteName();
+            this.conn.executeCanned("SAVEPOINT " + savepoint);
+        }
+
+        Pointer<Byte> arena = rows.copyArena();
         SQLException lastException = null;
-        int index = 0;
+        boolean commit = false;
+
+        try {
+            long stmtPeer = this.stmt.getPeer();
+            long arenaPeer = arena.getPeer();
+            boolean abandoned = false;
+
+            for (int row = 0; row < rowCount; row++) {
+                boolean timedOut = false;
+                int rc;
+
+                NATIVE.reset(stmtPeer);
+                rc = rows.bindRow(this, stmtPeer, row, arenaPeer);
+                if (rc == Sqlite3.ReturnCodes.SQLITE_OK.value()) {
+                    this.deadline.arm(this.queryTimeoutSeconds);
+                    try {
+                        rc = NATIVE.step(stmtPeer);
+                    } finally {
+                        timedOut = this.deadline.disarm();
+                    }
+                }
 
-        this.batchParamList.clear();
+                if (!timedOut && rc == Sqlite3.ReturnCodes.SQLITE_DONE.value()) {
+                    retval[row] = NATIVE.changes(db);
+                }
+                else if (!timedOut && rc == Sqlite3.ReturnCodes.SQLITE_ROW.value()) {
+                    retval[row] = SUCCESS_NO_INFO;
+                }
+                else {
+                    SQLException e;
+
+                    try {
+                        this.conn.checkDeadline(rc, timedOut);
+                        Sqlite3.checkOk(rc, this.conn.getHandle());
+                        e = new SQLException("Unexpected result code " + rc, "XX000");
+                    }
+                    catch (SQLException failure) {
+                        e = failure;
+                    }
+                    retval[row] = EXECUTE_FAILED;
+                    e.setNextException(lastException);
+                    lastException = e;
+
+                    /*
+                     * A timeout gives up on the whole batch.  An ON CONFLICT
+                     * ROLLBACK or RAISE(ROLLBACK) has already ended the
+                     * transaction, so the earlier rows are gone as well.
+                     */
+                    if (e instanceof SQLTimeoutException ||
+                            Sqlite3.sqlite3_get_autocommit(this.conn.getHandle()) != 0) {
+                        Arrays.fill(retval, EXECUTE_FAILED);
+                        abandoned = true;
+                        break;
+                    }
+                }
+            }
+            commit = !abandoned;
+        } finally {
+            // The arena is bound with SQLITE_STATIC, so the bindings have to
+            // be dropped before it can be released.
+            Sqlite3.sqlite3_reset(this.stmt);
+            Sqlite3.sqlite3_clear_bindings(this.stmt);
+            this.params.markAllDirty();
+            arena.release();
+            rows.clear();
 
-        for (Pair pair : batchCopy) {
             try {
-                this.clearWarnings();
-                this.bindParameters((Object[])pair.getFirst(), (int[])pair.getSecond());
-                this.executeUpdate();
-                retval[index] = this.lastUpdateCount;
+                this.endBatch(savepoint, commit);
             }
             catch (SQLException e) {
-                retval[index] = EXECUTE_FAILED;
-                e.setNextException(lastException);
-                lastException = e;
+                // Do not let a failed COMMIT hide why the rows failed.
+                if (lastException != null)
+                    lastException.setNextException(e);
+                else if (commit)
+                    throw e;
             }
-            index += 1;
         }
 
         if (lastException != null) {
@@ -201,6 +508,41 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
         return retval;
     }
 
+    /**
+     * Commit or roll back the transaction or savepoint that executeBatch()
+     * started, unless SQLite has already rolled it back.
+     *
+     * @param savepoint The savepoint name or null if the batch started a
+     *   transaction.
+     */
+    private void endBatch(String savepoint, boolean commit) throws SQLException {
+        if (Sqlite3.sqlite3_get_autocommit(this.conn.getHandle()) != 0)
+            return;
+
+        if (savepoint == null) {
+            this.conn.executeCanned(commit ? "COMMIT" : "ROLLBACK");
+        }
+        else {
+            if (!commit)
+                this.conn.executeCanned("ROLLBACK TO " + savepoint);
+            this.conn.executeCanned("RELEASE " + savepoint);
+        }
+    }
+
+    @Override
+    public void setPoolable(boolean b) throws SQLException {
+        requireOpened();
+
+        this.poolable = b;
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        requireOpened();
+
+        return this.poolable;
+    }
+
     @Override
     public ResultSet executeQuery(String s) throws SQLException {
         throw new SQLNonTransientException("Use the no-argument version of executeQuery() to execute a prepared statement", "42000");
@@ -226,12 +568,65 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
             throw new SQLNonTransientException("SQL statement is not a query, use executeUpdate()", "42000");
         }
 
-        this.bindParameters(this.paramValues, this.paramTypes);
+        this.bindParameters();
         this.replaceResultSet(new SqliteResultSet(this, this.resultSetMetadata, this.stmt, this.maxRows));
 
         return this.lastResult;
     }
 
+    /**
+     * Run executeQuery() on the connection's executor thread with the
+     * current parameters.  The parameters should not be changed until the
+     * future is done.
+     *
+     * @see SqliteStatement#executeQueryAsync(String, SqliteResultSetHandler)
+     */
+    public <T> CompletableFuture<T> executeQueryAsync(final SqliteResultSetHandler<T> handler) throws SQLException {
+        requireOpened();
+
+        return this.conn.getAsyncExecutor().submit(new Callable<T>() {
+            @Override
+            public T call() throws SQLException {
+                return handle(executeQuery(), handler);
+            }
+        });
+    }
+
+    /**
+     * Publish the rows of the query with the current parameters in batches.
+     * The parameters should not be changed until the subscription is done.
+     *
+     * @see SqliteStatement#publishQuery(String, int)
+     */
+    public Flow.Publisher<ColumnBatch> publishQuery(int batchRows) throws SQLException {
+        requireOpened();
+        checkBatchRows(batchRows);
+
+        return new SqliteQueryPublisher(this.conn.getAsyncExecutor(), new Callable<SqliteResultSet>() {
+            @Override
+            public SqliteResultSet call() throws SQLException {
+                return (SqliteResultSet) executeQuery();
+            }
+        }, batchRows);
+    }
+
+    /**
+     * Run executeUpdate() on the connection's executor thread with the
+     * current parameters.
+     *
+     * @see #executeQueryAsync(SqliteResultSetHandler)
+     */
+    public CompletableFuture<Integer> executeUpdateAsync() throws SQLException {
+        requireOpened();
+
+        return this.conn.getAsyncExecutor().submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws SQLException {
+                return executeUpdate();
+            }
+        });
+    }
+
     @Override
     public int executeUpdate() throws SQLException {
         if (this.execute()) {
@@ -270,22 +665,30 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
 
     @Override
     public void setInt(int i, int val) throws SQLException {
-        this.setObject(i, val, Types.INTEGER);
+        requireOpened();
+
+        this.params.setLong(checkParam(i) - 1, val);
     }
 
     @Override
     public void setLong(int i, long val) throws SQLException {
-        this.setObject(i, val, Types.BIGINT);
+        requireOpened();
+
+        this.params.setLong(checkParam(i) - 1, val);
     }
 
     @Override
     public void setFloat(int i, float val) throws SQLException {
-        this.setObject(i, val, Types.FLOAT);
+        requireOpened();
+
+        this.params.setDouble(checkParam(i) - 1, val);
     }
 
     @Override
     public void setDouble(int i, double val) throws SQLException {
-        this.setObject(i, val, Types.DOUBLE);
+        requireOpened();
+
+        this.params.setDouble(checkParam(i) - 1, val);
     }
 
     @Override
@@ -295,7 +698,13 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
 
     @Override
     public void setString(int i, String s) throws SQLException {
-        this.setObject(i, s, Types.VARCHAR);
+        requireOpened();
+        checkParam(i);
+
+        if (s == null)
+            this.params.setNull(i - 1);
+        else
+            this.params.setText(i - 1, s);
     }
 
     @Override
@@ -320,25 +729,24 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
 
     @Override
     public void setAsciiStream(int i, InputStream inputStream, int i2) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setAsciiStream(i, inputStream, (long) i2);
     }
 
     @Override
     public void setUnicodeStream(int i, InputStream inputStream, int i2) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setStream(i, inputStream, requireLength(i2), Types.LONGVARCHAR);
     }
 
     @Override
     public void setBinaryStream(int i, InputStream inputStream, int i2) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setBinaryStream(i, inputStream, (long) i2);
     }
 
     @Override
     public void clearParameters() throws SQLException {
         requireOpened();
 
-        Arrays.fill(this.paramValues, null);
-        Arrays.fill(this.paramTypes, -1);
+        this.params.clear();
     }
 
     @Override
@@ -352,6 +760,17 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
             this.setNull(i, Types.OTHER);
             return;
         }
+        if (JavaTimeTypes.isJavaTimeValue(o)) {
+            long millis = JavaTimeTypes.toEpochMillis(o);
+
+            if (millis != Long.MIN_VALUE) {
+                if (this.conn.getTemporalStorage() == SqliteConfig.TemporalStorage.TEXT)
+                    this.setString(i, JavaTimeTypes.format(o));
+                else
+                    this.setTemporal(i, millis, null);
+                return;
+            }
+        }
 
         int typeCode;
 
@@ -367,7 +786,7 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
             typeCode = Types.INTEGER;
         else if (o instanceof Character)
             typeCode = Types.CHAR;
-        else if (o instanceof Clob)
+        else if (o instanceof Clob || o instanceof Reader)
             typeCode = Types.CLOB;
         else if (o instanceof Date)
             typeCode = Types.DATE;
@@ -401,23 +820,21 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
 
         this.clearWarnings();
 
-        this.bindParameters(this.paramValues, this.paramTypes);
+        this.bindParameters();
         if (Sqlite3.sqlite3_column_count(this.stmt) != 0) {
             this.replaceResultSet(new SqliteResultSet(this, this.resultSetMetadata, this.stmt, this.maxRows));
         }
         else {
-            TimeoutProgressCallback cb = null;
+            boolean timedOut;
             int rc;
 
+            this.deadline.arm(this.queryTimeoutSeconds);
             try {
-                cb = this.timeoutCallback.setExpiration(((long)this.getQueryTimeout()) * 1000L);
-                rc = Sqlite3.sqlite3_step(stmt.getPeer());
-                if (cb != null && rc == Sqlite3.ReturnCodes.SQLITE_INTERRUPT.value()) {
-                    throw new SQLTimeoutException("Query timeout reached", "57000");
-                }
+                rc = this.conn.stepFirst(this.stmt);
             } finally {
-                closeQuietly(cb);
+                timedOut = this.deadline.disarm();
             }
+            this.conn.checkDeadline(rc, timedOut);
 
             switch (Sqlite3.ReturnCodes.valueOf(rc)) {
                 case SQLITE_OK:
@@ -445,13 +862,12 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
     public void addBatch() throws SQLException {
         requireOpened();
 
-        this.batchParamList.add(new Pair<Object[], int[]>(this.paramValues, this.paramTypes));
+        this.batch.addRow(this.params);
     }
 
     @Override
     public void setCharacterStream(int i, Reader reader, int i2) throws SQLException {
-
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setCharacterStream(i, reader, (long) i2);
     }
 
     @Override
@@ -491,12 +907,13 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
             return;
         }
 
-        SimpleDateFormat format = DATE_FORMATTER.get();
+        long local = toLocalMillis(date.getTime(), calendar);
 
-        /* XXX */
-        calendar = DEFAULT_CALENDAR.get();
-        format.setCalendar(calendar);
-        this.setString(i, format.format(date));
+        if (this.conn.getTemporalStorage() == SqliteConfig.TemporalStorage.TEXT)
+            this.setString(i, DateTimeText.formatDate(local));
+        else
+            this.setTemporal(i, DateTimeText.floorDiv(local, DateTimeText.MILLIS_PER_DAY) * DateTimeText.MILLIS_PER_DAY,
+                    calendar);
     }
 
     @Override
@@ -506,12 +923,13 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
             return;
         }
 
-        SimpleDateFormat format = TIME_FORMATTER.get();
+        long local = toLocalMillis(time.getTime(), calendar);
 
-        if (calendar == null)
-            calendar = DEFAULT_CALENDAR.get();
-        format.setCalendar(calendar);
-        this.setString(i, format.format(time));
+        if (this.conn.getTemporalStorage() == SqliteConfig.TemporalStorage.TEXT)
+            this.setString(i, DateTimeText.formatTime(local));
+        else
+            this.setTemporal(i, local - DateTimeText.floorDiv(local, DateTimeText.MILLIS_PER_DAY) * DateTimeText.MILLIS_PER_DAY,
+                    calendar);
     }
 
     @Override
@@ -521,12 +939,24 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
             return;
         }
 
-        SimpleDateFormat format = TS_FORMATTER.get();
+        if (this.conn.getTemporalStorage() == SqliteConfig.TemporalStorage.TEXT)
+            this.setString(i, DateTimeText.formatTimestamp(toLocalMillis(timestamp.getTime(), calendar)));
+        else
+            this.setTemporal(i, timestamp.getTime(), null);
+    }
+
+    /**
+     * Bind a date and time in the numeric storage class picked by the
+     * temporalStorage setting.  Numbers are always in UTC, so a value that
+     * was truncated in the calendar's zone is converted back first.
+     */
+    private void setTemporal(int i, long localMillis, Calendar calendar) throws SQLException {
+        long millis = fromLocalMillis(localMillis, calendar);
 
-        if (calendar == null)
-            calendar = DEFAULT_CALENDAR.get();
-        format.setCalendar(calendar);
-        this.setString(i, format.format(timestamp));
+        if (this.conn.getTemporalStorage() == SqliteConfig.TemporalStorage.REAL)
+            this.setDouble(i, DateTimeText.epochMillisToJulianDay(millis));
+        else
+            this.setLong(i, millis);
     }
 
     @Override
@@ -556,32 +986,32 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
 
     @Override
     public void setNString(int i, String s) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setString(i, s);
     }
 
     @Override
     public void setNCharacterStream(int i, Reader reader, long l) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setCharacterStream(i, reader, l);
     }
 
     @Override
     public void setNClob(int i, NClob nClob) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setObject(i, nClob, Types.CLOB);
     }
 
     @Override
     public void setClob(int i, Reader reader, long l) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setCharacterStream(i, reader, l);
     }
 
     @Override
     public void setBlob(int i, InputStream inputStream, long l) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setStream(i, inputStream, requireLength(l), Types.LONGVARBINARY);
     }
 
     @Override
     public void setNClob(int i, Reader reader, long l) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setCharacterStream(i, reader, l);
     }
 
     @Override
@@ -594,9 +1024,10 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
         requireOpened();
         checkParam(i);
 
+        int param = i - 1;
+
         if (o == null) {
-            this.paramTypes[i - 1] = Types.NULL;
-            this.paramValues[i - 1] = null;
+            this.params.setNull(param);
             return;
         }
 
@@ -610,11 +1041,11 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
             case Types.STRUCT:
                 throw new SQLFeatureNotSupportedException("SQLite does not support the given type", "0A000");
             case Types.NULL:
-                this.paramValues[i - 1] = null;
+                this.params.setNull(param);
                 break;
             case Types.BIGINT:
                 if (o instanceof Number) {
-                    this.paramValues[i - 1] = o;
+                    this.params.setLong(param, ((Number) o).longValue());
                 }
                 else {
                     throw new SQLNonTransientException(
@@ -624,41 +1055,37 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
             case Types.BLOB:
             case Types.BINARY:
             case Types.VARBINARY:
-                if (o instanceof byte[]) {
-                    this.paramValues[i - 1] = o;
-                    targetSqlType = Types.VARBINARY;
-                }
-                else if (o instanceof Blob) {
-                    this.paramValues[i - 1] = o;
-                    targetSqlType = Types.BLOB;
-                }
+                if (o instanceof byte[])
+                    this.params.setBytes(param, (byte[]) o);
+                else if (o instanceof Blob)
+                    this.params.setObject(param, o, Types.BLOB);
+                else if (o instanceof InputStream)
+                    this.setStream(i, o, scaleOrLength, Types.LONGVARBINARY);
                 else
                     throw new SQLNonTransientException(
                             "Conversion to BLOB not supported for value -- " + o, "22000");
                 break;
             case Types.BIT:
             case Types.BOOLEAN:
-                if (o instanceof Boolean) {
-                    this.paramValues[i - 1] = ((Boolean)o).booleanValue() ? INTEGER_ONE : INTEGER_ZERO;
-                    targetSqlType = Types.INTEGER;
-                }
+                if (o instanceof Boolean)
+                    this.params.setLong(param, ((Boolean) o).booleanValue() ? 1 : 0);
                 else if (o instanceof Number)
-                    this.paramValues[i - 1] = o;
+                    this.params.setLong(param, ((Number) o).longValue());
                 else
                     throw new SQLNonTransientException("Conversion to boolean not supported for value -- " + o, "22000");
                 break;
             case Types.CHAR:
-                if (o instanceof Character) {
-                    this.paramValues[i - 1] = o.toString();
-                    targetSqlType = Types.VARCHAR;
-                }
+                if (o instanceof Character)
+                    this.params.setText(param, o.toString());
                 else
                     throw new SQLNonTransientException(
                             "Conversion to CHAR not supported for value -- " + o, "22000");
                 break;
             case Types.CLOB:
                 if (o instanceof Clob)
-                    this.paramValues[i - 1] = o;
+                    this.params.setObject(param, o, Types.CLOB);
+                else if (o instanceof Reader)
+                    this.setStream(i, o, scaleOrLength, Types.LONGVARCHAR);
                 else
                     throw new SQLNonTransientException(
                             "Conversion to CLOB not support for value -- " + o, "22000");
@@ -671,21 +1098,17 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
                             "Conversion to DATE not support for value -- " + o, "22000");
                 break;
             case Types.DECIMAL:
-                if (o instanceof BigDecimal) {
-                    this.paramValues[i - 1] = ((BigDecimal)o).toPlainString();
-                    targetSqlType = Types.VARCHAR;
-                }
-                else if (o instanceof Number) {
-                    this.paramValues[i - 1] = o;
-                    targetSqlType = Types.BIGINT;
-                }
+                if (o instanceof BigDecimal)
+                    this.params.setText(param, ((BigDecimal) o).toPlainString());
+                else if (o instanceof Number)
+                    this.params.setLong(param, ((Number) o).longValue());
                 else
                     throw new SQLNonTransientException(
                             "Conversion to DECIMAL not support for value -- " + o, "22000");
                 break;
             case Types.FLOAT:
                 if (o instanceof Number)
-                    this.paramValues[i - 1] = o;
+                    this.params.setDouble(param, ((Number) o).doubleValue());
                 else
                     throw new SQLNonTransientException(
                             "Conversion to FLOAT not support for value -- " + o, "22000");
@@ -693,7 +1116,7 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
             case Types.REAL:
             case Types.DOUBLE:
                 if (o instanceof Number)
-                    this.paramValues[i - 1] = o;
+                    this.params.setDouble(param, ((Number) o).doubleValue());
                 else
                     throw new SQLNonTransientException(
                             "Conversion to REAL not support for value -- " + o, "22000");
@@ -701,14 +1124,13 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
             case Types.INTEGER:
             case Types.TINYINT:
                 if (o instanceof Number)
-                    this.paramValues[i - 1] = o;
+                    this.params.setLong(param, ((Number) o).intValue());
                 else
                     throw new SQLNonTransientException(
                             "Conversion to INTEGER not support for value -- " + o, "22000");
                 break;
             case Types.NUMERIC:
-                this.paramValues[i - 1] = o.toString();
-                targetSqlType = Types.VARCHAR;
+                this.params.setText(param, o.toString());
                 break;
             case Types.TIME:
                 if (o instanceof Time)
@@ -727,61 +1149,60 @@ public class SqlitePreparedStatement extends SqliteStatement implements Prepared
                             "Conversion to TIMESTAMP not support for value -- " + o, "22000");
                 break;
             case Types.VARCHAR:
-                this.paramValues[i - 1] = o.toString();
+                this.params.setText(param, o.toString());
                 break;
             default:
                 throw new SQLFeatureNotSupportedException("SQLite does not support the given type", "0A000");
         }
-        this.paramTypes[i - 1] = targetSqlType;
     }
 
     @Override
     public void setAsciiStream(int i, InputStream inputStream, long l) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setStream(i, inputStream, requireLength(l), Types.LONGVARCHAR);
     }
 
     @Override
     public void setBinaryStream(int i, InputStream inputStream, long l) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setStream(i, inputStream, requireLength(l), Types.LONGVARBINARY);
     }
 
     @Override
     public void setCharacterStream(int i, Reader reader, long l) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setStream(i, reader, requireLength(l), Types.LONGVARCHAR);
     }
 
     @Override
     public void setAsciiStream(int i, InputStream inputStream) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setStream(i, inputStream, -1, Types.LONGVARCHAR);
     }
 
     @Override
     public void setBinaryStream(int i, InputStream inputStream) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setStream(i, inputStream, -1, Types.LONGVARBINARY);
     }
 
     @Override
     public void setCharacterStream(int i, Reader reader) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setStream(i, reader, -1, Types.LONGVARCHAR);
     }
 
     @Override
     public void setNCharacterStream(int i, Reader reader) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setCharacterStream(i, reader);
     }
 
     @Override
     public void setClob(int i, Reader reader) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setCharacterStream(i, reader);
     }
 
     @Override
     public void setBlob(int i, InputStream inputStream) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setStream(i, inputStream, -1, Types.LONGVARBINARY);
     }
 
     @Override
     public void setNClob(int i, Reader reader) throws SQLException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        this.setCharacterStream(i, reader);
     }
 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the rows of a query as ColumnBatches, stepping the statement on
+ * the connection's executor thread only when the subscriber has asked for
+ * more.  Demand is counted in batches.
+ *
+ * Each batch is filled by one executor task, so other asynchronous
+ * statements on the connection get a turn between batches.  If the queue
+ * is full, the next batch waits for a task to finish instead of failing the
+ * subscription.  There are two batches that are filled in turn.  A
+ * subscriber can keep using a batch, for example from another thread, until
+ * the onNext() call after the one that delivered it returns.  Cancelling the
+ * subscription closes the result set, which resets the statement, as soon
+ * as the executor gets to it.
+ *
+ * The query is run when a subscriber subscribes and it can only be
+ * subscribed to once.
+ */
+final class SqliteQueryPublisher implements Flow.Publisher<ColumnBatch> {
+    private static final Logger LOGGER = Logger.getLogger(SqliteQueryPublisher.class.getName());
+
+    private final SqliteAsyncExecutor executor;
+    private final Callable<SqliteResultSet> query;
+    private final int batchRows;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    SqliteQueryPublisher(SqliteAsyncExecutor executor, Callable<SqliteResultSet> query, int batchRows) {
+        this.executor = executor;
+        this.query = query;
+        this.batchRows = batchRows;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ColumnBatch> subscriber) {
+        if (subscriber == null)
+            throw new NullPointerException("subscriber");
+
+        if (!this.subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("The query can only be subscribed to once"));
+            return;
+        }
+
+        subscriber.onSubscribe(new Subscription(subscriber));
+    }
+
+    private final class Subscription implements Flow.Subscription, Callable<Void> {
+        private final Flow.Subscriber<? super ColumnBatch> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final ColumnBatch[] batches = { new ColumnBatch(), new ColumnBatch() };
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile boolean invalidRequest;
+        private SqliteResultSet rs;
+        private int nextBatch;
+
+        Subscription(Flow.Subscriber<? super ColumnBatch> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                this.invalidRequest = true;
+            }
+            else {
+                long current;
+
+                do {
+                    current = this.demand.get();
+                } while (!this.demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            }
+            this.schedule();
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            this.schedule();
+        }
+
+        private void schedule() {
+            if (this.done || !this.scheduled.compareAndSet(false, true))
+                return;
+
+            // A full queue only delays the batch, the task runs once another one finishes.
+            CompletableFuture<Void> future = executor.submitWhenRoom(this);
+
+            future.whenComplete(new BiConsumer<Void, Throwable>() {
+                @Override
+                public void accept(Void result, Throwable e) {
+                    // The task never ran because the connection was closed.
+                    if (e != null)
+                        abandon(e);
+                }
+            });
+        }
+
+        /**
+         * Only called on the executor thread, which is the only one that
+         * touches the result set.
+         */
+        private void closeResultSet() {
+            this.done = true;
+            if (this.rs != null) {
+                try {
+                    this.rs.close();
+                }
+                catch (SQLException e) {
+                    LOGGER.log(Level.FINE, "Unable to close published result set", e);
+                }
+                this.rs = null;
+            }
+        }
+
+        private void fail(Throwable e) {
+            if (this.done)
+                return;
+
+            this.closeResultSet();
+            this.subscriber.onError(e);
+        }
+
+        /**
+         * Signal an error for a task that was never run.  The result set is
+         * left alone since closing the connection closes it.
+         */
+        private void abandon(Throwable e) {
+            if (this.done)
+                return;
+
+            this.done = true;
+            this.subscriber.onError(e);
+        }
+
+        /**
+         * Deliver at most one batch.
+         */
+        @Override
+        public Void call() {
+            try {
+                if (this.done) {
+                    return null;
+                }
+                if (this.cancelled) {
+                    this.closeResultSet();
+                    return null;
+                }
+                if (this.invalidRequest) {
+                    this.fail(new IllegalArgumentException("The number of batches requested must be greater than zero"));
+                    return null;
+                }
+                if (this.demand.get() == 0) {
+                    return null;
+                }
+
+                if (this.rs == null)
+                    this.rs = query.call();
+
+                ColumnBatch batch = this.batches[this.nextBatch];
+
+                this.nextBatch ^= 1;
+                if (this.rs.fetchColumns(batchRows, batch) == 0) {
+                    this.closeResultSet();
+                    this.subscriber.onComplete();
+                    return null;
+                }
+
+                this.demand.decrementAndGet();
+                this.subscriber.onNext(batch);
+            }
+            catch (Throwable e) {
+                this.fail(e);
+            }
+            finally {
+                this.scheduled.set(false);
+            }
+
+            // Go around again for the rest of the demand or a cancel that came in while we were busy.
+            if (!this.done && (this.demand.get() > 0 || this.cancelled || this.invalidRequest))
+                this.schedule();
+
+            return null;
+        }
+    }
+}
@@ -28,42 +28,60 @@ package org.sqlitejdbcng;
 
 import org.bridj.Pointer;
 import org.sqlitejdbcng.bridj.Sqlite3;
-import org.sqlitejdbcng.internal.TimeoutProgressCallback;
-
+import org.sqlitejdbcng.internal.DateTimeText;
+import org.sqlitejdbcng.internal.DeadlineScheduler;
+import org.sqlitejdbcng.internal.JavaTimeTypes;
+import org.sqlitejdbcng.internal.NativeMemory;
+import org.sqlitejdbcng.internal.Sqlite3Backend;
+import org.sqlitejdbcng.internal.Sqlite3Backends;
+import org.sqlitejdbcng.internal.StringCache;
+import org.sqlitejdbcng.internal.Utf8;
+
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class SqliteResultSet extends SqliteCommon implements ResultSet {
-    private static final String TIME_PATTERN_STRING = "(\\d{2}):(\\d{2})(?::(\\d{2})(?:\\.(\\d{3}))?)?";
-    private static final Pattern TIME_PATTERN = Pattern.compile(TIME_PATTERN_STRING);
+    private static final Sqlite3Backend NATIVE = Sqlite3Backends.CURRENT;
+    private static final int SQLITE_ROW = (int) Sqlite3.ReturnCodes.SQLITE_ROW.value();
+    private static final int SQLITE_DONE = (int) Sqlite3.ReturnCodes.SQLITE_DONE.value();
 
-    private static final Pattern TS_PATTERN = Pattern.compile(
-            "(\\d{4})-(\\d{2})-(\\d{2})[T ]" + TIME_PATTERN_STRING);
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0).asReadOnlyBuffer();
 
     final SqliteStatement parent;
     private final Pointer<Sqlite3.Statement> stmt;
     private final int maxRows;
     private final int columnCount;
-    private final List<WeakReference<Blob>> blobList = new ArrayList<WeakReference<Blob>>();
+    private List<WeakReference<Blob>> blobList;
+    private final byte[] columnTypes;
+    private boolean typesCached;
+    private int rowGeneration;
     private final SqliteResultSetMetadata metadata;
     private boolean closed;
     private int rowNumber = 0;
     private int lastColumn;
-    private final TimeoutProgressCallback timeoutCallback;
     private int lastStepResult;
+    private byte[] scratch = new byte[64];
+    private StringCache[] stringCaches;
+    private DateTimeText dateTimeText;
+    private long temporalSeconds;
+    private int temporalNanos;
+    private int temporalOffset;
 
     public SqliteResultSet(SqliteStatement parent, SqliteResultSetMetadata metadata, Pointer<Sqlite3.Statement> stmt, int maxRows) throws SQLException {
         this.parent = parent;
@@ -71,8 +89,8 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
         this.metadata.setResultSet(this);
         this.stmt = stmt;
         this.columnCount = Sqlite3.sqlite3_column_count(this.stmt);
+        this.columnTypes = new byte[this.columnCount];
         this.maxRows = maxRows;
-        this.timeoutCallback = new TimeoutProgressCallback(this.parent.conn);
     }
 
     private void requireOpen() throws SQLException {
@@ -85,38 +103,50 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
     }
 
     void step() throws SQLException {
-        TimeoutProgressCallback cb = null;
+        DeadlineScheduler.Deadline deadline = this.parent.deadline;
+        boolean timedOut;
+        int rc;
 
+        deadline.arm(this.parent.queryTimeoutSeconds);
         try {
-            cb = this.timeoutCallback.setExpiration(((long)this.parent.getQueryTimeout()) * 1000L);
-            int rc = Sqlite3.sqlite3_step(this.stmt.getPeer());
-
-            if (cb != null && rc == Sqlite3.ReturnCodes.SQLITE_INTERRUPT.value()) {
-                throw new SQLTimeoutException("Query timeout reached", "57000");
-            }
+            // Nothing has been returned before the first step, so it can be retried.
+            rc = this.lastStepResult == 0 ?
+                    this.parent.conn.stepFirst(this.stmt) :
+                    NATIVE.step(this.stmt.getPeer());
+        } finally {
+            timedOut = deadline.disarm();
+        }
 
-            switch (Sqlite3.ReturnCodes.valueOf(rc)) {
-                case SQLITE_ROW:
-                case SQLITE_DONE:
-                    break;
-                default:
-                    Sqlite3.checkOk(rc, this.parent.getDbHandle(), true);
-                    break;
-            }
+        /*
+         * SQLite only checks for an interrupt on jumps, so a step that ran
+         * over can still produce a row or finish.  It is reported as a
+         * timeout anyway since the pending interrupt would fail the next step.
+         */
+        this.parent.conn.checkDeadline(rc, timedOut);
 
-            this.lastStepResult = rc;
-        } finally {
-            closeQuietly(cb);
+        if (rc != SQLITE_ROW && rc != SQLITE_DONE) {
+            Sqlite3.checkOk(rc, this.parent.getDbHandle(), true);
         }
+
+        this.lastStepResult = rc;
     }
 
-    @Override
-    public synchronized boolean next() throws SQLException {
-        requireOpen();
-        this.clearWarnings();
+    /**
+     * Forget the state for the current row: the cached column types and any
+     * blobs that refer to SQLite's memory for the row.
+     */
+    private void leaveRow() throws SQLException {
+        this.rowGeneration += 1;
+        if (this.typesCached) {
+            Arrays.fill(this.columnTypes, (byte) 0);
+            this.typesCached = false;
+        }
+
+        if (this.blobList == null || this.blobList.isEmpty())
+            return;
 
-        for (WeakReference<Blob> blobRef : this.blobList) {
-            Blob blob = blobRef.get();
+        for (int lpc = 0; lpc < this.blobList.size(); lpc++) {
+            Blob blob = this.blobList.get(lpc).get();
 
             if (blob == null) {
                 continue;
@@ -125,26 +155,87 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
             blob.free();
         }
         this.blobList.clear();
+    }
+
+    /**
+     * @return The storage class of a column in the current row.  The type
+     *  is cached since SQLite does not define the result of
+     *  sqlite3_column_type() after a value has been converted.
+     */
+    private int columnType(int zcol) {
+        int retval = this.columnTypes[zcol];
+
+        if (retval == 0) {
+            retval = NATIVE.columnType(this.stmt.getPeer(), zcol);
+            this.columnTypes[zcol] = (byte) retval;
+            this.typesCached = true;
+        }
+
+        return retval;
+    }
+
+    @Override
+    public synchronized boolean next() throws SQLException {
+        requireOpen();
+        this.clearWarnings();
+        this.leaveRow();
 
         if (this.maxRows == 0 || this.rowNumber < this.maxRows) {
-            if (this.rowNumber > 0) {
+            // Stepping a finished statement would start it over.
+            if (this.rowNumber > 0 && this.lastStepResult == SQLITE_ROW) {
                 step();
             }
             this.rowNumber += 1;
-            switch (Sqlite3.ReturnCodes.valueOf(this.lastStepResult)) {
-                case SQLITE_ROW:
-                    return true;
-                case SQLITE_DONE:
-                    return false;
-                default:
-                    return false;
-            }
+
+            return this.lastStepResult == SQLITE_ROW;
         }
         else {
             return false;
         }
     }
 
+    /**
+     * Read up to maxRows rows into the batch, replacing its previous
+     * contents.  The rows are stepped through in a tight loop without the
+     * per-row bookkeeping of next(), the result set is left positioned on
+     * the last row that was read.
+     *
+     * @param maxRows The maximum number of rows to read.
+     * @param batch The batch to fill.
+     * @return The number of rows read, zero if there are no more rows.
+     */
+    public synchronized int fetchColumns(int maxRows, ColumnBatch batch) throws SQLException {
+        requireOpen();
+        if (maxRows < 1)
+            throw new SQLNonTransientException("The maximum number of rows must be greater than zero", "22000");
+
+        this.clearWarnings();
+        this.leaveRow();
+
+        long peer = this.stmt.getPeer();
+        int rowLimit = maxRows;
+
+        if (this.maxRows != 0)
+            rowLimit = Math.max(0, Math.min(rowLimit, this.maxRows - this.rowNumber));
+
+        batch.reset(this.columnCount);
+        for (int lpc = 0; lpc < rowLimit; lpc++) {
+            if (this.lastStepResult != SQLITE_ROW) {
+                break;
+            }
+            if (this.rowNumber > 0) {
+                step();
+                if (this.lastStepResult != SQLITE_ROW) {
+                    break;
+                }
+            }
+            this.rowNumber += 1;
+            batch.readRow(peer);
+        }
+
+        return batch.getRowCount();
+    }
+
     @Override
     public synchronized void close() throws SQLException {
         if (!this.closed) {
@@ -174,33 +265,73 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
     }
 
     private int checkColumn(int i) throws SQLException {
+        // Keep the common case small enough to be inlined into the getters.
+        if (this.closed || this.rowNumber == 0 || i < 1 || i > this.columnCount)
+            this.columnError(i);
+
+        this.lastColumn = i;
+
+        return i - 1;
+    }
+
+    private void columnError(int i) throws SQLException {
         requireOpen();
 
         if (this.rowNumber == 0)
             throw new SQLNonTransientException("The next() method must be called before getting any data.", "24000");
         this.checkColumnIndex(i);
-
-        this.lastColumn = i;
-
-        return i - 1;
     }
 
     @Override
     public boolean wasNull() throws SQLException {
-        return (Sqlite3.sqlite3_column_type(this.stmt.getPeer(), checkColumn(this.lastColumn)) ==
+        return (this.columnType(checkColumn(this.lastColumn)) ==
                 Sqlite3.DataType.SQLITE_NULL.value());
     }
 
     @Override
     public String getString(int i) throws SQLException {
-        long ptr = Sqlite3.sqlite3_column_text(stmt.getPeer(), checkColumn(i));
-        Pointer<String> str = Pointer.pointerToAddress(ptr, String.class, null);
+        int zcol = checkColumn(i);
+        long peer = NATIVE.columnText(this.stmt.getPeer(), zcol);
 
-        if (str != null) {
-            return str.getCString();
+        if (peer == 0) {
+            return this.isNullColumn(zcol) ? null : "";
         }
 
-        return null;
+        int len = this.copyText(peer, NATIVE.columnBytes(this.stmt.getPeer(), zcol));
+
+        if (this.stringCaches != null && this.stringCaches[zcol] != null)
+            return this.stringCaches[zcol].get(this.scratch, 0, len);
+
+        return Utf8.decode(this.scratch, 0, len);
+    }
+
+    /**
+     * Keep a cache of the strings returned by getString() for a column, so
+     * a value that repeats is decoded once and the same String instance is
+     * returned after that.  This is meant for columns with a small set of
+     * short, enum-like values.
+     *
+     * @param i The column index.
+     * @param maxEntries The maximum number of distinct values to keep or
+     *  zero to turn the cache off.
+     */
+    public void setStringCacheSize(int i, int maxEntries) throws SQLException {
+        requireOpen();
+
+        int zcol = this.checkColumnIndex(i);
+
+        if (maxEntries < 0)
+            throw new SQLNonTransientException("The cache size must not be negative", "22000");
+
+        if (maxEntries == 0) {
+            if (this.stringCaches != null)
+                this.stringCaches[zcol] = null;
+            return;
+        }
+
+        if (this.stringCaches == null)
+            this.stringCaches = new StringCache[this.columnCount];
+        this.stringCaches[zcol] = new StringCache(maxEntries);
     }
 
     @Override
@@ -220,22 +351,22 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
 
     @Override
     public int getInt(int i) throws SQLException {
-        return Sqlite3.sqlite3_column_int(this.stmt.getPeer(), checkColumn(i));
+        return NATIVE.columnInt(this.stmt.getPeer(), checkColumn(i));
     }
 
     @Override
     public long getLong(int i) throws SQLException {
-        return Sqlite3.sqlite3_column_int64(this.stmt.getPeer(), checkColumn(i));
+        return NATIVE.columnInt64(this.stmt.getPeer(), checkColumn(i));
     }
 
     @Override
     public float getFloat(int i) throws SQLException {
-        return (float)Sqlite3.sqlite3_column_double(this.stmt.getPeer(), checkColumn(i));
+        return (float)NATIVE.columnDouble(this.stmt.getPeer(), checkColumn(i));
     }
 
     @Override
     public double getDouble(int i) throws SQLException {
-        return Sqlite3.sqlite3_column_double(this.stmt.getPeer(), checkColumn(i));
+        return NATIVE.columnDouble(this.stmt.getPeer(), checkColumn(i));
     }
 
     @Override
@@ -248,13 +379,166 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
     @edu.umd.cs.findbugs.annotations.SuppressWarnings("PZLA_PREFER_ZERO_LENGTH_ARRAYS")
     public byte[] getBytes(int i) throws SQLException {
         int zcol = checkColumn(i);
-        long ptr = Sqlite3.sqlite3_column_blob(this.stmt.getPeer(), zcol);
-        int blobLen = Sqlite3.sqlite3_column_bytes(this.stmt.getPeer(), zcol);
+        long ptr = NATIVE.columnBlob(this.stmt.getPeer(), zcol);
+        int blobLen = NATIVE.columnBytes(this.stmt.getPeer(), zcol);
         Pointer<Byte> blob = Pointer.pointerToAddress(ptr, Byte.class);
 
         return blob != null ? blob.getBytes(blobLen) : null;
     }
 
+    private boolean isNullColumn(int zcol) {
+        return this.columnType(zcol) == Sqlite3.DataType.SQLITE_NULL.value();
+    }
+
+    /**
+     * Get a read-only view of a column's value as a blob.  The buffer
+     * refers directly to SQLite's memory, so it is only valid until the
+     * next call to next() or close(), or until the same column is read
+     * as a different type.
+     *
+     * @param i The column index.
+     * @return The buffer or null if the column is NULL.
+     */
+    public ByteBuffer getByteBuffer(int i) throws SQLException {
+        int zcol = checkColumn(i);
+        long peer = NATIVE.columnBlob(this.stmt.getPeer(), zcol);
+        int len = NATIVE.columnBytes(this.stmt.getPeer(), zcol);
+
+        return this.view(zcol, peer, len);
+    }
+
+    /**
+     * Get a read-only view of the UTF-8 encoding of a column's value.  The
+     * same lifetime rules as getByteBuffer() apply.
+     *
+     * @param i The column index.
+     * @return The buffer, without a terminating NUL, or null if the column
+     *  is NULL.
+     */
+    public ByteBuffer getTextByteBuffer(int i) throws SQLException {
+        int zcol = checkColumn(i);
+        long peer = NATIVE.columnText(this.stmt.getPeer(), zcol);
+        int len = NATIVE.columnBytes(this.stmt.getPeer(), zcol);
+
+        return this.view(zcol, peer, len);
+    }
+
+    private ByteBuffer view(int zcol, long peer, int len) {
+        if (peer == 0) {
+            // SQLite returns a NULL pointer for empty values too.
+            return this.isNullColumn(zcol) ? null : EMPTY_BUFFER;
+        }
+
+        return NativeMemory.view(peer, len).asReadOnlyBuffer();
+    }
+
+    /**
+     * Copy a column's value as a blob into the given array.  If the array
+     * is too small, only the bytes that fit are copied.
+     *
+     * @param i The column index.
+     * @param dest The array to copy into.
+     * @param offset The offset into the array to start copying to.
+     * @return The length of the value, which may be larger than the number
+     *  of bytes copied, or -1 if the column is NULL.
+     */
+    public int getBytes(int i, byte[] dest, int offset) throws SQLException {
+        int zcol = checkColumn(i);
+        long peer = NATIVE.columnBlob(this.stmt.getPeer(), zcol);
+        int len = NATIVE.columnBytes(this.stmt.getPeer(), zcol);
+
+        if (peer == 0)
+            return this.isNullColumn(zcol) ? -1 : 0;
+
+        NativeMemory.copy(peer, dest, offset, Math.min(len, dest.length - offset));
+
+        return len;
+    }
+
+    /**
+     * Copy a column's value as a blob into the buffer at its current
+     * position and advance the position.  If the buffer is too small, only
+     * the bytes that fit are copied.
+     *
+     * @param i The column index.
+     * @param dest The buffer to copy into.
+     * @return The length of the value, which may be larger than the number
+     *  of bytes copied, or -1 if the column is NULL.
+     */
+    public int getBytes(int i, ByteBuffer dest) throws SQLException {
+        int zcol = checkColumn(i);
+        long peer = NATIVE.columnBlob(this.stmt.getPeer(), zcol);
+        int len = NATIVE.columnBytes(this.stmt.getPeer(), zcol);
+
+        if (peer == 0)
+            return this.isNullColumn(zcol) ? -1 : 0;
+
+        NativeMemory.copy(peer, dest, Math.min(len, dest.remaining()));
+
+        return len;
+    }
+
+    private int copyText(long peer, int len) {
+        if (this.scratch.length < len)
+            this.scratch = new byte[Math.max(len, this.scratch.length * 2)];
+        NativeMemory.copy(peer, this.scratch, 0, len);
+
+        return len;
+    }
+
+    /**
+     * Decode a column's value as text and append it to the builder.
+     *
+     * @param i The column index.
+     * @param dest The builder to append to.
+     * @return The number of chars appended or -1 if the column is NULL.
+     */
+    public int getChars(int i, StringBuilder dest) throws SQLException {
+        int zcol = checkColumn(i);
+        long peer = NATIVE.columnText(this.stmt.getPeer(), zcol);
+        int len = NATIVE.columnBytes(this.stmt.getPeer(), zcol);
+
+        if (peer == 0)
+            return this.isNullColumn(zcol) ? -1 : 0;
+
+        int start = dest.length();
+
+        Utf8.decode(this.scratch, 0, this.copyText(peer, len), dest);
+
+        return dest.length() - start;
+    }
+
+    /**
+     * Decode a column's value as text into the buffer at its current
+     * position and advance the position.
+     *
+     * @param i The column index.
+     * @param dest The buffer to decode into.
+     * @return The number of chars decoded or -1 if the column is NULL.
+     * @throws SQLException If the buffer does not have enough room for the
+     *  whole value, nothing is written in that case.
+     */
+    public int getChars(int i, CharBuffer dest) throws SQLException {
+        int zcol = checkColumn(i);
+        long peer = NATIVE.columnText(this.stmt.getPeer(), zcol);
+        int len = NATIVE.columnBytes(this.stmt.getPeer(), zcol);
+
+        if (peer == 0)
+            return this.isNullColumn(zcol) ? -1 : 0;
+
+        this.copyText(peer, len);
+
+        int charCount = Utf8.decodedLength(this.scratch, 0, len);
+
+        if (charCount > dest.remaining()) {
+            throw new SQLDataException("Buffer is too small for the value in column " + i +
+                    " -- need " + charCount + " chars, have " + dest.remaining(), "22001");
+        }
+        Utf8.decode(this.scratch, 0, len, dest);
+
+        return charCount;
+    }
+
     @Override
     public Date getDate(int i) throws SQLException {
         return this.getDate(i, null);
@@ -262,16 +546,7 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
 
     @Override
     public Time getTime(int i) throws SQLException {
-        Calendar cal = DEFAULT_CALENDAR.get();
-
-        /*
-         * http://www.sqlite.org/lang_datefunc.html
-         */
-        cal.clear();
-        cal.set(Calendar.YEAR, 2000);
-        cal.set(Calendar.MONTH, 1);
-        cal.set(Calendar.DAY_OF_MONTH, 1);
-        return this.getTime(i, cal);
+        return this.getTime(i, null);
     }
 
     @Override
@@ -291,7 +566,98 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
 
     @Override
     public InputStream getBinaryStream(int i) throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        int zcol = checkColumn(i);
+
+        if (this.columnType(zcol) == Sqlite3.DataType.SQLITE_NULL.value())
+            return null;
+
+        long peer = NATIVE.columnBlob(this.stmt.getPeer(), zcol);
+        int len = NATIVE.columnBytes(this.stmt.getPeer(), zcol);
+
+        return new ColumnInputStream(peer, len);
+    }
+
+    /**
+     * Reads a value directly from SQLite's copy of the row, so it does not
+     * have to be copied to the heap as a whole.  The value is only valid
+     * until the cursor moves, after that the stream fails.
+     */
+    private final class ColumnInputStream extends InputStream {
+        private final long peer;
+        private final int length;
+        private final int row;
+        private final byte[] single = new byte[1];
+        private int pos;
+        private int markPos;
+
+        ColumnInputStream(long peer, int length) {
+            this.peer = peer;
+            this.length = length;
+            this.row = rowGeneration;
+        }
+
+        private void checkRow() throws IOException {
+            if (this.row != rowGeneration || closed)
+                throw new IOException("The result set has moved off the row this stream was reading");
+        }
+
+        @Override
+        public int read() throws IOException {
+            this.checkRow();
+            if (this.pos >= this.length)
+                return -1;
+
+            NativeMemory.copy(this.peer + this.pos++, this.single, 0, 1);
+
+            return this.single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off > b.length - len)
+                throw new IndexOutOfBoundsException();
+            this.checkRow();
+            if (len == 0)
+                return 0;
+            if (this.pos >= this.length)
+                return -1;
+
+            int count = Math.min(len, this.length - this.pos);
+
+            NativeMemory.copy(this.peer + this.pos, b, off, count);
+            this.pos += count;
+
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = Math.max(0, Math.min(n, this.length - this.pos));
+
+            this.pos += count;
+
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return this.length - this.pos;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            this.markPos = this.pos;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            this.pos = this.markPos;
+        }
     }
 
     @Override
@@ -390,14 +756,14 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
     public Object getObject(int i) throws SQLException {
         Sqlite3.DataType dt;
 
-        dt = Sqlite3.DataType.valueOf(Sqlite3.sqlite3_column_type(this.stmt.getPeer(), this.checkColumn(i)));
+        dt = Sqlite3.DataType.valueOf(this.columnType(this.checkColumn(i)));
         switch (dt) {
             case SQLITE_NULL:
                 return null;
             case SQLITE_FLOAT:
                 return this.getDouble(i);
             case SQLITE_INTEGER: {
-                long bigint = Sqlite3.sqlite3_column_int64(this.stmt.getPeer(), this.checkColumn(i));
+                long bigint = NATIVE.columnInt64(this.stmt.getPeer(), this.checkColumn(i));
 
                 if (Integer.MIN_VALUE <= bigint && bigint <= Integer.MAX_VALUE) {
                     return (int)bigint;
@@ -426,7 +792,77 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
 
     @Override
     public Reader getCharacterStream(int i) throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        int zcol = checkColumn(i);
+
+        if (this.columnType(zcol) == Sqlite3.DataType.SQLITE_NULL.value())
+            return null;
+
+        long peer = NATIVE.columnText(this.stmt.getPeer(), zcol);
+        int len = NATIVE.columnBytes(this.stmt.getPeer(), zcol);
+
+        return new ColumnReader(peer, len);
+    }
+
+    /**
+     * Decodes the UTF-8 text of a value straight into the caller's buffer,
+     * see ColumnInputStream.
+     */
+    private final class ColumnReader extends Reader {
+        private final ByteBuffer in;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final int row;
+        private final char[] pair = new char[2];
+        private int pending = -1;
+        private boolean flushed;
+
+        ColumnReader(long peer, int length) {
+            this.in = length == 0 ? ByteBuffer.allocate(0) : NativeMemory.view(peer, length);
+            this.row = rowGeneration;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off > cbuf.length - len)
+                throw new IndexOutOfBoundsException();
+            if (this.row != rowGeneration || closed)
+                throw new IOException("The result set has moved off the row this reader was reading");
+            if (len == 0)
+                return 0;
+            if (this.pending >= 0) {
+                cbuf[off] = (char) this.pending;
+                this.pending = -1;
+                return 1;
+            }
+            if (this.flushed)
+                return -1;
+
+            CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+
+            this.decoder.decode(this.in, out, true);
+            if (!this.in.hasRemaining()) {
+                this.decoder.flush(out);
+                this.flushed = true;
+            }
+
+            int count = out.position() - off;
+
+            if (count == 0 && this.in.hasRemaining()) {
+                // Only room for one char, but the next one is a surrogate pair.
+                out = CharBuffer.wrap(this.pair);
+                this.decoder.decode(this.in, out, true);
+                cbuf[off] = this.pair[0];
+                this.pending = this.pair[1];
+                count = 1;
+            }
+
+            return count == 0 ? -1 : count;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
     }
 
     @Override
@@ -814,8 +1250,8 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
 
     @Override
     public synchronized Blob getBlob(int i) throws SQLException {
-        long peer = Sqlite3.sqlite3_column_blob(this.stmt.getPeer(), checkColumn(i));
-        int len = Sqlite3.sqlite3_column_bytes(this.stmt.getPeer(), checkColumn(i));
+        long peer = NATIVE.columnBlob(this.stmt.getPeer(), checkColumn(i));
+        int len = NATIVE.columnBytes(this.stmt.getPeer(), checkColumn(i));
         Pointer<Byte> ptr = Pointer.pointerToAddress(peer, Byte.class);
 
         if (ptr == null) {
@@ -824,6 +1260,8 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
 
         SqliteBlob retval = new SqliteBlob(ptr.validBytes(len));
 
+        if (this.blobList == null)
+            this.blobList = new ArrayList<WeakReference<Blob>>();
         this.blobList.add(new WeakReference<Blob>(retval));
 
         return retval;
@@ -831,7 +1269,7 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
 
     @Override
     public Clob getClob(int i) throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        return this.getNClob(i);
     }
 
     @Override
@@ -856,7 +1294,7 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
 
     @Override
     public Clob getClob(String s) throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        return this.getClob(this.findColumn(s));
     }
 
     @Override
@@ -864,24 +1302,87 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
         throw new SQLFeatureNotSupportedException("SQLite does not support arrays", "0A000");
     }
 
-    @Override
-    public Date getDate(int i, Calendar calendar) throws SQLException {
-        String dateString = this.getString(i);
-        SimpleDateFormat dateFormat = DATE_FORMATTER.get();
+    /**
+     * Read a date and time from any of SQLite's storage classes: ISO-8601
+     * text, a Julian day number as a REAL or unix time as an INTEGER.  An
+     * INTEGER is in seconds unless the connection's temporalStorage setting
+     * is INTEGER, then it is in milliseconds like the values it binds.  The
+     * result is left in the temporal fields, the seconds are relative to
+     * the epoch in the time zone of the value.  Text without a time zone
+     * has an offset of NO_OFFSET, numbers are always in UTC.
+     *
+     * @return False if the value is NULL.
+     */
+    private boolean readTemporal(int i, String kind) throws SQLException {
+        int zcol = checkColumn(i);
+        int type = this.columnType(zcol);
 
-        if (dateString == null)
-            return null;
+        if (type == Sqlite3.DataType.SQLITE_NULL.value())
+            return false;
 
-        if (calendar == null)
-            calendar = DEFAULT_CALENDAR.get();
+        if (type == Sqlite3.DataType.SQLITE_INTEGER.value()) {
+            long value = NATIVE.columnInt64(this.stmt.getPeer(), zcol);
 
-        try {
-            dateFormat.setCalendar(calendar);
-            dateFormat.parse(dateString);
-            return new Date(calendar.getTime().getTime());
-        } catch (ParseException e) {
-            throw new SQLDataException("Invalid date", "22000", e);
+            if (this.parent.conn.getTemporalStorage() == SqliteConfig.TemporalStorage.INTEGER) {
+                this.setTemporalMillis(value);
+            }
+            else {
+                this.temporalSeconds = value;
+                this.temporalNanos = 0;
+                this.temporalOffset = 0;
+            }
+        }
+        else if (type == Sqlite3.DataType.SQLITE_FLOAT.value()) {
+            this.setTemporalMillis(DateTimeText.julianDayToEpochMillis(NATIVE.columnDouble(this.stmt.getPeer(), zcol)));
+        }
+        else {
+            long peer = NATIVE.columnText(this.stmt.getPeer(), zcol);
+            int len = peer == 0 ? 0 : this.copyText(peer, NATIVE.columnBytes(this.stmt.getPeer(), zcol));
+
+            if (this.dateTimeText == null)
+                this.dateTimeText = new DateTimeText();
+            if (!this.dateTimeText.parse(this.scratch, 0, len)) {
+                throw new SQLDataException("Invalid " + kind + " -- " + Utf8.decode(this.scratch, 0, len),
+                        "22000");
+            }
+            this.temporalSeconds = this.dateTimeText.getLocalEpochSecond();
+            this.temporalNanos = this.dateTimeText.getNanos();
+            this.temporalOffset = this.dateTimeText.getOffsetSeconds();
+        }
+
+        return true;
+    }
+
+    private void setTemporalMillis(long millis) {
+        this.temporalSeconds = DateTimeText.floorDiv(millis, 1000);
+        this.temporalNanos = (int) (millis - this.temporalSeconds * 1000) * 1000000;
+        this.temporalOffset = 0;
+    }
+
+    /**
+     * @return The value read by readTemporal() in milliseconds since the
+     *  epoch.  A value without a time zone is taken to be in the zone of the
+     *  calendar, or UTC if there is no calendar.
+     */
+    private long temporalMillis(Calendar calendar, boolean dateOnly) {
+        long local = this.temporalSeconds * 1000L + this.temporalNanos / 1000000;
+
+        if (this.temporalOffset != DateTimeText.NO_OFFSET) {
+            local = toLocalMillis(local - this.temporalOffset * 1000L, calendar);
+        }
+        if (dateOnly) {
+            local = DateTimeText.floorDiv(local, DateTimeText.MILLIS_PER_DAY) * DateTimeText.MILLIS_PER_DAY;
         }
+
+        return fromLocalMillis(local, calendar);
+    }
+
+    @Override
+    public Date getDate(int i, Calendar calendar) throws SQLException {
+        if (!this.readTemporal(i, "date"))
+            return null;
+
+        return new Date(this.temporalMillis(calendar, true));
     }
 
     @Override
@@ -891,37 +1392,10 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
 
     @Override
     public Time getTime(int i, Calendar calendar) throws SQLException {
-        String timeString = this.getString(i);
-
-        if (timeString == null)
+        if (!this.readTemporal(i, "time"))
             return null;
 
-        if (calendar == null) {
-            calendar = DEFAULT_CALENDAR.get();
-            calendar.clear();
-        }
-
-        Matcher m = TIME_PATTERN.matcher(timeString);
-        String val;
-
-        if (!m.matches()) {
-            throw new SQLDataException("Invalid time -- " + timeString, "22000");
-        }
-
-        calendar.set(Calendar.HOUR_OF_DAY, Integer.parseInt(m.group(1)));
-        calendar.set(Calendar.MINUTE, Integer.parseInt(m.group(2)));
-        calendar.set(Calendar.SECOND, 0);
-        calendar.set(Calendar.MILLISECOND, 0);
-        val = m.group(3);
-        if (val != null) {
-            calendar.set(Calendar.SECOND, Integer.parseInt(m.group(3)));
-            val = m.group(4);
-            if (val != null) {
-                calendar.set(Calendar.MILLISECOND, Integer.parseInt(m.group(4)));
-            }
-        }
-
-        return new Time(calendar.getTime().getTime());
+        return new Time(this.temporalMillis(calendar, false));
     }
 
     @Override
@@ -931,34 +1405,14 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
 
     @Override
     public Timestamp getTimestamp(int i, Calendar calendar) throws SQLException {
-        String optval, value = this.getString(i);
-
-        if (value == null)
+        if (!this.readTemporal(i, "timestamp"))
             return null;
 
-        Calendar cal = DEFAULT_CALENDAR.get();
-        Matcher m = TS_PATTERN.matcher(value);
+        Timestamp retval = new Timestamp(this.temporalMillis(calendar, false));
 
-        if (!m.matches()) {
-            throw new SQLDataException("Bad timestamp value -- " + value, "22000");
-        }
-
-        cal.clear();
-        cal.set(Calendar.YEAR, Integer.parseInt(m.group(1)));
-        cal.set(Calendar.MONTH, Integer.parseInt(m.group(2)) - 1);
-        cal.set(Calendar.DAY_OF_MONTH, Integer.parseInt(m.group(3)));
-        cal.set(Calendar.HOUR, Integer.parseInt(m.group(4)));
-        cal.set(Calendar.MINUTE, Integer.parseInt(m.group(5)));
-        optval = m.group(6);
-        if (optval != null) {
-            cal.set(Calendar.SECOND, Integer.parseInt(optval));
-            optval = m.group(7);
-            if (optval != null) {
-                cal.set(Calendar.MILLISECOND, Integer.parseInt(optval));
-            }
-        }
+        retval.setNanos(this.temporalNanos);
 
-        return new Timestamp(cal.getTimeInMillis());
+        return retval;
     }
 
     @Override
@@ -1074,12 +1528,19 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
 
     @Override
     public NClob getNClob(int i) throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        int zcol = checkColumn(i);
+
+        if (this.columnType(zcol) == Sqlite3.DataType.SQLITE_NULL.value())
+            return null;
+
+        long peer = NATIVE.columnText(this.stmt.getPeer(), zcol);
+
+        return SqliteClob.fromUtf8(peer, NATIVE.columnBytes(this.stmt.getPeer(), zcol));
     }
 
     @Override
     public NClob getNClob(String s) throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        return this.getNClob(this.findColumn(s));
     }
 
     @Override
@@ -1104,22 +1565,22 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
 
     @Override
     public String getNString(int i) throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        return this.getString(i);
     }
 
     @Override
     public String getNString(String s) throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        return this.getNString(this.findColumn(s));
     }
 
     @Override
     public Reader getNCharacterStream(int i) throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        return this.getCharacterStream(i);
     }
 
     @Override
     public Reader getNCharacterStream(String s) throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        return this.getNCharacterStream(this.findColumn(s));
     }
 
     @Override
@@ -1263,7 +1724,61 @@ public class SqliteResultSet extends SqliteCommon implements ResultSet {
     }
 
     public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        if (type == null)
+            throw new SQLNonTransientException("The type to convert to must not be null", "22000");
+
+        Object retval;
+
+        if (this.isNullColumn(checkColumn(columnIndex)))
+            return null;
+
+        if (type == String.class)
+            retval = this.getString(columnIndex);
+        else if (type == Integer.class)
+            retval = this.getInt(columnIndex);
+        else if (type == Long.class)
+            retval = this.getLong(columnIndex);
+        else if (type == Double.class)
+            retval = this.getDouble(columnIndex);
+        else if (type == Float.class)
+            retval = this.getFloat(columnIndex);
+        else if (type == Short.class)
+            retval = this.getShort(columnIndex);
+        else if (type == Byte.class)
+            retval = this.getByte(columnIndex);
+        else if (type == Boolean.class)
+            retval = this.getBoolean(columnIndex);
+        else if (type == BigDecimal.class)
+            retval = this.getBigDecimal(columnIndex);
+        else if (type == byte[].class)
+            retval = this.getBytes(columnIndex);
+        else if (type == Blob.class)
+            retval = this.getBlob(columnIndex);
+        else if (type == Date.class)
+            retval = this.getDate(columnIndex);
+        else if (type == Time.class)
+            retval = this.getTime(columnIndex);
+        else if (type == Timestamp.class)
+            retval = this.getTimestamp(columnIndex);
+        else if (type == Object.class)
+            retval = this.getObject(columnIndex);
+        else if (JavaTimeTypes.isJavaTimeType(type)) {
+            this.readTemporal(columnIndex, type.getSimpleName());
+            retval = JavaTimeTypes.fromEpochSecond(type,
+                    this.temporalOffset == DateTimeText.NO_OFFSET ?
+                            this.temporalSeconds : this.temporalSeconds - this.temporalOffset,
+                    this.temporalNanos,
+                    this.temporalOffset);
+        }
+        else
+            retval = null;
+
+        if (retval == null) {
+            throw new SQLFeatureNotSupportedException("Conversion to " + type.getName() + " is not supported",
+                    "0A000");
+        }
+
+        return type.cast(retval);
     }
 
     public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
@@ -0,0 +1,697 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.sqlitejdbcng.bridj.Sqlite3;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLNonTransientException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A DataSource that splits the work for a WAL-mode database between a single
+ * writer connection and a pool of reader connections.
+ *
+ * The Connections returned by this object route each statement:
+ * <ul>
+ *   <li>While a transaction is open, everything goes to the writer.</li>
+ *   <li>Statements created while the connection is read-only go to a
+ *   reader.</li>
+ *   <li>PreparedStatements are prepared on a reader and moved to the writer
+ *   if sqlite3_stmt_readonly() says they will modify the database.  They
+ *   stay on the connection they were prepared on.  A query prepared before
+ *   a transaction was started keeps reading from the reader, so it does not
+ *   see the transaction's own uncommitted changes.  Prepare the query again
+ *   after calling setAutoCommit(false) if it needs to.</li>
+ *   <li>Plain Statements are routed the same way each time they are
+ *   executed, since their SQL is not known until then.  Batches go to the
+ *   writer.</li>
+ * </ul>
+ *
+ * The writer is only held by a Connection while it has a transaction or
+ * open statements on the writer, so other threads can take their turn.
+ * Connection settings, like the transaction isolation or client info, are
+ * recorded and applied to whichever reader or writer is borrowed.
+ * The database is switched to WAL mode when the router is started, so it
+ * must be a file and not an in-memory database.
+ */
+public class SqliteRoutingDataSource extends SqliteDataSource implements Closeable {
+    private static final long SQLITE_AUTH = Sqlite3.ReturnCodes.SQLITE_AUTH.value();
+    private static final Method PREPARE_STATEMENT;
+
+    static {
+        try {
+            PREPARE_STATEMENT = Connection.class.getMethod("prepareStatement", String.class);
+        }
+        catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private int readerCount = Runtime.getRuntime().availableProcessors();
+    private long maxWaitMillis = SqliteConnectionPool.DEFAULT_MAX_WAIT_MILLIS;
+    private SqliteConnectionPool writerPool;
+    private SqliteConnectionPool readerPool;
+    private boolean closed;
+
+    private final AtomicLong readerStatements = new AtomicLong();
+    private final AtomicLong writerStatements = new AtomicLong();
+
+    public SqliteRoutingDataSource() {
+    }
+
+    public SqliteRoutingDataSource(String url) {
+        super(url);
+    }
+
+    private synchronized void requireNotStarted() {
+        if (this.writerPool != null)
+            throw new IllegalStateException("The router settings cannot be changed after it has been started");
+    }
+
+    public synchronized int getReaderCount() {
+        return this.readerCount;
+    }
+
+    /**
+     * @param readerCount The number of reader connections, defaults to the
+     *   number of processors.
+     */
+    public synchronized void setReaderCount(int readerCount) {
+        if (readerCount < 1)
+            throw new IllegalArgumentException("There must be at least one reader");
+        this.requireNotStarted();
+        this.readerCount = readerCount;
+    }
+
+    public synchronized void setMaxWaitMillis(long maxWaitMillis) {
+        this.requireNotStarted();
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    private synchronized void start() throws SQLException {
+        if (this.closed)
+            throw new SQLNonTransientConnectionException("The router is closed", "08000");
+
+        if (this.writerPool != null)
+            return;
+
+        SqliteConnectionPool writer = new SqliteConnectionPool(this.getUrl());
+        SqliteConnectionPool reader = new SqliteConnectionPool(this.getUrl());
+
+        writer.getProperties().putAll(this.getProperties());
+        writer.setMaxSize(1);
+        writer.setMaxWaitMillis(this.maxWaitMillis);
+        reader.getProperties().putAll(this.getProperties());
+        reader.setMaxSize(this.readerCount);
+        reader.setMaxWaitMillis(this.maxWaitMillis);
+
+        try (Connection conn = writer.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+        }
+
+        this.writerPool = writer;
+        this.readerPool = reader;
+    }
+
+    /**
+     * @return The pool holding the writer connection, or null if the router
+     *   has not been started.
+     */
+    public synchronized SqliteConnectionPool getWriterPool() {
+        return this.writerPool;
+    }
+
+    /**
+     * @return The pool holding the reader connections, or null if the router
+     *   has not been started.
+     */
+    public synchronized SqliteConnectionPool getReaderPool() {
+        return this.readerPool;
+    }
+
+    /**
+     * @return The number of statements that were routed to a reader.
+     */
+    public long getReaderStatementCount() {
+        return this.readerStatements.get();
+    }
+
+    /**
+     * @return The number of statements that were routed to the writer.
+     */
+    public long getWriterStatementCount() {
+        return this.writerStatements.get();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        this.start();
+
+        return (Connection) Proxy.newProxyInstance(
+                SqliteRoutingDataSource.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new Router());
+    }
+
+    @Override
+    public void close() {
+        SqliteConnectionPool writer, reader;
+
+        synchronized (this) {
+            this.closed = true;
+            writer = this.writerPool;
+            reader = this.readerPool;
+        }
+
+        if (writer != null) {
+            writer.close();
+            reader.close();
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * A setter call made on a logical object that needs to be repeated on
+     * each physical object that stands in for it.
+     */
+    private static class Setting {
+        final Method method;
+        final Object[] args;
+
+        Setting(Method method, Object[] args) {
+            this.method = method;
+            this.args = args;
+        }
+
+        /**
+         * Record the call, replacing an earlier call of the same setter.
+         */
+        static void record(Map<String, Setting> settings, Method method, Object[] args) {
+            String key = method.getName() + "/" + method.getParameterTypes().length;
+
+            // setClientInfo(name, value) only replaces the one property.
+            if (method.getName().equals("setClientInfo") && args.length == 2)
+                key += "/" + args[0];
+            settings.remove(key);
+            settings.put(key, new Setting(method, args));
+        }
+
+        static void apply(Map<String, Setting> settings, Object target) throws Throwable {
+            for (Setting setting : settings.values()) {
+                SqliteRoutingDataSource.invoke(target, setting.method, setting.args);
+            }
+        }
+    }
+
+    /**
+     * The logical connection handed out to the application.
+     */
+    private class Router implements InvocationHandler {
+        private Connection proxy;
+        private Connection reader;
+        private Connection writer;
+        private int writerStatementCount;
+        private boolean readOnly;
+        private boolean autoCommit = true;
+        private boolean closed;
+        /** The settings made on this connection, in the order they were made. */
+        private final Map<String, Setting> settings = new LinkedHashMap<String, Setting>();
+
+        private Connection getReader() throws Throwable {
+            if (this.reader == null) {
+                Connection conn = readerPool.getConnection();
+
+                try {
+                    Setting.apply(this.settings, conn);
+                    conn.setReadOnly(true);
+                }
+                catch (Throwable e) {
+                    conn.close();
+                    throw e;
+                }
+                this.reader = conn;
+            }
+
+            return this.reader;
+        }
+
+        private Connection getWriter() throws Throwable {
+            if (this.writer == null) {
+                Connection conn = writerPool.getConnection();
+
+                try {
+                    Setting.apply(this.settings, conn);
+                }
+                catch (Throwable e) {
+                    conn.close();
+                    throw e;
+                }
+                this.writer = conn;
+            }
+
+            return this.writer;
+        }
+
+        /**
+         * @return True if this connection is in the middle of a transaction
+         *   and must stay on the writer.
+         */
+        private boolean isPinned() throws SQLException {
+            return !this.autoCommit || (this.writer != null && !this.writer.getAutoCommit());
+        }
+
+        private synchronized void writerStatementClosed() throws SQLException {
+            this.writerStatementCount -= 1;
+            this.releaseWriter();
+        }
+
+        private void releaseWriter() throws SQLException {
+            if (this.writer != null && this.writerStatementCount == 0 && !this.isPinned()) {
+                Connection conn = this.writer;
+
+                this.writer = null;
+                conn.close();
+            }
+        }
+
+        private Object onWriter(Object stmt) {
+            writerStatements.incrementAndGet();
+            this.writerStatementCount += 1;
+
+            return this.wrap(stmt, true);
+        }
+
+        private Object onReader(Object stmt) {
+            readerStatements.incrementAndGet();
+
+            return this.wrap(stmt, false);
+        }
+
+        private Object wrap(final Object stmt, final boolean onWriter) {
+            final Connection logical = this.proxy;
+            Class<?> iface = stmt instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+
+            return Proxy.newProxyInstance(
+                    SqliteRoutingDataSource.class.getClassLoader(),
+                    new Class<?>[] { iface },
+                    new InvocationHandler() {
+                        private boolean closed;
+
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            switch (method.getName()) {
+                                case "getConnection":
+                                    return logical;
+                                case "close":
+                                    Object retval = SqliteRoutingDataSource.invoke(stmt, method, args);
+
+                                    if (onWriter && !this.closed)
+                                        writerStatementClosed();
+                                    this.closed = true;
+                                    return retval;
+                                default:
+                                    return SqliteRoutingDataSource.invoke(stmt, method, args);
+                            }
+                        }
+                    });
+        }
+
+        /**
+         * Call a connection setter on one of the physical connections.
+         */
+        private Object set(Connection conn, Method method, Object[] args) throws Throwable {
+            if (conn != this.reader)
+                return SqliteRoutingDataSource.invoke(conn, method, args);
+
+            // The reader's authorizer would refuse the PRAGMAs run by some setters.
+            conn.setReadOnly(false);
+            try {
+                return SqliteRoutingDataSource.invoke(conn, method, args);
+            }
+            finally {
+                conn.setReadOnly(true);
+            }
+        }
+
+        /**
+         * Prepare a statement on a reader to find out if it modifies the
+         * database.
+         *
+         * @return The statement if it is read-only, otherwise null.
+         */
+        private PreparedStatement prepareOnReader(Method method, Object[] args) throws Throwable {
+            PreparedStatement ps = null;
+
+            try {
+                ps = (PreparedStatement) SqliteRoutingDataSource.invoke(this.getReader(), method, args);
+            }
+            catch (SQLException e) {
+                // The reader's authorizer refuses anything that writes.
+                if (e.getErrorCode() != SQLITE_AUTH)
+                    throw e;
+            }
+
+            if (ps != null) {
+                if (ps.unwrap(SqlitePreparedStatement.class).isReadOnlyStatement())
+                    return ps;
+                ps.close();
+            }
+
+            return null;
+        }
+
+        private Object prepare(Method method, Object[] args) throws Throwable {
+            if (this.isPinned())
+                return this.onWriter(SqliteRoutingDataSource.invoke(this.getWriter(), method, args));
+
+            if (this.readOnly)
+                return this.onReader(SqliteRoutingDataSource.invoke(this.getReader(), method, args));
+
+            PreparedStatement ps = this.prepareOnReader(method, args);
+
+            if (ps != null)
+                return this.onReader(ps);
+
+            return this.onWriter(SqliteRoutingDataSource.invoke(this.getWriter(), method, args));
+        }
+
+        /**
+         * Pick the connection for one execution of a plain Statement.
+         *
+         * @param sql The SQL to execute or null for a batch.
+         * @return True if it needs to run on the writer.
+         */
+        private boolean route(String sql) throws Throwable {
+            boolean retval;
+
+            if (this.isPinned())
+                retval = true;
+            else if (this.readOnly)
+                retval = false;
+            else if (sql == null)
+                retval = true;
+            else {
+                PreparedStatement ps = this.prepareOnReader(PREPARE_STATEMENT, new Object[] { sql });
+
+                retval = ps == null;
+                if (ps != null)
+                    ps.close();
+            }
+
+            if (retval)
+                writerStatements.incrementAndGet();
+            else
+                readerStatements.incrementAndGet();
+
+            return retval;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            this.proxy = (Connection) proxy;
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SqliteRoutingDataSource.Connection[" + getUrl() + "]";
+                case "isClosed":
+                    return this.closed;
+                case "close":
+                    if (!this.closed) {
+                        this.closed = true;
+                        this.writerStatementCount = 0;
+                        try {
+                            if (this.writer != null)
+                                this.writer.close();
+                        }
+                        finally {
+                            this.writer = null;
+                            if (this.reader != null)
+                                this.reader.close();
+                            this.reader = null;
+                        }
+                    }
+                    return null;
+                case "isValid":
+                    if (this.closed)
+                        return false;
+                    break;
+                default:
+                    if (this.closed)
+                        throw new SQLNonTransientConnectionException("Connection is closed", "08000");
+                    break;
+            }
+
+            switch (name) {
+                case "setReadOnly":
+                    if (this.isPinned())
+                        throw new SQLNonTransientException(
+                                "Operation cannot be performed in the middle of a transaction", "25000");
+                    this.readOnly = (Boolean) args[0];
+                    return null;
+                case "isReadOnly":
+                    return this.readOnly;
+                case "getAutoCommit":
+                    return !this.isPinned();
+                case "setAutoCommit": {
+                    boolean value = (Boolean) args[0];
+
+                    if (!value) {
+                        if (!this.isPinned() && this.readOnly)
+                            this.getWriter().setReadOnly(true);
+                        this.getWriter().setAutoCommit(false);
+                        this.autoCommit = false;
+                    }
+                    else {
+                        this.autoCommit = true;
+                        if (this.writer != null) {
+                            this.writer.setAutoCommit(true);
+                            this.releaseWriter();
+                        }
+                    }
+                    return null;
+                }
+                case "commit":
+                case "rollback":
+                case "setSavepoint":
+                case "releaseSavepoint": {
+                    Object retval = SqliteRoutingDataSource.invoke(this.getWriter(), method, args);
+
+                    this.releaseWriter();
+                    return retval;
+                }
+                case "createStatement":
+                    return Proxy.newProxyInstance(
+                            SqliteRoutingDataSource.class.getClassLoader(),
+                            new Class<?>[] { Statement.class },
+                            new RoutedStatement(method, args));
+                case "prepareStatement":
+                    return this.prepare(method, args);
+                default: {
+                    Connection target = this.isPinned() ? this.getWriter() : this.getReader();
+
+                    if (!name.startsWith("set"))
+                        return SqliteRoutingDataSource.invoke(target, method, args);
+
+                    Connection other = target == this.writer ? this.reader : this.writer;
+                    Object retval = this.set(target, method, args);
+
+                    if (other != null)
+                        this.set(other, method, args);
+                    Setting.record(this.settings, method, args);
+                    return retval;
+                }
+            }
+        }
+
+        /**
+         * A plain Statement that picks a reader or the writer each time it is
+         * executed.  The physical statement is kept until the next execution
+         * needs the other kind of connection, so its results stay readable.
+         */
+        private class RoutedStatement implements InvocationHandler {
+            private final Method createMethod;
+            private final Object[] createArgs;
+            private final Map<String, Setting> settings = new LinkedHashMap<String, Setting>();
+            private final List<String> batch = new ArrayList<String>();
+            private Statement target;
+            private boolean targetOnWriter;
+            private boolean closed;
+
+            RoutedStatement(Method createMethod, Object[] createArgs) {
+                this.createMethod = createMethod;
+                this.createArgs = createArgs;
+            }
+
+            private Statement bind(boolean onWriter) throws Throwable {
+                if (this.target != null && this.targetOnWriter == onWriter)
+                    return this.target;
+
+                this.unbind();
+
+                Connection conn = onWriter ? getWriter() : getReader();
+                Statement stmt = (Statement) SqliteRoutingDataSource.invoke(conn, this.createMethod, this.createArgs);
+
+                try {
+                    Setting.apply(this.settings, stmt);
+                }
+                catch (Throwable e) {
+                    stmt.close();
+                    throw e;
+                }
+                if (onWriter)
+                    writerStatementCount += 1;
+                this.target = stmt;
+                this.targetOnWriter = onWriter;
+
+                return stmt;
+            }
+
+            private void unbind() throws SQLException {
+                Statement stmt = this.target;
+
+                if (stmt == null)
+                    return;
+
+                this.target = null;
+                try {
+                    stmt.close();
+                }
+                finally {
+                    if (this.targetOnWriter && !Router.this.closed)
+                        writerStatementClosed();
+                }
+            }
+
+            private void requireOpened() throws SQLException {
+                // The physical statement closes itself after closeOnCompletion().
+                if (!this.closed && this.target != null && this.target.isClosed()) {
+                    this.closed = true;
+                    this.unbind();
+                }
+                if (this.closed)
+                    throw new SQLNonTransientException("Statement is closed for business");
+                if (Router.this.closed)
+                    throw new SQLNonTransientConnectionException("Connection is closed", "08000");
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+
+                switch (name) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "SqliteRoutingDataSource.Statement[" + getUrl() + "]";
+                }
+
+                synchronized (Router.this) {
+                    switch (name) {
+                        case "isClosed":
+                            return this.closed || (this.target != null && this.target.isClosed());
+                        case "close":
+                            if (!this.closed) {
+                                this.closed = true;
+                                this.unbind();
+                            }
+                            return null;
+                    }
+
+                    this.requireOpened();
+                    switch (name) {
+                        case "getConnection":
+                            return Router.this.proxy;
+                        case "execute":
+                        case "executeQuery":
+                        case "executeUpdate":
+                        case "executeLargeUpdate":
+                            return SqliteRoutingDataSource.invoke(
+                                    this.bind(route((String) args[0])), method, args);
+                        case "addBatch":
+                            this.batch.add((String) args[0]);
+                            return null;
+                        case "clearBatch":
+                            this.batch.clear();
+                            return null;
+                        case "executeBatch":
+                        case "executeLargeBatch": {
+                            Statement stmt = this.bind(route(null));
+
+                            try {
+                                for (String sql : this.batch) {
+                                    stmt.addBatch(sql);
+                                }
+                                return SqliteRoutingDataSource.invoke(stmt, method, args);
+                            }
+                            finally {
+                                this.batch.clear();
+                            }
+                        }
+                        default: {
+                            Statement stmt = this.target != null ? this.target : this.bind(isPinned());
+                            Object retval = SqliteRoutingDataSource.invoke(stmt, method, args);
+
+                            if (name.startsWith("set") || name.equals("closeOnCompletion"))
+                                Setting.record(this.settings, method, args);
+                            return retval;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
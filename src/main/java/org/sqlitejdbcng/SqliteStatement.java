@@ -28,11 +28,14 @@ package org.sqlitejdbcng;
 
 import org.bridj.Pointer;
 import org.sqlitejdbcng.bridj.Sqlite3;
-import org.sqlitejdbcng.internal.TimeoutProgressCallback;
+import org.sqlitejdbcng.internal.DeadlineScheduler;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,11 +52,12 @@ public class SqliteStatement extends SqliteCommon implements Statement {
     protected SqliteResultSet lastResult;
     protected int lastUpdateCount;
     protected boolean closed;
-    protected final TimeoutProgressCallback timeoutCallback;
+    protected final DeadlineScheduler.Deadline deadline;
 
     public SqliteStatement(SqliteConnection conn) {
         this.conn = conn;
-        this.timeoutCallback = new TimeoutProgressCallback(conn);
+        this.deadline = DeadlineScheduler.newDeadline(conn.getHandle(), conn.getDeadlineFlag(),
+                conn.getDeadlineInterruptFlag());
     }
 
     Pointer<Sqlite3.Sqlite3Db> getDbHandle() {
@@ -123,6 +127,88 @@ public class SqliteStatement extends SqliteCommon implements Statement {
         return this.lastResult;
     }
 
+    /**
+     * Run executeQuery() on the connection's executor thread and pass the
+     * result set to the handler there.  The statement should not be used
+     * until the future is done.  Cancelling the future interrupts the
+     * query if it is running.
+     */
+    public <T> CompletableFuture<T> executeQueryAsync(final String sql, final SqliteResultSetHandler<T> handler)
+            throws SQLException {
+        requireOpened();
+
+        return this.conn.getAsyncExecutor().submit(new Callable<T>() {
+            @Override
+            public T call() throws SQLException {
+                return handle(executeQuery(sql), handler);
+            }
+        });
+    }
+
+    static <T> T handle(ResultSet rs, SqliteResultSetHandler<T> handler) throws SQLException {
+        try {
+            return handler.handle(rs);
+        }
+        finally {
+            closeQuietly(rs);
+        }
+    }
+
+    /**
+     * Run a query on the connection's executor thread and publish its rows
+     * in batches as the subscriber asks for them, see SqliteQueryPublisher.
+     *
+     * @param batchRows The maximum number of rows in a batch.
+     */
+    public Flow.Publisher<ColumnBatch> publishQuery(final String sql, int batchRows) throws SQLException {
+        requireOpened();
+        checkBatchRows(batchRows);
+
+        return new SqliteQueryPublisher(this.conn.getAsyncExecutor(), new Callable<SqliteResultSet>() {
+            @Override
+            public SqliteResultSet call() throws SQLException {
+                return (SqliteResultSet) executeQuery(sql);
+            }
+        }, batchRows);
+    }
+
+    static void checkBatchRows(int batchRows) throws SQLException {
+        if (batchRows < 1)
+            throw new SQLNonTransientException("The number of rows in a batch must be greater than zero", "22000");
+    }
+
+    /**
+     * Run executeUpdate() on the connection's executor thread.
+     *
+     * @see #executeQueryAsync(String, SqliteResultSetHandler)
+     */
+    public CompletableFuture<Integer> executeUpdateAsync(final String sql) throws SQLException {
+        requireOpened();
+
+        return this.conn.getAsyncExecutor().submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws SQLException {
+                return executeUpdate(sql);
+            }
+        });
+    }
+
+    /**
+     * Run executeBatch() on the connection's executor thread.
+     *
+     * @see #executeQueryAsync(String, SqliteResultSetHandler)
+     */
+    public CompletableFuture<int[]> executeBatchAsync() throws SQLException {
+        requireOpened();
+
+        return this.conn.getAsyncExecutor().submit(new Callable<int[]>() {
+            @Override
+            public int[] call() throws SQLException {
+                return executeBatch();
+            }
+        });
+    }
+
     @Override
     public int executeUpdate(String s) throws SQLException {
         if (this.execute(s)) {
@@ -206,18 +292,17 @@ public class SqliteStatement extends SqliteCommon implements Statement {
      * Sets a timeout for any executed statements.
      *
      * Implementation details:
-     * - The timeout is implemented through the progress callback
-     *   mechanism in SQLite, so it applies to all statements concurrently
-     *   running on a connection.  However, connections should not be shared
-     *   across threads, so this shouldn't be a problem.
-     * - For queries executed through executeQuery(), the statement is not
-     *   executed until ResultSet.next() is run and the timeout is applied
-     *   at that time.  The next() method will also be the one throwing the
-     *   exception.
-     * - If a timeout is applied to a statement and cancel() is called, the
-     *   driver will throw a SQLTimeoutException since the SQLite library
-     *   does not distinguish between sqlite3_interrupt() being called and
-     *   a progress handler returning a non-zero return code.
+     * - The timeout applies to each call into sqlite3_step(), so it limits
+     *   how long a single execute() or ResultSet.next() can take and not
+     *   the time taken to read the whole result set.
+     * - Timeouts are enforced by a shared watchdog thread that checks
+     *   deadlines with a resolution of tens of milliseconds and calls
+     *   sqlite3_interrupt() on the connection when a step runs over.  The
+     *   progress handler is not used, so it stays free for callbacks
+     *   pushed by the application.
+     * - sqlite3_interrupt() affects every statement running on the
+     *   connection.  However, connections should not be shared across
+     *   threads, so this shouldn't be a problem.
      *
      * {@inheritDoc}
      */
@@ -274,11 +359,11 @@ public class SqliteStatement extends SqliteCommon implements Statement {
                 }
             }
             else {
-                TimeoutProgressCallback cb = null;
+                boolean timedOut;
                 int rc;
 
+                this.deadline.arm(this.queryTimeoutSeconds);
                 try {
-                    cb = this.timeoutCallback.setExpiration(((long)this.getQueryTimeout()) * 1000L);
                     /*
                      * The sqlite3_changes() function reports the changes for
                      * last DML statement that was executed and not the last
@@ -289,14 +374,12 @@ public class SqliteStatement extends SqliteCommon implements Statement {
                      */
                     int initialChanges = Sqlite3.sqlite3_total_changes(this.conn.getHandle());
 
-                    rc = Sqlite3.sqlite3_step(stmt.getPeer());
+                    rc = this.conn.stepFirst(stmt);
                     changeDiff = Sqlite3.sqlite3_total_changes(this.conn.getHandle()) - initialChanges;
-                    if (cb != null && rc == Sqlite3.ReturnCodes.SQLITE_INTERRUPT.value()) {
-                        throw new SQLTimeoutException("Query timeout reached");
-                    }
                 } finally {
-                    closeQuietly(cb);
+                    timedOut = this.deadline.disarm();
                 }
+                this.conn.checkDeadline(rc, timedOut);
 
                 switch (Sqlite3.ReturnCodes.valueOf(rc)) {
                     case SQLITE_OK:
@@ -453,7 +536,7 @@ public class SqliteStatement extends SqliteCommon implements Statement {
     public Connection getConnection() throws SQLException {
         requireOpened();
 
-        return this.conn;
+        return this.conn.getLogicalConnection();
     }
 
     @Override
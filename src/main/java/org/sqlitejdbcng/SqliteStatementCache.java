@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.bridj.Pointer;
+import org.sqlitejdbcng.bridj.Sqlite3;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A per-connection LRU cache of prepared statement handles.  Handles are
+ * checked out when a statement is prepared and returned when the
+ * SqlitePreparedStatement is closed, so only idle handles live in the
+ * cache.  Handles that fall off the end of the cache are finalized.
+ */
+public class SqliteStatementCache {
+    static final class Key {
+        private final String sql;
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+        private final int resultSetHoldability;
+
+        Key(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.resultSetHoldability = resultSetHoldability;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key) o;
+
+            return this.resultSetType == key.resultSetType &&
+                    this.resultSetConcurrency == key.resultSetConcurrency &&
+                    this.resultSetHoldability == key.resultSetHoldability &&
+                    this.sql.equals(key.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.sql.hashCode();
+
+            result = 31 * result + this.resultSetType;
+            result = 31 * result + this.resultSetConcurrency;
+            result = 31 * result + this.resultSetHoldability;
+
+            return result;
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Pointer<Sqlite3.Statement>> idle;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    SqliteStatementCache(int capacity) {
+        this.capacity = capacity;
+        this.idle = new LinkedHashMap<Key, Pointer<Sqlite3.Statement>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Pointer<Sqlite3.Statement>> eldest) {
+                if (this.size() > SqliteStatementCache.this.capacity) {
+                    Sqlite3.sqlite3_finalize(eldest.getValue());
+                    SqliteStatementCache.this.evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    synchronized Pointer<Sqlite3.Statement> checkout(Key key) {
+        Pointer<Sqlite3.Statement> retval = this.idle.remove(key);
+
+        if (retval != null)
+            this.hits += 1;
+        else
+            this.misses += 1;
+
+        return retval;
+    }
+
+    /**
+     * Return a handle to the cache.  The caller is expected to have reset
+     * the statement and cleared its bindings.
+     */
+    synchronized void checkin(Key key, Pointer<Sqlite3.Statement> stmt) {
+        Pointer<Sqlite3.Statement> existing = this.idle.put(key, stmt);
+
+        if (existing != null) {
+            // Two statements with the same SQL were open at the same time,
+            // only keep the one that was returned most recently.
+            Sqlite3.sqlite3_finalize(existing);
+            this.evictions += 1;
+        }
+    }
+
+    synchronized void clear() {
+        Iterator<Pointer<Sqlite3.Statement>> iter = this.idle.values().iterator();
+
+        while (iter.hasNext()) {
+            Sqlite3.sqlite3_finalize(iter.next());
+            iter.remove();
+        }
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public synchronized int size() {
+        return this.idle.size();
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+}
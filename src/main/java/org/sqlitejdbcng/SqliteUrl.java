@@ -26,16 +26,25 @@
 
 package org.sqlitejdbcng;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.util.Locale;
+import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Parser for "jdbc:sqlite:" URLs.  Query parameters that are recognized by
+ * SqliteConfig are removed from the path and made available through
+ * getProperties(), any others are left for SQLite to interpret.
+ */
 public class SqliteUrl {
     public static final String PREFIX = "jdbc:sqlite:";
 
     private static final Pattern SQLITE_URL_PATTERN = Pattern.compile(PREFIX + "(.*)", Pattern.CASE_INSENSITIVE);
 
     private final String path;
+    private final Properties properties = new Properties();
 
     public SqliteUrl(String url) {
         Matcher matcher = SQLITE_URL_PATTERN.matcher(url);
@@ -45,14 +54,56 @@ public class SqliteUrl {
         }
 
         String userPath = matcher.group(1);
+        int queryStart = userPath.indexOf('?');
+
+        if (queryStart != -1) {
+            StringBuilder remaining = new StringBuilder();
+
+            for (String param : userPath.substring(queryStart + 1).split("&")) {
+                int eq = param.indexOf('=');
+                String key = eq == -1 ? param : param.substring(0, eq);
+
+                if (eq != -1 && SqliteConfig.isKnownKey(key)) {
+                    this.properties.setProperty(key, decode(param.substring(eq + 1)));
+                }
+                else if (!param.isEmpty()) {
+                    remaining.append(remaining.length() == 0 ? '?' : '&').append(param);
+                }
+            }
+            userPath = userPath.substring(0, queryStart) + remaining;
+        }
 
         this.path = userPath;
     }
 
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public String getPath() {
         return this.path;
     }
 
+    /**
+     * @return True if the path is for a private or in-memory database that
+     *   no other connection can open.
+     */
+    public boolean isPrivate() {
+        return this.path.isEmpty() || this.path.equals(":memory:") || this.path.contains("mode=memory");
+    }
+
+    /**
+     * @return The driver settings that were given in the query string.
+     */
+    public Properties getProperties() {
+        return this.properties;
+    }
+
     public static boolean isSqliteUrl(String url) {
         return url.toLowerCase(Locale.ROOT).startsWith(PREFIX);
     }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.sqlitejdbcng.bridj.Sqlite3;
+import org.sqlitejdbcng.internal.NativeMemory;
+
+/**
+ * A growable buffer in memory from sqlite3_malloc() that a large parameter
+ * value is built up in, chunk by chunk.  The finished value is handed over
+ * to SQLite with sqlite3_free() as the destructor, so it is never copied.
+ */
+final class SqliteValueBuffer {
+    private static final int SQLITE_OK = (int) Sqlite3.ReturnCodes.SQLITE_OK.value();
+    private static final int SQLITE_NOMEM = (int) Sqlite3.ReturnCodes.SQLITE_NOMEM.value();
+    private static final int SQLITE_TOOBIG = (int) Sqlite3.ReturnCodes.SQLITE_TOOBIG.value();
+
+    private long address;
+    private int capacity;
+    private int length;
+
+    SqliteValueBuffer(int initialCapacity) {
+        this.capacity = Math.max(initialCapacity, 1);
+    }
+
+    int length() {
+        return this.length;
+    }
+
+    /**
+     * @return SQLITE_OK, SQLITE_NOMEM if the buffer could not be grown or
+     *   SQLITE_TOOBIG if the value would not fit in an int.
+     */
+    int append(byte[] src, int offset, int len) {
+        if (this.address == 0 || len > this.capacity - this.length) {
+            long needed = (long) this.length + len;
+
+            if (needed > Integer.MAX_VALUE)
+                return SQLITE_TOOBIG;
+
+            long newCapacity = this.capacity;
+
+            while (newCapacity < needed)
+                newCapacity *= 2;
+
+            long grown = Sqlite3.sqlite3_realloc(this.address, (int) Math.min(newCapacity, Integer.MAX_VALUE));
+
+            if (grown == 0)
+                return SQLITE_NOMEM;
+            this.address = grown;
+            this.capacity = (int) Math.min(newCapacity, Integer.MAX_VALUE);
+        }
+
+        NativeMemory.copy(src, offset, this.address + this.length, len);
+        this.length += len;
+
+        return SQLITE_OK;
+    }
+
+    /**
+     * Bind the contents as a blob or as UTF-8 text, the buffer is owned by
+     * SQLite afterwards, even if the bind fails.
+     */
+    int bind(long stmtPeer, int index, boolean text) {
+        long mem = this.address;
+        int len = this.length;
+
+        this.address = 0;
+        this.length = 0;
+
+        if (len == 0 && !text) {
+            Sqlite3.sqlite3_free(mem);
+            return Sqlite3.sqlite3_bind_zeroblob(stmtPeer, index, 0);
+        }
+        // Empty text still needs a pointer, NULL would bind a NULL.
+        if (mem == 0 && (mem = Sqlite3.sqlite3_realloc(0, 1)) == 0)
+            return SQLITE_NOMEM;
+
+        long destructor = Sqlite3.SQLITE_FREE.getPeer();
+
+        return text ?
+                Sqlite3.sqlite3_bind_text(stmtPeer, index, mem, len, destructor) :
+                Sqlite3.sqlite3_bind_blob(stmtPeer, index, mem, len, destructor);
+    }
+
+    void free() {
+        if (this.address != 0) {
+            Sqlite3.sqlite3_free(this.address);
+            this.address = 0;
+            this.length = 0;
+        }
+    }
+}
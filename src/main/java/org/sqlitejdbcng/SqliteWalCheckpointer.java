@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checkpoints a WAL database from a background thread with a connection of
+ * its own, so that writers are not stalled by SQLite's auto-checkpoint.
+ *
+ * The WAL hook of the attached SqliteWalMonitor wakes the thread once the
+ * WAL has reached the threshold size.  The thread then waits for the
+ * writers to be idle for a while, so the checkpoint does not compete with
+ * a burst of commits, unless the WAL keeps growing to several times the
+ * threshold.  A PASSIVE checkpoint that copies every frame lets the next
+ * writer start over at the beginning of the WAL, which keeps it from
+ * growing without bound.
+ *
+ * Connections opened with the "walCheckpointFrames" property share one
+ * checkpointer per database path that is stopped when the last of them is
+ * closed.
+ */
+public class SqliteWalCheckpointer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(SqliteWalCheckpointer.class.getName());
+
+    /**
+     * How many times the threshold the WAL can grow to before a checkpoint
+     * is done without waiting for the writers to be idle.
+     */
+    private static final int FORCE_FACTOR = 4;
+    /**
+     * The number of checkpoints in a row that have to leave frames behind
+     * before a warning about the readers holding them is logged.
+     */
+    private static final int BACKLOG_WARNING_COUNT = 3;
+    private static final long JOIN_MILLIS = 1000;
+
+    private static final Map<String, SqliteWalCheckpointer> SHARED = new HashMap<String, SqliteWalCheckpointer>();
+
+    private final String url;
+    private final Properties properties;
+    private final SqliteWalMonitor monitor;
+    private final int thresholdFrames;
+    private final long idleMillis;
+    private final SqliteCheckpoint.Mode mode;
+    private String sharedKey;
+    private int references;
+    private volatile boolean signalled;
+    private boolean closed;
+    private Thread thread;
+    private int backlogRun;
+
+    /**
+     * @param url The URL used to open the checkpointer's connection.
+     * @param properties The properties for the connection, the
+     *   walCheckpointFrames setting is ignored.
+     * @param monitor The monitor that is installed on the connections that
+     *   write to the database.
+     * @param thresholdFrames The WAL size, in frames, that triggers a
+     *   checkpoint.
+     * @param idleMillis How long the writers have to be idle before the
+     *   checkpoint is done.
+     * @param mode The checkpoint mode, anything other than PASSIVE will
+     *   block writers while it runs.
+     */
+    public SqliteWalCheckpointer(String url, Properties properties, SqliteWalMonitor monitor,
+                                 int thresholdFrames, long idleMillis, SqliteCheckpoint.Mode mode) {
+        if (thresholdFrames < 1 || idleMillis < 0)
+            throw new IllegalArgumentException("Invalid checkpoint threshold or idle time");
+
+        this.url = url;
+        this.properties = new Properties();
+        if (properties != null)
+            this.properties.putAll(properties);
+        this.properties.setProperty(SqliteConfig.Setting.WAL_CHECKPOINT_FRAMES.key(), "0");
+        this.monitor = monitor;
+        this.thresholdFrames = thresholdFrames;
+        this.idleMillis = idleMillis;
+        this.mode = mode;
+    }
+
+    /**
+     * @return The checkpointer shared by the connections to the database,
+     *   started if it was not already running.  Each call has to be
+     *   matched by a call to release().
+     */
+    static SqliteWalCheckpointer acquire(String path, String url, Properties properties,
+                                         int thresholdFrames, long idleMillis) {
+        synchronized (SHARED) {
+            SqliteWalCheckpointer retval = SHARED.get(path);
+
+            if (retval == null) {
+                retval = new SqliteWalCheckpointer(url, properties, new SqliteWalMonitor(thresholdFrames),
+                        thresholdFrames, idleMillis, SqliteCheckpoint.Mode.PASSIVE);
+                retval.sharedKey = path;
+                SHARED.put(path, retval);
+                retval.start();
+            }
+            retval.references += 1;
+
+            return retval;
+        }
+    }
+
+    void release() {
+        synchronized (SHARED) {
+            this.references -= 1;
+            if (this.references > 0)
+                return;
+            SHARED.remove(this.sharedKey);
+        }
+
+        this.close();
+    }
+
+    public synchronized void start() {
+        if (this.thread != null)
+            throw new IllegalStateException("The checkpointer was already started");
+
+        this.monitor.setCheckpointer(this);
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SqliteWalCheckpointer.this.run();
+            }
+        }, "SqliteWalCheckpointer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Called from the WAL hook in the thread that committed, so it only
+     * takes the lock when the thread needs waking up.
+     */
+    void walGrew(int frames) {
+        if (frames >= this.thresholdFrames && !this.signalled) {
+            synchronized (this) {
+                this.signalled = true;
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait until the WAL has grown past the threshold and the writers have
+     * been idle long enough.
+     *
+     * @return False if the checkpointer was closed.
+     */
+    private synchronized boolean awaitCheckpoint() throws InterruptedException {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(this.idleMillis);
+
+        while (!this.closed) {
+            if (!this.signalled) {
+                this.wait();
+                continue;
+            }
+
+            long idle = System.nanoTime() - this.monitor.getLastCommitNanos();
+
+            if (idle >= idleNanos || this.monitor.getWalFrames() >= (long) this.thresholdFrames * FORCE_FACTOR) {
+                this.signalled = false;
+                return true;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, idleNanos - idle);
+        }
+
+        return false;
+    }
+
+    private void checkpoint(SqliteConnection conn) throws SQLException {
+        SqliteCheckpoint result = conn.checkpoint(this.mode);
+
+        this.monitor.record(result);
+        if (result.getBacklogFrames() == 0) {
+            this.backlogRun = 0;
+            return;
+        }
+
+        this.backlogRun += 1;
+        if (this.backlogRun == BACKLOG_WARNING_COUNT) {
+            LOGGER.log(Level.WARNING,
+                    "{0} WAL frames were left behind by {1} checkpoints in a row, a long-running read " +
+                            "transaction is holding the WAL back -- {2}",
+                    new Object[] { result.getBacklogFrames(), this.backlogRun, this.url });
+        }
+    }
+
+    private void run() {
+        SqliteConnection conn = null;
+
+        try {
+            conn = new SqliteConnection(this.url, this.properties);
+            while (this.awaitCheckpoint()) {
+                this.checkpoint(conn);
+            }
+        }
+        catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "WAL checkpointer stopped -- " + this.url, e);
+        }
+        catch (InterruptedException e) {
+            LOGGER.log(Level.FINE, "WAL checkpointer interrupted", e);
+        }
+        finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                }
+                catch (SQLException e) {
+                    LOGGER.log(Level.FINE, "Unable to close checkpointer connection", e);
+                }
+            }
+        }
+    }
+
+    public SqliteWalMonitor getMonitor() {
+        return this.monitor;
+    }
+
+    public int getThresholdFrames() {
+        return this.thresholdFrames;
+    }
+
+    public long getIdleMillis() {
+        return this.idleMillis;
+    }
+
+    public SqliteCheckpoint.Mode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * Stop the thread.  Attached monitors go back to checkpointing in the
+     * writer's thread.
+     */
+    @Override
+    public void close() {
+        Thread running;
+
+        synchronized (this) {
+            this.closed = true;
+            this.notifyAll();
+            running = this.thread;
+        }
+        this.monitor.setCheckpointer(null);
+
+        if (running != null && running != Thread.currentThread()) {
+            try {
+                running.join(JOIN_MILLIS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.bridj.Pointer;
+import org.sqlitejdbcng.bridj.Sqlite3;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A WAL hook that keeps track of the size of the WAL after each commit and
+ * of how the checkpoints went.
+ *
+ * Installing a hook turns off SQLite's own auto-checkpoint, so the monitor
+ * does a PASSIVE checkpoint itself once the WAL reaches the auto-checkpoint
+ * size, in the thread of the writer that committed, like SQLite does.
+ * When a SqliteWalCheckpointer is attached, the checkpoints are left to its
+ * thread instead and writers are never stalled by them.
+ *
+ * Install with SqliteConnection.setWalMonitor() or through the
+ * "walCheckpointFrames" connection property.  A monitor can be shared by
+ * the connections to one database.
+ */
+public class SqliteWalMonitor extends Sqlite3.WalHookBase {
+    private static final Logger LOGGER = Logger.getLogger(SqliteWalMonitor.class.getName());
+
+    private final int autoCheckpointFrames;
+    private volatile SqliteWalCheckpointer checkpointer;
+
+    private volatile int walFrames;
+    private volatile long lastCommitNanos = System.nanoTime();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong maxWalFrames = new AtomicLong();
+
+    private final AtomicLong checkpoints = new AtomicLong();
+    private final AtomicLong busyCheckpoints = new AtomicLong();
+    private final AtomicLong totalCheckpointNanos = new AtomicLong();
+    private final AtomicLong maxCheckpointNanos = new AtomicLong();
+    private final AtomicLong maxBacklogFrames = new AtomicLong();
+    private volatile int lastBacklogFrames;
+
+    public SqliteWalMonitor() {
+        this(Sqlite3.DEFAULT_WAL_AUTOCHECKPOINT);
+    }
+
+    /**
+     * @param autoCheckpointFrames The WAL size, in frames, that triggers a
+     *   checkpoint when no checkpointer is attached, zero to never
+     *   checkpoint automatically.
+     */
+    public SqliteWalMonitor(int autoCheckpointFrames) {
+        if (autoCheckpointFrames < 0)
+            throw new IllegalArgumentException("The auto-checkpoint size must be greater than or equal to zero");
+
+        this.autoCheckpointFrames = autoCheckpointFrames;
+    }
+
+    private static void raise(AtomicLong max, long value) {
+        long current;
+
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+        }
+    }
+
+    @Override
+    public int apply(Pointer<Void> context, Pointer<Sqlite3.Sqlite3Db> db, Pointer<Byte> dbName, int frames) {
+        SqliteWalCheckpointer cp = this.checkpointer;
+
+        this.walFrames = frames;
+        this.lastCommitNanos = System.nanoTime();
+        this.commits.incrementAndGet();
+        raise(this.maxWalFrames, frames);
+
+        if (cp != null) {
+            cp.walGrew(frames);
+        }
+        else if (this.autoCheckpointFrames > 0 && frames >= this.autoCheckpointFrames) {
+            try {
+                this.record(SqliteCheckpoint.run(db, dbName, SqliteCheckpoint.Mode.PASSIVE));
+            }
+            catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Automatic checkpoint failed", e);
+            }
+        }
+
+        return (int) Sqlite3.ReturnCodes.SQLITE_OK.value();
+    }
+
+    void setCheckpointer(SqliteWalCheckpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    void record(SqliteCheckpoint checkpoint) {
+        if (!checkpoint.isWal())
+            return;
+
+        this.checkpoints.incrementAndGet();
+        if (checkpoint.isBusy())
+            this.busyCheckpoints.incrementAndGet();
+        this.totalCheckpointNanos.addAndGet(checkpoint.getDurationNanos());
+        raise(this.maxCheckpointNanos, checkpoint.getDurationNanos());
+        this.lastBacklogFrames = checkpoint.getBacklogFrames();
+        raise(this.maxBacklogFrames, checkpoint.getBacklogFrames());
+    }
+
+    public int getAutoCheckpointFrames() {
+        return this.autoCheckpointFrames;
+    }
+
+    /**
+     * @return The number of frames in the WAL after the last commit.
+     */
+    public int getWalFrames() {
+        return this.walFrames;
+    }
+
+    public long getMaxWalFrames() {
+        return this.maxWalFrames.get();
+    }
+
+    /**
+     * @return The System.nanoTime() of the last commit, or of when the
+     *   monitor was created if nothing has been committed.
+     */
+    public long getLastCommitNanos() {
+        return this.lastCommitNanos;
+    }
+
+    /**
+     * @return The number of commits that wrote to the WAL.
+     */
+    public long getCommits() {
+        return this.commits.get();
+    }
+
+    public long getCheckpoints() {
+        return this.checkpoints.get();
+    }
+
+    /**
+     * @return The number of checkpoints that could not finish because
+     *   another connection was using the database.
+     */
+    public long getBusyCheckpoints() {
+        return this.busyCheckpoints.get();
+    }
+
+    public long getTotalCheckpointNanos() {
+        return this.totalCheckpointNanos.get();
+    }
+
+    public long getMaxCheckpointNanos() {
+        return this.maxCheckpointNanos.get();
+    }
+
+    /**
+     * @return The frames the last checkpoint had to leave in the WAL
+     *   because a reader still needed them.
+     */
+    public int getLastBacklogFrames() {
+        return this.lastBacklogFrames;
+    }
+
+    public long getMaxBacklogFrames() {
+        return this.maxBacklogFrames.get();
+    }
+}
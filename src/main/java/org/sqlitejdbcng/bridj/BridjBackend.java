@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.bridj;
+
+import org.sqlitejdbcng.internal.Sqlite3Backend;
+
+/**
+ * The Sqlite3Backend that forwards to the BridJ bindings in Sqlite3.
+ */
+public final class BridjBackend implements Sqlite3Backend {
+    @Override
+    public String getName() {
+        return "bridj";
+    }
+
+    @Override
+    public int step(long stmt) {
+        return Sqlite3.sqlite3_step(stmt);
+    }
+
+    @Override
+    public int reset(long stmt) {
+        return Sqlite3.sqlite3_reset(stmt);
+    }
+
+    @Override
+    public int clearBindings(long stmt) {
+        return Sqlite3.sqlite3_clear_bindings(stmt);
+    }
+
+    @Override
+    public int changes(long db) {
+        return Sqlite3.sqlite3_changes(db);
+    }
+
+    @Override
+    public int bindNull(long stmt, int index) {
+        return Sqlite3.sqlite3_bind_null(stmt, index);
+    }
+
+    @Override
+    public int bindInt(long stmt, int index, int value) {
+        return Sqlite3.sqlite3_bind_int(stmt, index, value);
+    }
+
+    @Override
+    public int bindInt64(long stmt, int index, long value) {
+        return Sqlite3.sqlite3_bind_int64(stmt, index, value);
+    }
+
+    @Override
+    public int bindDouble(long stmt, int index, double value) {
+        return Sqlite3.sqlite3_bind_double(stmt, index, value);
+    }
+
+    @Override
+    public int bindTextStatic(long stmt, int index, long text, int len) {
+        return Sqlite3.sqlite3_bind_text(stmt, index, text, len, 0L);
+    }
+
+    @Override
+    public int bindText16Static(long stmt, int index, long text, int len) {
+        return Sqlite3.sqlite3_bind_text16(stmt, index, text, len, 0L);
+    }
+
+    @Override
+    public int bindBlobStatic(long stmt, int index, long mem, int len) {
+        return Sqlite3.sqlite3_bind_blob(stmt, index, mem, len, 0L);
+    }
+
+    @Override
+    public int columnType(long stmt, int col) {
+        return Sqlite3.sqlite3_column_type(stmt, col);
+    }
+
+    @Override
+    public int columnInt(long stmt, int col) {
+        return Sqlite3.sqlite3_column_int(stmt, col);
+    }
+
+    @Override
+    public long columnInt64(long stmt, int col) {
+        return Sqlite3.sqlite3_column_int64(stmt, col);
+    }
+
+    @Override
+    public double columnDouble(long stmt, int col) {
+        return Sqlite3.sqlite3_column_double(stmt, col);
+    }
+
+    @Override
+    public long columnText(long stmt, int col) {
+        return Sqlite3.sqlite3_column_text(stmt, col);
+    }
+
+    @Override
+    public long columnBlob(long stmt, int col) {
+        return Sqlite3.sqlite3_column_blob(stmt, col);
+    }
+
+    @Override
+    public int columnBytes(long stmt, int col) {
+        return Sqlite3.sqlite3_column_bytes(stmt, col);
+    }
+}
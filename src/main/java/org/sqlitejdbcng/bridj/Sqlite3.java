@@ -44,6 +44,7 @@ import java.util.logging.Logger;
 public class Sqlite3 {
 
     private static boolean HAVE_STMT_READONLY = true;
+    private static boolean HAVE_PREPARE_V3 = true;
     public static final boolean SQLITE_ENABLE_COLUMN_METADATA;
     public static final boolean HAVE_LOAD_EXTENSION;
 
@@ -179,12 +180,26 @@ public class Sqlite3 {
         public abstract int apply(Pointer<Void> context);
     }
 
+    public static abstract class BusyCallbackBase extends Callback<BusyCallbackBase> {
+        public abstract int apply(Pointer<Void> context, int count);
+    }
+
+    public static abstract class WalHookBase extends Callback<WalHookBase> {
+        public abstract int apply(Pointer<Void> context, Pointer<Sqlite3Db> db, Pointer<Byte> dbName, int frames);
+    }
+
     public static class Sqlite3Db extends StructObject {
     }
 
     public static class Statement extends StructObject {
     }
 
+    public static class IncrementalBlob extends StructObject {
+    }
+
+    public static class Backup extends StructObject {
+    }
+
     public static native Pointer<Byte> sqlite3_libversion();
     public static native int sqlite3_libversion_number();
     public static native Pointer<Byte> sqlite3_sourceid();
@@ -194,6 +209,9 @@ public class Sqlite3 {
 
     public static native Pointer<Byte> sqlite3_mprintf(Pointer<Byte> fmt, Object... varargs);
     public static native Pointer<Byte> sqlite3_malloc(int size);
+    public static native @Ptr long sqlite3_malloc64(long size);
+    public static native @Ptr long sqlite3_realloc(@Ptr long mem, int size);
+    public static native void sqlite3_free(@Ptr long mem);
     public static native void sqlite3_free(Pointer<Byte> mem);
 
     public static native int sqlite3_enable_load_extension(Pointer<Sqlite3Db> db, int onoff);
@@ -232,9 +250,20 @@ public class Sqlite3 {
 
     public static native int sqlite3_get_autocommit(Pointer<Sqlite3Db> db);
     public static native Pointer<Byte> sqlite3_errmsg(Pointer<Sqlite3Db> db);
+    public static native int sqlite3_errcode(Pointer<Sqlite3Db> db);
 
     public static native int sqlite3_limit(Pointer<Sqlite3Db> db, int id, int newVal);
 
+    public static native int sqlite3_exec(Pointer<Sqlite3Db> db,
+                                          Pointer<Byte> sql,
+                                          Pointer<?> callback,
+                                          Pointer<Void> userData,
+                                          Pointer<Pointer<Byte>> errmsg);
+    public static native int sqlite3_busy_timeout(Pointer<Sqlite3Db> db, int ms);
+    public static native int sqlite3_busy_handler(Pointer<Sqlite3Db> db,
+                                                  Pointer<BusyCallbackBase> cb,
+                                                  Pointer<Void> userData);
+
     public static native int sqlite3_clear_bindings(Pointer<Statement> stmt);
     public static native int sqlite3_bind_parameter_count(Pointer<Statement> stmt);
     public static native int sqlite3_bind_null(Pointer<Statement> stmt, int arg);
@@ -250,16 +279,145 @@ public class Sqlite3 {
                                                int len,
                                                Pointer<BufferDestructorBase> dest);
 
+    /*
+     * Raw-peer variants of the bind functions for tight loops, they avoid
+     * creating a Pointer object per call.  A destructor of zero is
+     * SQLITE_STATIC.
+     */
+    public static native int sqlite3_bind_null(@Ptr long stmt, int arg);
+    public static native int sqlite3_bind_int64(@Ptr long stmt, int arg, long value);
+    public static native int sqlite3_bind_double(@Ptr long stmt, int arg, double value);
+    public static native int sqlite3_bind_text(@Ptr long stmt, int arg, @Ptr long str, int len, @Ptr long dest);
+    public static native int sqlite3_bind_text16(@Ptr long stmt, int arg, @Ptr long str, int len, @Ptr long dest);
+    public static native int sqlite3_bind_blob(@Ptr long stmt, int arg, @Ptr long mem, int len, @Ptr long dest);
+    public static native int sqlite3_bind_int(@Ptr long stmt, int arg, int value);
+    public static native int sqlite3_bind_zeroblob(@Ptr long stmt, int arg, int len);
+    public static native int sqlite3_reset(@Ptr long stmt);
+    public static native int sqlite3_clear_bindings(@Ptr long stmt);
+    public static native int sqlite3_changes(@Ptr long db);
+
+    /*
+     * Incremental blob I/O, the handle is passed as a raw peer since the
+     * reads and writes are done in a loop.
+     */
+    public static final int SQLITE_BLOB_READONLY = 0;
+    public static final int SQLITE_BLOB_READWRITE = 1;
+
+    public static native int sqlite3_blob_open(Pointer<Sqlite3Db> db,
+                                               Pointer<Byte> dbName,
+                                               Pointer<Byte> table,
+                                               Pointer<Byte> column,
+                                               long rowid,
+                                               int flags,
+                                               Pointer<Pointer<IncrementalBlob>> blob);
+    public static native int sqlite3_blob_reopen(@Ptr long blob, long rowid);
+    public static native int sqlite3_blob_bytes(@Ptr long blob);
+    public static native int sqlite3_blob_read(@Ptr long blob, @Ptr long dest, int len, int offset);
+    public static native int sqlite3_blob_write(@Ptr long blob, @Ptr long src, int len, int offset);
+    public static native int sqlite3_blob_close(@Ptr long blob);
+
+    /*
+     * Online backup, the handle is passed as a raw peer since it is stepped
+     * in a loop.
+     */
+    public static native Pointer<Backup> sqlite3_backup_init(Pointer<Sqlite3Db> dest,
+                                                             Pointer<Byte> destName,
+                                                             Pointer<Sqlite3Db> source,
+                                                             Pointer<Byte> sourceName);
+    public static native int sqlite3_backup_step(@Ptr long backup, int pages);
+    public static native int sqlite3_backup_remaining(@Ptr long backup);
+    public static native int sqlite3_backup_pagecount(@Ptr long backup);
+    public static native int sqlite3_backup_finish(@Ptr long backup);
+
+    /*
+     * Database images, these need SQLite 3.23 or later.  The image is passed
+     * as a raw peer since it is either sqlite3_malloc() memory or a direct
+     * buffer.
+     */
+    public static final int SQLITE_SERIALIZE_NOCOPY = 0x001;
+    public static final int SQLITE_DESERIALIZE_FREEONCLOSE = 1;
+    public static final int SQLITE_DESERIALIZE_RESIZEABLE = 2;
+    public static final int SQLITE_DESERIALIZE_READONLY = 4;
+
+    @Optional
+    public static native @Ptr long sqlite3_serialize(Pointer<Sqlite3Db> db,
+                                                     Pointer<Byte> schema,
+                                                     Pointer<Long> size,
+                                                     int flags);
+    @Optional
+    public static native int sqlite3_deserialize(Pointer<Sqlite3Db> db,
+                                                 Pointer<Byte> schema,
+                                                 @Ptr long data,
+                                                 long dbSize,
+                                                 long bufSize,
+                                                 int flags);
+
+    /*
+     * WAL management.  Installing a WAL hook replaces the one set up by
+     * sqlite3_wal_autocheckpoint(), so the hook is responsible for
+     * checkpointing from then on.
+     */
+    public static final int SQLITE_CHECKPOINT_PASSIVE = 0;
+    public static final int SQLITE_CHECKPOINT_FULL = 1;
+    public static final int SQLITE_CHECKPOINT_RESTART = 2;
+    public static final int SQLITE_CHECKPOINT_TRUNCATE = 3;
+
+    public static final int DEFAULT_WAL_AUTOCHECKPOINT = 1000;
+
+    public static native Pointer<Void> sqlite3_wal_hook(Pointer<Sqlite3Db> db,
+                                                        Pointer<WalHookBase> cb,
+                                                        Pointer<Void> userData);
+    public static native int sqlite3_wal_autocheckpoint(Pointer<Sqlite3Db> db, int frames);
+    public static native int sqlite3_wal_checkpoint_v2(Pointer<Sqlite3Db> db,
+                                                       Pointer<Byte> dbName,
+                                                       int mode,
+                                                       Pointer<Integer> logFrames,
+                                                       Pointer<Integer> checkpointedFrames);
+
     public static native int sqlite3_prepare_v2(Pointer<Sqlite3Db> db,
                                                 Pointer<Byte> sql,
                                                 int len,
                                                 Pointer<Pointer<Statement>> stmt,
                                                 Pointer<Pointer<Byte>> tail);
 
+    @Optional
+    public static native int sqlite3_prepare_v3(Pointer<Sqlite3Db> db,
+                                                Pointer<Byte> sql,
+                                                int len,
+                                                int prepFlags,
+                                                Pointer<Pointer<Statement>> stmt,
+                                                Pointer<Pointer<Byte>> tail);
+
+    public static final int SQLITE_PREPARE_PERSISTENT = 0x01;
+
+    /**
+     * Prepare a statement, using sqlite3_prepare_v3() with the given flags
+     * if the library supports it and falling back to sqlite3_prepare_v2()
+     * otherwise.
+     */
+    public static int prepare(Pointer<Sqlite3Db> db,
+                              Pointer<Byte> sql,
+                              int prepFlags,
+                              Pointer<Pointer<Statement>> stmt) {
+        Pointer<Pointer<Byte>> tail = (Pointer<Pointer<Byte>>) Pointer.NULL;
+
+        if (prepFlags != 0 && HAVE_PREPARE_V3) {
+            try {
+                return sqlite3_prepare_v3(db, sql, -1, prepFlags, stmt, tail);
+            }
+            catch (UnsatisfiedLinkError e) {
+                HAVE_PREPARE_V3 = false;
+            }
+        }
+
+        return sqlite3_prepare_v2(db, sql, -1, stmt, tail);
+    }
+
     public static native Pointer<Byte> sqlite3_sql(Pointer<Statement> stmt);
     public static native int sqlite3_step(@Ptr long stmt);
 
     public static native int sqlite3_stmt_readonly(Pointer<Statement> stmt);
+    public static native int sqlite3_stmt_busy(Pointer<Statement> stmt);
 
     public static int stmt_readonly(Pointer<Statement> stmt) {
         if (!HAVE_STMT_READONLY)
@@ -682,17 +840,28 @@ public class Sqlite3 {
         SQLITE_ROW("00", 100, "sqlite3_step() has another row ready"),
         SQLITE_DONE("00", 101, "sqlite3_step() has finished executing");
 
-        private static final HashMap<Long, ReturnCodes> VALUE_TO_ENUM =
-                new HashMap<Long, ReturnCodes>();
+        /*
+         * Indexed by the primary result code, an array avoids boxing the
+         * code on every sqlite3_step().
+         */
+        private static final ReturnCodes[] VALUE_TO_ENUM;
 
         static {
+            int max = 0;
+
             for (ReturnCodes rc : values()) {
-                VALUE_TO_ENUM.put(rc.value, rc);
+                max = Math.max(max, (int) rc.value);
+            }
+            VALUE_TO_ENUM = new ReturnCodes[max + 1];
+            for (ReturnCodes rc : values()) {
+                VALUE_TO_ENUM[(int) rc.value] = rc;
             }
         }
 
         public static ReturnCodes valueOf(long value) {
-            return VALUE_TO_ENUM.get(value);
+            if (value < 0 || value >= VALUE_TO_ENUM.length)
+                return null;
+            return VALUE_TO_ENUM[(int) value];
         }
 
         private final long value;
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.internal;
+
+/**
+ * Fixed-position parsing and formatting of the date and time forms SQLite
+ * understands, see http://www.sqlite.org/lang_datefunc.html.  Parsing works
+ * on UTF-8 bytes and fills in the fields of this object, so a result set
+ * can reuse one instance for every row without allocating anything.
+ *
+ * The accepted text forms are YYYY-MM-DD, an optional time separated by a
+ * 'T' or a space, or a time on its own.  A time is HH:MM, HH:MM:SS or
+ * HH:MM:SS.SSS, where the fraction can have from one to nine digits, and it
+ * can be followed by 'Z' or a [+-]HH:MM offset.  A value without a date is
+ * on 2000-01-01, like in SQLite.
+ */
+public final class DateTimeText {
+    /**
+     * Offset value used when the text does not have a time zone.
+     */
+    public static final int NO_OFFSET = Integer.MIN_VALUE;
+
+    public static final long SECONDS_PER_DAY = 86400L;
+    public static final long MILLIS_PER_DAY = SECONDS_PER_DAY * 1000L;
+
+    /**
+     * The Julian day number of 1970-01-01T00:00:00Z.
+     */
+    private static final double JULIAN_DAY_EPOCH = 2440587.5;
+
+    /**
+     * Days from 1970-01-01 to 2000-01-01.
+     */
+    private static final long DEFAULT_EPOCH_DAY = 10957L;
+
+    private boolean hasDate;
+    private boolean hasTime;
+    private int year;
+    private int month;
+    private int day;
+    private int hour;
+    private int minute;
+    private int second;
+    private int nanos;
+    private int offsetSeconds;
+
+    private static int digit(byte[] src, int pos) {
+        int retval = src[pos] - '0';
+
+        return (retval >= 0 && retval <= 9) ? retval : -1;
+    }
+
+    private static int twoDigits(byte[] src, int pos) {
+        int tens = digit(src, pos), ones = digit(src, pos + 1);
+
+        return (tens < 0 || ones < 0) ? -1 : tens * 10 + ones;
+    }
+
+    /**
+     * Parse a HH:MM[:SS[.F+]] time starting at the given position.
+     *
+     * @return The position after the time or -1 if it is malformed.
+     */
+    private int parseTime(byte[] src, int pos, int end) {
+        if (end - pos < 5 || src[pos + 2] != ':')
+            return -1;
+
+        this.hour = twoDigits(src, pos);
+        this.minute = twoDigits(src, pos + 3);
+        if (this.hour < 0 || this.hour > 24 || this.minute < 0 || this.minute > 59)
+            return -1;
+        pos += 5;
+
+        if (end - pos >= 3 && src[pos] == ':') {
+            this.second = twoDigits(src, pos + 1);
+            if (this.second < 0 || this.second > 60)
+                return -1;
+            pos += 3;
+
+            if (pos < end && src[pos] == '.') {
+                int scale = 100000000;
+                int start = ++pos;
+
+                for (; pos < end && digit(src, pos) >= 0; pos++) {
+                    this.nanos += digit(src, pos) * scale;
+                    scale /= 10;
+                }
+                if (pos == start)
+                    return -1;
+            }
+        }
+        this.hasTime = true;
+
+        return pos;
+    }
+
+    /**
+     * Parse the value, replacing the previous fields.
+     *
+     * @return False if the text is not in one of the supported forms.
+     */
+    public boolean parse(byte[] src, int offset, int len) {
+        int pos = offset, end = offset + len;
+
+        this.hasDate = false;
+        this.hasTime = false;
+        this.year = 2000;
+        this.month = 1;
+        this.day = 1;
+        this.hour = 0;
+        this.minute = 0;
+        this.second = 0;
+        this.nanos = 0;
+        this.offsetSeconds = NO_OFFSET;
+
+        if (len >= 10 && src[pos + 4] == '-' && src[pos + 7] == '-') {
+            int hi = twoDigits(src, pos), lo = twoDigits(src, pos + 2);
+
+            this.month = twoDigits(src, pos + 5);
+            this.day = twoDigits(src, pos + 8);
+            if (hi < 0 || lo < 0 || this.month < 1 || this.month > 12 || this.day < 1 || this.day > 31)
+                return false;
+            this.year = hi * 100 + lo;
+            this.hasDate = true;
+            pos += 10;
+            if (pos == end)
+                return true;
+            if (src[pos] != 'T' && src[pos] != ' ')
+                return false;
+            pos += 1;
+        }
+
+        pos = this.parseTime(src, pos, end);
+        if (pos < 0)
+            return false;
+
+        if (pos < end && (src[pos] == 'Z' || src[pos] == 'z')) {
+            this.offsetSeconds = 0;
+            pos += 1;
+        }
+        else if (end - pos == 6 && (src[pos] == '+' || src[pos] == '-') && src[pos + 3] == ':') {
+            int hours = twoDigits(src, pos + 1), minutes = twoDigits(src, pos + 4);
+
+            if (hours < 0 || hours > 14 || minutes < 0 || minutes > 59)
+                return false;
+            this.offsetSeconds = (hours * 3600 + minutes * 60) * (src[pos] == '-' ? -1 : 1);
+            pos += 6;
+        }
+
+        return pos == end;
+    }
+
+    public boolean hasDate() {
+        return this.hasDate;
+    }
+
+    public boolean hasTime() {
+        return this.hasTime;
+    }
+
+    public int getNanos() {
+        return this.nanos;
+    }
+
+    /**
+     * @return The offset from UTC given in the text, in seconds, or
+     *  NO_OFFSET.
+     */
+    public int getOffsetSeconds() {
+        return this.offsetSeconds;
+    }
+
+    /**
+     * @return The day relative to 1970-01-01 of the date, the day of the
+     *  month is allowed to overflow into the next month.
+     */
+    public long getEpochDay() {
+        if (!this.hasDate)
+            return DEFAULT_EPOCH_DAY;
+
+        return epochDay(this.year, this.month, 1) + this.day - 1;
+    }
+
+    /**
+     * @return The date and time as seconds since 1970-01-01T00:00:00,
+     *  without applying any offset.
+     */
+    public long getLocalEpochSecond() {
+        return this.getEpochDay() * SECONDS_PER_DAY + this.hour * 3600 + this.minute * 60 + this.second;
+    }
+
+    /**
+     * @param defaultOffsetSeconds The offset to use if the text did not
+     *  have one.
+     * @return The instant in milliseconds since the epoch.
+     */
+    public long getEpochMillis(int defaultOffsetSeconds) {
+        int offset = this.offsetSeconds == NO_OFFSET ? defaultOffsetSeconds : this.offsetSeconds;
+
+        return (this.getLocalEpochSecond() - offset) * 1000L + this.nanos / 1000000;
+    }
+
+    /**
+     * @return The day relative to 1970-01-01 of a proleptic Gregorian date.
+     */
+    public static long epochDay(long year, int month, int day) {
+        // From Howard Hinnant's days_from_civil()
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+
+        return era * 146097 + doe - 719468;
+    }
+
+    public static long floorDiv(long x, long y) {
+        long retval = x / y;
+
+        if ((x % y != 0) && ((x ^ y) < 0))
+            retval -= 1;
+
+        return retval;
+    }
+
+    /**
+     * @return The time in milliseconds since the epoch for a Julian day
+     *  number, the REAL form of a date and time in SQLite.
+     */
+    public static long julianDayToEpochMillis(double julianDay) {
+        return Math.round((julianDay - JULIAN_DAY_EPOCH) * MILLIS_PER_DAY);
+    }
+
+    /**
+     * @return The Julian day number for a time in milliseconds since the
+     *  epoch.
+     */
+    public static double epochMillisToJulianDay(long millis) {
+        return millis / (double) MILLIS_PER_DAY + JULIAN_DAY_EPOCH;
+    }
+
+    private static void putDigits(char[] dest, int pos, int value, int width) {
+        for (int lpc = pos + width - 1; lpc >= pos; lpc--) {
+            dest[lpc] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static int putDate(char[] dest, int pos, long epochDay) {
+        // From Howard Hinnant's civil_from_days()
+        long z = epochDay + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int d = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int m = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+
+        if (y < 0 || y > 9999)
+            throw new IllegalArgumentException("Year is out of range -- " + y);
+
+        putDigits(dest, pos, (int) y, 4);
+        dest[pos + 4] = '-';
+        putDigits(dest, pos + 5, m, 2);
+        dest[pos + 7] = '-';
+        putDigits(dest, pos + 8, d, 2);
+
+        return pos + 10;
+    }
+
+    private static int putTime(char[] dest, int pos, long millisOfDay, boolean withMillis) {
+        int secs = (int) (millisOfDay / 1000);
+
+        putDigits(dest, pos, secs / 3600, 2);
+        dest[pos + 2] = ':';
+        putDigits(dest, pos + 3, (secs / 60) % 60, 2);
+        dest[pos + 5] = ':';
+        putDigits(dest, pos + 6, secs % 60, 2);
+        if (!withMillis)
+            return pos + 8;
+        dest[pos + 8] = '.';
+        putDigits(dest, pos + 9, (int) (millisOfDay % 1000), 3);
+
+        return pos + 12;
+    }
+
+    /**
+     * @param localMillis Milliseconds since the epoch, already shifted into
+     *  the wanted time zone.
+     * @return The date as YYYY-MM-DD.
+     */
+    public static String formatDate(long localMillis) {
+        char[] buf = new char[10];
+
+        putDate(buf, 0, floorDiv(localMillis, MILLIS_PER_DAY));
+
+        return new String(buf);
+    }
+
+    /**
+     * @return The time of day as HH:MM:SS.
+     */
+    public static String formatTime(long localMillis) {
+        char[] buf = new char[8];
+        long day = floorDiv(localMillis, MILLIS_PER_DAY);
+
+        putTime(buf, 0, localMillis - day * MILLIS_PER_DAY, false);
+
+        return new String(buf);
+    }
+
+    /**
+     * @return The date and time as YYYY-MM-DD HH:MM:SS.SSS.
+     */
+    public static String formatTimestamp(long localMillis) {
+        char[] buf = new char[23];
+        long day = floorDiv(localMillis, MILLIS_PER_DAY);
+
+        putDate(buf, 0, day);
+        buf[10] = ' ';
+        putTime(buf, 11, localMillis - day * MILLIS_PER_DAY, true);
+
+        return new String(buf);
+    }
+}
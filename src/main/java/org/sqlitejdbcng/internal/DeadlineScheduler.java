@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.internal;
+
+import org.bridj.Pointer;
+import org.sqlitejdbcng.bridj.Sqlite3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Enforces query timeouts with a single, shared, low-resolution timer wheel
+ * instead of a progress handler on every connection.
+ *
+ * Each statement owns a Deadline that is armed before a sqlite3_step() and
+ * disarmed after it, which only costs a couple of atomic writes.  The wheel
+ * thread looks at a Deadline when its slot comes around and, if the step is
+ * still running past the deadline, calls sqlite3_interrupt() on the
+ * connection.  Deadlines that were re-armed since they were put in the wheel
+ * are lazily moved to their new slot and ones that are not armed anymore are
+ * dropped, so a long scan does not touch the wheel on every row.
+ */
+public final class DeadlineScheduler {
+    private static final Logger LOGGER = Logger.getLogger(DeadlineScheduler.class.getName());
+
+    private static final long TICK_MILLIS = 50;
+    private static final int WHEEL_SIZE = 256;
+
+    private static final DeadlineScheduler INSTANCE = new DeadlineScheduler();
+
+    private final List<List<Deadline>> wheel = new ArrayList<List<Deadline>>(WHEEL_SIZE);
+    private final ConcurrentLinkedQueue<Deadline> pending = new ConcurrentLinkedQueue<Deadline>();
+    private volatile boolean idle;
+    private volatile Thread thread;
+    private long currentTick;
+    private int wheelCount;
+
+    private DeadlineScheduler() {
+        for (int lpc = 0; lpc < WHEEL_SIZE; lpc++) {
+            this.wheel.add(new ArrayList<Deadline>());
+        }
+    }
+
+    static long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Create a deadline for statements executed on the given connection.
+     *
+     * @param db The connection to interrupt.
+     * @param expiredFlag Set while an expired deadline is waiting for the
+     *   step to return, for use by the connection's progress handler.
+     * @param interruptFlag Set when a deadline interrupts the connection,
+     *   the connection clears it once SQLite has forgotten the interrupt.
+     */
+    public static Deadline newDeadline(Pointer<Sqlite3.Sqlite3Db> db, AtomicBoolean expiredFlag,
+                                       AtomicBoolean interruptFlag) {
+        return new Deadline(db, expiredFlag, interruptFlag);
+    }
+
+    private void add(Deadline deadline) {
+        this.pending.offer(deadline);
+
+        if (this.idle || this.thread == null) {
+            synchronized (this) {
+                if (this.thread == null) {
+                    this.thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            DeadlineScheduler.this.run();
+                        }
+                    }, "SqliteDeadlineScheduler");
+                    this.thread.setDaemon(true);
+                    this.thread.start();
+                }
+                this.notifyAll();
+            }
+        }
+    }
+
+    private void place(Deadline deadline) {
+        long tick = deadline.expiresAtMillis / TICK_MILLIS + 1;
+
+        if (tick <= this.currentTick)
+            tick = this.currentTick + 1;
+        this.wheel.get((int) (tick % WHEEL_SIZE)).add(deadline);
+        this.wheelCount += 1;
+    }
+
+    private void check(Deadline deadline, long now) {
+        if (deadline.state.get() != Deadline.RUNNING) {
+            deadline.scheduled.set(false);
+            /*
+             * The statement may have armed the deadline after we looked at
+             * the state but before it saw that the deadline was no longer
+             * scheduled, so check again.
+             */
+            if (deadline.state.get() == Deadline.RUNNING && deadline.scheduled.compareAndSet(false, true))
+                this.place(deadline);
+        }
+        else if (deadline.expiresAtMillis > now) {
+            this.place(deadline);
+        }
+        else {
+            deadline.fire();
+            deadline.scheduled.set(false);
+        }
+    }
+
+    private void run() {
+        this.currentTick = nowMillis() / TICK_MILLIS;
+        while (true) {
+            Deadline deadline;
+
+            while ((deadline = this.pending.poll()) != null) {
+                this.place(deadline);
+            }
+
+            try {
+                if (this.wheelCount == 0) {
+                    synchronized (this) {
+                        this.idle = true;
+                        while (this.pending.isEmpty()) {
+                            this.wait();
+                        }
+                        this.idle = false;
+                    }
+                    this.currentTick = nowMillis() / TICK_MILLIS;
+                    continue;
+                }
+
+                Thread.sleep(TICK_MILLIS);
+            }
+            catch (InterruptedException e) {
+                LOGGER.log(Level.FINE, "Ignoring interrupt of deadline scheduler", e);
+                continue;
+            }
+
+            long now = nowMillis();
+            long targetTick = now / TICK_MILLIS;
+
+            while (this.currentTick < targetTick) {
+                this.currentTick += 1;
+
+                List<Deadline> slot = this.wheel.get((int) (this.currentTick % WHEEL_SIZE));
+
+                if (slot.isEmpty())
+                    continue;
+
+                List<Deadline> expired = new ArrayList<Deadline>(slot);
+
+                slot.clear();
+                this.wheelCount -= expired.size();
+                for (Deadline entry : expired) {
+                    this.check(entry, now);
+                }
+            }
+        }
+    }
+
+    /**
+     * The timeout state for one statement.  A Deadline should only be armed
+     * by one thread at a time.
+     */
+    public static final class Deadline {
+        private static final int IDLE = 0;
+        private static final int RUNNING = 1;
+        private static final int FIRING = 2;
+        private static final int FIRED = 3;
+
+        private final Pointer<Sqlite3.Sqlite3Db> db;
+        private final AtomicBoolean expiredFlag;
+        private final AtomicBoolean interruptFlag;
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile long expiresAtMillis;
+
+        private Deadline(Pointer<Sqlite3.Sqlite3Db> db, AtomicBoolean expiredFlag, AtomicBoolean interruptFlag) {
+            this.db = db;
+            this.expiredFlag = expiredFlag;
+            this.interruptFlag = interruptFlag;
+        }
+
+        /**
+         * Start the clock before a step.
+         *
+         * @param timeoutSeconds The statement timeout, zero means no timeout
+         *   and makes this a no-op.
+         */
+        public void arm(int timeoutSeconds) {
+            if (timeoutSeconds == 0)
+                return;
+
+            this.expiresAtMillis = nowMillis() + timeoutSeconds * 1000L;
+            this.state.set(RUNNING);
+            if (this.scheduled.compareAndSet(false, true))
+                INSTANCE.add(this);
+        }
+
+        /**
+         * Stop the clock after a step.
+         *
+         * @return True if the deadline expired and the connection was
+         *   interrupted.
+         */
+        public boolean disarm() {
+            while (true) {
+                int current = this.state.get();
+
+                switch (current) {
+                    case IDLE:
+                        return false;
+                    case FIRING:
+                        // Wait for sqlite3_interrupt() to return.
+                        Thread.yield();
+                        break;
+                    default:
+                        if (this.state.compareAndSet(current, IDLE)) {
+                            if (current == FIRED) {
+                                this.expiredFlag.set(false);
+                                return true;
+                            }
+                            return false;
+                        }
+                        break;
+                }
+            }
+        }
+
+        private void fire() {
+            if (this.state.compareAndSet(RUNNING, FIRING)) {
+                this.expiredFlag.set(true);
+                this.interruptFlag.set(true);
+                Sqlite3.sqlite3_interrupt(this.db);
+                this.state.set(FIRED);
+            }
+        }
+    }
+}
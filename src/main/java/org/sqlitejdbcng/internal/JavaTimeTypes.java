@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.internal;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Conversions between SQLite values and the java.time types supported by
+ * the driver: Instant, LocalDateTime, LocalDate, LocalTime and
+ * OffsetDateTime.
+ */
+public final class JavaTimeTypes {
+    private JavaTimeTypes() {
+    }
+
+    public static boolean isJavaTimeType(Class<?> type) {
+        return type == Instant.class ||
+                type == LocalDateTime.class ||
+                type == LocalDate.class ||
+                type == LocalTime.class ||
+                type == OffsetDateTime.class;
+    }
+
+    public static boolean isJavaTimeValue(Object value) {
+        return value != null && isJavaTimeType(value.getClass());
+    }
+
+    /**
+     * Convert an instant to the requested type.
+     *
+     * @param type The java.time class to return.
+     * @param epochSecond The seconds since the epoch, in UTC.
+     * @param nanos The nanoseconds within the second.
+     * @param offsetSeconds The offset from UTC the value was written with,
+     *  or DateTimeText.NO_OFFSET.
+     * @return The converted value or null if the type is not supported.
+     */
+    public static Object fromEpochSecond(Class<?> type, long epochSecond, int nanos, int offsetSeconds) {
+        if (type == Instant.class)
+            return Instant.ofEpochSecond(epochSecond, nanos);
+        if (type == LocalDateTime.class)
+            return LocalDateTime.ofEpochSecond(epochSecond, nanos, ZoneOffset.UTC);
+        if (type == LocalDate.class)
+            return LocalDate.ofEpochDay(DateTimeText.floorDiv(epochSecond, DateTimeText.SECONDS_PER_DAY));
+        if (type == LocalTime.class) {
+            long secondOfDay = epochSecond - DateTimeText.floorDiv(epochSecond, DateTimeText.SECONDS_PER_DAY) *
+                    DateTimeText.SECONDS_PER_DAY;
+
+            return LocalTime.ofNanoOfDay(secondOfDay * 1000000000L + nanos);
+        }
+        if (type == OffsetDateTime.class) {
+            ZoneOffset offset = offsetSeconds == DateTimeText.NO_OFFSET ?
+                    ZoneOffset.UTC : ZoneOffset.ofTotalSeconds(offsetSeconds);
+
+            return OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nanos), offset);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return The value in milliseconds since the epoch, the local types are
+     *  taken to be in UTC the same as fromEpochSecond().  Long.MIN_VALUE is
+     *  returned if the type is not supported.
+     */
+    public static long toEpochMillis(Object value) {
+        if (value instanceof LocalDate)
+            return ((LocalDate) value).toEpochDay() * DateTimeText.MILLIS_PER_DAY;
+        if (value instanceof LocalTime)
+            return ((LocalTime) value).toNanoOfDay() / 1000000L;
+        if (value instanceof LocalDateTime) {
+            LocalDateTime ldt = (LocalDateTime) value;
+
+            return ldt.toEpochSecond(ZoneOffset.UTC) * 1000L + ldt.getNano() / 1000000;
+        }
+        if (value instanceof Instant)
+            return ((Instant) value).toEpochMilli();
+        if (value instanceof OffsetDateTime)
+            return ((OffsetDateTime) value).toInstant().toEpochMilli();
+
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * @return The value in the text form used for dates and times or null
+     *  if the type is not supported.
+     */
+    public static String format(Object value) {
+        long millis = toEpochMillis(value);
+
+        if (millis == Long.MIN_VALUE)
+            return null;
+        if (value instanceof LocalDate)
+            return DateTimeText.formatDate(millis);
+        if (value instanceof LocalTime)
+            return DateTimeText.formatTimestamp(millis).substring(11);
+
+        return DateTimeText.formatTimestamp(millis);
+    }
+}
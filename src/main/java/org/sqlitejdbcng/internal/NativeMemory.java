@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.internal;
+
+import org.bridj.JNI;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Copies between Java and native memory without allocating a buffer for
+ * each copy.  Each thread keeps a direct buffer that acts as a window over
+ * a large range of the address space; a copy repositions the window over
+ * the memory it touches and only creates a new window when the memory falls
+ * outside of the current one.
+ */
+public final class NativeMemory {
+    /**
+     * The number of bytes covered by a window, the largest a buffer can be.
+     */
+    private static final int WINDOW_SIZE = Integer.MAX_VALUE;
+
+    private static final class Window {
+        long base;
+        ByteBuffer buffer;
+    }
+
+    private static final ThreadLocal<Window> WINDOWS = new ThreadLocal<Window>() {
+        @Override
+        protected Window initialValue() {
+            return new Window();
+        }
+    };
+
+    private NativeMemory() {
+    }
+
+    /**
+     * @return The current thread's window with its position and limit set
+     *  to the given native memory.
+     */
+    private static ByteBuffer window(long address, int len) {
+        Window window = WINDOWS.get();
+        long start = address - window.base;
+
+        if (window.buffer == null || start < 0 || start > WINDOW_SIZE - len) {
+            window.buffer = view(address, WINDOW_SIZE).order(ByteOrder.nativeOrder());
+            window.base = address;
+            start = 0;
+        }
+
+        ByteBuffer retval = window.buffer;
+
+        retval.clear();
+        retval.position((int) start);
+        retval.limit((int) start + len);
+
+        return retval;
+    }
+
+    /**
+     * @return A direct buffer over the given native memory, the buffer must
+     *  not be used after the memory has been released.
+     */
+    public static ByteBuffer view(long address, int len) {
+        return JNI.newDirectByteBuffer(address, len);
+    }
+
+    /**
+     * @return The address of the first byte of a direct buffer, ignoring
+     *  its position.
+     */
+    public static long address(ByteBuffer direct) {
+        return JNI.getDirectBufferAddress(direct);
+    }
+
+    /**
+     * Copy bytes from native memory into an array.
+     */
+    public static void copy(long address, byte[] dest, int offset, int len) {
+        if (offset < 0 || len < 0 || offset > dest.length - len)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+
+        window(address, len).get(dest, offset, len);
+    }
+
+    /**
+     * Copy chars in the native byte order from native memory into an array.
+     */
+    public static void copy(long address, char[] dest, int offset, int len) {
+        if (offset < 0 || len < 0 || offset > dest.length - len)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+
+        ByteBuffer src = window(address, len * 2);
+        int start = src.position();
+
+        for (int lpc = 0; lpc < len; lpc++) {
+            dest[offset + lpc] = src.getChar(start + lpc * 2);
+        }
+    }
+
+    /**
+     * Copy bytes from native memory into the buffer at its current position
+     * and advance the position.
+     */
+    public static void copy(long address, ByteBuffer dest, int len) {
+        if (len > dest.remaining())
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+
+        dest.put(window(address, len));
+    }
+
+    /**
+     * Copy bytes from an array into native memory.
+     */
+    public static void copy(byte[] src, int offset, long address, int len) {
+        if (offset < 0 || len < 0 || offset > src.length - len)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+
+        window(address, len).put(src, offset, len);
+    }
+
+    /**
+     * Copy chars from an array into native memory in the native byte order.
+     */
+    public static void copy(char[] src, int offset, long address, int len) {
+        if (offset < 0 || len < 0 || offset > src.length - len)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return;
+
+        ByteBuffer dest = window(address, len * 2);
+        int start = dest.position();
+
+        for (int lpc = 0; lpc < len; lpc++) {
+            dest.putChar(start + lpc * 2, src[offset + lpc]);
+        }
+    }
+
+    /**
+     * Store the low byte of each char into native memory, the caller is
+     * expected to have checked that the characters are all ASCII.
+     */
+    public static void putAscii(CharSequence cs, long address) {
+        int len = cs.length();
+
+        if (len > 0) {
+            ByteBuffer dest = window(address, len);
+            int start = dest.position();
+
+            for (int lpc = 0; lpc < len; lpc++) {
+                dest.put(start + lpc, (byte) cs.charAt(lpc));
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.internal;
+
+/**
+ * The native calls made on the statement hot paths: stepping, binding and
+ * reading columns.  Handles and memory are passed as raw addresses so an
+ * implementation is not tied to a particular FFI library's pointer type.
+ *
+ * @see Sqlite3Backends
+ */
+public interface Sqlite3Backend {
+    /**
+     * @return The name used to select this backend, e.g. "bridj".
+     */
+    String getName();
+
+    int step(long stmt);
+    int reset(long stmt);
+    int clearBindings(long stmt);
+    int changes(long db);
+
+    int bindNull(long stmt, int index);
+    int bindInt(long stmt, int index, int value);
+    int bindInt64(long stmt, int index, long value);
+    int bindDouble(long stmt, int index, double value);
+
+    /**
+     * Bind text without a destructor, the memory must stay valid until the
+     * parameter is rebound or cleared (SQLITE_STATIC).
+     */
+    int bindTextStatic(long stmt, int index, long text, int len);
+
+    /**
+     * Bind native-endian UTF-16 text without a destructor (SQLITE_STATIC),
+     * the length is in bytes.
+     */
+    int bindText16Static(long stmt, int index, long text, int len);
+
+    /**
+     * Bind a blob without a destructor (SQLITE_STATIC).
+     */
+    int bindBlobStatic(long stmt, int index, long mem, int len);
+
+    int columnType(long stmt, int col);
+    int columnInt(long stmt, int col);
+    long columnInt64(long stmt, int col);
+    double columnDouble(long stmt, int col);
+    long columnText(long stmt, int col);
+    long columnBlob(long stmt, int col);
+    int columnBytes(long stmt, int col);
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.internal;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Selects the native backend when the driver is loaded.
+ *
+ * The "org.sqlitejdbcng.backend" system property can be set to "bridj",
+ * "panama" or the name of a class implementing Sqlite3Backend.  The default,
+ * "auto", picks the Panama backend on JDK 22 and later when its class is on
+ * the classpath and BridJ otherwise.  The Panama backend is built separately
+ * as the sqlitejdbcng-panama jar.  A backend that cannot be loaded falls
+ * back to BridJ with a warning.
+ */
+public final class Sqlite3Backends {
+    private static final Logger LOGGER = Logger.getLogger(Sqlite3Backends.class.getName());
+
+    public static final String PROPERTY = "org.sqlitejdbcng.backend";
+
+    static final String BRIDJ_CLASS = "org.sqlitejdbcng.bridj.BridjBackend";
+    static final String PANAMA_CLASS = "org.sqlitejdbcng.panama.PanamaBackend";
+
+    /**
+     * The first JDK with a final java.lang.foreign API.
+     */
+    static final int PANAMA_MIN_VERSION = 22;
+
+    /**
+     * The backend used by the driver.
+     */
+    public static final Sqlite3Backend CURRENT = select(System.getProperty(PROPERTY, "auto"), javaVersion());
+
+    private Sqlite3Backends() {
+    }
+
+    /**
+     * @return The major version of the running JDK.
+     */
+    static int javaVersion() {
+        String spec = System.getProperty("java.specification.version", "1.7");
+
+        if (spec.startsWith("1."))
+            spec = spec.substring(2);
+        try {
+            return Integer.parseInt(spec);
+        }
+        catch (NumberFormatException e) {
+            return 7;
+        }
+    }
+
+    static Sqlite3Backend select(String choice, int javaVersion) {
+        switch (choice) {
+            case "auto":
+                if (javaVersion >= PANAMA_MIN_VERSION) {
+                    Sqlite3Backend retval = load(PANAMA_CLASS, Level.FINE);
+
+                    if (retval != null)
+                        return retval;
+                }
+                return load(BRIDJ_CLASS, Level.SEVERE);
+            case "bridj":
+                return load(BRIDJ_CLASS, Level.SEVERE);
+            case "panama":
+                if (javaVersion < PANAMA_MIN_VERSION) {
+                    LOGGER.log(Level.WARNING, "The Panama backend requires JDK {0} or later, using BridJ",
+                            PANAMA_MIN_VERSION);
+                    return load(BRIDJ_CLASS, Level.SEVERE);
+                }
+                return orBridj(load(PANAMA_CLASS, Level.WARNING));
+            default:
+                return orBridj(load(choice, Level.WARNING));
+        }
+    }
+
+    private static Sqlite3Backend orBridj(Sqlite3Backend backend) {
+        return backend != null ? backend : load(BRIDJ_CLASS, Level.SEVERE);
+    }
+
+    private static Sqlite3Backend load(String className, Level failureLevel) {
+        try {
+            Class<?> cls = Class.forName(className, true, Sqlite3Backends.class.getClassLoader());
+
+            return cls.asSubclass(Sqlite3Backend.class).newInstance();
+        }
+        catch (ClassNotFoundException | InstantiationException | IllegalAccessException |
+                ClassCastException | LinkageError e) {
+            LOGGER.log(failureLevel, "Unable to load SQLite backend " + className, e);
+            if (failureLevel == Level.SEVERE)
+                throw new IllegalStateException("Unable to load SQLite backend " + className, e);
+            return null;
+        }
+    }
+}
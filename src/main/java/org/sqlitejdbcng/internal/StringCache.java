@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.internal;
+
+/**
+ * A small cache of Strings keyed by their UTF-8 bytes, for columns that
+ * hold the same few values over and over.  A hit returns the same String
+ * instance without decoding or allocating anything.
+ *
+ * The cache is a fixed-size, open-addressed table.  When the probe sequence
+ * for a key is full, the entry in its home slot is replaced, so the cache
+ * never grows past its capacity.  Long values are not cached since they
+ * are unlikely to repeat.
+ */
+public final class StringCache {
+    public static final int MAX_KEY_LENGTH = 64;
+    private static final int MAX_PROBES = 4;
+
+    private final byte[][] keys;
+    private final String[] values;
+    private final int[] hashes;
+    private final int mask;
+
+    /**
+     * @param maxEntries The maximum number of strings to keep, rounded up
+     *  to a power of two.
+     */
+    public StringCache(int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("The cache must hold at least one entry");
+
+        int capacity = Integer.highestOneBit(Math.min(maxEntries, 1 << 20));
+
+        if (capacity < maxEntries)
+            capacity <<= 1;
+        this.keys = new byte[capacity][];
+        this.values = new String[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return this.values.length;
+    }
+
+    private static int hash(byte[] src, int offset, int len) {
+        int retval = len;
+
+        for (int lpc = offset; lpc < offset + len; lpc++) {
+            retval = 31 * retval + src[lpc];
+        }
+
+        return retval ^ (retval >>> 16);
+    }
+
+    private static boolean matches(byte[] key, byte[] src, int offset, int len) {
+        if (key.length != len)
+            return false;
+        for (int lpc = 0; lpc < len; lpc++) {
+            if (key[lpc] != src[offset + lpc])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return The cached String for the bytes, decoding and adding it to the
+     *  cache if it is not there yet.
+     */
+    public String get(byte[] src, int offset, int len) {
+        if (len > MAX_KEY_LENGTH)
+            return Utf8.decode(src, offset, len);
+
+        int hash = hash(src, offset, len);
+        int home = hash & this.mask;
+
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (home + probe) & this.mask;
+            byte[] key = this.keys[slot];
+
+            if (key == null) {
+                return this.put(slot, hash, src, offset, len);
+            }
+            if (this.hashes[slot] == hash && matches(key, src, offset, len)) {
+                return this.values[slot];
+            }
+        }
+
+        return this.put(home, hash, src, offset, len);
+    }
+
+    private String put(int slot, int hash, byte[] src, int offset, int len) {
+        byte[] key = new byte[len];
+        String retval = Utf8.decode(src, offset, len);
+
+        System.arraycopy(src, offset, key, 0, len);
+        this.keys[slot] = key;
+        this.values[slot] = retval;
+        this.hashes[slot] = hash;
+
+        return retval;
+    }
+}
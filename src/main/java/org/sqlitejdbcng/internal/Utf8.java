@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.internal;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 encoding and decoding straight to and from caller-supplied buffers,
+ * so strings can be packed and unpacked without a temporary array per value.
+ * Unpaired surrogates are encoded as '?', the same as String.getBytes(), and
+ * malformed input is decoded as U+FFFD.
+ */
+public final class Utf8 {
+    private Utf8() {
+    }
+
+    /**
+     * @return The number of bytes needed to encode the given characters.
+     */
+    public static int encodedLength(CharSequence cs) {
+        int len = cs.length();
+        int retval = len;
+
+        for (int lpc = 0; lpc < len; lpc++) {
+            char ch = cs.charAt(lpc);
+
+            if (ch < 0x80)
+                continue;
+            if (ch < 0x800) {
+                retval += 1;
+            }
+            else if (Character.isHighSurrogate(ch) && lpc + 1 < len &&
+                    Character.isLowSurrogate(cs.charAt(lpc + 1))) {
+                // Four bytes for the two chars of the pair.
+                retval += 2;
+                lpc += 1;
+            }
+            else if (Character.isSurrogate(ch)) {
+                // Replaced by '?'
+            }
+            else {
+                retval += 2;
+            }
+        }
+
+        return retval;
+    }
+
+    /**
+     * Encode the characters into the buffer, which must have at least
+     * encodedLength(cs) bytes available at the offset.
+     *
+     * @return The offset just past the encoded bytes.
+     */
+    public static int encode(CharSequence cs, byte[] dest, int offset) {
+        int len = cs.length();
+        int lpc = 0;
+
+        // Fast path for the common all-ASCII prefix.
+        for (; lpc < len; lpc++) {
+            char ch = cs.charAt(lpc);
+
+            if (ch >= 0x80)
+                break;
+            dest[offset++] = (byte) ch;
+        }
+
+        for (; lpc < len; lpc++) {
+            char ch = cs.charAt(lpc);
+
+            if (ch < 0x80) {
+                dest[offset++] = (byte) ch;
+            }
+            else if (ch < 0x800) {
+                dest[offset++] = (byte) (0xc0 | (ch >> 6));
+                dest[offset++] = (byte) (0x80 | (ch & 0x3f));
+            }
+            else if (Character.isHighSurrogate(ch) && lpc + 1 < len &&
+                    Character.isLowSurrogate(cs.charAt(lpc + 1))) {
+                int cp = Character.toCodePoint(ch, cs.charAt(lpc + 1));
+
+                dest[offset++] = (byte) (0xf0 | (cp >> 18));
+                dest[offset++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                dest[offset++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                dest[offset++] = (byte) (0x80 | (cp & 0x3f));
+                lpc += 1;
+            }
+            else if (Character.isSurrogate(ch)) {
+                dest[offset++] = '?';
+            }
+            else {
+                dest[offset++] = (byte) (0xe0 | (ch >> 12));
+                dest[offset++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+                dest[offset++] = (byte) (0x80 | (ch & 0x3f));
+            }
+        }
+
+        return offset;
+    }
+
+    /**
+     * Decode a single code point starting at the given offset.
+     *
+     * @return The code point in the low 32 bits and the number of bytes it
+     *  used in the high 32 bits.
+     */
+    private static long decodeOne(byte[] src, int offset, int end) {
+        int b0 = src[offset] & 0xff;
+        int cp, len, min;
+
+        if (b0 < 0x80)
+            return (1L << 32) | b0;
+        if (b0 >= 0xc2 && b0 < 0xe0) {
+            cp = b0 & 0x1f;
+            len = 2;
+            min = 0x80;
+        }
+        else if (b0 >= 0xe0 && b0 < 0xf0) {
+            cp = b0 & 0x0f;
+            len = 3;
+            min = 0x800;
+        }
+        else if (b0 >= 0xf0 && b0 < 0xf5) {
+            cp = b0 & 0x07;
+            len = 4;
+            min = 0x10000;
+        }
+        else {
+            return (1L << 32) | 0xfffd;
+        }
+
+        if (end - offset < len)
+            return (1L << 32) | 0xfffd;
+        for (int lpc = 1; lpc < len; lpc++) {
+            int b = src[offset + lpc] & 0xff;
+
+            if ((b & 0xc0) != 0x80)
+                return (1L << 32) | 0xfffd;
+            cp = (cp << 6) | (b & 0x3f);
+        }
+        if (cp < min || cp > Character.MAX_CODE_POINT || (cp >= 0xd800 && cp <= 0xdfff))
+            return (1L << 32) | 0xfffd;
+
+        return ((long) len << 32) | cp;
+    }
+
+    /**
+     * @return The number of chars needed to hold the decoded bytes.
+     */
+    public static int decodedLength(byte[] src, int offset, int len) {
+        int end = offset + len;
+        int retval = 0;
+
+        while (offset < end) {
+            if (src[offset] >= 0) {
+                offset += 1;
+                retval += 1;
+                continue;
+            }
+
+            long res = decodeOne(src, offset, end);
+
+            offset += (int) (res >>> 32);
+            retval += Character.charCount((int) res);
+        }
+
+        return retval;
+    }
+
+    /**
+     * Decode the bytes and append the characters to the builder.
+     */
+    public static void decode(byte[] src, int offset, int len, StringBuilder dest) {
+        int end = offset + len;
+
+        dest.ensureCapacity(dest.length() + len);
+        while (offset < end) {
+            byte b = src[offset];
+
+            if (b >= 0) {
+                dest.append((char) b);
+                offset += 1;
+                continue;
+            }
+
+            long res = decodeOne(src, offset, end);
+
+            dest.appendCodePoint((int) res);
+            offset += (int) (res >>> 32);
+        }
+    }
+
+    /**
+     * Decode the bytes into the buffer at its current position, the buffer
+     * must have decodedLength() chars remaining.
+     */
+    public static void decode(byte[] src, int offset, int len, CharBuffer dest) {
+        int end = offset + len;
+
+        while (offset < end) {
+            byte b = src[offset];
+
+            if (b >= 0) {
+                dest.put((char) b);
+                offset += 1;
+                continue;
+            }
+
+            long res = decodeOne(src, offset, end);
+            int cp = (int) res;
+
+            if (Character.isSupplementaryCodePoint(cp)) {
+                dest.put(Character.highSurrogate(cp));
+                dest.put(Character.lowSurrogate(cp));
+            }
+            else {
+                dest.put((char) cp);
+            }
+            offset += (int) (res >>> 32);
+        }
+    }
+
+    /**
+     * @return The bytes decoded as a String.  All-ASCII input, the common
+     *  case, is handed to the String constructor without decoding.
+     */
+    public static String decode(byte[] src, int offset, int len) {
+        int end = offset + len;
+
+        for (int lpc = offset; lpc < end; lpc++) {
+            if (src[lpc] < 0) {
+                CharBuffer dest = CharBuffer.allocate(decodedLength(src, offset, len));
+
+                decode(src, offset, len, dest);
+
+                return new String(dest.array(), 0, dest.position());
+            }
+        }
+
+        return new String(src, offset, len, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SqliteAsyncTest extends SqliteTestHelper {
+    private static final String SLOW_QUERY =
+            "WITH RECURSIVE cnt(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM cnt) SELECT max(x) FROM cnt";
+
+    private static final SqliteResultSetHandler<List<String>> NAMES = new SqliteResultSetHandler<List<String>>() {
+        @Override
+        public List<String> handle(ResultSet rs) throws SQLException {
+            List<String> retval = new ArrayList<>();
+
+            while (rs.next()) {
+                retval.add(rs.getString(1));
+            }
+
+            return retval;
+        }
+    };
+
+    private static Throwable failure(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("The future should have failed");
+            return null;
+        }
+        catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        SqliteStatement stmt = (SqliteStatement) this.conn.createStatement();
+        final Thread caller = Thread.currentThread();
+
+        stmt.addBatch("INSERT INTO test_table (name) VALUES ('batch1')");
+        stmt.addBatch("INSERT INTO test_table (name) VALUES ('batch2')");
+
+        CompletableFuture<int[]> batch = stmt.executeBatchAsync();
+        CompletableFuture<Integer> update = stmt.executeUpdateAsync("UPDATE test_table SET name = upper(name)");
+        CompletableFuture<String> thread = stmt.executeQueryAsync("SELECT 1",
+                new SqliteResultSetHandler<String>() {
+                    @Override
+                    public String handle(ResultSet rs) throws SQLException {
+                        assertNotSame(caller, Thread.currentThread());
+                        return Thread.currentThread().getName();
+                    }
+                });
+
+        assertArrayEquals(new int[] { 1, 1 }, batch.get(10, TimeUnit.SECONDS));
+        assertEquals(3, (int) update.get(10, TimeUnit.SECONDS));
+        assertTrue(thread.get(10, TimeUnit.SECONDS).startsWith("SqliteAsyncExecutor-"));
+
+        SqlitePreparedStatement ps = (SqlitePreparedStatement) this.conn.prepareStatement(
+                "SELECT name FROM test_table WHERE id > ? ORDER BY id");
+
+        ps.setInt(1, 1);
+        assertEquals("[BATCH1, BATCH2]", ps.executeQueryAsync(NAMES).get(10, TimeUnit.SECONDS).toString());
+        ps.close();
+
+        ps = (SqlitePreparedStatement) this.conn.prepareStatement("DELETE FROM test_table WHERE id = ?");
+        ps.setInt(1, 2);
+        assertEquals(1, (int) ps.executeUpdateAsync().get(10, TimeUnit.SECONDS));
+        ps.close();
+
+        assertTrue(failure(stmt.executeUpdateAsync("INSERT INTO no_table VALUES (1)")) instanceof SQLException);
+        stmt.close();
+    }
+
+    private void awaitStart(SqliteConnection conn) throws Exception {
+        for (int lpc = 0; lpc < 100 && conn.getAsyncExecutor().getQueueDepth() > 0; lpc++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testCancelAndBackpressure() throws Exception {
+        try (SqliteConnection conn = (SqliteConnection) driver.connect(
+                "jdbc:sqlite:" + this.dbFile.getAbsolutePath() + "?asyncQueueSize=1", null)) {
+            SqliteStatement stmt = (SqliteStatement) conn.createStatement();
+            SqliteStatement stmt2 = (SqliteStatement) conn.createStatement();
+            CompletableFuture<List<String>> slow = stmt.executeQueryAsync(SLOW_QUERY, NAMES);
+
+            // Wait for the slow query to start so the next one is queued.
+            this.awaitStart(conn);
+
+            CompletableFuture<List<String>> queued = stmt2.executeQueryAsync("SELECT 'queued'", NAMES);
+            CompletableFuture<List<String>> rejected = stmt2.executeQueryAsync("SELECT 'rejected'", NAMES);
+
+            assertTrue(failure(rejected) instanceof SQLTransientException);
+
+            assertTrue(slow.cancel(true));
+            try {
+                slow.get();
+                fail("The query was cancelled");
+            }
+            catch (CancellationException e) {
+            }
+
+            // The interrupt only stopped the slow query.
+            assertEquals("[queued]", queued.get(10, TimeUnit.SECONDS).toString());
+
+            CompletableFuture<List<String>> skipped = stmt2.executeQueryAsync(SLOW_QUERY, NAMES);
+
+            skipped.cancel(true);
+            assertEquals("[test]", stmt2.executeQueryAsync("SELECT name FROM test_table", NAMES)
+                    .get(10, TimeUnit.SECONDS).toString());
+
+            CompletableFuture<List<String>> running = stmt.executeQueryAsync(SLOW_QUERY, NAMES);
+
+            this.awaitStart(conn);
+
+            CompletableFuture<List<String>> pending = stmt2.executeQueryAsync("SELECT 1", NAMES);
+
+            conn.close();
+            assertNotNull(failure(running));
+            Throwable e = failure(pending);
+
+            assertTrue(e.toString(), e instanceof SQLNonTransientException);
+            assertEquals("08000", ((SQLException) e).getSQLState());
+        }
+    }
+
+    @Test
+    public void testQueueTimeout() throws Exception {
+        try (SqliteConnection conn = (SqliteConnection) driver.connect(
+                "jdbc:sqlite:" + this.dbFile.getAbsolutePath() + "?asyncQueueSize=1&asyncQueueTimeout=10000", null)) {
+            SqliteStatement stmt = (SqliteStatement) conn.createStatement();
+            SqliteStatement stmt2 = (SqliteStatement) conn.createStatement();
+            final CompletableFuture<List<String>> slow = stmt.executeQueryAsync(SLOW_QUERY, NAMES);
+
+            this.awaitStart(conn);
+
+            CompletableFuture<List<String>> queued = stmt2.executeQueryAsync("SELECT 'queued'", NAMES);
+            Thread canceller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(100);
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    slow.cancel(true);
+                }
+            });
+
+            canceller.start();
+
+            // Waits for the cancel to make room instead of failing.
+            CompletableFuture<List<String>> waited = stmt2.executeQueryAsync("SELECT 'waited'", NAMES);
+
+            canceller.join();
+            assertEquals("[queued]", queued.get(10, TimeUnit.SECONDS).toString());
+            assertEquals("[waited]", waited.get(10, TimeUnit.SECONDS).toString());
+        }
+    }
+
+    @Test
+    public void testResetForReuse() throws Exception {
+        try (SqliteConnection conn = (SqliteConnection) driver.connect(
+                "jdbc:sqlite:" + this.dbFile.getAbsolutePath(), null)) {
+            SqliteStatement stmt = (SqliteStatement) conn.createStatement();
+            CompletableFuture<List<String>> running = stmt.executeQueryAsync(SLOW_QUERY, NAMES);
+
+            this.awaitStart(conn);
+
+            CompletableFuture<List<String>> pending = stmt.executeQueryAsync("SELECT 1", NAMES);
+
+            conn.resetForReuse();
+            assertNotNull(failure(running));
+            assertEquals("08000", ((SQLException) failure(pending)).getSQLState());
+
+            stmt = (SqliteStatement) conn.createStatement();
+            assertEquals("[test]", stmt.executeQueryAsync("SELECT name FROM test_table", NAMES)
+                    .get(10, TimeUnit.SECONDS).toString());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class SqliteBackupTest extends SqliteTestHelper {
+    private void fill(int rows) throws SQLException {
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE big (id INTEGER PRIMARY KEY, data BLOB)");
+            stmt.executeUpdate("WITH RECURSIVE cnt(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM cnt LIMIT " +
+                    rows + ") INSERT INTO big (data) SELECT randomblob(900) FROM cnt");
+        }
+    }
+
+    private static int count(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT count(*) FROM big")) {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+
+    private int countBackup(File file) throws SQLException {
+        try (Connection conn = driver.connect("jdbc:sqlite:" + file.getAbsolutePath(), null)) {
+            return count(conn);
+        }
+    }
+
+    private static void insert(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO big (data) VALUES (randomblob(900))");
+        }
+    }
+
+    @Test
+    public void testBackup() throws Exception {
+        File dest = this.testFolder.newFile("backup.db");
+        final int[] calls = new int[1];
+
+        this.fill(500);
+
+        SqliteBackup backup = this.sqliteConnection.backup(dest.getAbsolutePath())
+                .setPagesPerStep(10)
+                .setStepDelayMillis(0)
+                .setProgressListener(new SqliteBackup.ProgressListener() {
+                    @Override
+                    public void progress(SqliteBackup backup, int remaining, int pageCount) {
+                        assertTrue(remaining < pageCount);
+                        calls[0] += 1;
+                    }
+                });
+
+        assertEquals(-1, backup.getRemaining());
+        backup.run();
+        assertEquals(0, backup.getRemaining());
+        assertTrue(backup.getPageCount() > 100);
+        assertEquals((backup.getPageCount() + 9) / 10, backup.getSteps());
+        assertEquals(backup.getSteps(), calls[0]);
+        assertEquals(0, backup.getRestarts());
+        assertFalse(backup.isVacuumed());
+        assertEquals(500, this.countBackup(dest));
+    }
+
+    @Test
+    public void testWritesThroughSource() throws Exception {
+        File dest = this.testFolder.newFile("backup.db");
+
+        this.fill(500);
+
+        SqliteBackup backup = this.sqliteConnection.backup(dest.getAbsolutePath())
+                .setPagesPerStep(10)
+                .setStepDelayMillis(0)
+                .setProgressListener(new SqliteBackup.ProgressListener() {
+                    @Override
+                    public void progress(SqliteBackup backup, int remaining, int pageCount) {
+                        try {
+                            if (remaining > 0)
+                                insert(conn);
+                        }
+                        catch (SQLException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+
+        // Changes made through the source connection are copied as they happen.
+        backup.run();
+        assertEquals(0, backup.getRestarts());
+        assertFalse(backup.isVacuumed());
+        assertEquals(count(this.conn), this.countBackup(dest));
+    }
+
+    @Test
+    public void testRestartFallback() throws Exception {
+        File dest = this.testFolder.newFile("backup.db");
+
+        this.fill(500);
+
+        try (final Connection writer = driver.connect("jdbc:sqlite:" + this.dbFile.getAbsolutePath(), null)) {
+            SqliteBackup backup = this.sqliteConnection.backup(dest.getAbsolutePath())
+                    .setPagesPerStep(10)
+                    .setStepDelayMillis(1)
+                    .setMaxRestarts(2)
+                    .setProgressListener(new SqliteBackup.ProgressListener() {
+                        @Override
+                        public void progress(SqliteBackup backup, int remaining, int pageCount) {
+                            try {
+                                if (remaining > 0)
+                                    insert(writer);
+                            }
+                            catch (SQLException e) {
+                                throw new IllegalStateException(e);
+                            }
+                        }
+                    });
+
+            backup.run();
+            assertEquals(3, backup.getRestarts());
+            assertTrue(backup.isVacuumed());
+            assertEquals(0, backup.getRemaining());
+            assertEquals(count(this.conn), this.countBackup(dest));
+        }
+    }
+
+    @Test
+    public void testBadDatabase() throws Exception {
+        File dest = this.testFolder.newFile("backup.db");
+
+        try {
+            this.sqliteConnection.backup("nosuchdb", dest.getAbsolutePath()).run();
+            fail("Backing up an unknown database should fail");
+        }
+        catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("nosuchdb"));
+        }
+    }
+}
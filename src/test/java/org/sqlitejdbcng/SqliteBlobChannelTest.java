@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class SqliteBlobChannelTest extends SqliteTestHelper {
+    /**
+     * A stream of a repeating pattern that is never held in memory.
+     */
+    private static class PatternStream extends InputStream {
+        private final long length;
+        private long pos;
+
+        PatternStream(long length) {
+            this.length = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.pos >= this.length)
+                return -1;
+
+            return (int) (this.pos++ % 251);
+        }
+    }
+
+    private static void checkPattern(InputStream in, long length) throws IOException {
+        byte[] buffer = new byte[10000];
+        long pos = 0;
+        int count;
+
+        while ((count = in.read(buffer)) != -1) {
+            for (int lpc = 0; lpc < count; lpc++, pos++) {
+                assertEquals((byte) (pos % 251), buffer[lpc]);
+            }
+        }
+        assertEquals(length, pos);
+    }
+
+    private void createTable() throws SQLException {
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE files (name TEXT, data BLOB)");
+        }
+    }
+
+    @Test
+    public void testZeroBlobFill() throws Exception {
+        final int size = 4 * 1024 * 1024 + 3;
+        long rowid;
+
+        this.createTable();
+        try (PreparedStatement ps = this.conn.prepareStatement("INSERT INTO files VALUES (?, ?)")) {
+            ps.setString(1, "big");
+            ((SqlitePreparedStatement) ps).setZeroBlob(2, size);
+            assertEquals(1, ps.executeUpdate());
+        }
+        try (Statement stmt = this.conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            assertTrue(rs.next());
+            rowid = rs.getLong(1);
+        }
+
+        try (SqliteBlobChannel channel = this.sqliteConnection.openBlob("main", "files", "data", rowid, true);
+             OutputStream out = channel.newOutputStream();
+             InputStream in = new PatternStream(size)) {
+            byte[] buffer = new byte[7000];
+            int count;
+
+            assertEquals(size, channel.size());
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            assertEquals(size, channel.position());
+
+            try {
+                out.write(1);
+                fail("Writing past the end of a blob should fail");
+            }
+            catch (IOException e) {
+            }
+        }
+
+        try (SqliteBlobChannel channel = this.sqliteConnection.openBlob("main", "files", "data", rowid, false)) {
+            checkPattern(channel.newInputStream(), size);
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(10);
+
+            channel.position(251);
+            assertEquals(10, channel.read(direct));
+            direct.flip();
+            for (int lpc = 0; lpc < 10; lpc++) {
+                assertEquals(lpc, direct.get());
+            }
+            channel.position(size);
+            assertEquals(-1, channel.read(ByteBuffer.allocate(10)));
+
+            try {
+                channel.write(ByteBuffer.allocate(1));
+                fail("A read-only channel should not be writable");
+            }
+            catch (NonWritableChannelException e) {
+            }
+        }
+
+        try (Statement stmt = this.conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT length(data), hex(substr(data, 251, 3)) FROM files")) {
+            assertTrue(rs.next());
+            assertEquals("|4194307|FA0001|", this.formatResultSetRow(rs));
+        }
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        this.createTable();
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO files VALUES ('a', x'0102'), ('b', x'030405')");
+        }
+
+        try (SqliteBlobChannel channel = this.sqliteConnection.openBlob("main", "files", "data", 1, true)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+
+            assertEquals(2, channel.read(buffer));
+            channel.reopen(2);
+            assertEquals(0, channel.position());
+            assertEquals(3, channel.size());
+            assertEquals(3, channel.read(buffer));
+            assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 0, 0, 0 }, buffer.array());
+
+            channel.position(1);
+            channel.write(ByteBuffer.wrap(new byte[] { 9 }).asReadOnlyBuffer());
+
+            try {
+                channel.reopen(3);
+                fail("Reopening a missing row should fail");
+            }
+            catch (IOException e) {
+            }
+        }
+
+        try {
+            this.sqliteConnection.openBlob("main", "files", "nosuchcolumn", 1, false);
+            fail("Opening a missing column should fail");
+        }
+        catch (SQLException e) {
+        }
+
+        try (Statement stmt = this.conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT hex(data) FROM files WHERE rowid = 2")) {
+            assertTrue(rs.next());
+            assertEquals("030905", rs.getString(1));
+        }
+    }
+
+    @Test
+    public void testStreamParameters() throws Exception {
+        final int size = 300000;
+
+        this.createTable();
+        try (PreparedStatement ps = this.conn.prepareStatement("INSERT INTO files VALUES (?, ?)")) {
+            ps.setString(1, "known");
+            ps.setBinaryStream(2, new PatternStream(size), size);
+            ps.executeUpdate();
+
+            ps.setString(1, "unknown");
+            ps.setBlob(2, new PatternStream(size));
+            ps.executeUpdate();
+
+            ps.setString(1, "empty");
+            ps.setBinaryStream(2, new ByteArrayInputStream(new byte[0]));
+            ps.executeUpdate();
+
+            ps.setString(1, "short");
+            ps.setBinaryStream(2, new PatternStream(10), 20);
+            try {
+                ps.executeUpdate();
+                fail("A stream shorter than its length should fail");
+            }
+            catch (SQLException e) {
+                assertEquals("22000", e.getSQLState());
+            }
+        }
+
+        try (Statement stmt = this.conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name, data FROM files ORDER BY rowid")) {
+            assertTrue(rs.next());
+            checkPattern(rs.getBinaryStream(2), size);
+            assertTrue(rs.next());
+
+            InputStream in = rs.getBinaryStream("data");
+
+            checkPattern(in, size);
+            assertTrue(rs.next());
+            assertEquals(-1, rs.getBinaryStream(2).read());
+            assertFalse(rs.next());
+
+            try {
+                in.read();
+                fail("The stream should not be readable after the cursor moved");
+            }
+            catch (IOException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SqliteBusyHandlerTest extends SqliteTestHelper {
+    private SqliteConnection openOther(Properties props) throws SQLException {
+        return (SqliteConnection) driver.connect("jdbc:sqlite:" + this.dbFile.getAbsolutePath(), props);
+    }
+
+    private void lockDatabase() throws SQLException {
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.executeUpdate("BEGIN IMMEDIATE");
+        }
+    }
+
+    private Thread unlockLater(final long millis) {
+        Thread retval = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(millis);
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.executeUpdate("COMMIT");
+                    }
+                }
+                catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        retval.start();
+
+        return retval;
+    }
+
+    private void insert(SqliteConnection other) throws SQLException {
+        try (Statement stmt = other.createStatement()) {
+            stmt.executeUpdate("INSERT INTO test_table VALUES (2, 'two')");
+        }
+    }
+
+    @Test
+    public void testNoHandler() throws Exception {
+        try (SqliteConnection other = this.openOther(null)) {
+            this.lockDatabase();
+            try {
+                this.insert(other);
+                fail("Insert should have failed with SQLITE_BUSY");
+            }
+            catch (SQLException e) {
+                assertEquals(5, e.getErrorCode());
+            }
+            assertNull(other.getBusyHandler());
+        }
+    }
+
+    @Test
+    public void testHandlerTimeout() throws Exception {
+        try (SqliteConnection other = this.openOther(null)) {
+            SqliteBusyHandler handler = new SqliteBusyHandler(1, 20, 100);
+
+            other.setBusyHandler(handler);
+            this.lockDatabase();
+            try {
+                this.insert(other);
+                fail("Insert should have failed with SQLITE_BUSY");
+            }
+            catch (SQLException e) {
+                assertEquals(5, e.getErrorCode());
+            }
+
+            assertEquals(1, handler.getBusyEvents());
+            assertEquals(1, handler.getTimeouts());
+            assertTrue(handler.getSleepCount() > 1);
+            assertTrue(handler.getTotalWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(90));
+        }
+    }
+
+    @Test
+    public void testHandlerWaits() throws Exception {
+        Properties props = new Properties();
+
+        props.setProperty("busyMaxWait", "5000");
+        try (SqliteConnection other = this.openOther(props)) {
+            SqliteBusyHandler handler = other.getBusyHandler();
+
+            assertNotNull(handler);
+            assertEquals(5000, handler.getMaxWaitMillis());
+
+            this.lockDatabase();
+            Thread unlocker = this.unlockLater(100);
+            this.insert(other);
+            unlocker.join();
+
+            assertEquals(1, handler.getBusyEvents());
+            assertEquals(0, handler.getTimeouts());
+        }
+    }
+
+    @Test
+    public void testBusyTimeout() throws Exception {
+        try (SqliteConnection other = this.openOther(null)) {
+            other.setBusyHandler(new SqliteBusyHandler(1000));
+            other.setBusyTimeout(5000);
+            assertNull(other.getBusyHandler());
+
+            this.lockDatabase();
+            Thread unlocker = this.unlockLater(100);
+            this.insert(other);
+            unlocker.join();
+        }
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        Properties props = new Properties();
+
+        props.setProperty("busyRetries", "1000");
+        try (SqliteConnection other = this.openOther(props)) {
+            assertEquals(1000, other.getBusyRetries());
+
+            this.lockDatabase();
+            Thread unlocker = this.unlockLater(100);
+            this.insert(other);
+            unlocker.join();
+
+            assertTrue(other.getBusyRetryCount() > 0);
+        }
+    }
+
+    @Test
+    public void testNoRetryInTransaction() throws Exception {
+        try (SqliteConnection other = this.openOther(null)) {
+            other.setBusyRetries(1000);
+            other.setAutoCommit(false);
+            this.lockDatabase();
+            try {
+                this.insert(other);
+                fail("Insert should have failed with SQLITE_BUSY");
+            }
+            catch (SQLException e) {
+                assertEquals(5, e.getErrorCode());
+            }
+            assertEquals(0, other.getBusyRetryCount());
+            other.rollback();
+        }
+    }
+}
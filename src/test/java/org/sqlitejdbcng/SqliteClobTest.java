@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.sql.Clob;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class SqliteClobTest extends SqliteTestHelper {
+    private static final String PATTERN = "{\"k\": \"caf\u00e9 \uD83D\uDE00\"}, ";
+
+    /**
+     * A reader of a repeating pattern with surrogate pairs that will land
+     * on every possible chunk boundary.
+     */
+    private static class PatternReader extends Reader {
+        private final long length;
+        private long pos;
+
+        PatternReader(long length) {
+            this.length = length;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (this.pos >= this.length)
+                return -1;
+
+            // Odd-sized reads so the pairs get split.
+            int count = (int) Math.min(Math.min(len, 1001), this.length - this.pos);
+
+            for (int lpc = 0; lpc < count; lpc++, this.pos++) {
+                cbuf[off + lpc] = PATTERN.charAt((int) (this.pos % PATTERN.length()));
+            }
+
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static void checkPattern(Reader reader, long length) throws IOException {
+        char[] buffer = new char[777];
+        long pos = 0;
+        int count;
+
+        while ((count = reader.read(buffer)) != -1) {
+            for (int lpc = 0; lpc < count; lpc++, pos++) {
+                assertEquals(PATTERN.charAt((int) (pos % PATTERN.length())), buffer[lpc]);
+            }
+        }
+        assertEquals(length, pos);
+    }
+
+    @Test
+    public void testClob() throws Exception {
+        Clob clob = this.conn.createClob();
+
+        assertEquals(0, clob.length());
+        assertEquals(5, clob.setString(1, "Hello"));
+        assertEquals(7, clob.setString(6, ", World"));
+        assertEquals("Hello, World", clob.getSubString(1, 100));
+        assertEquals("World", clob.getSubString(8, 5));
+        assertEquals(8, clob.position("World", 1));
+        assertEquals(-1, clob.position("World", 9));
+        assertEquals(3, clob.position("l", 1));
+
+        try (Writer writer = clob.setCharacterStream(6)) {
+            writer.write("!\u00e9");
+        }
+        assertEquals("Hello!\u00e9World", clob.getSubString(1, 100));
+
+        char[] buffer = new char[100];
+        int count = clob.getCharacterStream(7, 3).read(buffer);
+
+        assertEquals("\u00e9Wo", new String(buffer, 0, count));
+
+        java.io.InputStream ascii = clob.getAsciiStream();
+
+        assertEquals(6, ascii.skip(6));
+        assertEquals('?', ascii.read());
+
+        clob.truncate(5);
+        assertEquals("Hello", clob.getSubString(1, 100));
+
+        try (PreparedStatement ps = this.conn.prepareStatement("SELECT ?, typeof(?2), length(?2)")) {
+            ps.setClob(1, clob);
+            ps.setClob(2, this.conn.createClob());
+            assertEquals("|Hello|text|0|", this.queryRow(ps));
+        }
+
+        clob.free();
+        clob.free();
+        try {
+            clob.length();
+            fail("length() should fail after the clob was freed");
+        }
+        catch (SQLException e) {
+        }
+    }
+
+    private String queryRow(PreparedStatement ps) throws SQLException {
+        try (ResultSet rs = ps.executeQuery()) {
+            assertTrue(rs.next());
+            return this.formatResultSetRow(rs);
+        }
+    }
+
+    @Test
+    public void testCharacterStreams() throws Exception {
+        final int size = 3 * 1024 * 1024 + 3;
+
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE docs (name TEXT, body TEXT)");
+        }
+
+        try (PreparedStatement ps = this.conn.prepareStatement("INSERT INTO docs VALUES (?, ?)")) {
+            ps.setString(1, "known");
+            ps.setCharacterStream(2, new PatternReader(size), size);
+            ps.executeUpdate();
+
+            ps.setString(1, "unknown");
+            ps.setClob(2, new PatternReader(size));
+            ps.executeUpdate();
+
+            ps.setString(1, "ascii");
+            ps.setAsciiStream(2, new java.io.ByteArrayInputStream("plain".getBytes("US-ASCII")));
+            ps.executeUpdate();
+
+            ps.setString(1, "empty");
+            ps.setNCharacterStream(2, new StringReader(""));
+            ps.executeUpdate();
+
+            ps.setString(1, "short");
+            ps.setCharacterStream(2, new StringReader("abc"), 10);
+            try {
+                ps.executeUpdate();
+                fail("A reader shorter than its length should fail");
+            }
+            catch (SQLException e) {
+                assertEquals("22000", e.getSQLState());
+            }
+        }
+
+        try (Statement stmt = this.conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name, body, length(body), typeof(body) FROM docs ORDER BY rowid")) {
+            assertTrue(rs.next());
+            checkPattern(rs.getCharacterStream(2), size);
+            assertEquals(size - size / PATTERN.length() - 1, rs.getLong(3));
+
+            assertTrue(rs.next());
+
+            Clob clob = rs.getClob("body");
+
+            assertEquals(size, clob.length());
+            checkPattern(clob.getCharacterStream(), size);
+            assertEquals(PATTERN.length() + 1, clob.position(PATTERN, 2));
+            clob.free();
+
+            // Reading one char at a time must not split a surrogate pair.
+            Reader reader = rs.getNCharacterStream(2);
+            StringBuilder sb = new StringBuilder();
+
+            for (int lpc = 0; lpc < PATTERN.length() * 2; lpc++) {
+                sb.append((char) reader.read());
+            }
+            assertEquals(PATTERN + PATTERN, sb.toString());
+
+            assertTrue(rs.next());
+            assertEquals("plain", ((NClob) rs.getNClob(2)).getSubString(1, 10));
+            assertEquals("text", rs.getString(4));
+
+            assertTrue(rs.next());
+            assertEquals(-1, rs.getCharacterStream(2).read());
+            assertEquals("text", rs.getString(4));
+            assertFalse(rs.next());
+
+            try {
+                reader.read();
+                fail("The reader should not be usable after the cursor moved");
+            }
+            catch (IOException e) {
+            }
+        }
+    }
+}
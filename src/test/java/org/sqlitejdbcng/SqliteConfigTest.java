@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class SqliteConfigTest extends SqliteTestHelper {
+    private String queryPragma(Connection conn, String name) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+
+    @Test
+    public void testUrlParsing() throws Exception {
+        SqliteUrl url = new SqliteUrl("jdbc:sqlite:file:test.db?mode=ro&journal_mode=wal&cache_size=-2000");
+
+        assertEquals("file:test.db?mode=ro", url.getPath());
+        assertEquals("wal", url.getProperties().getProperty("journal_mode"));
+        assertEquals("-2000", url.getProperties().getProperty("cache_size"));
+
+        url = new SqliteUrl("jdbc:sqlite:/tmp/test.db?foreign_keys=on");
+        assertEquals("/tmp/test.db", url.getPath());
+        assertEquals("on", url.getProperties().getProperty("foreign_keys"));
+
+        url = new SqliteUrl("jdbc:sqlite::memory:");
+        assertEquals(":memory:", url.getPath());
+        assertTrue(url.getProperties().isEmpty());
+    }
+
+    @Test
+    public void testBuilder() throws Exception {
+        SqliteConfig config = SqliteConfig.builder()
+                .journalMode("wal")
+                .synchronous("normal")
+                .foreignKeys(true)
+                .statementCacheSize(16)
+                .temporalStorage(SqliteConfig.TemporalStorage.REAL)
+                .build();
+
+        assertEquals("WAL", config.get(SqliteConfig.Pragma.JOURNAL_MODE));
+        assertEquals("NORMAL", config.get(SqliteConfig.Pragma.SYNCHRONOUS));
+        assertNull(config.get(SqliteConfig.Pragma.TEMP_STORE));
+        assertEquals(16, config.getStatementCacheSize());
+        assertEquals("PRAGMA journal_mode=WAL;PRAGMA synchronous=NORMAL;PRAGMA foreign_keys=ON;",
+                config.toSql());
+
+        Properties props = config.toProperties();
+
+        assertEquals("ON", props.getProperty("foreign_keys"));
+        assertEquals("16", props.getProperty(SqliteConnection.STATEMENT_CACHE_SIZE));
+        assertEquals("REAL", props.getProperty("temporalStorage"));
+        assertEquals(SqliteConfig.TemporalStorage.TEXT, SqliteConfig.builder().build().getTemporalStorage());
+        assertEquals(SqliteConfig.fromProperties(props).toProperties(), props);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilderBadChoice() throws Exception {
+        SqliteConfig.builder().journalMode("sideways");
+    }
+
+    @Test
+    public void testApplied() throws Exception {
+        Properties props = new Properties();
+
+        props.setProperty("busy_timeout", "1234");
+        props.setProperty("cache_size", "-4000");
+        try (Connection conn = driver.connect(
+                "jdbc:sqlite:" + this.dbFile.getAbsolutePath() + "?foreign_keys=true&temp_store=memory&cache_size=10",
+                props)) {
+            assertEquals("1", this.queryPragma(conn, "foreign_keys"));
+            assertEquals("2", this.queryPragma(conn, "temp_store"));
+            assertEquals("1234", this.queryPragma(conn, "busy_timeout"));
+            // The Properties override the URL.
+            assertEquals("-4000", this.queryPragma(conn, "cache_size"));
+            assertEquals("ON", ((SqliteConnection) conn).getConfig().get(SqliteConfig.Pragma.FOREIGN_KEYS));
+        }
+    }
+
+    @Test
+    public void testJournalMode() throws Exception {
+        SqliteDataSource ds = new SqliteDataSource("jdbc:sqlite:" + this.dbFile.getAbsolutePath());
+
+        ds.setConfig(SqliteConfig.builder().journalMode("WAL").synchronous("NORMAL").build());
+        try (Connection conn = ds.getConnection()) {
+            assertEquals("wal", this.queryPragma(conn, "journal_mode"));
+            assertEquals("1", this.queryPragma(conn, "synchronous"));
+        }
+    }
+
+    @Test
+    public void testBadValue() throws Exception {
+        try {
+            driver.connect("jdbc:sqlite:" + this.dbFile.getAbsolutePath() + "?mmap_size=lots", null);
+            fail("Invalid property value should be rejected");
+        }
+        catch (SQLException e) {
+            assertEquals("08000", e.getSQLState());
+        }
+    }
+}
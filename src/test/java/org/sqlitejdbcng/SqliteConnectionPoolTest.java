@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Test;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.PooledConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SqliteConnectionPoolTest extends SqliteTestHelper {
+    private SqliteConnectionPool newPool() {
+        return new SqliteConnectionPool("jdbc:sqlite:" + this.dbFile.getAbsolutePath());
+    }
+
+    private int countRows(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT count(*) FROM test_table")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void testDataSource() throws Exception {
+        SqliteDataSource ds = new SqliteDataSource("jdbc:sqlite:" + this.dbFile.getAbsolutePath());
+
+        try (Connection conn = ds.getConnection()) {
+            assertEquals(1, this.countRows(conn));
+        }
+        assertTrue(ds.isWrapperFor(SqliteDataSource.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadUrl() throws Exception {
+        new SqliteDataSource("jdbc:foo:bar");
+    }
+
+    @Test
+    public void testPooledConnection() throws Exception {
+        SqliteConnectionPoolDataSource ds = new SqliteConnectionPoolDataSource(
+                "jdbc:sqlite:" + this.dbFile.getAbsolutePath());
+        PooledConnection pc = ds.getPooledConnection();
+        final AtomicInteger closedCount = new AtomicInteger();
+
+        pc.addConnectionEventListener(new ConnectionEventListener() {
+            @Override
+            public void connectionClosed(ConnectionEvent event) {
+                closedCount.incrementAndGet();
+            }
+
+            @Override
+            public void connectionErrorOccurred(ConnectionEvent event) {
+            }
+        });
+
+        Connection handle = pc.getConnection();
+
+        assertEquals(1, this.countRows(handle));
+        handle.close();
+        assertTrue(handle.isClosed());
+        handle.close();
+        assertEquals(1, closedCount.get());
+
+        try {
+            handle.createStatement();
+            fail("Closed handle should not be usable");
+        }
+        catch (SQLException e) {
+            assertEquals("08000", e.getSQLState());
+        }
+
+        handle = pc.getConnection();
+        assertFalse(handle.isClosed());
+        assertTrue(handle.isWrapperFor(SqliteConnection.class));
+        pc.close();
+        assertTrue(handle.isClosed());
+    }
+
+    @Test
+    public void testStatementsReportHandle() throws Exception {
+        try (SqliteConnectionPool pool = this.newPool()) {
+            Connection conn = pool.getConnection();
+            Statement stmt = conn.createStatement();
+            PreparedStatement ps = conn.prepareStatement("SELECT * FROM test_table");
+            ResultSet rs = stmt.executeQuery("SELECT * FROM test_table");
+
+            assertSame(conn, stmt.getConnection());
+            assertSame(conn, ps.getConnection());
+            assertSame(conn, conn.getMetaData().getConnection());
+            assertSame(conn, rs.getStatement().getConnection());
+            rs.getStatement().getConnection().close();
+            assertEquals(0, pool.getActiveCount());
+            assertEquals(1, pool.getIdleCount());
+
+            try {
+                stmt.executeQuery("SELECT * FROM test_table");
+                fail("Statement of a closed handle should not be usable");
+            }
+            catch (SQLException e) {
+                assertEquals("08000", e.getSQLState());
+            }
+
+            try (Connection next = pool.getConnection()) {
+                assertFalse(next.isClosed());
+                assertEquals(1, this.countRows(next));
+            }
+        }
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        try (SqliteConnectionPool pool = this.newPool()) {
+            Connection first = pool.getConnection();
+            SqliteConnection physical = first.unwrap(SqliteConnection.class);
+
+            assertEquals(1, pool.getActiveCount());
+            first.close();
+            assertEquals(0, pool.getActiveCount());
+            assertEquals(1, pool.getIdleCount());
+
+            try (Connection second = pool.getConnection()) {
+                assertSame(physical, second.unwrap(SqliteConnection.class));
+            }
+
+            assertEquals(2, pool.getBorrowCount());
+            assertEquals(1, pool.getCreatedCount());
+        }
+    }
+
+    @Test
+    public void testResetOnReturn() throws Exception {
+        try (SqliteConnectionPool pool = this.newPool()) {
+            try (Connection conn = pool.getConnection()) {
+                conn.setReadOnly(true);
+            }
+
+            try (Connection conn = pool.getConnection()) {
+                assertFalse(conn.isReadOnly());
+                conn.setAutoCommit(false);
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("INSERT INTO test_table VALUES (2, 'two')");
+                }
+                conn.createStatement();
+            }
+
+            try (Connection conn = pool.getConnection()) {
+                assertTrue(conn.getAutoCommit());
+                assertFalse(conn.isReadOnly());
+                assertNull(conn.getWarnings());
+                assertEquals(1, this.countRows(conn));
+            }
+        }
+    }
+
+    @Test
+    public void testPragmasResetOnReturn() throws Exception {
+        try (SqliteConnectionPool pool = new SqliteConnectionPool(
+                "jdbc:sqlite:" + this.dbFile.getAbsolutePath() + "?cache_size=1000")) {
+            try (Connection conn = pool.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("PRAGMA cache_size = 10");
+            }
+
+            try (Connection conn = pool.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA cache_size")) {
+                assertTrue(rs.next());
+                assertEquals(1000, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testBusyStrategyResetOnReturn() throws Exception {
+        try (SqliteConnectionPool pool = new SqliteConnectionPool(
+                "jdbc:sqlite:" + this.dbFile.getAbsolutePath() + "?busyMaxWait=500")) {
+            try (Connection conn = pool.getConnection()) {
+                SqliteConnection sconn = conn.unwrap(SqliteConnection.class);
+
+                sconn.setBusyHandler(new SqliteBusyHandler(10000));
+                sconn.setBusyRetries(5);
+            }
+
+            try (Connection conn = pool.getConnection()) {
+                SqliteConnection sconn = conn.unwrap(SqliteConnection.class);
+
+                assertEquals(500, sconn.getBusyHandler().getMaxWaitMillis());
+                assertEquals(0, sconn.getBusyRetries());
+            }
+        }
+
+        try (SqliteConnectionPool pool = this.newPool()) {
+            try (Connection conn = pool.getConnection()) {
+                conn.unwrap(SqliteConnection.class).setBusyHandler(new SqliteBusyHandler(10000));
+            }
+
+            try (Connection conn = pool.getConnection()) {
+                assertNull(conn.unwrap(SqliteConnection.class).getBusyHandler());
+            }
+        }
+    }
+
+    @Test
+    public void testWalMonitorResetOnReturn() throws Exception {
+        try (SqliteConnectionPool pool = new SqliteConnectionPool(
+                "jdbc:sqlite:" + this.dbFile.getAbsolutePath() + "?journal_mode=WAL&walCheckpointFrames=8")) {
+            try (Connection conn = pool.getConnection()) {
+                conn.unwrap(SqliteConnection.class).setWalMonitor(null);
+            }
+
+            try (Connection conn = pool.getConnection()) {
+                SqliteConnection sconn = conn.unwrap(SqliteConnection.class);
+
+                assertSame(sconn.getWalCheckpointer().getMonitor(), sconn.getWalMonitor());
+            }
+        }
+
+        try (SqliteConnectionPool pool = this.newPool()) {
+            try (Connection conn = pool.getConnection()) {
+                conn.unwrap(SqliteConnection.class).setWalMonitor(new SqliteWalMonitor());
+            }
+
+            try (Connection conn = pool.getConnection()) {
+                assertNull(conn.unwrap(SqliteConnection.class).getWalMonitor());
+            }
+        }
+    }
+
+    @Test
+    public void testBoundedWait() throws Exception {
+        try (SqliteConnectionPool pool = this.newPool()) {
+            pool.setMaxSize(1);
+            pool.setMaxWaitMillis(50);
+
+            try (Connection conn = pool.getConnection()) {
+                assertEquals(1.0, pool.getUtilization(), 0.001);
+                try {
+                    pool.getConnection();
+                    fail("Pool should have been exhausted");
+                }
+                catch (SQLTransientConnectionException e) {
+                    assertEquals("08001", e.getSQLState());
+                }
+            }
+
+            assertEquals(1, pool.getTimeoutCount());
+            assertTrue(pool.getMaxWaitNanos() >= 50 * 1000 * 1000);
+
+            try (Connection conn = pool.getConnection()) {
+                assertEquals(1, this.countRows(conn));
+            }
+        }
+    }
+
+    @Test
+    public void testValidateOnBorrow() throws Exception {
+        try (SqliteConnectionPool pool = this.newPool()) {
+            Connection conn = pool.getConnection();
+            SqliteConnection physical = conn.unwrap(SqliteConnection.class);
+
+            conn.close();
+            physical.close();
+
+            try (Connection next = pool.getConnection()) {
+                assertNotSame(physical, next.unwrap(SqliteConnection.class));
+            }
+            assertEquals(2, pool.getCreatedCount());
+            assertEquals(1, pool.getDestroyedCount());
+        }
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        try (SqliteConnectionPool pool = this.newPool()) {
+            pool.setIdleTimeoutMillis(20);
+            pool.getConnection().close();
+            assertEquals(1, pool.getIdleCount());
+
+            Thread.sleep(50);
+            pool.evictIdle();
+            assertEquals(0, pool.getIdleCount());
+            assertEquals(1, pool.getDestroyedCount());
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        SqliteConnectionPool pool = this.newPool();
+        Connection conn = pool.getConnection();
+
+        pool.getConnection().close();
+        pool.close();
+        assertEquals(0, pool.getIdleCount());
+        assertFalse(conn.isClosed());
+        conn.close();
+        assertEquals(2, pool.getDestroyedCount());
+
+        try {
+            pool.getConnection();
+            fail("Closed pool should not hand out connections");
+        }
+        catch (SQLException e) {
+            assertEquals("08000", e.getSQLState());
+        }
+    }
+}
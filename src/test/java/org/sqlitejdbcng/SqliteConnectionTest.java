@@ -33,6 +33,7 @@ import org.sqlitejdbcng.bridj.Sqlite3;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -535,4 +536,59 @@ public class SqliteConnectionTest extends SqliteTestHelper {
 
         }
     }
+
+    private static String queryString(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+
+    @Test
+    public void testSerialize() throws Exception {
+        byte[] image = this.sqliteConnection.serialize();
+
+        assertEquals("SQLite format 3\u0000", new String(image, 0, 16, "US-ASCII"));
+
+        try (SqliteConnection clone = SqliteConnection.openFrom(image)) {
+            assertFalse(clone.isReadOnly());
+            assertEquals("test", queryString(clone, "SELECT name FROM test_table WHERE id = 1"));
+            try (Statement stmt = clone.createStatement()) {
+                stmt.executeUpdate("INSERT INTO test_table VALUES (2, 'clone')");
+            }
+            assertEquals("2", queryString(clone, "SELECT count(*) FROM test_table"));
+        }
+        assertEquals("1", queryString(this.conn, "SELECT count(*) FROM test_table"));
+
+        ByteBuffer shared = ByteBuffer.allocateDirect(image.length);
+
+        shared.put(image).flip();
+        shared = shared.asReadOnlyBuffer();
+        try (SqliteConnection first = SqliteConnection.openFrom(shared);
+             SqliteConnection second = SqliteConnection.openFrom(shared)) {
+            assertTrue(first.isReadOnly());
+            assertEquals("test", queryString(first, "SELECT name FROM test_table"));
+            assertEquals("test", queryString(second, "SELECT name FROM test_table"));
+            try (Statement stmt = second.createStatement()) {
+                stmt.executeUpdate("INSERT INTO test_table VALUES (2, 'clone')");
+                fail("A shared image should be read-only");
+            }
+            catch (SQLException e) {
+            }
+            assertEquals(image.length, second.serialize().length);
+        }
+
+        try (SqliteConnection empty = SqliteConnection.openFrom(new byte[0])) {
+            assertEquals("0", queryString(empty, "SELECT count(*) FROM sqlite_master"));
+        }
+
+        try {
+            this.sqliteConnection.serialize("nosuchdb");
+            fail("Serializing an unknown database should fail");
+        }
+        catch (SQLException e) {
+            assertEquals("42000", e.getSQLState());
+        }
+    }
 }
@@ -41,6 +41,7 @@ import java.util.Properties;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class SqliteDriverTest {
     @Rule
@@ -125,6 +126,20 @@ public class SqliteDriverTest {
 
     @Test
     public void testProperties() throws Exception {
-        assertArrayEquals(new DriverPropertyInfo[0], driver.getPropertyInfo("jdbc:sqlite::memory:", new Properties()));
+        Properties props = new Properties();
+
+        props.setProperty("synchronous", "OFF");
+
+        DriverPropertyInfo[] infos = driver.getPropertyInfo("jdbc:sqlite::memory:?journal_mode=WAL", props);
+
+        assertEquals(SqliteConfig.Pragma.values().length + SqliteConfig.Setting.values().length, infos.length);
+        assertEquals("page_size", infos[0].name);
+        assertNull(infos[0].value);
+        assertEquals("journal_mode", infos[1].name);
+        assertEquals("WAL", infos[1].value);
+        assertArrayEquals(new String[] { "DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF" }, infos[1].choices);
+        assertEquals("synchronous", infos[2].name);
+        assertEquals("OFF", infos[2].value);
+        assertEquals(SqliteConnection.STATEMENT_CACHE_SIZE, infos[SqliteConfig.Pragma.values().length].name);
     }
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Test;
+
+import java.sql.BatchUpdateException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class SqlitePreparedBatchTest extends SqliteTestHelper {
+    private String[] selectAll(String sql) throws SQLException {
+        try (Statement stmt = this.conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return this.formatResultSet(rs);
+        }
+    }
+
+    @Test
+    public void testDistinctRows() throws Exception {
+        try (SqlitePreparedStatement ps = (SqlitePreparedStatement) this.conn.prepareStatement(
+                "INSERT INTO test_table VALUES (?, ?)")) {
+            for (int lpc = 2; lpc < 5; lpc++) {
+                ps.setInt(1, lpc);
+                ps.setString(2, "r\u00e9sum\u00e9 " + lpc);
+                ps.addBatch();
+            }
+            ps.setInt(1, 5);
+            ps.setString(2, "");
+            ps.addBatch();
+            assertArrayEquals(new int[] { 1, 1, 1, 1 }, ps.executeBatch());
+            assertArrayEquals(new int[0], ps.executeBatch());
+        }
+
+        assertArrayEquals(new String[] {
+                "|1|74657374|",
+                "|2|72C3A973756DC3A92032|",
+                "|3|72C3A973756DC3A92033|",
+                "|4|72C3A973756DC3A92034|",
+                "|5||",
+        }, this.selectAll("SELECT id, hex(name) FROM test_table ORDER BY id"));
+        assertTrue(this.conn.getAutoCommit());
+    }
+
+    @Test
+    public void testUpdateCounts() throws Exception {
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO test_table VALUES (2, 'test')");
+        }
+        try (SqlitePreparedStatement ps = (SqlitePreparedStatement) this.conn.prepareStatement(
+                "UPDATE test_table SET name = 'changed' WHERE name = ?")) {
+            ps.setString(1, "test");
+            ps.addBatch();
+            ps.setString(1, "missing");
+            ps.addBatch();
+            assertArrayEquals(new int[] { 2, 0 }, ps.executeBatch());
+        }
+    }
+
+    @Test
+    public void testColumns() throws Exception {
+        try (SqlitePreparedStatement ps = (SqlitePreparedStatement) this.conn.prepareStatement(
+                "INSERT INTO prim_table (id, bi, d) VALUES (?, ?, ?)")) {
+            ps.addBatchColumns(new int[] { 1, 2, 3 },
+                    new long[] { Long.MAX_VALUE, 0, -1 },
+                    new double[] { 1.5, 2.5, 3.5 });
+            ps.setInt(1, 4);
+            ps.setNull(2, java.sql.Types.BIGINT);
+            ps.setDouble(3, 4.5);
+            ps.addBatch();
+            assertArrayEquals(new int[] { 1, 1, 1, 1 }, ps.executeBatch());
+        }
+
+        assertArrayEquals(new String[] {
+                "|1|9223372036854775807|1.5|",
+                "|2|0|2.5|",
+                "|3|-1|3.5|",
+                "|4|null|4.5|",
+        }, this.selectAll("SELECT id, bi, d FROM prim_table ORDER BY id"));
+
+        try (SqlitePreparedStatement ps = (SqlitePreparedStatement) this.conn.prepareStatement(
+                "INSERT INTO test_table VALUES (?, ?)")) {
+            try {
+                ps.addBatchColumns(new long[] { 1, 2 }, new String[] { "a" });
+                fail("columns with different lengths should be rejected");
+            }
+            catch (SQLException e) {
+                assertEquals("22000", e.getSQLState());
+            }
+            try {
+                ps.addBatchColumns(new long[] { 1 });
+                fail("missing columns should be rejected");
+            }
+            catch (SQLException e) {
+                assertEquals("22000", e.getSQLState());
+            }
+        }
+    }
+
+    @Test
+    public void testFailedRows() throws Exception {
+        try (SqlitePreparedStatement ps = (SqlitePreparedStatement) this.conn.prepareStatement(
+                "INSERT INTO test_table VALUES (?, ?)")) {
+            ps.addBatchColumns(new long[] { 2, 1, 3 }, new String[] { "two", "dup", null });
+            try {
+                ps.executeBatch();
+                fail("constraint violations should fail the batch");
+            }
+            catch (BatchUpdateException e) {
+                assertArrayEquals(new int[] { 1, Statement.EXECUTE_FAILED, Statement.EXECUTE_FAILED },
+                        e.getUpdateCounts());
+                assertNotNull(e.getCause());
+            }
+        }
+
+        assertArrayEquals(new String[] {
+                "|1|test|",
+                "|2|two|",
+        }, this.selectAll("SELECT * FROM test_table ORDER BY id"));
+        assertTrue(this.conn.getAutoCommit());
+    }
+
+    @Test
+    public void testConflictRollback() throws Exception {
+        try (SqlitePreparedStatement ps = (SqlitePreparedStatement) this.conn.prepareStatement(
+                "INSERT OR ROLLBACK INTO test_table VALUES (?, ?)")) {
+            ps.addBatchColumns(new long[] { 2, 1, 3 }, new String[] { "two", "dup", "three" });
+            try {
+                ps.executeBatch();
+                fail("constraint violations should fail the batch");
+            }
+            catch (BatchUpdateException e) {
+                assertArrayEquals(new int[] {
+                        Statement.EXECUTE_FAILED, Statement.EXECUTE_FAILED, Statement.EXECUTE_FAILED
+                }, e.getUpdateCounts());
+                assertNull(((SQLException) e.getCause()).getNextException());
+            }
+
+            // The rollback also ends a transaction that was already open.
+            this.conn.setAutoCommit(false);
+            ps.addBatchColumns(new long[] { 1 }, new String[] { "dup" });
+            try {
+                ps.executeBatch();
+                fail("constraint violations should fail the batch");
+            }
+            catch (BatchUpdateException e) {
+                assertArrayEquals(new int[] { Statement.EXECUTE_FAILED }, e.getUpdateCounts());
+            }
+            assertTrue(this.conn.getAutoCommit());
+
+            ps.addBatchColumns(new long[] { 4 }, new String[] { "four" });
+            assertArrayEquals(new int[] { 1 }, ps.executeBatch());
+        }
+
+        assertArrayEquals(new String[] {
+                "|1|test|",
+                "|4|four|",
+        }, this.selectAll("SELECT * FROM test_table ORDER BY id"));
+    }
+
+    @Test
+    public void testInTransaction() throws Exception {
+        this.conn.setAutoCommit(false);
+        try (SqlitePreparedStatement ps = (SqlitePreparedStatement) this.conn.prepareStatement(
+                "INSERT INTO test_table VALUES (?, ?)")) {
+            ps.addBatchColumns(new long[] { 2, 3 }, new String[] { "two", "three" });
+            assertArrayEquals(new int[] { 1, 1 }, ps.executeBatch());
+        }
+        this.conn.rollback();
+        this.conn.setAutoCommit(true);
+
+        assertArrayEquals(new String[] {
+                "|1|test|",
+        }, this.selectAll("SELECT * FROM test_table ORDER BY id"));
+    }
+
+    @Test
+    public void testClearBatch() throws Exception {
+        try (SqlitePreparedStatement ps = (SqlitePreparedStatement) this.conn.prepareStatement(
+                "INSERT INTO test_table VALUES (?, ?)")) {
+            ps.setInt(1, 2);
+            ps.setString(2, "two");
+            ps.addBatch();
+            ps.clearBatch();
+            assertArrayEquals(new int[0], ps.executeBatch());
+
+            // The statement should still be usable after a batch.
+            ps.addBatchColumns(new long[] { 2 }, new String[] { "two" });
+            ps.executeBatch();
+            ps.setInt(1, 3);
+            ps.setString(2, "three");
+            assertEquals(1, ps.executeUpdate());
+        }
+
+        assertArrayEquals(new String[] {
+                "|1|test|",
+                "|2|two|",
+                "|3|three|",
+        }, this.selectAll("SELECT * FROM test_table ORDER BY id"));
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Test;
+import org.sqlitejdbcng.internal.DateTimeText;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class SqlitePreparedStatementTest extends SqliteTestHelper {
+    private String queryRow(PreparedStatement ps) throws SQLException {
+        try (ResultSet rs = ps.executeQuery()) {
+            assertTrue(rs.next());
+            return this.formatResultSetRow(rs);
+        }
+    }
+
+    @Test
+    public void testRebinding() throws Exception {
+        try (PreparedStatement ps = this.conn.prepareStatement(
+                "SELECT ?, typeof(?2), ?3, ?4, hex(?5)")) {
+            ps.setLong(1, 10);
+            ps.setInt(2, 20);
+            ps.setDouble(3, 1.5);
+            ps.setString(4, "abc");
+            ps.setBytes(5, new byte[] { 1, 2 });
+            assertEquals("|10|integer|1.5|abc|0102|", this.queryRow(ps));
+
+            // Unchanged parameters keep their bindings across executions.
+            assertEquals("|10|integer|1.5|abc|0102|", this.queryRow(ps));
+
+            ps.setLong(1, 11);
+            ps.setDouble(3, 2.5);
+            assertEquals("|11|integer|2.5|abc|0102|", this.queryRow(ps));
+
+            ps.setString(2, null);
+            ps.setObject(4, "def", Types.VARCHAR);
+            ps.setString(4, "");
+            assertEquals("|11|null|2.5||0102|", this.queryRow(ps));
+
+            ps.setObject(2, Boolean.TRUE, Types.BOOLEAN);
+            ps.setObject(4, 3, Types.BOOLEAN);
+            assertEquals("|11|integer|2.5|3|0102|", this.queryRow(ps));
+
+            ps.clearParameters();
+            assertEquals("|null|null|null|null||", this.queryRow(ps));
+        }
+    }
+
+    @Test
+    public void testRebindingAfterBatch() throws Exception {
+        try (PreparedStatement ps = this.conn.prepareStatement("INSERT INTO test_table VALUES (?, ?)")) {
+            ps.setInt(1, 2);
+            ps.setString(2, "two");
+            assertEquals(1, ps.executeUpdate());
+
+            ps.setInt(1, 3);
+            ps.addBatch();
+            ps.setInt(1, 4);
+            ps.setString(2, "four");
+            ps.addBatch();
+            assertArrayEquals(new int[] { 1, 1 }, ps.executeBatch());
+
+            // The batch cleared the bindings, the parameters have to come back.
+            ps.setInt(1, 5);
+            assertEquals(1, ps.executeUpdate());
+        }
+
+        try (PreparedStatement ps = this.conn.prepareStatement("SELECT * FROM test_table ORDER BY id");
+             ResultSet rs = ps.executeQuery()) {
+            assertArrayEquals(new String[] {
+                    "|1|test|",
+                    "|2|two|",
+                    "|3|two|",
+                    "|4|four|",
+                    "|5|four|",
+            }, this.formatResultSet(rs));
+        }
+    }
+
+    private void checkText(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT ?, length(?1), hex(?2)")) {
+            StringBuilder longText = new StringBuilder();
+
+            ps.setBytes(2, new byte[0]);
+            ps.setString(1, "abc");
+            assertEquals("|abc|3||", this.queryRow(ps));
+            ps.setString(1, "");
+            assertEquals("||0||", this.queryRow(ps));
+
+            ps.setString(1, "r\u00e9sum\u00e9 \ud83d\ude00");
+            ps.setBytes(2, new byte[] { (byte) 0xff });
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(8, rs.getInt(2));
+                assertEquals("FF", rs.getString(3));
+            }
+
+            // Grow the buffers past their initial size.
+            for (int lpc = 0; lpc < 100; lpc++) {
+                longText.append("0123456789\u00e9");
+            }
+            ps.setString(1, longText.toString());
+            ps.setBytes(2, new byte[1000]);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(1100, rs.getInt(2));
+                assertEquals(2000, rs.getString(3).length());
+            }
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement("SELECT hex(CAST(? AS BLOB))")) {
+            ps.setString(1, "\u00e9a");
+            String row = this.queryRow(ps);
+
+            // The text is stored in the database's encoding.
+            if (((SqliteConnection) conn).isUtf16())
+                assertTrue(row, row.equals("|E9006100|") || row.equals("|00E90061|"));
+            else
+                assertEquals("|C3A961|", row);
+        }
+    }
+
+    @Test
+    public void testTextParameters() throws Exception {
+        assertFalse(this.sqliteConnection.isUtf16());
+        this.checkText(this.conn);
+
+        File utf16File = this.testFolder.newFile("utf16.db");
+
+        try (Connection utf16 = driver.connect("jdbc:sqlite:" + utf16File.getAbsolutePath(), null)) {
+            try (Statement stmt = utf16.createStatement()) {
+                stmt.executeUpdate("PRAGMA encoding = 'UTF-16'");
+                stmt.executeUpdate("CREATE TABLE t (s TEXT)");
+            }
+            assertTrue(((SqliteConnection) utf16).isUtf16());
+            this.checkText(utf16);
+        }
+    }
+
+    private void checkTemporal(String storage, String expected) throws Exception {
+        try (Connection conn = driver.connect(
+                "jdbc:sqlite:" + this.dbFile.getAbsolutePath() + "?temporalStorage=" + storage, null);
+             PreparedStatement ps = conn.prepareStatement("SELECT ?, ?, ?, ?")) {
+            Calendar pst = new GregorianCalendar(TimeZone.getTimeZone("GMT-08:00"));
+
+            ps.setTimestamp(1, new Timestamp(1318431600123L));
+            ps.setDate(2, new Date(1318431600123L), pst);
+            ps.setTime(3, new Time(1318431600123L));
+            ps.setObject(4, java.time.Instant.ofEpochSecond(1318431600L));
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(expected, this.formatResultSetRow(rs));
+                assertEquals(1318431600123L, rs.getTimestamp(1).getTime());
+                assertEquals(1318406400000L, rs.getDate(2, pst).getTime());
+                assertEquals(54000L, rs.getTime(3).getTime() % DateTimeText.MILLIS_PER_DAY / 1000);
+                assertEquals(java.time.Instant.ofEpochSecond(1318431600L),
+                        rs.getObject(4, java.time.Instant.class));
+            }
+        }
+    }
+
+    @Test
+    public void testTemporalStorage() throws Exception {
+        this.checkTemporal("text",
+                "|2011-10-12 15:00:00.123|2011-10-12|15:00:00|2011-10-12 15:00:00.000|");
+        this.checkTemporal("integer",
+                "|1318431600123|1318406400000|54000123|1318431600000|");
+        this.checkTemporal("REAL",
+                "|2455847.12500142|2455846.83333333|2440588.12500142|2455847.125|");
+    }
+}
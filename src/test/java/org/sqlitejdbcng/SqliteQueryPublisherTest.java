@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SqliteQueryPublisherTest extends SqliteTestHelper {
+    private static final String COUNT_QUERY =
+            "WITH RECURSIVE cnt(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM cnt LIMIT 1000) SELECT x, 'row' || x FROM cnt";
+
+    private static class Recorder implements Flow.Subscriber<ColumnBatch> {
+        private final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ColumnBatch item) {
+            long[] values = new long[item.getRowCount()];
+
+            for (int lpc = 0; lpc < values.length; lpc++) {
+                values[lpc] = item.getLong(1, lpc);
+                assertEquals("row" + values[lpc], item.getString(2, lpc));
+            }
+            this.events.add(values);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.events.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            this.events.add("complete");
+        }
+
+        Object next() throws InterruptedException {
+            Object retval = this.events.poll(10, TimeUnit.SECONDS);
+
+            assertNotNull("Timed out waiting for an event", retval);
+            return retval;
+        }
+
+        void assertQuiet() throws InterruptedException {
+            assertNull(this.events.poll(100, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void testDemand() throws Exception {
+        SqliteStatement stmt = (SqliteStatement) this.conn.createStatement();
+        Recorder recorder = new Recorder();
+
+        stmt.publishQuery(COUNT_QUERY, 100).subscribe(recorder);
+        recorder.assertQuiet();
+
+        recorder.subscription.request(1);
+        long[] first = (long[]) recorder.next();
+        assertEquals(100, first.length);
+        assertEquals(1, first[0]);
+        assertEquals(100, first[99]);
+        recorder.assertQuiet();
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        long expected = 101;
+        for (int lpc = 1; lpc < 10; lpc++) {
+            for (long value : (long[]) recorder.next()) {
+                assertEquals(expected++, value);
+            }
+        }
+        assertEquals("complete", recorder.next());
+        assertEquals(1001, expected);
+        recorder.assertQuiet();
+        stmt.close();
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        SqlitePreparedStatement ps = (SqlitePreparedStatement) this.conn.prepareStatement(
+                "WITH RECURSIVE cnt(x) AS (SELECT ? UNION ALL SELECT x + 1 FROM cnt) SELECT x, 'row' || x FROM cnt");
+        Recorder recorder = new Recorder();
+
+        ps.setInt(1, 5);
+        ps.publishQuery(10).subscribe(recorder);
+        recorder.subscription.request(2);
+        assertEquals(5, ((long[]) recorder.next())[0]);
+        assertEquals(15, ((long[]) recorder.next())[0]);
+        recorder.subscription.cancel();
+        recorder.subscription.request(1);
+        recorder.assertQuiet();
+
+        ps.setInt(1, 42);
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(42, rs.getInt(1));
+        rs.close();
+        ps.close();
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        SqliteStatement stmt = (SqliteStatement) this.conn.createStatement();
+        Recorder recorder = new Recorder();
+
+        try {
+            stmt.publishQuery("SELECT 1", 0);
+            fail("A batch size of zero should be rejected");
+        }
+        catch (SQLNonTransientException e) {
+            assertEquals("22000", e.getSQLState());
+        }
+
+        Flow.Publisher<ColumnBatch> publisher = stmt.publishQuery(COUNT_QUERY, 10);
+        publisher.subscribe(recorder);
+        recorder.subscription.request(0);
+        assertTrue(recorder.next() instanceof IllegalArgumentException);
+
+        Recorder second = new Recorder();
+        publisher.subscribe(second);
+        assertTrue(second.next() instanceof IllegalStateException);
+
+        Recorder bad = new Recorder();
+        stmt.publishQuery("SELECT * FROM no_table", 10).subscribe(bad);
+        bad.subscription.request(1);
+        assertTrue(bad.next() instanceof SQLException);
+        bad.assertQuiet();
+        stmt.close();
+    }
+
+    private static CompletableFuture<Integer> block(SqliteStatement stmt, final CountDownLatch latch)
+            throws SQLException {
+        return stmt.executeQueryAsync("SELECT 1", new SqliteResultSetHandler<Integer>() {
+            @Override
+            public Integer handle(ResultSet rs) throws SQLException {
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    @Test
+    public void testFullQueue() throws Exception {
+        try (SqliteConnection conn = (SqliteConnection) driver.connect(
+                "jdbc:sqlite:" + this.dbFile.getAbsolutePath() + "?asyncQueueSize=1", null)) {
+            SqliteStatement stmt = (SqliteStatement) conn.createStatement();
+            SqliteStatement stmt2 = (SqliteStatement) conn.createStatement();
+            CountDownLatch latch = new CountDownLatch(1);
+            CompletableFuture<Integer> running = block(stmt, latch);
+            CompletableFuture<Integer> queued = stmt2.executeUpdateAsync("UPDATE test_table SET name = name");
+            Recorder recorder = new Recorder();
+
+            // The batch waits for room instead of failing the subscription.
+            ((SqliteStatement) conn.createStatement()).publishQuery(COUNT_QUERY, 100).subscribe(recorder);
+            recorder.subscription.request(1);
+            recorder.assertQuiet();
+
+            latch.countDown();
+            assertEquals(1, (int) running.get(10, TimeUnit.SECONDS));
+            assertEquals(1, (int) queued.get(10, TimeUnit.SECONDS));
+            assertEquals(100, ((long[]) recorder.next()).length);
+
+            latch = new CountDownLatch(1);
+            running = block(stmt, latch);
+            queued = stmt2.executeUpdateAsync("UPDATE test_table SET name = name");
+            recorder.subscription.request(1);
+            recorder.assertQuiet();
+
+            conn.close();
+            Object e = recorder.next();
+            assertTrue(e.toString(), e instanceof SQLNonTransientException);
+            assertEquals("08000", ((SQLException) e).getSQLState());
+            recorder.assertQuiet();
+        }
+    }
+}
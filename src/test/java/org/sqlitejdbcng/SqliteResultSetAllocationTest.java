@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SqliteResultSetAllocationTest extends SqliteTestHelper {
+    private static final int SMALL_ROWS = 1000;
+    private static final int LARGE_ROWS = 20000;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private final StringBuilder chars = new StringBuilder(64);
+
+    @Before
+    public void setUpBean() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        this.threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(this.threadBean.isThreadAllocatedMemorySupported());
+        this.threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE scan_table (id INTEGER PRIMARY KEY, n INTEGER, " +
+                    "d REAL, t TEXT)");
+            stmt.executeUpdate("WITH RECURSIVE seq(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM seq " +
+                    "WHERE x < " + LARGE_ROWS + ") " +
+                    "INSERT INTO scan_table SELECT x, CASE WHEN x % 7 = 0 THEN NULL ELSE x * 3 END, " +
+                    "x / 2.0, 'row-' || x FROM seq");
+        }
+    }
+
+    private long scan(PreparedStatement ps, int rows) throws SQLException {
+        long sum = 0;
+
+        ps.setInt(1, rows);
+        try (ResultSet rs = ps.executeQuery()) {
+            SqliteResultSet srs = (SqliteResultSet) rs;
+
+            while (rs.next()) {
+                sum += rs.getLong(1);
+                sum += rs.getInt(2);
+                if (rs.wasNull())
+                    sum += 1;
+                sum += (long) rs.getDouble(3);
+                this.chars.setLength(0);
+                srs.getChars(4, this.chars);
+                sum += this.chars.length();
+            }
+        }
+
+        return sum;
+    }
+
+    private long allocatedDuring(PreparedStatement ps, int rows) throws SQLException {
+        long threadId = Thread.currentThread().getId();
+        long before = this.threadBean.getThreadAllocatedBytes(threadId);
+
+        this.scan(ps, rows);
+
+        return this.threadBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    @Test
+    public void testScanDoesNotAllocatePerRow() throws Exception {
+        try (PreparedStatement ps = this.conn.prepareStatement(
+                "SELECT id, n, d, t FROM scan_table WHERE id <= ?")) {
+            assertEquals(this.scan(ps, 10), this.scan(ps, 10));
+            for (int lpc = 0; lpc < 50; lpc++) {
+                this.scan(ps, LARGE_ROWS);
+            }
+
+            /*
+             * Whatever a query costs up front is the same for both sizes, so
+             * the difference is what the extra rows cost.  The smallest of a
+             * few runs is used to filter out allocations by the JIT.
+             */
+            long smallest = Long.MAX_VALUE;
+
+            for (int lpc = 0; lpc < 5; lpc++) {
+                long perRows = this.allocatedDuring(ps, LARGE_ROWS) -
+                        this.allocatedDuring(ps, SMALL_ROWS);
+
+                smallest = Math.min(smallest, perRows);
+            }
+
+            double bytesPerRow = (double) smallest / (LARGE_ROWS - SMALL_ROWS);
+
+            assertTrue("scan allocated " + bytesPerRow + " bytes per row", bytesPerRow < 1.0);
+        }
+    }
+}
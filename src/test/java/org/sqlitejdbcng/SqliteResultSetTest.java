@@ -27,13 +27,17 @@
 package org.sqlitejdbcng;
 
 import org.junit.Test;
+import org.sqlitejdbcng.bridj.Sqlite3;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.sql.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
 
@@ -300,6 +304,240 @@ public class SqliteResultSetTest extends SqliteTestHelper {
         }
     }
 
+    @Test
+    public void testTemporalStorageClasses() throws Exception {
+        try (Statement stmt = this.conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT '2011-10-12 15:00:00.123456', " +
+                     "1318431600, 2455847.125, '2011-10-12T17:00:00+02:00', '2011-10-12', NULL")) {
+            assertTrue(rs.next());
+
+            assertEquals(1318431600123L, rs.getTimestamp(1).getTime());
+            assertEquals(123456000, rs.getTimestamp(1).getNanos());
+            assertEquals(1318431600000L, rs.getTimestamp(2).getTime());
+            assertEquals(1318431600000L, rs.getTimestamp(3).getTime());
+            assertEquals(1318431600000L, rs.getTimestamp(4).getTime());
+            assertEquals(1318377600000L, rs.getDate(1).getTime());
+            assertEquals(1318377600000L, rs.getDate(2).getTime());
+            assertEquals(1318377600000L, rs.getDate(5).getTime());
+            assertNull(rs.getTimestamp(6));
+
+            Calendar pst = new GregorianCalendar(TimeZone.getTimeZone("GMT-08:00"));
+
+            assertEquals(1318431600000L + 8 * 3600 * 1000, rs.getTimestamp(1, pst).getTime() - 123);
+            assertEquals(1318431600000L, rs.getTimestamp(2, pst).getTime());
+        }
+    }
+
+    @Test
+    public void testJavaTime() throws Exception {
+        try (PreparedStatement ps = this.conn.prepareStatement("SELECT ?, ?, ?")) {
+            ps.setObject(1, java.time.LocalDate.of(2011, 10, 12));
+            ps.setObject(2, java.time.LocalDateTime.of(2011, 10, 12, 15, 0, 0, 123000000));
+            ps.setObject(3, java.time.Instant.ofEpochSecond(1318431600L));
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals("2011-10-12", rs.getString(1));
+                assertEquals("2011-10-12 15:00:00.123", rs.getString(2));
+                assertEquals("2011-10-12 15:00:00.000", rs.getString(3));
+            }
+        }
+
+        try (Statement stmt = this.conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT '2011-10-12 15:00:00.123456789', " +
+                     "1318431600, 2455847.125, '2011-10-12T17:00:00+02:00', NULL, 'junk'")) {
+            assertTrue(rs.next());
+
+            assertEquals(java.time.LocalDate.of(2011, 10, 12), rs.getObject(1, java.time.LocalDate.class));
+            assertEquals(java.time.LocalDateTime.of(2011, 10, 12, 15, 0, 0, 123456789),
+                    rs.getObject(1, java.time.LocalDateTime.class));
+            assertEquals(java.time.Instant.ofEpochSecond(1318431600L, 123456789),
+                    rs.getObject(1, java.time.Instant.class));
+            assertEquals(java.time.Instant.ofEpochSecond(1318431600L),
+                    rs.getObject(2, java.time.Instant.class));
+            assertEquals(java.time.Instant.ofEpochSecond(1318431600L),
+                    rs.getObject(3, java.time.Instant.class));
+            assertEquals(java.time.OffsetDateTime.of(2011, 10, 12, 17, 0, 0, 0, java.time.ZoneOffset.ofHours(2)),
+                    rs.getObject(4, java.time.OffsetDateTime.class));
+            assertEquals(java.time.LocalDateTime.of(2011, 10, 12, 15, 0),
+                    rs.getObject(4, java.time.LocalDateTime.class));
+            assertNull(rs.getObject(5, java.time.Instant.class));
+            assertEquals(Long.valueOf(1318431600L), rs.getObject(2, Long.class));
+            assertEquals("junk", rs.getObject(6, String.class));
+
+            try {
+                rs.getObject(6, java.time.Instant.class);
+                fail("able to convert junk to an instant?");
+            }
+            catch (SQLDataException e) {
+            }
+            try {
+                rs.getObject(1, java.time.Duration.class);
+                fail("able to convert to a duration?");
+            }
+            catch (SQLFeatureNotSupportedException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testStrings() throws Exception {
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE status_table (id INTEGER PRIMARY KEY, status TEXT)");
+            stmt.executeUpdate("INSERT INTO status_table VALUES (1, 'open'), (2, 'closed'), (3, 'open'), " +
+                    "(4, NULL), (5, ''), (6, 'open')");
+        }
+        try (PreparedStatement ps = this.conn.prepareStatement("INSERT INTO status_table VALUES (7, ?)")) {
+            ps.setString(1, "r\u00e9sum\u00e9 \ud83d\ude00");
+            ps.executeUpdate();
+        }
+
+        try (Statement stmt = this.conn.createStatement();
+             SqliteResultSet rs = (SqliteResultSet) stmt.executeQuery(
+                     "SELECT status, status FROM status_table ORDER BY id")) {
+            String lastOpen = null;
+
+            rs.setStringCacheSize(1, 16);
+            while (rs.next()) {
+                String cached = rs.getString(1);
+                String uncached = rs.getString(2);
+
+                assertEquals(uncached, cached);
+                if ("open".equals(cached)) {
+                    assertNotSame(cached, uncached);
+                    if (lastOpen != null)
+                        assertSame(lastOpen, cached);
+                    lastOpen = cached;
+                }
+            }
+            assertNotNull(lastOpen);
+        }
+
+        try (Statement stmt = this.conn.createStatement();
+             SqliteResultSet rs = (SqliteResultSet) stmt.executeQuery(
+                     "SELECT status FROM status_table WHERE id IN (4, 5, 7) ORDER BY id")) {
+            rs.setStringCacheSize(1, 16);
+            assertTrue(rs.next());
+            assertNull(rs.getString(1));
+            assertTrue(rs.wasNull());
+            assertTrue(rs.next());
+            assertEquals("", rs.getString(1));
+            assertTrue(rs.next());
+            assertEquals("r\u00e9sum\u00e9 \ud83d\ude00", rs.getString(1));
+            rs.setStringCacheSize(1, 0);
+            assertEquals("r\u00e9sum\u00e9 \ud83d\ude00", rs.getString(1));
+        }
+    }
+
+    @Test
+    public void testBuffers() throws Exception {
+        try (PreparedStatement stmt = this.conn.prepareStatement("SELECT x'01020304', ?, NULL, x'', ''")) {
+            stmt.setString(1, "caf\u00e9 \ud83d\ude00");
+
+            ResultSet rs = stmt.executeQuery();
+            SqliteResultSet srs = rs.unwrap(SqliteResultSet.class);
+
+            assertTrue(srs.next());
+
+            ByteBuffer view = srs.getByteBuffer(1);
+
+            assertTrue(view.isReadOnly());
+            assertEquals(4, view.remaining());
+            assertEquals(0x01020304, view.getInt(0));
+            assertEquals(ByteBuffer.wrap("caf\u00e9 \ud83d\ude00".getBytes("UTF-8")), srs.getTextByteBuffer(2));
+            assertNull(srs.getByteBuffer(3));
+            assertEquals(0, srs.getByteBuffer(4).remaining());
+
+            byte[] bytes = new byte[6];
+
+            assertEquals(4, srs.getBytes(1, bytes, 1));
+            assertArrayEquals(new byte[] { 0, 1, 2, 3, 4, 0 }, bytes);
+            assertEquals(4, srs.getBytes(1, bytes, 4));
+            assertArrayEquals(new byte[] { 0, 1, 2, 3, 1, 2 }, bytes);
+            assertEquals(-1, srs.getBytes(3, bytes, 0));
+            assertEquals(0, srs.getBytes(4, bytes, 0));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(8);
+
+            assertEquals(4, srs.getBytes(1, direct));
+            assertEquals(4, direct.position());
+            assertEquals(0x01020304, direct.getInt(0));
+
+            StringBuilder sb = new StringBuilder("x");
+
+            assertEquals(7, srs.getChars(2, sb));
+            assertEquals("xcaf\u00e9 \ud83d\ude00", sb.toString());
+            assertEquals(-1, srs.getChars(3, sb));
+            assertEquals(0, srs.getChars(5, sb));
+
+            CharBuffer cb = CharBuffer.allocate(7);
+
+            assertEquals(7, srs.getChars(2, cb));
+            cb.flip();
+            assertEquals("caf\u00e9 \ud83d\ude00", cb.toString());
+            try {
+                srs.getChars(2, CharBuffer.allocate(3));
+                fail("decoded into a buffer that was too small");
+            }
+            catch (SQLDataException e) {
+                assertEquals("22001", e.getSQLState());
+            }
+        }
+    }
+
+    @Test
+    public void testFetchColumns() throws Exception {
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO test_table VALUES (2, 'two')");
+            stmt.executeUpdate("INSERT INTO test_table VALUES (3, 'three')");
+
+            ColumnBatch batch = new ColumnBatch();
+
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT id, name, id * 1.5, CASE id WHEN 2 THEN NULL ELSE x'ff' END FROM test_table ORDER BY id")) {
+                SqliteResultSet srs = rs.unwrap(SqliteResultSet.class);
+
+                assertEquals(2, srs.fetchColumns(2, batch));
+                assertEquals(4, batch.getColumnCount());
+                assertEquals(2, batch.getRowCount());
+                assertEquals(1, batch.getLong(1, 0));
+                assertEquals(2, batch.getLongs(1)[1]);
+                assertEquals("test", batch.getString(2, 0));
+                assertEquals("two", batch.getString(2, 1));
+                assertEquals(Sqlite3.DataType.SQLITE_FLOAT, batch.getType(3, 0));
+                assertEquals(3.0, batch.getDouble(3, 1), 0.0);
+                assertFalse(batch.isNull(4, 0));
+                assertEquals((byte) 0xff, batch.getByteBuffer(4, 0).get(0));
+                assertTrue(batch.isNull(4, 1));
+                assertNull(batch.getString(4, 1));
+                assertEquals(2L, batch.getNullBitmap(4)[0]);
+
+                assertEquals(1, srs.fetchColumns(2, batch));
+                assertEquals(3, batch.getLong(1, 0));
+                assertEquals("three", batch.getString(2, 0));
+                assertEquals(0, srs.fetchColumns(2, batch));
+                assertEquals(0, srs.fetchColumns(2, batch));
+                assertFalse(rs.next());
+            }
+
+            try (ResultSet rs = stmt.executeQuery("SELECT id FROM test_table ORDER BY id")) {
+                SqliteResultSet srs = rs.unwrap(SqliteResultSet.class);
+
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1));
+                assertEquals(1, srs.fetchColumns(1, batch));
+                assertEquals(2, batch.getLong(1, 0));
+                assertTrue(rs.next());
+                assertEquals(3, rs.getInt(1));
+            }
+
+            stmt.setMaxRows(2);
+            try (ResultSet rs = stmt.executeQuery("SELECT id FROM test_table ORDER BY id")) {
+                assertEquals(2, rs.unwrap(SqliteResultSet.class).fetchColumns(10, batch));
+                assertFalse(rs.next());
+            }
+        }
+    }
+
     @Test
     public void testUpdate() throws Throwable {
         try (Statement stmt = this.conn.createStatement()) {
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class SqliteRoutingDataSourceTest extends SqliteTestHelper {
+    private SqliteRoutingDataSource router;
+
+    @Before
+    public void openRouter() throws Exception {
+        this.router = new SqliteRoutingDataSource("jdbc:sqlite:" + this.dbFile.getAbsolutePath());
+        this.router.setReaderCount(2);
+    }
+
+    @After
+    public void closeRouter() {
+        this.router.close();
+    }
+
+    private int countRows(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT count(*) FROM test_table");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void testWalMode() throws Exception {
+        try (Connection conn = this.router.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA journal_mode")) {
+            assertTrue(rs.next());
+            assertEquals("wal", rs.getString(1));
+        }
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        try (Connection conn = this.router.getConnection()) {
+            assertEquals(1, this.countRows(conn));
+            assertEquals(1, this.router.getReaderStatementCount());
+            assertEquals(0, this.router.getWriterStatementCount());
+
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO test_table VALUES (?, ?)")) {
+                assertSame(conn, ps.getConnection());
+                assertEquals(1, this.router.getWriterPool().getActiveCount());
+                ps.setInt(1, 2);
+                ps.setString(2, "two");
+                assertEquals(1, ps.executeUpdate());
+            }
+
+            assertEquals(1, this.router.getWriterStatementCount());
+            assertEquals(0, this.router.getWriterPool().getActiveCount());
+            assertEquals(2, this.countRows(conn));
+        }
+
+        assertEquals(0, this.router.getReaderPool().getActiveCount());
+    }
+
+    @Test
+    public void testStatementRouting() throws Exception {
+        try (Connection conn = this.router.getConnection();
+             Statement stmt = conn.createStatement()) {
+            assertSame(conn, stmt.getConnection());
+
+            try (ResultSet rs = stmt.executeQuery("SELECT count(*) FROM test_table")) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1));
+            }
+            assertEquals(1, this.router.getReaderStatementCount());
+            assertEquals(0, this.router.getWriterStatementCount());
+            assertEquals(0, this.router.getWriterPool().getActiveCount());
+
+            assertEquals(1, stmt.executeUpdate("INSERT INTO test_table VALUES (2, 'two')"));
+            assertEquals(1, this.router.getWriterStatementCount());
+            assertEquals(1, this.router.getWriterPool().getActiveCount());
+
+            // Going back to a reader lets go of the writer.
+            assertTrue(stmt.execute("SELECT count(*) FROM test_table"));
+            assertTrue(stmt.getResultSet().next());
+            assertEquals(2, stmt.getResultSet().getInt(1));
+            assertEquals(2, this.router.getReaderStatementCount());
+            assertEquals(0, this.router.getWriterPool().getActiveCount());
+        }
+    }
+
+    @Test
+    public void testPreparedBeforeTransaction() throws Exception {
+        try (Connection conn = this.router.getConnection();
+             PreparedStatement before = conn.prepareStatement("SELECT count(*) FROM test_table")) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("INSERT INTO test_table VALUES (2, 'two')");
+            }
+
+            // Still on the reader, which cannot see the uncommitted row.
+            try (ResultSet rs = before.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1));
+            }
+            assertEquals(2, this.countRows(conn));
+            conn.rollback();
+        }
+    }
+
+    @Test
+    public void testSettingsFollowConnection() throws Exception {
+        try (Connection conn = this.router.getConnection()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
+            assertEquals(Connection.TRANSACTION_READ_UNCOMMITTED, conn.getTransactionIsolation());
+
+            conn.setAutoCommit(false);
+            assertEquals(Connection.TRANSACTION_READ_UNCOMMITTED, conn.getTransactionIsolation());
+            conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            conn.commit();
+            conn.setAutoCommit(true);
+            assertEquals(Connection.TRANSACTION_SERIALIZABLE, conn.getTransactionIsolation());
+        }
+    }
+
+    @Test
+    public void testTransactionPinsWriter() throws Exception {
+        try (Connection conn = this.router.getConnection()) {
+            conn.setAutoCommit(false);
+            assertFalse(conn.getAutoCommit());
+
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO test_table VALUES (2, 'two')")) {
+                ps.executeUpdate();
+            }
+
+            // The uncommitted row is only visible if the read went to the writer.
+            assertEquals(2, this.countRows(conn));
+            assertEquals(0, this.router.getReaderStatementCount());
+            assertEquals(1, this.router.getWriterPool().getActiveCount());
+
+            try (Connection other = this.router.getConnection()) {
+                assertEquals(1, this.countRows(other));
+            }
+
+            conn.commit();
+            conn.setAutoCommit(true);
+            assertTrue(conn.getAutoCommit());
+            assertEquals(0, this.router.getWriterPool().getActiveCount());
+            assertEquals(2, this.countRows(conn));
+        }
+    }
+
+    @Test
+    public void testReadOnly() throws Exception {
+        try (Connection conn = this.router.getConnection()) {
+            conn.setReadOnly(true);
+            assertTrue(conn.isReadOnly());
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("INSERT INTO test_table VALUES (2, 'two')");
+                fail("Read-only connection should not be able to write");
+            }
+            catch (SQLException e) {
+                assertEquals(0, this.router.getWriterStatementCount());
+            }
+
+            conn.setReadOnly(false);
+            try (Statement stmt = conn.createStatement()) {
+                assertEquals(1, stmt.executeUpdate("INSERT INTO test_table VALUES (2, 'two')"));
+            }
+        }
+    }
+
+    @Test
+    public void testReadersDoNotBlockWriter() throws Exception {
+        try (Connection reader = this.router.getConnection();
+             PreparedStatement ps = reader.prepareStatement("SELECT * FROM test_table");
+             ResultSet rs = ps.executeQuery()) {
+            assertTrue(rs.next());
+
+            try (Connection writer = this.router.getConnection();
+                 Statement stmt = writer.createStatement()) {
+                assertEquals(1, stmt.executeUpdate("INSERT INTO test_table VALUES (2, 'two')"));
+            }
+
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    public void testClosed() throws Exception {
+        Connection conn = this.router.getConnection();
+
+        conn.close();
+        assertTrue(conn.isClosed());
+        assertFalse(conn.isValid(0));
+        try {
+            conn.createStatement();
+            fail("Closed connection should not be usable");
+        }
+        catch (SQLException e) {
+            assertEquals("08000", e.getSQLState());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class SqliteStatementCacheTest extends SqliteTestHelper {
+    private Connection openCached(int size) throws SQLException {
+        Properties props = new Properties();
+
+        props.setProperty(SqliteConnection.STATEMENT_CACHE_SIZE, Integer.toString(size));
+
+        return driver.connect("jdbc:sqlite:" + this.dbFile.getAbsolutePath(), props);
+    }
+
+    private String selectName(Connection conn, int id) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT name FROM test_table WHERE id = ?")) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        assertNull(this.sqliteConnection.getStatementCache());
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        try (Connection conn = this.openCached(4)) {
+            SqliteStatementCache cache = ((SqliteConnection) conn).getStatementCache();
+
+            assertNotNull(cache);
+            assertEquals(4, cache.getCapacity());
+
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO test_table VALUES (?, ?)")) {
+                ps.setInt(1, 2);
+                ps.setString(2, "second");
+                ps.executeUpdate();
+            }
+
+            assertEquals("test", this.selectName(conn, 1));
+            assertEquals(0, cache.getHits());
+            assertEquals(2, cache.getMisses());
+            assertEquals(2, cache.size());
+
+            // The bindings from the previous use should not leak through.
+            assertEquals("second", this.selectName(conn, 2));
+            assertNull(this.selectName(conn, 3));
+            assertEquals(2, cache.getHits());
+            assertEquals(2, cache.getMisses());
+            assertEquals(0, cache.getEvictions());
+        }
+    }
+
+    @Test
+    public void testConcurrentCheckout() throws Exception {
+        try (Connection conn = this.openCached(4)) {
+            SqliteStatementCache cache = ((SqliteConnection) conn).getStatementCache();
+            PreparedStatement ps1 = conn.prepareStatement("SELECT * FROM test_table");
+            PreparedStatement ps2 = conn.prepareStatement("SELECT * FROM test_table");
+
+            assertEquals(2, cache.getMisses());
+            try (ResultSet rs1 = ps1.executeQuery(); ResultSet rs2 = ps2.executeQuery()) {
+                assertTrue(rs1.next());
+                assertTrue(rs2.next());
+            }
+            ps1.close();
+            ps2.close();
+
+            assertEquals(1, cache.size());
+            assertEquals(1, cache.getEvictions());
+        }
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        try (Connection conn = this.openCached(2)) {
+            SqliteStatementCache cache = ((SqliteConnection) conn).getStatementCache();
+
+            for (int lpc = 0; lpc < 5; lpc++) {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT " + lpc)) {
+                    try (ResultSet rs = ps.executeQuery()) {
+                        assertTrue(rs.next());
+                        assertEquals(lpc, rs.getInt(1));
+                    }
+                }
+            }
+
+            assertEquals(2, cache.size());
+            assertEquals(3, cache.getEvictions());
+
+            // "SELECT 4" was used most recently and should still be around.
+            conn.prepareStatement("SELECT 4").close();
+            assertEquals(1, cache.getHits());
+        }
+    }
+
+    @Test
+    public void testNotPoolable() throws Exception {
+        try (Connection conn = this.openCached(2)) {
+            SqliteStatementCache cache = ((SqliteConnection) conn).getStatementCache();
+
+            try (PreparedStatement ps = conn.prepareStatement("SELECT 1")) {
+                assertTrue(ps.isPoolable());
+                ps.setPoolable(false);
+            }
+
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void testCloseWithCachedStatements() throws Exception {
+        Logger logger = driver.getParentLogger();
+        LogRecorder recorder = new LogRecorder();
+
+        logger.addHandler(recorder);
+        try {
+            Connection conn = this.openCached(2);
+
+            conn.prepareStatement("SELECT 1").close();
+            conn.close();
+
+            assertTrue(recorder.getRecords().isEmpty());
+        }
+        finally {
+            logger.removeHandler(recorder);
+        }
+    }
+
+    @Test(expected = SQLException.class)
+    public void testBadCacheSize() throws Exception {
+        this.openCached(-1);
+    }
+}
@@ -223,6 +223,68 @@ public class SqliteStatementTest extends SqliteTestHelper {
         }
     }
 
+    @Test
+    public void testQueryTimeoutWithoutCallback() throws Exception {
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.setQueryTimeout(1);
+
+            long startTime = System.currentTimeMillis();
+            try (ResultSet rs = stmt.executeQuery(
+                    "WITH RECURSIVE cnt(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM cnt) " +
+                    "SELECT count(*) FROM cnt")) {
+                rs.next();
+                fail("Expected a timeout exception");
+            }
+            catch (SQLTimeoutException e) {
+                long elapsed = System.currentTimeMillis() - startTime;
+
+                assertTrue("Timeout expired early -- " + elapsed, elapsed >= 1000);
+                assertTrue("Timeout expired late -- " + elapsed, elapsed < 5000);
+            }
+
+            try (ResultSet rs = stmt.executeQuery("SELECT count(*) FROM test_table")) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testQueryTimeoutWithOpenResultSet() throws Exception {
+        try (Statement other = this.conn.createStatement();
+             Statement stmt = this.conn.createStatement()) {
+            ResultSet open = other.executeQuery(
+                    "WITH RECURSIVE cnt(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM cnt WHERE x < 100) " +
+                    "SELECT x FROM cnt");
+
+            assertTrue(open.next());
+
+            stmt.setQueryTimeout(1);
+            try (ResultSet rs = stmt.executeQuery(
+                    "WITH RECURSIVE cnt(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM cnt) " +
+                    "SELECT count(*) FROM cnt")) {
+                rs.next();
+                fail("Expected a timeout exception");
+            }
+            catch (SQLTimeoutException e) {
+            }
+
+            // The interrupt is still pending while the other result set is open.
+            try {
+                open.next();
+                fail("Expected a timeout exception");
+            }
+            catch (SQLTimeoutException e) {
+            }
+            open.close();
+
+            try (ResultSet rs = other.executeQuery("SELECT count(*) FROM test_table")) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1));
+            }
+        }
+    }
+
     @Test
     public void testCancel() throws Exception {
         try (final Statement stmt = this.conn.createStatement()) {
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class SqliteWalTest extends SqliteTestHelper {
+    private void insertRows(Connection conn, int count) throws Exception {
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO test_table (name) VALUES (?)")) {
+            for (int lpc = 0; lpc < count; lpc++) {
+                ps.setString(1, "row " + lpc);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        SqliteCheckpoint result = this.sqliteConnection.checkpoint(SqliteCheckpoint.Mode.PASSIVE);
+
+        assertFalse(result.isWal());
+
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.executeQuery("PRAGMA journal_mode=WAL").close();
+        }
+
+        SqliteWalMonitor monitor = new SqliteWalMonitor(0);
+
+        this.sqliteConnection.setWalMonitor(monitor);
+        assertSame(monitor, this.sqliteConnection.getWalMonitor());
+        this.insertRows(this.conn, 10);
+        assertEquals(10, monitor.getCommits());
+        assertTrue(monitor.getWalFrames() > 0);
+        assertEquals(monitor.getWalFrames(), monitor.getMaxWalFrames());
+
+        try (Connection reader = driver.connect("jdbc:sqlite:" + this.dbFile.getAbsolutePath(), null)) {
+            reader.setAutoCommit(false);
+            try (Statement stmt = reader.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT count(*) FROM test_table")) {
+                assertTrue(rs.next());
+                assertEquals(11, rs.getInt(1));
+            }
+
+            // The reader's snapshot keeps these frames from being checkpointed.
+            this.insertRows(this.conn, 10);
+            result = this.sqliteConnection.checkpoint("main", SqliteCheckpoint.Mode.PASSIVE);
+            assertTrue(result.isWal());
+            assertFalse(result.isBusy());
+            assertTrue(result.getBacklogFrames() > 0);
+            assertEquals(result.getBacklogFrames(), monitor.getLastBacklogFrames());
+
+            result = this.sqliteConnection.checkpoint(SqliteCheckpoint.Mode.FULL);
+            assertTrue(result.isBusy());
+            reader.rollback();
+        }
+
+        result = this.sqliteConnection.checkpoint(SqliteCheckpoint.Mode.TRUNCATE);
+        assertFalse(result.isBusy());
+        assertEquals(0, result.getBacklogFrames());
+        assertEquals(0, result.getLogFrames());
+
+        assertEquals(3, monitor.getCheckpoints());
+        assertEquals(1, monitor.getBusyCheckpoints());
+        assertEquals(0, monitor.getLastBacklogFrames());
+        assertTrue(monitor.getMaxBacklogFrames() > 0);
+        assertTrue(monitor.getTotalCheckpointNanos() >= monitor.getMaxCheckpointNanos());
+
+        this.sqliteConnection.setWalMonitor(null);
+        this.insertRows(this.conn, 1);
+        assertEquals(20, monitor.getCommits());
+    }
+
+    @Test
+    public void testAutoCheckpoint() throws Exception {
+        try (Statement stmt = this.conn.createStatement()) {
+            stmt.executeQuery("PRAGMA journal_mode=WAL").close();
+        }
+
+        SqliteWalMonitor monitor = new SqliteWalMonitor(5);
+
+        this.sqliteConnection.setWalMonitor(monitor);
+        this.insertRows(this.conn, 20);
+        assertTrue(monitor.getCheckpoints() > 0);
+        assertTrue(monitor.getWalFrames() < 20);
+    }
+
+    @Test
+    public void testBackgroundCheckpointer() throws Exception {
+        String url = "jdbc:sqlite:" + this.dbFile.getAbsolutePath() +
+                "?journal_mode=WAL&walCheckpointFrames=8&walCheckpointIdle=20";
+
+        try (SqliteConnection writer = (SqliteConnection) driver.connect(url, null);
+             SqliteConnection other = (SqliteConnection) driver.connect(url, null)) {
+            SqliteWalCheckpointer checkpointer = writer.getWalCheckpointer();
+
+            assertNotNull(checkpointer);
+            assertSame(checkpointer, other.getWalCheckpointer());
+            assertSame(checkpointer.getMonitor(), writer.getWalMonitor());
+            assertEquals(8, checkpointer.getThresholdFrames());
+            assertEquals(20, checkpointer.getIdleMillis());
+
+            SqliteWalMonitor monitor = checkpointer.getMonitor();
+
+            this.insertRows(writer, 20);
+            // The writer never checkpoints, the background thread does.
+            for (int lpc = 0; lpc < 200 && monitor.getCheckpoints() == 0; lpc++) {
+                Thread.sleep(25);
+            }
+            assertTrue(monitor.getCheckpoints() > 0);
+            assertEquals(0, monitor.getLastBacklogFrames());
+        }
+
+        try (SqliteConnection conn = (SqliteConnection) driver.connect(
+                "jdbc:sqlite::memory:?walCheckpointFrames=8", null)) {
+            assertNull(conn.getWalCheckpointer());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.internal;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class DateTimeTextTest {
+    private final DateTimeText dtt = new DateTimeText();
+
+    private boolean parse(String value) {
+        byte[] bytes = ("--" + value).getBytes(StandardCharsets.UTF_8);
+
+        return this.dtt.parse(bytes, 2, bytes.length - 2);
+    }
+
+    private long millis(String value) {
+        assertTrue(value, this.parse(value));
+
+        return this.dtt.getEpochMillis(0);
+    }
+
+    @Test
+    public void testParse() {
+        assertEquals(1318431600000L, this.millis("2011-10-12 15:00"));
+        assertEquals(1318431600000L, this.millis("2011-10-12T15:00:00"));
+        assertEquals(1318431600123L, this.millis("2011-10-12 15:00:00.123"));
+        assertEquals(1318377600000L, this.millis("2011-10-12"));
+        assertTrue(this.dtt.hasDate());
+        assertFalse(this.dtt.hasTime());
+
+        assertEquals(1318431600000L, this.millis("2011-10-12 15:00:00Z"));
+        assertEquals(1318431600000L, this.millis("2011-10-12 17:30:00+02:30"));
+        assertEquals(9000, this.dtt.getOffsetSeconds());
+        assertEquals(1318431600000L, this.millis("2011-10-12 10:00:00-05:00"));
+
+        assertTrue(this.parse("2011-10-12 15:00:00.123456789"));
+        assertEquals(123456789, this.dtt.getNanos());
+        assertTrue(this.parse("2011-10-12 15:00:00.1234567891"));
+        assertEquals(123456789, this.dtt.getNanos());
+        assertTrue(this.parse("2011-10-12 15:00:00.5"));
+        assertEquals(500000000, this.dtt.getNanos());
+
+        // Times without a date are on 2000-01-01, like in SQLite.
+        assertEquals(946704322000L, this.millis("05:25:22"));
+        assertFalse(this.dtt.hasDate());
+        assertTrue(this.dtt.hasTime());
+
+        // The day of the month can overflow like in SQLite.
+        assertEquals(this.millis("2011-03-03"), this.millis("2011-02-31"));
+        assertEquals(-86400000L, this.millis("1969-12-31"));
+    }
+
+    @Test
+    public void testInvalid() {
+        String[] invalid = {
+                "", "d1", "2011-10-12x", "2011-13-01", "2011-1-01", "2011-10-12 15", "2011-10-12 15:0",
+                "25:00", "12:60", "12:00:61", "12:00:00.", "12:00:00+2:00", "12:00:00+02:00x", "12:00 Z",
+                "\u00e9\u00e9-10-12",
+        };
+
+        for (String value : invalid) {
+            assertFalse(value, this.parse(value));
+        }
+    }
+
+    @Test
+    public void testFormat() {
+        assertEquals("2011-10-12", DateTimeText.formatDate(1318431600123L));
+        assertEquals("15:00:00", DateTimeText.formatTime(1318431600123L));
+        assertEquals("2011-10-12 15:00:00.123", DateTimeText.formatTimestamp(1318431600123L));
+        assertEquals("1969-12-31 23:59:59.999", DateTimeText.formatTimestamp(-1L));
+        assertEquals("0001-01-01 00:00:00.000", DateTimeText.formatTimestamp(-62135596800000L));
+
+        for (long millis = -5000000000000L; millis < 5000000000000L; millis += 987654321L) {
+            assertEquals(millis, this.millis(DateTimeText.formatTimestamp(millis)));
+        }
+    }
+
+    @Test
+    public void testJulianDay() {
+        assertEquals(0L, DateTimeText.julianDayToEpochMillis(2440587.5));
+        assertEquals(1318431600000L, DateTimeText.julianDayToEpochMillis(2455847.125));
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class Sqlite3BackendsTest {
+    @Test
+    public void testSelect() {
+        assertEquals("bridj", Sqlite3Backends.CURRENT.getName());
+        assertEquals("bridj", Sqlite3Backends.select("bridj", 7).getName());
+        assertEquals("bridj", Sqlite3Backends.select("auto", 17).getName());
+        // The Panama backend is not on the classpath, so these fall back.
+        assertEquals("bridj", Sqlite3Backends.select("auto", Sqlite3Backends.PANAMA_MIN_VERSION).getName());
+        assertEquals("bridj", Sqlite3Backends.select("panama", 17).getName());
+        assertEquals("bridj", Sqlite3Backends.select("panama", Sqlite3Backends.PANAMA_MIN_VERSION).getName());
+        assertEquals("bridj", Sqlite3Backends.select("java.lang.String", 17).getName());
+        assertEquals("bridj", Sqlite3Backends.select("no.such.Backend", 17).getName());
+    }
+
+    @Test
+    public void testJavaVersion() {
+        assertTrue(Sqlite3Backends.javaVersion() >= 7);
+    }
+}
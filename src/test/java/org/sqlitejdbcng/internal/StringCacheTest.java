@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.internal;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class StringCacheTest {
+    private static String get(StringCache cache, String value) {
+        byte[] bytes = ("xx" + value).getBytes(StandardCharsets.UTF_8);
+
+        return cache.get(bytes, 2, bytes.length - 2);
+    }
+
+    @Test
+    public void testHits() {
+        StringCache cache = new StringCache(5);
+        String active = get(cache, "active");
+
+        assertEquals(8, cache.capacity());
+        assertEquals("active", active);
+        assertSame(active, get(cache, "active"));
+        assertEquals("", get(cache, ""));
+        assertSame(get(cache, "caf\u00e9"), get(cache, "caf\u00e9"));
+        assertNotSame(get(cache, "inactive"), get(cache, "active2"));
+    }
+
+    @Test
+    public void testBounded() {
+        StringCache cache = new StringCache(4);
+        StringBuilder longValue = new StringBuilder();
+
+        for (int lpc = 0; lpc < 1000; lpc++) {
+            assertEquals("value" + lpc, get(cache, "value" + lpc));
+        }
+        assertEquals(4, cache.capacity());
+
+        for (int lpc = 0; lpc <= StringCache.MAX_KEY_LENGTH; lpc++) {
+            longValue.append('x');
+        }
+        assertNotSame(get(cache, longValue.toString()), get(cache, longValue.toString()));
+        assertEquals(longValue.toString(), get(cache, longValue.toString()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadSize() {
+        new StringCache(0);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013, Timothy Stack
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Tim Stack AND CONTRIBUTORS ''AS IS'' AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.sqlitejdbcng.internal;
+
+import org.junit.Test;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class Utf8Test {
+    private static final String[] SAMPLES = {
+            "",
+            "plain ascii",
+            "caf\u00e9",
+            "\u20ac100",
+            "\ud83d\ude00 smile",
+            "mixed \u00e9\u20ac\ud83d\ude00 end",
+    };
+
+    @Test
+    public void testEncode() {
+        for (String sample : SAMPLES) {
+            byte[] expected = sample.getBytes(StandardCharsets.UTF_8);
+            byte[] actual = new byte[Utf8.encodedLength(sample) + 2];
+
+            assertEquals(expected.length, Utf8.encodedLength(sample));
+            assertEquals(expected.length + 1, Utf8.encode(sample, actual, 1));
+            for (int lpc = 0; lpc < expected.length; lpc++) {
+                assertEquals(sample, expected[lpc], actual[lpc + 1]);
+            }
+        }
+
+        byte[] lone = new byte[Utf8.encodedLength("a\ud83db")];
+
+        Utf8.encode("a\ud83db", lone, 0);
+        assertEquals("a?b", new String(lone, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDecode() {
+        for (String sample : SAMPLES) {
+            byte[] bytes = sample.getBytes(StandardCharsets.UTF_8);
+            StringBuilder sb = new StringBuilder();
+            CharBuffer cb = CharBuffer.allocate(sample.length());
+
+            assertEquals(sample.length(), Utf8.decodedLength(bytes, 0, bytes.length));
+            Utf8.decode(bytes, 0, bytes.length, sb);
+            assertEquals(sample, sb.toString());
+            Utf8.decode(bytes, 0, bytes.length, cb);
+            cb.flip();
+            assertEquals(sample, cb.toString());
+
+            byte[] padded = new byte[bytes.length + 2];
+
+            System.arraycopy(bytes, 0, padded, 1, bytes.length);
+            assertEquals(sample, Utf8.decode(padded, 1, bytes.length));
+        }
+    }
+
+    @Test
+    public void testMalformed() {
+        byte[] bytes = { 'a', (byte) 0xc3, 'b', (byte) 0xe2, (byte) 0x82 };
+        StringBuilder sb = new StringBuilder();
+
+        Utf8.decode(bytes, 0, bytes.length, sb);
+        assertEquals("a\ufffdb\ufffd\ufffd", sb.toString());
+        assertEquals(sb.length(), Utf8.decodedLength(bytes, 0, bytes.length));
+        assertEquals(sb.toString(), Utf8.decode(bytes, 0, bytes.length));
+    }
+}